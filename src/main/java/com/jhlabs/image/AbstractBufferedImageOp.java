@@ -27,10 +27,6 @@ import java.awt.image.BufferedImage;
 import java.awt.image.BufferedImageOp;
 import java.awt.image.ColorModel;
 
-import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
-import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
-import static java.awt.image.BufferedImage.TYPE_INT_RGB;
-
 /**
  * A convenience class which implements those methods of BufferedImageOp which are rarely changed.
  */
@@ -110,7 +106,8 @@ public abstract class AbstractBufferedImageOp implements BufferedImageOp, Clonea
 
     /**
      * A convenience method for getting ARGB pixels from an image. This tries to avoid the performance
-     * penalty of BufferedImage.getRGB unmanaging the image.
+     * penalty of BufferedImage.getRGB unmanaging the image, and the per-pixel color model
+     * conversions for the common image types (see {@link PixelAccess}).
      *
      * @param image  a BufferedImage object
      * @param x      the starting X coordinate
@@ -122,17 +119,13 @@ public abstract class AbstractBufferedImageOp implements BufferedImageOp, Clonea
      * @see #setRGB
      */
     public static int[] getRGB(BufferedImage image, int x, int y, int width, int height, int[] pixels) {
-        int type = image.getType();
-//		if ( type == TYPE_INT_ARGB || type == TYPE_INT_RGB )
-        if ((type == TYPE_INT_ARGB) || (type == TYPE_INT_RGB) || (type == TYPE_INT_ARGB_PRE)) {
-            return (int[]) image.getRaster().getDataElements(x, y, width, height, pixels);
-        }
-        return image.getRGB(x, y, width, height, pixels, 0, width);
+        return PixelAccess.getRGB(image, x, y, width, height, pixels);
     }
 
     /**
      * A convenience method for setting ARGB pixels in an image. This tries to avoid the performance
-     * penalty of BufferedImage.setRGB unmanaging the image.
+     * penalty of BufferedImage.setRGB unmanaging the image, and the per-pixel color model
+     * conversions for the common image types (see {@link PixelAccess}).
      *
      * @param image  a BufferedImage object
      * @param x      the left edge of the pixel block
@@ -143,13 +136,7 @@ public abstract class AbstractBufferedImageOp implements BufferedImageOp, Clonea
      * @see #getRGB
      */
     public static void setRGB(BufferedImage image, int x, int y, int width, int height, int[] pixels) {
-        int type = image.getType();
-//		if ( type == TYPE_INT_ARGB || type == TYPE_INT_RGB  )
-        if ((type == TYPE_INT_ARGB) || (type == TYPE_INT_RGB) || (type == TYPE_INT_ARGB_PRE)) {
-            image.getRaster().setDataElements(x, y, width, height, pixels);
-        } else {
-            image.setRGB(x, y, width, height, pixels, 0, width);
-        }
+        PixelAccess.setRGB(image, x, y, width, height, pixels);
     }
 
     @Override
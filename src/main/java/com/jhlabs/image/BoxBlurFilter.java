@@ -17,6 +17,7 @@ limitations under the License.
 package com.jhlabs.image;
 
 import pixelitor.utils.ProgressTracker;
+import pixelitor.utils.ScratchPool;
 
 import java.awt.image.BufferedImage;
 
@@ -24,7 +25,7 @@ import java.awt.image.BufferedImage;
  * A filter which performs a box blur on an image. The horizontal and vertical blurs can be specified separately
  * and a number of iterations can be given which allows an approximation to Gaussian blur.
  */
-public class BoxBlurFilter extends AbstractBufferedImageOp {
+public class BoxBlurFilter extends AbstractBufferedImageOp implements GrayFilter {
     private float hRadius;
     private float vRadius;
     private int iterations = 1;
@@ -81,43 +82,153 @@ public class BoxBlurFilter extends AbstractBufferedImageOp {
         // be executed only for tweening
         pt = createProgressTracker(iterations * (width + height));
 
+        if (GrayFilter.isGrayPair(src, dst)) {
+            dst = filterGrayImage(src, dst);
+            finishProgressTracker();
+            return dst;
+        }
+
         if (dst == null) {
             dst = createCompatibleDestImage(src, null);
         }
 
-        int[] inPixels = new int[width * height];
-        int[] outPixels = new int[width * height];
-        getRGB(src, 0, 0, width, height, inPixels);
+        int[] inPixels = ScratchPool.acquireIntArray(width * height);
+        int[] outPixels = ScratchPool.acquireIntArray(width * height);
+        try {
+            getRGB(src, 0, 0, width, height, inPixels);
+
+            if (premultiplyAlpha) {
+                ImageMath.premultiply(inPixels, 0, inPixels.length);
+            }
+
+            for (int i = 0; i < iterations; i++) {
+                blur(inPixels, outPixels, width, height, hRadius, pt);
+                blur(outPixels, inPixels, height, width, vRadius, pt);
+            }
+
+            boolean blurFractional = false;
+            double hFraction = hRadius - Math.floor(hRadius);
+            double vFraction = vRadius - Math.floor(vRadius);
+            if (hFraction > 0.001 || vFraction > 0.001) {
+                blurFractional = true;
+            }
+
+            if (blurFractional) {
+                blurFractional(inPixels, outPixels, width, height, hRadius);
+                blurFractional(outPixels, inPixels, height, width, vRadius);
+            }
 
-        if (premultiplyAlpha) {
-            ImageMath.premultiply(inPixels, 0, inPixels.length);
+            if (premultiplyAlpha) {
+                ImageMath.unpremultiply(inPixels, 0, inPixels.length);
+            }
+            setRGB(dst, 0, 0, width, height, inPixels);
+
+            finishProgressTracker();
+        } finally {
+            ScratchPool.release(inPixels);
+            ScratchPool.release(outPixels);
         }
 
+        return dst;
+    }
+
+    /**
+     * Blurs the 8-bit values of a gray image, the dst array
+     * can be the same as the src array.
+     */
+    @Override
+    public void filterGray(byte[] src, byte[] dst, int width, int height) {
+        ProgressTracker tracker = pt == null ? ProgressTracker.NULL_TRACKER : pt;
+        if (src != dst) {
+            System.arraycopy(src, 0, dst, 0, src.length);
+        }
+        byte[] transposed = new byte[width * height];
+
         for (int i = 0; i < iterations; i++) {
-            blur(inPixels, outPixels, width, height, hRadius, pt);
-            blur(outPixels, inPixels, height, width, vRadius, pt);
+            blurGray(dst, transposed, width, height, hRadius, tracker);
+            blurGray(transposed, dst, height, width, vRadius, tracker);
         }
 
-        boolean blurFractional = false;
         double hFraction = hRadius - Math.floor(hRadius);
         double vFraction = vRadius - Math.floor(vRadius);
         if (hFraction > 0.001 || vFraction > 0.001) {
-            blurFractional = true;
+            blurFractionalGray(dst, transposed, width, height, hRadius);
+            blurFractionalGray(transposed, dst, height, width, vRadius);
         }
+    }
 
-        if (blurFractional) {
-            blurFractional(inPixels, outPixels, width, height, hRadius);
-            blurFractional(outPixels, inPixels, height, width, vRadius);
+    /**
+     * The gray version of {@link #blur(int[], int[], int, int, float, ProgressTracker)}
+     */
+    public static void blurGray(byte[] in, byte[] out, int width, int height, float radius, ProgressTracker pt) {
+        int widthMinus1 = width - 1;
+        int r = (int) radius;
+        int tableSize = 2 * r + 1;
+
+        if (tableSize < 0) {
+            throw new IllegalArgumentException(String.format("tableSize is negative, radius = %.2f", radius));
         }
 
-        if (premultiplyAlpha) {
-            ImageMath.unpremultiply(inPixels, 0, inPixels.length);
+        int[] divide = new int[256 * tableSize];
+        for (int i = 0; i < 256 * tableSize; i++) {
+            divide[i] = i / tableSize;
         }
-        setRGB(dst, 0, 0, width, height, inPixels);
 
-        finishProgressTracker();
+        int inIndex = 0;
+        for (int y = 0; y < height; y++) {
+            int outIndex = y;
+            int total = 0;
 
-        return dst;
+            for (int i = -r; i <= r; i++) {
+                total += in[inIndex + ImageMath.clamp(i, 0, widthMinus1)] & 0xff;
+            }
+
+            for (int x = 0; x < width; x++) {
+                out[outIndex] = (byte) divide[total];
+
+                int i1 = x + r + 1;
+                if (i1 > widthMinus1) {
+                    i1 = widthMinus1;
+                }
+                int i2 = x - r;
+                if (i2 < 0) {
+                    i2 = 0;
+                }
+                total += (in[inIndex + i1] & 0xff) - (in[inIndex + i2] & 0xff);
+                outIndex += height;
+            }
+            inIndex += width;
+
+            pt.unitDone();
+        }
+    }
+
+    /**
+     * The gray version of {@link #blurFractional(int[], int[], int, int, float)}
+     */
+    public static void blurFractionalGray(byte[] in, byte[] out, int width, int height, float radius) {
+        radius -= (int) radius;
+        float f = 1.0f / (1 + 2 * radius);
+        int inIndex = 0;
+
+        for (int y = 0; y < height; y++) {
+            int outIndex = y;
+
+            out[outIndex] = in[inIndex];
+            outIndex += height;
+            for (int x = 1; x < width - 1; x++) {
+                int i = inIndex + x;
+                int v1 = in[i - 1] & 0xff;
+                int v2 = in[i] & 0xff;
+                int v3 = in[i + 1] & 0xff;
+                int v = v2 + (int) ((v1 + v3) * radius);
+                out[outIndex] = (byte) (int) (v * f);
+                outIndex += height;
+            }
+
+            out[outIndex] = in[inIndex + width - 1];
+            inIndex += width;
+        }
     }
 
     /**
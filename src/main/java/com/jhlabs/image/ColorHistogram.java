@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+/**
+ * A color histogram with 5 bits per channel, which also keeps the
+ * exact channel sums of each bin, so that the mean color of the
+ * pixels in a bin (or in a group of bins) can be calculated exactly.
+ * The alpha channel is ignored.
+ */
+public final class ColorHistogram {
+    public static final int NUM_BINS = 1 << 15;
+
+    // the minimal number of pixels counted by one task
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+
+    private final int[] counts = new int[NUM_BINS];
+    private final long[] redSums = new long[NUM_BINS];
+    private final long[] greenSums = new long[NUM_BINS];
+    private final long[] blueSums = new long[NUM_BINS];
+
+    private ColorHistogram() {
+    }
+
+    /**
+     * Counts the given pixels using the thread pool. Each task fills
+     * its own partial histogram, and they are merged at the end.
+     * If ignoreTransparent is true, then the pixels with an alpha
+     * less than 128 are not counted.
+     */
+    public static ColorHistogram build(int[] pixels, boolean ignoreTransparent) {
+        int numChunks = (int) Math.min(Runtime.getRuntime().availableProcessors(),
+                1 + pixels.length / (long) MIN_CHUNK_SIZE);
+        int chunkSize = (pixels.length + numChunks - 1) / numChunks;
+
+        ColorHistogram[] partials = new ColorHistogram[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+            partials[i] = new ColorHistogram();
+        }
+        QuantizationEngine.forEachIndex(numChunks, i -> {
+            int start = i * chunkSize;
+            int end = Math.min(pixels.length, start + chunkSize);
+            partials[i].count(pixels, start, end, ignoreTransparent);
+        });
+
+        ColorHistogram result = partials[0];
+        for (int i = 1; i < numChunks; i++) {
+            result.add(partials[i]);
+        }
+        return result;
+    }
+
+    private void count(int[] pixels, int start, int end, boolean ignoreTransparent) {
+        for (int i = start; i < end; i++) {
+            int rgb = pixels[i];
+            if (ignoreTransparent && (rgb >>> 24) < 128) {
+                continue;
+            }
+            int bin = binIndex(rgb);
+            counts[bin]++;
+            redSums[bin] += (rgb >> 16) & 0xFF;
+            greenSums[bin] += (rgb >> 8) & 0xFF;
+            blueSums[bin] += rgb & 0xFF;
+        }
+    }
+
+    private void add(ColorHistogram other) {
+        for (int bin = 0; bin < NUM_BINS; bin++) {
+            if (other.counts[bin] != 0) {
+                counts[bin] += other.counts[bin];
+                redSums[bin] += other.redSums[bin];
+                greenSums[bin] += other.greenSums[bin];
+                blueSums[bin] += other.blueSums[bin];
+            }
+        }
+    }
+
+    /**
+     * Returns the bin of an RGB color.
+     */
+    public static int binIndex(int rgb) {
+        return ((rgb >> 9) & 0x7C00) | ((rgb >> 6) & 0x3E0) | ((rgb >> 3) & 0x1F);
+    }
+
+    /**
+     * Returns the indexes of the bins that contain at least one pixel.
+     */
+    public int[] getNonEmptyBins() {
+        int numNonEmpty = 0;
+        for (int count : counts) {
+            if (count != 0) {
+                numNonEmpty++;
+            }
+        }
+        int[] bins = new int[numNonEmpty];
+        int index = 0;
+        for (int bin = 0; bin < NUM_BINS; bin++) {
+            if (counts[bin] != 0) {
+                bins[index++] = bin;
+            }
+        }
+        return bins;
+    }
+
+    public int getCount(int bin) {
+        return counts[bin];
+    }
+
+    public long getRedSum(int bin) {
+        return redSums[bin];
+    }
+
+    public long getGreenSum(int bin) {
+        return greenSums[bin];
+    }
+
+    public long getBlueSum(int bin) {
+        return blueSums[bin];
+    }
+
+    /**
+     * Returns the mean color of the pixels in a non-empty bin as an opaque ARGB value.
+     */
+    public int getMeanColor(int bin) {
+        long count = counts[bin];
+        return meanColor(redSums[bin], greenSums[bin], blueSums[bin], count);
+    }
+
+    static int meanColor(long redSum, long greenSum, long blueSum, long count) {
+        long half = count / 2;
+        int r = (int) ((redSum + half) / count);
+        int g = (int) ((greenSum + half) / count);
+        int b = (int) ((blueSum + half) / count);
+        return 0xFF_00_00_00 | (r << 16) | (g << 8) | b;
+    }
+}
@@ -16,6 +16,8 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import pixelitor.utils.ScratchPool;
+
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.geom.Point2D;
@@ -191,19 +193,25 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
             dst = createCompatibleDestImage(src, null);
         }
 
-        int[] inPixels = new int[width * height];
-        int[] outPixels = new int[width * height];
-        getRGB(src, 0, 0, width, height, inPixels);
+        int[] inPixels = ScratchPool.acquireIntArray(width * height);
+        int[] outPixels = ScratchPool.acquireIntArray(width * height);
+        try {
+            getRGB(src, 0, 0, width, height, inPixels);
 
-        if (premultiplyAlpha) {
-            ImageMath.premultiply(inPixels, 0, inPixels.length);
-        }
-        convolve(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
-        if (premultiplyAlpha) {
-            ImageMath.unpremultiply(outPixels, 0, outPixels.length);
+            if (premultiplyAlpha) {
+                ImageMath.premultiply(inPixels, 0, inPixels.length);
+            }
+            convolve(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
+            if (premultiplyAlpha) {
+                ImageMath.unpremultiply(outPixels, 0, outPixels.length);
+            }
+
+            setRGB(dst, 0, 0, width, height, outPixels);
+        } finally {
+            ScratchPool.release(inPixels);
+            ScratchPool.release(outPixels);
         }
 
-        setRGB(dst, 0, 0, width, height, outPixels);
         return dst;
     }
 
@@ -265,6 +273,10 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
             convolveH(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
         } else if (kernel.getWidth() == 1) {
             convolveV(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
+        } else if (FFTConvolver.isWorthFor2D(kernel)) {
+            pt = createProgressTracker(height);
+            FFTConvolver.convolve2D(kernel, inPixels, outPixels, width, height, alpha, edgeAction, pt);
+            finishProgressTracker();
         } else {
             convolveHV(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
         }
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.MemoryGovernor;
+import pixelitor.utils.ProgressTracker;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import static pixelitor.utils.MemoryInfo.ONE_MEGABYTE;
+
+/**
+ * The precomputed inverse coordinates of a {@link TransformFilter}:
+ * for each pixel of the output image it stores the position
+ * in the input image that the pixel is sampled from.
+ *
+ * A map is valid for a given image size and a given geometry key
+ * (see {@link TransformFilter#getGeometryKey()}), and it doesn't
+ * depend on the edge action or the interpolation.
+ *
+ * The maps are kept in a bounded LRU cache shared by all filters,
+ * which is registered at the {@link MemoryGovernor}, so that it
+ * can be emptied if the memory is needed elsewhere.
+ */
+public final class DisplacementMap {
+    private static long maxBytes = Math.min(256L * ONE_MEGABYTE,
+            Runtime.getRuntime().maxMemory() / 8);
+
+    // a LinkedHashMap in access order, so that the eldest entry
+    // is the least recently used one
+    private static final Map<List<Object>, DisplacementMap> cache =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private static long usedBytes = 0;
+
+    static {
+        MemoryGovernor.register(new CacheMemory());
+    }
+
+    private final int width;
+    private final int height;
+    private final Object key;
+
+    private final float[] srcX;
+    private final float[] srcY;
+
+    private DisplacementMap(int width, int height, Object key) {
+        this.width = width;
+        this.height = height;
+        this.key = key;
+        srcX = new float[width * height];
+        srcY = new float[width * height];
+    }
+
+    /**
+     * Returns the cached map of the given filter for the given
+     * size and geometry, or null if there is no such map.
+     */
+    static DisplacementMap getCached(TransformFilter filter, int width, int height, Object key) {
+        synchronized (cache) {
+            return cache.get(createCacheKey(filter, width, height, key));
+        }
+    }
+
+    /**
+     * Stores the given map of the given filter, if it fits into the cache.
+     */
+    static void putInCache(TransformFilter filter, DisplacementMap map) {
+        long bytes = map.getBytes();
+        if (bytes > maxBytes / 2 || bytes * 4 > MemoryGovernor.getAvailableBytes()) {
+            return;
+        }
+        synchronized (cache) {
+            DisplacementMap old = cache.put(
+                    createCacheKey(filter, map.width, map.height, map.key), map);
+            if (old != null) {
+                usedBytes -= old.getBytes();
+            }
+            usedBytes += bytes;
+            evict(maxBytes);
+        }
+    }
+
+    /**
+     * Returns true if a map of the given size could be cached at all.
+     */
+    static boolean isCacheable(int width, int height) {
+        return 8L * width * height <= maxBytes / 2;
+    }
+
+    // the geometry keys of different filters can be equal,
+    // therefore the filter class is also part of the key
+    private static List<Object> createCacheKey(TransformFilter filter,
+                                               int width, int height, Object key) {
+        return List.of(filter.getClass(), width, height, key);
+    }
+
+    // removes the least recently used maps until at most
+    // the given number of bytes is used, and returns the released bytes
+    private static long evict(long maxRemaining) {
+        long released = 0;
+        Iterator<DisplacementMap> it = cache.values().iterator();
+        while (usedBytes > maxRemaining && it.hasNext()) {
+            long bytes = it.next().getBytes();
+            it.remove();
+            usedBytes -= bytes;
+            released += bytes;
+        }
+        return released;
+    }
+
+    static long getUsedBytes() {
+        synchronized (cache) {
+            return usedBytes;
+        }
+    }
+
+    static void setMaxBytes(long newMaxBytes) {
+        synchronized (cache) {
+            maxBytes = newMaxBytes;
+            evict(maxBytes);
+        }
+    }
+
+    static long getMaxBytes() {
+        return maxBytes;
+    }
+
+    static void clearCache() {
+        synchronized (cache) {
+            evict(0);
+        }
+    }
+
+    private long getBytes() {
+        return 8L * width * height;
+    }
+
+    /**
+     * Calculates the map for the given filter using the thread pool.
+     * The progress tracker is notified after each line.
+     */
+    static DisplacementMap compute(TransformFilter filter, int width, int height,
+                                   Object key, ProgressTracker pt) {
+        DisplacementMap map = new DisplacementMap(width, height, key);
+
+        Future<?>[] futures = new Future[height];
+        for (int y = 0; y < height; y++) {
+            int finalY = y;
+            futures[y] = ThreadPool.submit(() -> map.computeLine(filter, finalY));
+        }
+        ThreadPool.waitFor(futures, pt);
+
+        return map;
+    }
+
+    private void computeLine(TransformFilter filter, int y) {
+        float[] out = new float[2];
+        int offset = y * width;
+        for (int x = 0; x < width; x++) {
+            filter.transformInverse(x, y, out);
+            srcX[offset + x] = out[0];
+            srcY[offset + x] = out[1];
+        }
+    }
+
+    /**
+     * Looks up the input position of the given output pixel,
+     * with the same contract as {@link TransformFilter#transformInverse}.
+     */
+    void lookup(int x, int y, float[] out) {
+        int i = y * width + x;
+        out[0] = srcX[i];
+        out[1] = srcY[i];
+    }
+
+    /**
+     * The cached maps as a subsystem managed by the {@link MemoryGovernor}
+     */
+    private static class CacheMemory implements MemoryGovernor.MemoryConsumer {
+        @Override
+        public String getName() {
+            return "Displacement Maps";
+        }
+
+        @Override
+        public long getUsedBytes() {
+            return DisplacementMap.getUsedBytes();
+        }
+
+        @Override
+        public long reclaim(long bytes) {
+            synchronized (cache) {
+                return evict(Math.max(0, usedBytes - bytes));
+            }
+        }
+    }
+}
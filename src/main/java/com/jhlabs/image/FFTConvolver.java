@@ -0,0 +1,303 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import com.jhlabs.math.FFT2D;
+import com.jhlabs.math.FFTPlan;
+import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
+import pixelitor.utils.SubtaskProgressTracker;
+
+import java.awt.image.Kernel;
+import java.util.concurrent.Future;
+
+import static com.jhlabs.image.ConvolveFilter.CLAMP_EDGES;
+import static com.jhlabs.image.ConvolveFilter.WRAP_EDGES;
+
+/**
+ * Convolution in the frequency domain, used automatically
+ * by the convolving filters for large kernels, where the cost
+ * of the spatial convolution grows with the kernel size.
+ *
+ * The four channels of the packed ARGB pixels are convolved as
+ * two complex signals (red + i*green and blue + i*alpha): because
+ * the kernels are real, a complex multiplication with the transformed
+ * kernel convolves both of the packed channels at once.
+ */
+public class FFTConvolver {
+    /**
+     * One-dimensional kernels at least this wide are convolved with FFT
+     */
+    public static final int MIN_1D_KERNEL_SIZE = 25;
+
+    /**
+     * Two-dimensional kernels with at least this many elements are convolved with FFT
+     */
+    public static final int MIN_2D_KERNEL_AREA = 9 * 9;
+
+    private static final int MIN_TILE_SIZE = 256;
+
+    private FFTConvolver() {
+        // should not be instantiated
+    }
+
+    public static boolean isWorthFor1D(int kernelSize) {
+        return kernelSize >= MIN_1D_KERNEL_SIZE;
+    }
+
+    public static boolean isWorthFor2D(Kernel kernel) {
+        return kernel.getWidth() > 1 && kernel.getHeight() > 1
+                && kernel.getWidth() * kernel.getHeight() >= MIN_2D_KERNEL_AREA;
+    }
+
+    /**
+     * The frequency domain version of {@link GaussianFilter#convolveAndTranspose}:
+     * convolves each line with the given (odd sized) 1D kernel,
+     * and writes the result transposed.
+     */
+    public static void convolveAndTranspose(float[] matrix, int[] inPixels, int[] outPixels,
+                                            int width, int height, boolean alpha,
+                                            boolean premultiply, boolean unpremultiply,
+                                            int edgeAction, ProgressTracker pt) {
+        int cols2 = matrix.length / 2;
+        int size = FFTPlan.paddedSize(width + 2 * cols2);
+        FFTPlan plan = FFTPlan.forSize(size);
+
+        // the kernel is stored in reverse order so that the
+        // convolution gives the same result as the spatial version
+        float[] kernelRe = new float[size];
+        float[] kernelIm = new float[size];
+        for (int d = -cols2; d <= cols2; d++) {
+            kernelRe[Math.floorMod(-d, size)] = matrix[cols2 + d];
+        }
+        plan.transform(kernelRe, kernelIm, true);
+
+        ThreadPool.forEachBand(height, pt, (startY, endY) -> {
+            float[][] buffers = new float[4][size];
+            for (int y = startY; y < endY; y++) {
+                convolveAndTransposeLine(plan, kernelRe, kernelIm, buffers, inPixels, outPixels,
+                        width, height, alpha, premultiply, unpremultiply, edgeAction, cols2, y);
+            }
+        });
+    }
+
+    private static void convolveAndTransposeLine(FFTPlan plan, float[] kernelRe, float[] kernelIm,
+                                                 float[][] buffers, int[] inPixels, int[] outPixels,
+                                                 int width, int height, boolean alpha,
+                                                 boolean premultiply, boolean unpremultiply,
+                                                 int edgeAction, int cols2, int y) {
+        float[] re1 = buffers[0];
+        float[] im1 = buffers[1];
+        float[] re2 = buffers[2];
+        float[] im2 = buffers[3];
+        int size = plan.getSize();
+        int extWidth = width + 2 * cols2;
+        int ioffset = y * width;
+
+        for (int p = 0; p < extWidth; p++) {
+            int ix = edgeIndex(p - cols2, width, edgeAction);
+            if (ix < 0) {
+                re1[p] = 0;
+                im1[p] = 0;
+                re2[p] = 0;
+                im2[p] = 0;
+                continue;
+            }
+            int rgb = inPixels[ioffset + ix];
+            int pa = (rgb >> 24) & 0xff;
+            int pr = (rgb >> 16) & 0xff;
+            int pg = (rgb >> 8) & 0xff;
+            int pb = rgb & 0xff;
+            if (premultiply) {
+                float a255 = pa * (1.0f / 255.0f);
+                pr = (int) (pr * a255);
+                pg = (int) (pg * a255);
+                pb = (int) (pb * a255);
+            }
+            re1[p] = pr;
+            im1[p] = pg;
+            re2[p] = pb;
+            im2[p] = pa;
+        }
+        for (int p = extWidth; p < size; p++) {
+            re1[p] = 0;
+            im1[p] = 0;
+            re2[p] = 0;
+            im2[p] = 0;
+        }
+
+        plan.transform(re1, im1, true);
+        plan.transform(re2, im2, true);
+        multiply(re1, im1, kernelRe, kernelIm, 0, size);
+        multiply(re2, im2, kernelRe, kernelIm, 0, size);
+        plan.transform(re1, im1, false);
+        plan.transform(re2, im2, false);
+
+        int index = y;
+        for (int x = 0; x < width; x++) {
+            int p = x + cols2;
+            outPixels[index] = toARGB(re1[p], im1[p], re2[p], im2[p], alpha, unpremultiply);
+            index += height;
+        }
+    }
+
+    /**
+     * The frequency domain version of {@link ConvolveFilter#convolveHV}.
+     * The image is processed in independent, overlapping tiles
+     * (overlap-save), therefore the memory need doesn't depend on the
+     * image size, and the tiles can be convolved in parallel.
+     */
+    public static void convolve2D(Kernel kernel, int[] inPixels, int[] outPixels,
+                                  int width, int height, boolean alpha,
+                                  int edgeAction, ProgressTracker pt) {
+        float[] matrix = kernel.getKernelData(null);
+        int kw = kernel.getWidth();
+        int kh = kernel.getHeight();
+        int cols2 = kw / 2;
+        int rows2 = kh / 2;
+
+        int tileCols = FFTPlan.paddedSize(Math.min(width + kw - 1, Math.max(MIN_TILE_SIZE, 4 * kw)));
+        int tileRows = FFTPlan.paddedSize(Math.min(height + kh - 1, Math.max(MIN_TILE_SIZE, 4 * kh)));
+        int validWidth = tileCols - kw + 1;
+        int validHeight = tileRows - kh + 1;
+        FFT2D fft = new FFT2D(tileCols, tileRows);
+
+        int tileSize = tileCols * tileRows;
+        float[] kernelRe = new float[tileSize];
+        float[] kernelIm = new float[tileSize];
+        for (int row = 0; row < kh; row++) {
+            int ky = Math.floorMod(rows2 - row, tileRows);
+            for (int col = 0; col < kw; col++) {
+                int kx = Math.floorMod(cols2 - col, tileCols);
+                kernelRe[ky * tileCols + kx] = matrix[row * kw + col];
+            }
+        }
+        fft.transform(kernelRe, kernelIm, true);
+
+        int numTileCols = (width + validWidth - 1) / validWidth;
+        int numTileRows = (height + validHeight - 1) / validHeight;
+        Future<?>[] futures = new Future[numTileCols * numTileRows];
+        int i = 0;
+        for (int oy = 0; oy < height; oy += validHeight) {
+            int tileOutHeight = Math.min(validHeight, height - oy);
+            for (int ox = 0; ox < width; ox += validWidth) {
+                int tileOutWidth = Math.min(validWidth, width - ox);
+                int finalOx = ox;
+                int finalOy = oy;
+                // the scratch arrays are allocated per tile, because a tile
+                // is much more work than allocating its arrays
+                futures[i++] = ThreadPool.submit(() -> convolveTile(fft, kernelRe, kernelIm,
+                        new float[4][tileSize], inPixels, outPixels, width, height, alpha,
+                        edgeAction, cols2, rows2, finalOx, finalOy, tileOutWidth, tileOutHeight));
+            }
+        }
+        // the tracker counts lines, but here the units are tiles
+        ThreadPool.waitFor(futures, new SubtaskProgressTracker(
+                (double) height / futures.length, pt));
+    }
+
+    private static void convolveTile(FFT2D fft, float[] kernelRe, float[] kernelIm,
+                                     float[][] buffers, int[] inPixels, int[] outPixels,
+                                     int width, int height, boolean alpha, int edgeAction,
+                                     int cols2, int rows2, int ox, int oy,
+                                     int tileOutWidth, int tileOutHeight) {
+        float[] re1 = buffers[0];
+        float[] im1 = buffers[1];
+        float[] re2 = buffers[2];
+        float[] im2 = buffers[3];
+        int tileCols = fft.getCols();
+        int tileRows = fft.getRows();
+
+        for (int ty = 0; ty < tileRows; ty++) {
+            int iy = edgeIndex(oy - rows2 + ty, height, edgeAction);
+            int tileOffset = ty * tileCols;
+            for (int tx = 0; tx < tileCols; tx++) {
+                int i = tileOffset + tx;
+                int ix = edgeIndex(ox - cols2 + tx, width, edgeAction);
+                if (ix < 0 || iy < 0) {
+                    re1[i] = 0;
+                    im1[i] = 0;
+                    re2[i] = 0;
+                    im2[i] = 0;
+                } else {
+                    int rgb = inPixels[iy * width + ix];
+                    re1[i] = (rgb >> 16) & 0xff;
+                    im1[i] = (rgb >> 8) & 0xff;
+                    re2[i] = rgb & 0xff;
+                    im2[i] = (rgb >> 24) & 0xff;
+                }
+            }
+        }
+
+        fft.transform(re1, im1, true);
+        fft.transform(re2, im2, true);
+        multiply(re1, im1, kernelRe, kernelIm, 0, re1.length);
+        multiply(re2, im2, kernelRe, kernelIm, 0, re2.length);
+        fft.transform(re1, im1, false);
+        fft.transform(re2, im2, false);
+
+        for (int y = 0; y < tileOutHeight; y++) {
+            int tileOffset = (y + rows2) * tileCols + cols2;
+            int outOffset = (oy + y) * width + ox;
+            for (int x = 0; x < tileOutWidth; x++) {
+                int i = tileOffset + x;
+                outPixels[outOffset + x] = toARGB(re1[i], im1[i], re2[i], im2[i], alpha, false);
+            }
+        }
+    }
+
+    // multiplies the first complex array by the second one, element by element
+    private static void multiply(float[] re, float[] im, float[] re2, float[] im2, int from, int to) {
+        for (int i = from; i < to; i++) {
+            float a = re[i];
+            float b = im[i];
+            float c = re2[i];
+            float d = im2[i];
+            re[i] = a * c - b * d;
+            im[i] = a * d + b * c;
+        }
+    }
+
+    private static int toARGB(float r, float g, float b, float a, boolean alpha, boolean unpremultiply) {
+        if (unpremultiply && a != 0 && a != 255) {
+            float f = 255.0f / a;
+            r *= f;
+            g *= f;
+            b *= f;
+        }
+        int ia = alpha ? PixelUtils.clamp((int) (a + 0.5)) : 0xff;
+        int ir = PixelUtils.clamp((int) (r + 0.5));
+        int ig = PixelUtils.clamp((int) (g + 0.5));
+        int ib = PixelUtils.clamp((int) (b + 0.5));
+        return (ia << 24) | (ir << 16) | (ig << 8) | ib;
+    }
+
+    // returns the index of the pixel that is used for the
+    // given (possibly out of range) coordinate, or -1 for a zero pixel
+    private static int edgeIndex(int i, int size, int edgeAction) {
+        if (i >= 0 && i < size) {
+            return i;
+        }
+        if (edgeAction == CLAMP_EDGES) {
+            return i < 0 ? 0 : size - 1;
+        } else if (edgeAction == WRAP_EDGES) {
+            return Math.floorMod(i, size);
+        }
+        return -1;
+    }
+}
@@ -18,6 +18,7 @@ package com.jhlabs.image;
 
 import pixelitor.ThreadPool;
 import pixelitor.utils.ProgressTracker;
+import pixelitor.utils.ScratchPool;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.Kernel;
@@ -29,12 +30,24 @@ import java.util.concurrent.Future;
  *
  * @author Jerry Huxtable
  */
-public class GaussianFilter extends ConvolveFilter {
+public class GaussianFilter extends ConvolveFilter implements GrayFilter {
+    /**
+     * Convolve with a Gaussian kernel: exact, but slower for big radii.
+     */
+    public static final int KERNEL_ENGINE = 0;
+
+    /**
+     * Use a recursive approximation, whose speed doesn't depend on the radius.
+     */
+    public static final int RECURSIVE_ENGINE = 1;
+
     /**
      * The blur radius.
      */
     protected float radius;
 
+    private int engine = KERNEL_ENGINE;
+
     /**
      * Construct a Gaussian filter.
      */
@@ -75,35 +88,146 @@ public class GaussianFilter extends ConvolveFilter {
         return radius;
     }
 
+    /**
+     * Set the algorithm used for blurring.
+     *
+     * @param engine the engine, one of KERNEL_ENGINE or RECURSIVE_ENGINE
+     * @see #getEngine
+     */
+    public void setEngine(int engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Get the algorithm used for blurring.
+     *
+     * @return the engine
+     * @see #setEngine
+     */
+    public int getEngine() {
+        return engine;
+    }
+
     @Override
     public BufferedImage filter(BufferedImage src, BufferedImage dst) {
         int width = src.getWidth();
         int height = src.getHeight();
 
+        if (GrayFilter.isGrayPair(src, dst)) {
+            return filterGrayImage(src, dst);
+        }
+
         ProgressTracker pt = createProgressTracker(width + height);
 
         if (dst == null) {
             dst = createCompatibleDestImage(src, null);
         }
 
-        int[] inPixels = new int[width * height];
-        int[] outPixels = new int[width * height];
+        int[] inPixels = ScratchPool.acquireIntArray(width * height);
+        int[] outPixels = ScratchPool.acquireIntArray(width * height);
+        try {
+//            src.getRGB(0, 0, width, height, inPixels, 0, width);
+//            int[] inPixels = ImageUtils.getPixelsAsArray( src);
+            getRGB(src, 0, 0, width, height, inPixels);
+
+            if (radius > 0) {
+                blur(inPixels, outPixels, width, height, pt);
+            }
 
-//        src.getRGB(0, 0, width, height, inPixels, 0, width);
-//        int[] inPixels = ImageUtils.getPixelsAsArray( src);
-        getRGB(src, 0, 0, width, height, inPixels);
+//            dst.setRGB(0, 0, width, height, inPixels, 0, width);
+            setRGB(dst, 0, 0, width, height, inPixels);
 
-        if (radius > 0) {
-            convolveAndTranspose(kernel, inPixels, outPixels, width, height, alpha, alpha && premultiplyAlpha, false, CLAMP_EDGES, pt);
-            convolveAndTranspose(kernel, outPixels, inPixels, height, width, alpha, false, alpha && premultiplyAlpha, CLAMP_EDGES, pt);
+            finishProgressTracker();
+        } finally {
+            ScratchPool.release(inPixels);
+            ScratchPool.release(outPixels);
         }
 
-//        dst.setRGB(0, 0, width, height, inPixels, 0, width);
-        setRGB(dst, 0, 0, width, height, inPixels);
+        return dst;
+    }
 
-        finishProgressTracker();
+    /**
+     * Blurs the pixels in place, using the outPixels array as a temporary buffer.
+     */
+    protected void blur(int[] inPixels, int[] outPixels, int width, int height, ProgressTracker pt) {
+        boolean premultiply = alpha && premultiplyAlpha;
+        if (engine == RECURSIVE_ENGINE && radius >= RecursiveGaussian.MIN_RADIUS) {
+            RecursiveGaussian rg = new RecursiveGaussian(radius);
+            rg.blurAndTranspose(inPixels, outPixels, width, height, alpha, premultiply, false, CLAMP_EDGES, pt);
+            rg.blurAndTranspose(outPixels, inPixels, height, width, alpha, false, premultiply, CLAMP_EDGES, pt);
+        } else {
+            convolveAndTranspose(kernel, inPixels, outPixels, width, height, alpha, premultiply, false, CLAMP_EDGES, pt);
+            convolveAndTranspose(kernel, outPixels, inPixels, height, width, alpha, false, premultiply, CLAMP_EDGES, pt);
+        }
+    }
 
-        return dst;
+    /**
+     * Blurs the 8-bit values of a gray image, the dst array
+     * can be the same as the src array.
+     */
+    @Override
+    public void filterGray(byte[] src, byte[] dst, int width, int height) {
+        if (radius <= 0) {
+            if (src != dst) {
+                System.arraycopy(src, 0, dst, 0, src.length);
+            }
+            return;
+        }
+        ProgressTracker pt = ProgressTracker.NULL_TRACKER;
+        byte[] transposed = new byte[width * height];
+        if (engine == RECURSIVE_ENGINE && radius >= RecursiveGaussian.MIN_RADIUS) {
+            RecursiveGaussian rg = new RecursiveGaussian(radius);
+            rg.blurAndTransposeGray(src, transposed, width, height, CLAMP_EDGES, pt);
+            rg.blurAndTransposeGray(transposed, dst, height, width, CLAMP_EDGES, pt);
+        } else {
+            convolveAndTransposeGray(kernel, src, transposed, width, height, CLAMP_EDGES, pt);
+            convolveAndTransposeGray(kernel, transposed, dst, height, width, CLAMP_EDGES, pt);
+        }
+    }
+
+    /**
+     * The gray version of {@link #convolveAndTranspose}
+     */
+    public static void convolveAndTransposeGray(Kernel kernel, byte[] in, byte[] out,
+                                                int width, int height,
+                                                int edgeAction, ProgressTracker pt) {
+        float[] matrix = kernel.getKernelData(null);
+        int cols2 = kernel.getWidth() / 2;
+
+        Future<?>[] resultLines = new Future[height];
+        for (int y = 0; y < height; y++) {
+            int finalY = y;
+            Runnable lineTask = () -> convolveAndTransposeGrayLine(in, out, width, height, edgeAction, matrix, cols2, finalY);
+            resultLines[y] = ThreadPool.submit(lineTask);
+        }
+
+        ThreadPool.waitFor(resultLines, pt);
+    }
+
+    private static void convolveAndTransposeGrayLine(byte[] in, byte[] out, int width, int height, int edgeAction, float[] matrix, int cols2, int y) {
+        int index = y;
+        int ioffset = y * width;
+        for (int x = 0; x < width; x++) {
+            float v = 0;
+            for (int col = -cols2; col <= cols2; col++) {
+                float f = matrix[cols2 + col];
+                if (f != 0) {
+                    int ix = x + col;
+                    if (ix < 0 || ix >= width) {
+                        if (edgeAction == CLAMP_EDGES) {
+                            ix = ix < 0 ? 0 : width - 1;
+                        } else if (edgeAction == WRAP_EDGES) {
+                            ix = Math.floorMod(ix, width);
+                        } else {
+                            continue;
+                        }
+                    }
+                    v += f * (in[ioffset + ix] & 0xFF);
+                }
+            }
+            out[index] = (byte) PixelUtils.clamp((int) (v + 0.5));
+            index += height;
+        }
     }
 
     /**
@@ -121,6 +245,12 @@ public class GaussianFilter extends ConvolveFilter {
                                             int edgeAction, ProgressTracker pt) {
         float[] matrix = kernel.getKernelData(null);
         int cols = kernel.getWidth();
+        if (FFTConvolver.isWorthFor1D(cols)) {
+            FFTConvolver.convolveAndTranspose(matrix, inPixels, outPixels, width, height,
+                    alpha, premultiply, unpremultiply, edgeAction, pt);
+            return;
+        }
+
         int cols2 = cols / 2;
 
         Future<?>[] resultLines = new Future[height];
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.WritableRaster;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+
+/**
+ * A filter that can filter the 8-bit values of TYPE_BYTE_GRAY
+ * images (layer masks) directly, without converting them
+ * to packed ARGB pixels.
+ */
+public interface GrayFilter {
+    /**
+     * Filters the gray values. Both arrays have width * height values,
+     * row by row, and they can be the same array.
+     */
+    void filterGray(byte[] src, byte[] dst, int width, int height);
+
+    /**
+     * Filters a pair of gray images (see {@link #isGrayPair}) with {@link #filterGray}.
+     * If the destination is null, a new gray image is created.
+     */
+    default BufferedImage filterGrayImage(BufferedImage src, BufferedImage dst) {
+        assert isGrayPair(src, dst);
+
+        int width = src.getWidth();
+        int height = src.getHeight();
+        if (dst == null) {
+            dst = new BufferedImage(width, height, TYPE_BYTE_GRAY);
+        }
+        byte[] srcData = ((DataBufferByte) src.getRaster().getDataBuffer()).getData();
+        byte[] dstData = ((DataBufferByte) dst.getRaster().getDataBuffer()).getData();
+        filterGray(srcData, dstData, width, height);
+        return dst;
+    }
+
+    /**
+     * Returns true if the source is a TYPE_BYTE_GRAY image, and the
+     * destination is either null or a gray image with the same size,
+     * so that the images can be filtered with {@link #filterGray}.
+     */
+    static boolean isGrayPair(BufferedImage src, BufferedImage dst) {
+        if (!hasPlainGrayRaster(src)) {
+            return false;
+        }
+        return dst == null || (hasPlainGrayRaster(dst)
+                && dst.getWidth() == src.getWidth()
+                && dst.getHeight() == src.getHeight());
+    }
+
+    private static boolean hasPlainGrayRaster(BufferedImage img) {
+        if (img.getType() != TYPE_BYTE_GRAY) {
+            return false;
+        }
+        WritableRaster raster = img.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        return raster.getParent() == null
+                && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0
+                && buffer.getOffset() == 0
+                && buffer.getSize() == img.getWidth() * img.getHeight();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+/**
+ * A precomputed lookup table from RGB colors to the index of the nearest
+ * color of a palette, with 6 bits per channel. The nearest palette color
+ * is searched only once for each cell (at its center), so a lookup is a
+ * single array access instead of a tree walk or a palette search.
+ */
+public final class InverseColorMap {
+    private static final int BITS = 6;
+    private static final int CELLS = 1 << BITS;
+
+    private final int[] palette;
+    private final byte[] indexes = new byte[CELLS * CELLS * CELLS];
+
+    /**
+     * Builds the map for the given palette (at most 256 colors)
+     * using the thread pool, one task for each red slice.
+     */
+    public InverseColorMap(int[] palette) {
+        if (palette.length == 0 || palette.length > 256) {
+            throw new IllegalArgumentException("palette size = " + palette.length);
+        }
+        this.palette = palette;
+
+        QuantizationEngine.forEachIndex(CELLS, this::fillSlice);
+    }
+
+    private void fillSlice(int rCell) {
+        int shift = 8 - BITS;
+        int halfCell = 1 << (shift - 1);
+        int r = (rCell << shift) + halfCell;
+        int index = rCell * CELLS * CELLS;
+        for (int gCell = 0; gCell < CELLS; gCell++) {
+            int g = (gCell << shift) + halfCell;
+            for (int bCell = 0; bCell < CELLS; bCell++) {
+                int b = (bCell << shift) + halfCell;
+                indexes[index++] = (byte) findNearest(palette, r, g, b);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the palette color which is nearest
+     * (in the RGB Euclidean distance) to the given color.
+     */
+    public static int findNearest(int[] palette, int r, int g, int b) {
+        int bestIndex = 0;
+        int bestDist = Integer.MAX_VALUE;
+        for (int i = 0; i < palette.length; i++) {
+            int color = palette[i];
+            int dr = ((color >> 16) & 0xFF) - r;
+            int dg = ((color >> 8) & 0xFF) - g;
+            int db = (color & 0xFF) - b;
+            int dist = dr * dr + dg * dg + db * db;
+            if (dist < bestDist) {
+                bestDist = dist;
+                bestIndex = i;
+            }
+        }
+        return bestIndex;
+    }
+
+    /**
+     * Returns the palette index for the given RGB color (the alpha is ignored).
+     */
+    public int getIndex(int rgb) {
+        int shift = 8 - BITS;
+        int r = ((rgb >> 16) & 0xFF) >> shift;
+        int g = ((rgb >> 8) & 0xFF) >> shift;
+        int b = (rgb & 0xFF) >> shift;
+        return indexes[(r << (2 * BITS)) | (g << BITS) | b] & 0xFF;
+    }
+
+    public int[] getPalette() {
+        return palette;
+    }
+}
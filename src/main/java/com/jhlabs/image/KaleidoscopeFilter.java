@@ -20,6 +20,7 @@ import net.jafama.FastMath;
 
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 /**
  * A Filter which produces the effect of looking into a kaleidoscope.
@@ -216,6 +217,11 @@ public class KaleidoscopeFilter extends TransformFilter {
         out[1] = (float) (icentreY + zoomedR * FastMath.sin(theta));
     }
 
+    @Override
+    protected Object getGeometryKey() {
+        return List.of(angle, angle2, icentreX, icentreY, sides, radius, zoom);
+    }
+
     @Override
     public String toString() {
         return "Distort/Kaleidoscope...";
@@ -16,7 +16,7 @@ limitations under the License.
 
 package com.jhlabs.image;
 
-import com.jhlabs.math.FFT;
+import com.jhlabs.math.FFT2D;
 import net.jafama.FastMath;
 
 import java.awt.image.BufferedImage;
@@ -123,7 +123,6 @@ public class LensBlurFilter extends AbstractBufferedImageOp {
         int width = src.getWidth();
         int height = src.getHeight();
         int rows = 1, cols = 1;
-        int log2rows = 0, log2cols = 0;
         int iradius = (int) Math.ceil(radius);
 //        int tileWidth = 128;
 //        int tileHeight = tileWidth;
@@ -140,11 +139,9 @@ public class LensBlurFilter extends AbstractBufferedImageOp {
 
         while (rows < tileHeight) {
             rows *= 2;
-            log2rows++;
         }
         while (cols < tileWidth) {
             cols *= 2;
-            log2cols++;
         }
         int w = cols;
         int h = rows;
@@ -152,7 +149,7 @@ public class LensBlurFilter extends AbstractBufferedImageOp {
         tileWidth = w;
         tileHeight = h;//FIXME-tileWidth, w, and cols are always all the same
 
-        FFT fft = new FFT(Math.max(log2rows, log2cols));
+        FFT2D fft = new FFT2D(cols, rows);
 
         int[] rgb = new int[w * h];
         float[][] mask = new float[2][w * h];
@@ -200,7 +197,7 @@ public class LensBlurFilter extends AbstractBufferedImageOp {
             }
         }
 
-        fft.transform2D(mask[0], mask[1], w, h, true);
+        fft.transformInParallel(mask[0], mask[1], true);
 
         int workUnits = 0;
         // count the work units the same was as the code does...
@@ -232,8 +229,7 @@ public class LensBlurFilter extends AbstractBufferedImageOp {
                 if (ty + th > height) {
                     th = height - ty;
                 }
-                src.getRGB(tx, ty, tw, th, rgb, fy * w + fx, w);
-                // getRGB(src, tx, ty, tw, th, rgb);
+                PixelAccess.getRGB(src, tx, ty, tw, th, rgb, fy * w + fx, w);
 
                 // Create a float array from the pixels. Any pixels off the edge of the source image get duplicated from the edge.
                 i = 0;
@@ -289,8 +285,8 @@ public class LensBlurFilter extends AbstractBufferedImageOp {
                 }
 
                 // Transform into frequency space
-                fft.transform2D(ar[0], ar[1], cols, rows, true);
-                fft.transform2D(gb[0], gb[1], cols, rows, true);
+                fft.transformInParallel(ar[0], ar[1], true);
+                fft.transformInParallel(gb[0], gb[1], true);
 
                 // Multiply the transformed pixels by the transformed kernel
                 i = 0;
@@ -312,8 +308,8 @@ public class LensBlurFilter extends AbstractBufferedImageOp {
                 }
 
                 // Transform back
-                fft.transform2D(ar[0], ar[1], cols, rows, false);
-                fft.transform2D(gb[0], gb[1], cols, rows, false);
+                fft.transformInParallel(ar[0], ar[1], false);
+                fft.transformInParallel(gb[0], gb[1], false);
 
                 // Convert back to RGB pixels, with quadrant remapping
                 int row_flip = w >> 1;
@@ -370,8 +366,7 @@ public class LensBlurFilter extends AbstractBufferedImageOp {
                     th = height - ty;
                 }
 
-                dst.setRGB(tx, ty, tw, th, rgb, iradius * w + iradius, w);
-                // setRGB(dst, tx, ty, tw, th, rgb);
+                PixelAccess.setRGB(dst, tx, ty, tw, th, rgb, iradius * w + iradius, w);
             }
             pt.unitDone();
         }
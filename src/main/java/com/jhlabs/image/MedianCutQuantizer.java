@@ -0,0 +1,155 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Creates a palette with Heckbert's median cut algorithm from
+ * a {@link ColorHistogram}: the box of the bins is repeatedly split
+ * along its longest axis at the median pixel, and the colors of
+ * the palette are the mean colors of the final boxes.
+ */
+public class MedianCutQuantizer {
+    private MedianCutQuantizer() {
+        // should not be instantiated
+    }
+
+    public static int[] createPalette(ColorHistogram histogram, int numColors) {
+        int[] bins = histogram.getNonEmptyBins();
+        if (bins.length == 0) {
+            return new int[]{0xFF_00_00_00};
+        }
+
+        List<Box> boxes = new ArrayList<>();
+        boxes.add(new Box(histogram, bins));
+        while (boxes.size() < numColors) {
+            Box toSplit = null;
+            long bestScore = 0;
+            for (Box box : boxes) {
+                long score = box.getSplitScore();
+                if (score > bestScore) {
+                    bestScore = score;
+                    toSplit = box;
+                }
+            }
+            if (toSplit == null) {
+                break; // there are fewer different colors than requested
+            }
+            boxes.remove(toSplit);
+            boxes.addAll(toSplit.split(histogram));
+        }
+
+        int[] palette = new int[boxes.size()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = boxes.get(i).getMeanColor(histogram);
+        }
+        return palette;
+    }
+
+    private static int coord(int bin, int axis) {
+        // axis 0 = red, 1 = green, 2 = blue
+        return (bin >> (10 - 5 * axis)) & 0x1F;
+    }
+
+    private static class Box {
+        private final int[] bins;
+        private long count;
+        private final int[] min = {31, 31, 31};
+        private final int[] max = {0, 0, 0};
+
+        Box(ColorHistogram histogram, int[] bins) {
+            this.bins = bins;
+            for (int bin : bins) {
+                count += histogram.getCount(bin);
+                for (int axis = 0; axis < 3; axis++) {
+                    int c = coord(bin, axis);
+                    min[axis] = Math.min(min[axis], c);
+                    max[axis] = Math.max(max[axis], c);
+                }
+            }
+        }
+
+        private int getLongestAxis() {
+            int longest = 0;
+            for (int axis = 1; axis < 3; axis++) {
+                if (max[axis] - min[axis] > max[longest] - min[longest]) {
+                    longest = axis;
+                }
+            }
+            return longest;
+        }
+
+        // boxes with many pixels spread over a wide range are split first,
+        // boxes with a single bin can't be split at all
+        long getSplitScore() {
+            if (bins.length < 2) {
+                return 0;
+            }
+            int axis = getLongestAxis();
+            return count * (max[axis] - min[axis] + 1);
+        }
+
+        List<Box> split(ColorHistogram histogram) {
+            int axis = getLongestAxis();
+
+            // sort the bins along the axis (the coordinate is in the upper bits)
+            long[] keys = new long[bins.length];
+            for (int i = 0; i < bins.length; i++) {
+                keys[i] = ((long) coord(bins[i], axis) << 32) | bins[i];
+            }
+            Arrays.sort(keys);
+
+            long half = count / 2;
+            long sum = 0;
+            int splitIndex = 1;
+            for (int i = 0; i < keys.length - 1; i++) {
+                sum += histogram.getCount((int) keys[i]);
+                splitIndex = i + 1;
+                if (sum >= half) {
+                    break;
+                }
+            }
+
+            int[] first = new int[splitIndex];
+            int[] second = new int[keys.length - splitIndex];
+            for (int i = 0; i < keys.length; i++) {
+                if (i < splitIndex) {
+                    first[i] = (int) keys[i];
+                } else {
+                    second[i - splitIndex] = (int) keys[i];
+                }
+            }
+            return List.of(new Box(histogram, first), new Box(histogram, second));
+        }
+
+        int getMeanColor(ColorHistogram histogram) {
+            long redSum = 0;
+            long greenSum = 0;
+            long blueSum = 0;
+            for (int bin : bins) {
+                redSum += histogram.getRedSum(bin);
+                greenSum += histogram.getGreenSum(bin);
+                blueSum += histogram.getBlueSum(bin);
+            }
+            return ColorHistogram.meanColor(redSum, greenSum, blueSum, count);
+        }
+    }
+}
@@ -20,6 +20,7 @@ import pixelitor.utils.ProgressTracker;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -43,9 +44,9 @@ public class OctTreeQuantizer implements Quantizer {
         final OctTreeNode[] leaf = new OctTreeNode[8];
         boolean isLeaf;
         int count;
-        int totalRed;
-        int totalGreen;
-        int totalBlue;
+        long totalRed;
+        long totalGreen;
+        long totalBlue;
         int index;
 
         /**
@@ -163,7 +164,28 @@ public class OctTreeQuantizer implements Quantizer {
         return 0;
     }
 
+    /**
+     * Adds the colors of a histogram to the quantizer. Each non-empty bin
+     * is inserted once at its mean color, with the weight of its pixel count.
+     *
+     * @param histogram the histogram of the image
+     */
+    public void addHistogram(ColorHistogram histogram) {
+        for (int bin : histogram.getNonEmptyBins()) {
+            insertColor(histogram.getMeanColor(bin), histogram.getCount(bin),
+                    histogram.getRedSum(bin), histogram.getGreenSum(bin), histogram.getBlueSum(bin));
+            if (colors > reduceColors) {
+                reduceTree(reduceColors);
+            }
+        }
+    }
+
     private void insertColor(int rgb) {
+        insertColor(rgb, 1, (rgb >> 16) & 0xff, (rgb >> 8) & 0xff, rgb & 0xff);
+    }
+
+    // inserts a color with the given weight (count) and channel sums
+    private void insertColor(int rgb, int count, long redSum, long greenSum, long blueSum) {
         int red = (rgb >> 16) & 0xff;
         int green = (rgb >> 8) & 0xff;
         int blue = rgb & 0xff;
@@ -200,10 +222,10 @@ public class OctTreeQuantizer implements Quantizer {
 
                 if (level == MAX_LEVEL) {
                     child.isLeaf = true;
-                    child.count = 1;
-                    child.totalRed = red;
-                    child.totalGreen = green;
-                    child.totalBlue = blue;
+                    child.count = count;
+                    child.totalRed = redSum;
+                    child.totalGreen = greenSum;
+                    child.totalBlue = blueSum;
                     child.level = level;
                     colors++;
                     return;
@@ -211,10 +233,10 @@ public class OctTreeQuantizer implements Quantizer {
 
                 node = child;
             } else if (child.isLeaf) {
-                child.count++;
-                child.totalRed += red;
-                child.totalGreen += green;
-                child.totalBlue += blue;
+                child.count += count;
+                child.totalRed += redSum;
+                child.totalGreen += greenSum;
+                child.totalBlue += blueSum;
                 return;
             } else {
                 node = child;
@@ -266,9 +288,13 @@ public class OctTreeQuantizer implements Quantizer {
      */
     @Override
     public int[] buildColorTable() {
+        // reduce first, otherwise the table would have unused entries at the end
+        if (colors > maximumColors) {
+            reduceTree(maximumColors);
+        }
         int[] table = new int[colors];
-        buildColorTable(root, table, 0);
-        return table;
+        int size = buildColorTable(root, table, 0);
+        return size == table.length ? table : Arrays.copyOf(table, size);
     }
 
     /**
@@ -299,9 +325,9 @@ public class OctTreeQuantizer implements Quantizer {
         if (node.isLeaf) {
             int count = node.count;
             table[index] = 0xff000000 |
-                    ((node.totalRed / count) << 16) |
-                    ((node.totalGreen / count) << 8) |
-                    node.totalBlue / count;
+                    ((int) (node.totalRed / count) << 16) |
+                    ((int) (node.totalGreen / count) << 8) |
+                    (int) (node.totalBlue / count);
             node.index = index++;
         } else {
             for (int i = 0; i < 8; i++) {
@@ -23,6 +23,7 @@ import java.awt.Shape;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 /**
  * A filter which performs the popular whirl-and-pinch distortion effect.
@@ -241,6 +242,11 @@ public class PinchFilter extends TransformFilter implements SwirlMethod {
         this.rotateResultAngle = rotateResultAngle;
     }
 
+    @Override
+    protected Object getGeometryKey() {
+        return List.of(angle, icentreX, icentreY, radius2, pinchBulgeAmount, zoom, rotateResultAngle);
+    }
+
     @Override
     public String toString() {
         return "Distort/Pinch...";
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+import static java.awt.image.BufferedImage.TYPE_3BYTE_BGR;
+import static java.awt.image.BufferedImage.TYPE_4BYTE_ABGR;
+import static java.awt.image.BufferedImage.TYPE_4BYTE_ABGR_PRE;
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.awt.image.BufferedImage.TYPE_INT_BGR;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+
+/**
+ * Bulk transfers of packed ARGB pixels between images and int arrays.
+ *
+ * The int types, TYPE_BYTE_GRAY, TYPE_3BYTE_BGR and the 4-byte ABGR
+ * types are read and written directly in their data buffers, row by row,
+ * without allocating anything. The other types fall back to the color
+ * model conversions of BufferedImage.getRGB and setRGB.
+ *
+ * The pixels of the int types are transferred unchanged, so (as before)
+ * the values of TYPE_INT_ARGB_PRE images remain premultiplied.
+ * A gray value g is read as the opaque color (g, g, g), and colors are
+ * written into gray images as their luminance, in the same way as
+ * Java2D draws into them (this is also how the layer masks are converted),
+ * and not with the linear gray color space of the ColorModel.
+ */
+public final class PixelAccess {
+    private PixelAccess() {
+        // should not be instantiated
+    }
+
+    /**
+     * Returns true if the pixels of the given image
+     * are transferred without color model conversions.
+     */
+    public static boolean isNative(BufferedImage image) {
+        switch (image.getType()) {
+            case TYPE_INT_ARGB:
+            case TYPE_INT_RGB:
+            case TYPE_INT_ARGB_PRE:
+            case TYPE_INT_BGR:
+                return image.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel;
+            case TYPE_BYTE_GRAY:
+            case TYPE_3BYTE_BGR:
+            case TYPE_4BYTE_ABGR:
+            case TYPE_4BYTE_ABGR_PRE:
+                return image.getRaster().getSampleModel() instanceof ComponentSampleModel;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Copies the pixels of the given rectangle into a width * height array,
+     * which is allocated if the given one is null.
+     */
+    public static int[] getRGB(BufferedImage image, int x, int y, int width, int height, int[] pixels) {
+        return getRGB(image, x, y, width, height, pixels, 0, width);
+    }
+
+    /**
+     * Copies the pixels of the given rectangle into the array,
+     * with the same offset and scansize semantics as BufferedImage.getRGB.
+     */
+    public static int[] getRGB(BufferedImage image, int x, int y, int width, int height,
+                               int[] pixels, int offset, int scansize) {
+        if (pixels == null) {
+            pixels = new int[offset + height * scansize];
+        }
+        if (!isNative(image)) {
+            return image.getRGB(x, y, width, height, pixels, offset, scansize);
+        }
+
+        int type = image.getType();
+        WritableRaster raster = image.getRaster();
+        if (type == TYPE_INT_ARGB || type == TYPE_INT_RGB
+                || type == TYPE_INT_ARGB_PRE || type == TYPE_INT_BGR) {
+            if (offset == 0 && scansize == width) {
+                // doesn't steal the data buffer from the image
+                raster.getDataElements(x, y, width, height, pixels);
+            } else {
+                getIntRows(raster, x, y, width, height, pixels, offset, scansize);
+            }
+            if (type == TYPE_INT_BGR) {
+                for (int row = 0; row < height; row++) {
+                    int start = offset + row * scansize;
+                    for (int i = start; i < start + width; i++) {
+                        pixels[i] = 0xFF_00_00_00 | swapRedAndBlue(pixels[i]);
+                    }
+                }
+            }
+            return pixels;
+        }
+
+        ComponentSampleModel sm = (ComponentSampleModel) raster.getSampleModel();
+        byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int pixelStride = sm.getPixelStride();
+        int scanlineStride = sm.getScanlineStride();
+        int[] bandOffsets = sm.getBandOffsets();
+        int base = raster.getDataBuffer().getOffset()
+                + (y - raster.getSampleModelTranslateY()) * scanlineStride
+                + (x - raster.getSampleModelTranslateX()) * pixelStride;
+
+        for (int row = 0; row < height; row++) {
+            int in = base + row * scanlineStride;
+            int out = offset + row * scansize;
+            int end = out + width;
+            switch (type) {
+                case TYPE_BYTE_GRAY:
+                    for (; out < end; out++, in += pixelStride) {
+                        int g = data[in] & 0xFF;
+                        pixels[out] = 0xFF_00_00_00 | (g << 16) | (g << 8) | g;
+                    }
+                    break;
+                case TYPE_3BYTE_BGR: {
+                    int rOff = bandOffsets[0];
+                    int gOff = bandOffsets[1];
+                    int bOff = bandOffsets[2];
+                    for (; out < end; out++, in += pixelStride) {
+                        pixels[out] = 0xFF_00_00_00
+                                | (data[in + rOff] & 0xFF) << 16
+                                | (data[in + gOff] & 0xFF) << 8
+                                | (data[in + bOff] & 0xFF);
+                    }
+                    break;
+                }
+                default: { // the 4-byte types
+                    boolean premultiplied = type == TYPE_4BYTE_ABGR_PRE;
+                    int rOff = bandOffsets[0];
+                    int gOff = bandOffsets[1];
+                    int bOff = bandOffsets[2];
+                    int aOff = bandOffsets[3];
+                    for (; out < end; out++, in += pixelStride) {
+                        int a = data[in + aOff] & 0xFF;
+                        int r = data[in + rOff] & 0xFF;
+                        int g = data[in + gOff] & 0xFF;
+                        int b = data[in + bOff] & 0xFF;
+                        if (premultiplied && a != 255) {
+                            r = unpremultiply(r, a);
+                            g = unpremultiply(g, a);
+                            b = unpremultiply(b, a);
+                        }
+                        pixels[out] = a << 24 | r << 16 | g << 8 | b;
+                    }
+                    break;
+                }
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Copies a width * height array of pixels into the given rectangle.
+     */
+    public static void setRGB(BufferedImage image, int x, int y, int width, int height, int[] pixels) {
+        setRGB(image, x, y, width, height, pixels, 0, width);
+    }
+
+    /**
+     * Copies the pixels into the given rectangle, with the
+     * same offset and scansize semantics as BufferedImage.setRGB.
+     */
+    public static void setRGB(BufferedImage image, int x, int y, int width, int height,
+                              int[] pixels, int offset, int scansize) {
+        if (!isNative(image)) {
+            image.setRGB(x, y, width, height, pixels, offset, scansize);
+            return;
+        }
+
+        int type = image.getType();
+        WritableRaster raster = image.getRaster();
+        if (type == TYPE_INT_ARGB || type == TYPE_INT_RGB || type == TYPE_INT_ARGB_PRE) {
+            if (offset == 0 && scansize == width) {
+                // doesn't steal the data buffer from the image
+                raster.setDataElements(x, y, width, height, pixels);
+            } else {
+                setIntRows(raster, x, y, width, height, pixels, offset, scansize);
+            }
+            return;
+        }
+        if (type == TYPE_INT_BGR) {
+            SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) raster.getSampleModel();
+            int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+            int base = intBase(raster, sm, x, y);
+            for (int row = 0; row < height; row++) {
+                int out = base + row * sm.getScanlineStride();
+                int in = offset + row * scansize;
+                for (int i = 0; i < width; i++) {
+                    data[out + i] = swapRedAndBlue(pixels[in + i]) & 0x00_FF_FF_FF;
+                }
+            }
+            return;
+        }
+
+        ComponentSampleModel sm = (ComponentSampleModel) raster.getSampleModel();
+        byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int pixelStride = sm.getPixelStride();
+        int scanlineStride = sm.getScanlineStride();
+        int[] bandOffsets = sm.getBandOffsets();
+        int base = raster.getDataBuffer().getOffset()
+                + (y - raster.getSampleModelTranslateY()) * scanlineStride
+                + (x - raster.getSampleModelTranslateX()) * pixelStride;
+
+        for (int row = 0; row < height; row++) {
+            int out = base + row * scanlineStride;
+            int in = offset + row * scansize;
+            int end = in + width;
+            switch (type) {
+                case TYPE_BYTE_GRAY:
+                    for (; in < end; in++, out += pixelStride) {
+                        data[out] = (byte) toGray(pixels[in]);
+                    }
+                    break;
+                case TYPE_3BYTE_BGR: {
+                    int rOff = bandOffsets[0];
+                    int gOff = bandOffsets[1];
+                    int bOff = bandOffsets[2];
+                    for (; in < end; in++, out += pixelStride) {
+                        int rgb = pixels[in];
+                        data[out + rOff] = (byte) (rgb >> 16);
+                        data[out + gOff] = (byte) (rgb >> 8);
+                        data[out + bOff] = (byte) rgb;
+                    }
+                    break;
+                }
+                default: { // the 4-byte types
+                    boolean premultiplied = type == TYPE_4BYTE_ABGR_PRE;
+                    int rOff = bandOffsets[0];
+                    int gOff = bandOffsets[1];
+                    int bOff = bandOffsets[2];
+                    int aOff = bandOffsets[3];
+                    for (; in < end; in++, out += pixelStride) {
+                        int rgb = pixels[in];
+                        int a = rgb >>> 24;
+                        int r = (rgb >> 16) & 0xFF;
+                        int g = (rgb >> 8) & 0xFF;
+                        int b = rgb & 0xFF;
+                        if (premultiplied && a != 255) {
+                            r = premultiply(r, a);
+                            g = premultiply(g, a);
+                            b = premultiply(b, a);
+                        }
+                        data[out + aOff] = (byte) a;
+                        data[out + rOff] = (byte) r;
+                        data[out + gOff] = (byte) g;
+                        data[out + bOff] = (byte) b;
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the gray value (luminance) of the given color
+     * in the same way as Java2D draws into gray images.
+     */
+    public static int toGray(int rgb) {
+        int r = (rgb >> 16) & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        return (77 * r + 150 * g + 29 * b + 128) >> 8;
+    }
+
+    private static void getIntRows(WritableRaster raster, int x, int y, int width, int height,
+                                   int[] pixels, int offset, int scansize) {
+        SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+        int base = intBase(raster, sm, x, y);
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(data, base + row * sm.getScanlineStride(),
+                    pixels, offset + row * scansize, width);
+        }
+    }
+
+    private static void setIntRows(WritableRaster raster, int x, int y, int width, int height,
+                                   int[] pixels, int offset, int scansize) {
+        SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+        int base = intBase(raster, sm, x, y);
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(pixels, offset + row * scansize,
+                    data, base + row * sm.getScanlineStride(), width);
+        }
+    }
+
+    private static int intBase(WritableRaster raster, SinglePixelPackedSampleModel sm, int x, int y) {
+        return raster.getDataBuffer().getOffset()
+                + (y - raster.getSampleModelTranslateY()) * sm.getScanlineStride()
+                + (x - raster.getSampleModelTranslateX());
+    }
+
+    private static int swapRedAndBlue(int rgb) {
+        return (rgb & 0xFF_00_FF_00) | ((rgb >> 16) & 0xFF) | ((rgb & 0xFF) << 16);
+    }
+
+    private static int premultiply(int c, int a) {
+        return (c * a + 127) / 255;
+    }
+
+    private static int unpremultiply(int c, int a) {
+        if (a == 0) {
+            return 0;
+        }
+        return Math.min(255, (c * 255 + a / 2) / a);
+    }
+}
@@ -78,11 +78,11 @@ public abstract class PointFilter extends AbstractBufferedImageOp {
             int finalY = y;
             Runnable calculateLineTask = () -> {
                 int[] inPixels = new int[width];
-                src.getRGB(0, finalY, width, 1, inPixels, 0, width);
+                getRGB(src, 0, finalY, width, 1, inPixels);
                 for (int x = 0; x < width; x++) {
                     inPixels[x] = filterRGB(x, finalY, inPixels[x]);
                 }
-                dst.setRGB(0, finalY, width, 1, inPixels, 0, width);
+                setRGB(dst, 0, finalY, width, 1, inPixels);
             };
             futures[y] = ThreadPool.submit(calculateLineTask);
         }
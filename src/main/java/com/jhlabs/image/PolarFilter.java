@@ -19,6 +19,7 @@ package com.jhlabs.image;
 import net.jafama.FastMath;
 
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 /**
  * A filter which distorts and image by performing coordinate conversions between rectangular and polar coordinates.
@@ -258,6 +259,11 @@ public class PolarFilter extends TransformFilter {
         return relativeCentreY;
     }
 
+    @Override
+    protected Object getGeometryKey() {
+        return List.of(type, width, height, centreX, centreY, radius, zoom, angle);
+    }
+
     @Override
     public String toString() {
         return "Distort/Polar Coordinates...";
@@ -0,0 +1,466 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
+import pixelitor.utils.VisibleForTesting;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntConsumer;
+
+/**
+ * The shared palette quantization engine of the Quantize filter and
+ * the indexed (GIF) export: a palette is created from a parallel
+ * {@link ColorHistogram} with a selectable quantizer, and the pixels are
+ * mapped to the palette through an {@link InverseColorMap},
+ * optionally with dithering.
+ */
+public final class QuantizationEngine {
+    /**
+     * Use the octree quantizer.
+     */
+    public static final int OCTREE = 0;
+
+    /**
+     * Use the median cut quantizer.
+     */
+    public static final int MEDIAN_CUT = 1;
+
+    /**
+     * Use the median cut quantizer, refined with k-means iterations.
+     */
+    public static final int K_MEANS = 2;
+
+    public static final int DITHER_NONE = 0;
+    public static final int DITHER_FLOYD_STEINBERG = 1;
+    public static final int DITHER_ORDERED = 2;
+
+    private static final int K_MEANS_ITERATIONS = 8;
+
+    // the number of pixels in a row processed by one task of the parallel dithering
+    private static final int FS_BLOCK_WIDTH = 128;
+
+    /**
+     * Floyd-Steinberg dithering matrix.
+     */
+    private static final int[] matrix = {
+            0, 0, 0,
+            0, 0, 7,
+            3, 5, 1,
+    };
+    private static final int sum = 3 + 5 + 7 + 1;
+
+    private static final int[] bayer8x8 = {
+            0, 32, 8, 40, 2, 34, 10, 42,
+            48, 16, 56, 24, 50, 18, 58, 26,
+            12, 44, 4, 36, 14, 46, 6, 38,
+            60, 28, 52, 20, 62, 30, 54, 22,
+            3, 35, 11, 43, 1, 33, 9, 41,
+            51, 19, 59, 27, 49, 17, 57, 25,
+            15, 47, 7, 39, 13, 45, 5, 37,
+            63, 31, 55, 23, 61, 29, 53, 21
+    };
+
+    private QuantizationEngine() {
+        // should not be instantiated
+    }
+
+    /**
+     * Creates a palette with at most numColors opaque colors for the given pixels.
+     * If ignoreTransparent is true, then the pixels with an alpha
+     * less than 128 don't influence the palette.
+     * The returned palette has at least one color.
+     *
+     * @param method one of OCTREE, MEDIAN_CUT or K_MEANS
+     */
+    public static int[] createPalette(int[] pixels, int numColors, int method, boolean ignoreTransparent) {
+        ColorHistogram histogram = ColorHistogram.build(pixels, ignoreTransparent);
+
+        int[] palette;
+        switch (method) {
+            case OCTREE:
+                OctTreeQuantizer octTree = new OctTreeQuantizer();
+                octTree.setup(numColors);
+                octTree.addHistogram(histogram);
+                palette = octTree.buildColorTable();
+                break;
+            case MEDIAN_CUT:
+                palette = MedianCutQuantizer.createPalette(histogram, numColors);
+                break;
+            case K_MEANS:
+                palette = MedianCutQuantizer.createPalette(histogram, numColors);
+                refine(palette, histogram, K_MEANS_ITERATIONS);
+                break;
+            default:
+                throw new IllegalArgumentException("method = " + method);
+        }
+
+        if (palette.length == 0) {
+            palette = new int[]{0xFF_00_00_00};
+        }
+        return palette;
+    }
+
+    /**
+     * Improves the given palette in place with k-means (Lloyd) iterations
+     * over the histogram bins: each bin is assigned to its nearest palette
+     * color, and each palette color is moved to the mean of its bins.
+     * The assignment runs in parallel on chunks of the bins.
+     */
+    public static void refine(int[] palette, ColorHistogram histogram, int iterations) {
+        int[] bins = histogram.getNonEmptyBins();
+        int[] binColors = new int[bins.length];
+        for (int i = 0; i < bins.length; i++) {
+            binColors[i] = histogram.getMeanColor(bins[i]);
+        }
+
+        int numChunks = Math.min(bins.length, Runtime.getRuntime().availableProcessors());
+        if (numChunks == 0) {
+            return;
+        }
+        int chunkSize = (bins.length + numChunks - 1) / numChunks;
+        int k = palette.length;
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            // per chunk: count, red, green, blue sums for each palette color
+            long[][] partialSums = new long[numChunks][4 * k];
+            forEachIndex(numChunks, c -> {
+                int start = c * chunkSize;
+                int end = Math.min(bins.length, start + chunkSize);
+                long[] sums = partialSums[c];
+                for (int i = start; i < end; i++) {
+                    int color = binColors[i];
+                    int nearest = InverseColorMap.findNearest(palette,
+                            (color >> 16) & 0xFF, (color >> 8) & 0xFF, color & 0xFF);
+                    int bin = bins[i];
+                    sums[4 * nearest] += histogram.getCount(bin);
+                    sums[4 * nearest + 1] += histogram.getRedSum(bin);
+                    sums[4 * nearest + 2] += histogram.getGreenSum(bin);
+                    sums[4 * nearest + 3] += histogram.getBlueSum(bin);
+                }
+            });
+
+            boolean changed = false;
+            for (int j = 0; j < k; j++) {
+                long count = 0;
+                long redSum = 0;
+                long greenSum = 0;
+                long blueSum = 0;
+                for (long[] sums : partialSums) {
+                    count += sums[4 * j];
+                    redSum += sums[4 * j + 1];
+                    greenSum += sums[4 * j + 2];
+                    blueSum += sums[4 * j + 3];
+                }
+                if (count > 0) { // empty clusters keep their color
+                    int newColor = ColorHistogram.meanColor(redSum, greenSum, blueSum, count);
+                    if (newColor != palette[j]) {
+                        palette[j] = newColor;
+                        changed = true;
+                    }
+                }
+            }
+            if (!changed) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Maps the pixels to the palette of the given inverse color map,
+     * and returns the palette indexes. The input pixels are not modified.
+     * If transparentIndex is not negative, then the pixels with an alpha
+     * less than 128 get this index, and they don't take part in the dithering.
+     *
+     * @param dither one of DITHER_NONE, DITHER_FLOYD_STEINBERG or DITHER_ORDERED
+     */
+    public static byte[] remap(int[] pixels, int width, int height, InverseColorMap map,
+                               int dither, boolean serpentine, int transparentIndex) {
+        byte[] indexes = new byte[width * height];
+        switch (dither) {
+            case DITHER_NONE:
+                forEachIndex(height, y -> remapRow(pixels, indexes, width, y, map, transparentIndex));
+                break;
+            case DITHER_ORDERED:
+                int spread = (int) (255 / Math.cbrt(map.getPalette().length));
+                forEachIndex(height, y -> ditherRowOrdered(pixels, indexes, width, y, map, transparentIndex, spread));
+                break;
+            case DITHER_FLOYD_STEINBERG:
+                ditherFloydSteinberg(pixels.clone(), indexes, width, height, map, serpentine, transparentIndex);
+                break;
+            default:
+                throw new IllegalArgumentException("dither = " + dither);
+        }
+        return indexes;
+    }
+
+    /**
+     * Runs the given task for each index from 0 to n - 1 in the thread pool.
+     * When called from a pool thread, the indexes are processed sequentially,
+     * because a pool thread must not wait for other tasks of the pool.
+     */
+    static void forEachIndex(int n, IntConsumer task) {
+        if (ThreadPool.isPoolThread()) {
+            for (int i = 0; i < n; i++) {
+                task.accept(i);
+            }
+            return;
+        }
+        Future<?>[] futures = new Future[n];
+        for (int i = 0; i < n; i++) {
+            int finalI = i;
+            futures[i] = ThreadPool.submit(() -> task.accept(finalI));
+        }
+        ThreadPool.waitFor(futures, ProgressTracker.NULL_TRACKER);
+    }
+
+    private static boolean isTransparent(int rgb, int transparentIndex) {
+        return transparentIndex >= 0 && (rgb >>> 24) < 128;
+    }
+
+    private static void remapRow(int[] pixels, byte[] indexes, int width, int y,
+                                 InverseColorMap map, int transparentIndex) {
+        int end = (y + 1) * width;
+        for (int i = y * width; i < end; i++) {
+            int rgb = pixels[i];
+            if (isTransparent(rgb, transparentIndex)) {
+                indexes[i] = (byte) transparentIndex;
+            } else {
+                indexes[i] = (byte) map.getIndex(rgb);
+            }
+        }
+    }
+
+    private static void ditherRowOrdered(int[] pixels, byte[] indexes, int width, int y,
+                                         InverseColorMap map, int transparentIndex, int spread) {
+        int offset = y * width;
+        int matrixRow = (y & 7) * 8;
+        for (int x = 0; x < width; x++) {
+            int i = offset + x;
+            int rgb = pixels[i];
+            if (isTransparent(rgb, transparentIndex)) {
+                indexes[i] = (byte) transparentIndex;
+                continue;
+            }
+            // a threshold between -spread/2 and spread/2
+            int d = (2 * bayer8x8[matrixRow + (x & 7)] - 63) * spread / 128;
+            int r = PixelUtils.clamp(((rgb >> 16) & 0xFF) + d);
+            int g = PixelUtils.clamp(((rgb >> 8) & 0xFF) + d);
+            int b = PixelUtils.clamp((rgb & 0xFF) + d);
+            indexes[i] = (byte) map.getIndex((r << 16) | (g << 8) | b);
+        }
+    }
+
+    /**
+     * Floyd-Steinberg dithering, modifying the given pixels. Without serpentine
+     * scanning, the image is processed in parallel as a wavefront of blocks
+     * (parts of rows): a block can start only after the block to its left and
+     * the block above-right of it have finished, because the previous row
+     * diffuses its error into the block and into the pixel to the right of it,
+     * so the result is the same as with sequential processing.
+     * Serpentine scanning would stall this pipeline at every row,
+     * therefore in that case the rows are processed on one thread.
+     */
+    private static void ditherFloydSteinberg(int[] pixels, byte[] indexes, int width, int height,
+                                             InverseColorMap map, boolean serpentine, int transparentIndex) {
+        // a pool thread must not wait for the blocks submitted to the pool
+        if (serpentine || ThreadPool.getNumCores() == 1 || ThreadPool.isPoolThread()) {
+            for (int y = 0; y < height; y++) {
+                ditherBlockFloydSteinberg(pixels, indexes, width, height, y, 0, width, map,
+                        serpentine && (y & 1) == 1, transparentIndex);
+            }
+            return;
+        }
+        ditherFloydSteinbergInParallel(pixels, indexes, width, height, map, transparentIndex, FS_BLOCK_WIDTH);
+    }
+
+    @VisibleForTesting
+    static void ditherFloydSteinbergInParallel(int[] pixels, byte[] indexes, int width, int height,
+                                               InverseColorMap map, int transparentIndex, int blockWidth) {
+        new FloydSteinbergWavefront(pixels, indexes, width, height,
+                map, transparentIndex, blockWidth).run();
+    }
+
+    /**
+     * Dithers the pixels of the given row from fromX (inclusive) to toX (exclusive),
+     * where the x coordinates are counted in the processing order.
+     */
+    private static void ditherBlockFloydSteinberg(int[] pixels, byte[] indexes, int width, int height,
+                                                  int y, int fromX, int toX, InverseColorMap map,
+                                                  boolean reverse, int transparentIndex) {
+        int[] palette = map.getPalette();
+        int index;
+        int direction;
+        if (reverse) {
+            index = y * width + width - 1 - fromX;
+            direction = -1;
+        } else {
+            index = y * width + fromX;
+            direction = 1;
+        }
+        for (int x = fromX; x < toX; x++) {
+            int rgb1 = pixels[index];
+            if (isTransparent(rgb1, transparentIndex)) {
+                indexes[index] = (byte) transparentIndex;
+            } else {
+                int paletteIndex = map.getIndex(rgb1);
+                indexes[index] = (byte) paletteIndex;
+                int rgb2 = palette[paletteIndex];
+                diffuseError(pixels, width, height, x, y, index, reverse, rgb1, rgb2, transparentIndex);
+            }
+            index += direction;
+        }
+    }
+
+    /**
+     * The parallel Floyd-Steinberg dithering. The tasks never wait for each
+     * other: each block counts its unfinished dependencies, and the block
+     * finishing the last one submits it to the thread pool. Only the calling
+     * thread waits, until the last block is finished.
+     */
+    private static class FloydSteinbergWavefront {
+        private final int[] pixels;
+        private final byte[] indexes;
+        private final int width;
+        private final int height;
+        private final InverseColorMap map;
+        private final int transparentIndex;
+        private final int blockWidth;
+        private final int lastBlock;
+
+        // the number of unfinished dependencies of each block
+        private final AtomicIntegerArray pending;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile Throwable failure;
+
+        FloydSteinbergWavefront(int[] pixels, byte[] indexes, int width, int height,
+                                InverseColorMap map, int transparentIndex, int blockWidth) {
+            // with narrower blocks, the diffusion of the previous row
+            // would reach into blocks which are still running
+            assert blockWidth >= 2 : "blockWidth = " + blockWidth;
+
+            this.pixels = pixels;
+            this.indexes = indexes;
+            this.width = width;
+            this.height = height;
+            this.map = map;
+            this.transparentIndex = transparentIndex;
+            this.blockWidth = blockWidth;
+
+            int numBlocks = (width + blockWidth - 1) / blockWidth;
+            lastBlock = numBlocks - 1;
+            pending = new AtomicIntegerArray(numBlocks * height);
+            for (int y = 0; y < height; y++) {
+                for (int block = 0; block < numBlocks; block++) {
+                    int numDependencies = (block > 0 ? 1 : 0) + (y > 0 ? 1 : 0);
+                    pending.set(y * numBlocks + block, numDependencies);
+                }
+            }
+        }
+
+        void run() {
+            submit(0, 0);
+            try {
+                finished.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            if (failure != null) {
+                throw new IllegalStateException(failure);
+            }
+        }
+
+        private void submit(int y, int block) {
+            ThreadPool.submit(() -> process(y, block));
+        }
+
+        private void process(int y, int block) {
+            try {
+                int fromX = block * blockWidth;
+                int toX = Math.min(width, fromX + blockWidth);
+                ditherBlockFloydSteinberg(pixels, indexes, width, height,
+                        y, fromX, toX, map, false, transparentIndex);
+            } catch (Throwable e) {
+                failure = e;
+                finished.countDown();
+                return;
+            }
+
+            if (y == height - 1 && block == lastBlock) {
+                finished.countDown();
+                return;
+            }
+            if (block < lastBlock) {
+                release(y, block + 1);
+            }
+            if (y < height - 1) {
+                // the next row depends on the block above-right,
+                // or on the last block at the end of the row
+                if (block > 0) {
+                    release(y + 1, block - 1);
+                }
+                if (block == lastBlock) {
+                    release(y + 1, block);
+                }
+            }
+        }
+
+        private void release(int y, int block) {
+            if (pending.decrementAndGet(y * (lastBlock + 1) + block) == 0) {
+                submit(y, block);
+            }
+        }
+    }
+
+    private static void diffuseError(int[] pixels, int width, int height, int x, int y, int index,
+                                     boolean reverse, int rgb1, int rgb2, int transparentIndex) {
+        int er = ((rgb1 >> 16) & 0xff) - ((rgb2 >> 16) & 0xff);
+        int eg = ((rgb1 >> 8) & 0xff) - ((rgb2 >> 8) & 0xff);
+        int eb = (rgb1 & 0xff) - (rgb2 & 0xff);
+
+        for (int i = 0; i <= 1; i++) {
+            int iy = i + y;
+            if (iy >= height) {
+                continue;
+            }
+            for (int j = -1; j <= 1; j++) {
+                int jx = reverse ? x - j : x + j;
+                if (jx < 0 || jx >= width) {
+                    continue;
+                }
+                int w = matrix[(i + 1) * 3 + j + 1];
+                if (w == 0) {
+                    continue;
+                }
+                int k = (reverse ? index - j : index + j) + i * width;
+                int rgb = pixels[k];
+                if (isTransparent(rgb, transparentIndex)) {
+                    continue;
+                }
+                int r = PixelUtils.clamp(((rgb >> 16) & 0xff) + er * w / sum);
+                int g = PixelUtils.clamp(((rgb >> 8) & 0xff) + eg * w / sum);
+                int b = PixelUtils.clamp((rgb & 0xff) + eb * w / sum);
+                pixels[k] = (rgb & 0xFF_00_00_00) | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+}
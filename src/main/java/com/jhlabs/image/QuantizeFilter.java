@@ -21,26 +21,17 @@ import java.awt.Rectangle;
 /**
  * A filter which quantizes an image to a set number of colors - useful for producing
  * images which are to be encoded using an index color model. The filter can perform
- * Floyd-Steinberg error-diffusion dithering if required. At present, the quantization
- * is done using an octtree algorithm but I eventually hope to add more quantization
- * methods such as median cut. Note: at present, the filter produces an image which
+ * Floyd-Steinberg error-diffusion or ordered dithering if required. The palette can be
+ * created with an octree, median cut or k-means algorithm, see {@link QuantizationEngine}.
+ * Note: at present, the filter produces an image which
  * uses the RGB color model (because the application it was written for required it).
  * I hope to extend it to produce an IndexColorModel by request.
  */
 public class QuantizeFilter extends WholeImageFilter {
-    /**
-     * Floyd-Steinberg dithering matrix.
-     */
-    protected static final int[] matrix = {
-            0, 0, 0,
-            0, 0, 7,
-            3, 5, 1,
-    };
-    private static final int sum = 3 + 5 + 7 + 1;
-
-    private boolean dither;
+    private int ditherType = QuantizationEngine.DITHER_NONE;
     private int numColors = 256;
     private boolean serpentine = true;
+    private int method = QuantizationEngine.OCTREE;
 
     public QuantizeFilter(String filterName) {
         super(filterName);
@@ -65,12 +56,12 @@ public class QuantizeFilter extends WholeImageFilter {
     }
 
     /**
-     * Set whether to use dithering or not. If not, the image is posterized.
+     * Set whether to use (Floyd-Steinberg) dithering or not. If not, the image is posterized.
      *
      * @param dither true to use dithering
      */
     public void setDither(boolean dither) {
-        this.dither = dither;
+        ditherType = dither ? QuantizationEngine.DITHER_FLOYD_STEINBERG : QuantizationEngine.DITHER_NONE;
     }
 
     /**
@@ -79,7 +70,27 @@ public class QuantizeFilter extends WholeImageFilter {
      * @return the current setting
      */
     public boolean getDither() {
-        return dither;
+        return ditherType != QuantizationEngine.DITHER_NONE;
+    }
+
+    /**
+     * Set the type of dithering.
+     *
+     * @param ditherType one of the DITHER_ constants of QuantizationEngine
+     * @see #getDitherType
+     */
+    public void setDitherType(int ditherType) {
+        this.ditherType = ditherType;
+    }
+
+    /**
+     * Get the type of dithering.
+     *
+     * @return the dithering type
+     * @see #setDitherType
+     */
+    public int getDitherType() {
+        return ditherType;
     }
 
     /**
@@ -100,95 +111,40 @@ public class QuantizeFilter extends WholeImageFilter {
         return serpentine;
     }
 
-    public void quantize(int[] inPixels, int[] outPixels, int width, int height, int numColors, boolean dither, boolean serpentine) {
-        int count = width * height;
-
-        // With dither it takes about 2.5 times longer.
-        // For dithering we count "height" work units,
-        // therefore we need height/2.5 for the other
-        // computation-intensive task (addPixels)
-        int units = (int) (height / 2.5);
-        int workUnits;
-        if (dither) {
-            workUnits = units + height;
-        } else {
-            workUnits = units + 1;
-        }
-        pt = createProgressTracker(workUnits);
-
-        Quantizer quantizer = new OctTreeQuantizer();
-        quantizer.setup(numColors);
-        quantizer.addPixels(inPixels, 0, count, pt, width);
-        int[] table = quantizer.buildColorTable();
-
-        if (!dither) {
-            for (int i = 0; i < count; i++) {
-                outPixels[i] = table[quantizer.getIndexForColor(inPixels[i])];
-            }
-            pt.unitDone(); // this computation is relatively fast
-        } else {
-            int index = 0;
-            for (int y = 0; y < height; y++) {
-                boolean reverse = serpentine && (y & 1) == 1;
-                int direction;
-                if (reverse) {
-                    index = y * width + width - 1;
-                    direction = -1;
-                } else {
-                    index = y * width;
-                    direction = 1;
-                }
-                for (int x = 0; x < width; x++) {
-                    int rgb1 = inPixels[index];
-                    int rgb2 = table[quantizer.getIndexForColor(rgb1)];
-
-                    outPixels[index] = rgb2;
-
-                    int r1 = (rgb1 >> 16) & 0xff;
-                    int g1 = (rgb1 >> 8) & 0xff;
-                    int b1 = rgb1 & 0xff;
-
-                    int r2 = (rgb2 >> 16) & 0xff;
-                    int g2 = (rgb2 >> 8) & 0xff;
-                    int b2 = rgb2 & 0xff;
-
-                    int er = r1 - r2;
-                    int eg = g1 - g2;
-                    int eb = b1 - b2;
-
-                    for (int i = -1; i <= 1; i++) {
-                        int iy = i + y;
-                        if (0 <= iy && iy < height) {
-                            for (int j = -1; j <= 1; j++) {
-                                int jx = j + x;
-                                if (0 <= jx && jx < width) {
-                                    int w;
-                                    if (reverse) {
-                                        w = matrix[(i + 1) * 3 - j + 1];
-                                    } else {
-                                        w = matrix[(i + 1) * 3 + j + 1];
-                                    }
-                                    if (w != 0) {
-                                        int k = reverse ? index - j : index + j;
-                                        rgb1 = inPixels[k];
-                                        r1 = (rgb1 >> 16) & 0xff;
-                                        g1 = (rgb1 >> 8) & 0xff;
-                                        b1 = rgb1 & 0xff;
-                                        r1 += er * w / sum;
-                                        g1 += eg * w / sum;
-                                        b1 += eb * w / sum;
-                                        inPixels[k] = (PixelUtils.clamp(r1) << 16) | (PixelUtils
-                                                .clamp(g1) << 8) | PixelUtils.clamp(b1);
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    index += direction;
-                }
-                pt.unitDone();
-            }
+    /**
+     * Set the algorithm used for creating the palette.
+     *
+     * @param method one of OCTREE, MEDIAN_CUT or K_MEANS of QuantizationEngine
+     * @see #getMethod
+     */
+    public void setMethod(int method) {
+        this.method = method;
+    }
+
+    /**
+     * Get the algorithm used for creating the palette.
+     *
+     * @return the quantization method
+     * @see #setMethod
+     */
+    public int getMethod() {
+        return method;
+    }
+
+    public void quantize(int[] inPixels, int[] outPixels, int width, int height, int numColors, int ditherType, boolean serpentine) {
+        pt = createProgressTracker(3);
+
+        int[] palette = QuantizationEngine.createPalette(inPixels, numColors, method, false);
+        pt.unitDone();
+
+        InverseColorMap map = new InverseColorMap(palette);
+        pt.unitDone();
+
+        byte[] indexes = QuantizationEngine.remap(inPixels, width, height, map, ditherType, serpentine, -1);
+        for (int i = 0; i < outPixels.length; i++) {
+            outPixels[i] = palette[indexes[i] & 0xFF];
         }
+        pt.unitDone();
 
         finishProgressTracker();
     }
@@ -197,7 +153,7 @@ public class QuantizeFilter extends WholeImageFilter {
     protected int[] filterPixels(int width, int height, int[] inPixels, Rectangle transformedSpace) {
         int[] outPixels = new int[width * height];
 
-        quantize(inPixels, outPixels, width, height, numColors, dither, serpentine);
+        quantize(inPixels, outPixels, width, height, numColors, ditherType, serpentine);
 
         return outPixels;
     }
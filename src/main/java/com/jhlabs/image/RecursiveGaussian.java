@@ -0,0 +1,285 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
+
+import java.util.Arrays;
+
+import static com.jhlabs.image.ConvolveFilter.CLAMP_EDGES;
+import static com.jhlabs.image.ConvolveFilter.WRAP_EDGES;
+
+/**
+ * A recursive (IIR) approximation of the Gaussian blur, based on
+ * "Recursive implementation of the Gaussian filter" by
+ * I. T. Young and L. J. van Vliet (Signal Processing 44, 1995).
+ *
+ * Every line is filtered with a third order causal and anti-causal
+ * recursive filter, therefore the cost per pixel doesn't depend on the radius.
+ * The radius is interpreted the same way as in {@link GaussianFilter#makeKernel},
+ * so that both engines give visually identical results.
+ */
+public class RecursiveGaussian {
+    /**
+     * The recursive approximation is less accurate for small sigma values,
+     * and below this radius the kernel is fast anyway.
+     */
+    public static final float MIN_RADIUS = 6.0f;
+
+    private final float b;
+    private final float a1;
+    private final float a2;
+    private final float a3;
+    private final float sigma;
+
+    // maps the last three causal outputs to the exact initial
+    // conditions of the anti-causal pass, see Triggs and Sdika (2006)
+    private final float[] m = new float[9];
+
+    public RecursiveGaussian(float radius) {
+        // the same sigma as in GaussianFilter.makeKernel
+        sigma = Math.max(radius, MIN_RADIUS) / 3.0f;
+
+        double q;
+        if (sigma >= 2.5) {
+            q = 0.98711 * sigma - 0.96330;
+        } else {
+            q = 3.97156 - 4.14554 * Math.sqrt(1 - 0.26891 * sigma);
+        }
+        double q2 = q * q;
+        double q3 = q2 * q;
+        double b0 = 1.57825 + 2.44413 * q + 1.4281 * q2 + 0.422205 * q3;
+        double b1 = 2.44413 * q + 2.85619 * q2 + 1.26661 * q3;
+        double b2 = -(1.4281 * q2 + 1.26661 * q3);
+        double b3 = 0.422205 * q3;
+
+        a1 = (float) (b1 / b0);
+        a2 = (float) (b2 / b0);
+        a3 = (float) (b3 / b0);
+        b = 1 - (a1 + a2 + a3);
+
+        initBoundaryMatrix();
+    }
+
+    /**
+     * Calculates the boundary matrix by running the filters
+     * past the end of a line, where the input is constant.
+     * Only the deviations from the constant value matter,
+     * and the responses to them decay exponentially.
+     */
+    private void initBoundaryMatrix() {
+        int n = (int) (10 * sigma) + 50;
+        double[] d = new double[n + 3];
+        double[] e = new double[n + 3];
+        for (int k = 0; k < 3; k++) {
+            // the causal deviations at positions N-3, N-2, N-1
+            // are stored in d[0], d[1], d[2]
+            Arrays.fill(d, 0);
+            d[2 - k] = 1;
+            for (int i = 3; i < n + 3; i++) {
+                d[i] = a1 * d[i - 1] + a2 * d[i - 2] + a3 * d[i - 3];
+            }
+            Arrays.fill(e, 0);
+            for (int i = n - 1; i >= 3; i--) {
+                e[i] = b * d[i] + a1 * e[i + 1] + a2 * e[i + 2] + a3 * e[i + 3];
+            }
+            for (int row = 0; row < 3; row++) {
+                m[row * 3 + k] = (float) e[3 + row];
+            }
+        }
+    }
+
+    /**
+     * The recursive version of {@link GaussianFilter#convolveAndTranspose}:
+     * blurs each line, and writes the result transposed.
+     */
+    public void blurAndTranspose(int[] inPixels, int[] outPixels, int width, int height,
+                                 boolean alpha, boolean premultiply, boolean unpremultiply,
+                                 int edgeAction, ProgressTracker pt) {
+        // the clamped edges are handled exactly by the initial
+        // conditions, otherwise the lines are extended
+        int margin = edgeAction == CLAMP_EDGES ? 0 : (int) Math.ceil(3 * sigma);
+        int length = width + 2 * margin;
+
+        ThreadPool.forEachBand(height, pt, (startY, endY) -> {
+            float[][] buffers = new float[4][length];
+            for (int y = startY; y < endY; y++) {
+                blurAndTransposeLine(buffers, inPixels, outPixels, width, height,
+                        alpha, premultiply, unpremultiply, edgeAction, margin, y);
+            }
+        });
+    }
+
+    private void blurAndTransposeLine(float[][] buffers, int[] inPixels, int[] outPixels,
+                                      int width, int height, boolean alpha,
+                                      boolean premultiply, boolean unpremultiply,
+                                      int edgeAction, int margin, int y) {
+        float[] as = buffers[0];
+        float[] rs = buffers[1];
+        float[] gs = buffers[2];
+        float[] bs = buffers[3];
+        int length = width + 2 * margin;
+        int ioffset = y * width;
+
+        for (int p = 0; p < length; p++) {
+            int ix = p - margin;
+            if (ix < 0 || ix >= width) {
+                if (edgeAction == CLAMP_EDGES) {
+                    ix = ix < 0 ? 0 : width - 1;
+                } else if (edgeAction == WRAP_EDGES) {
+                    ix = Math.floorMod(ix, width);
+                } else {
+                    as[p] = 0;
+                    rs[p] = 0;
+                    gs[p] = 0;
+                    bs[p] = 0;
+                    continue;
+                }
+            }
+            int rgb = inPixels[ioffset + ix];
+            int pa = (rgb >> 24) & 0xff;
+            int pr = (rgb >> 16) & 0xff;
+            int pg = (rgb >> 8) & 0xff;
+            int pb = rgb & 0xff;
+            if (premultiply) {
+                float a255 = pa * (1.0f / 255.0f);
+                pr = (int) (pr * a255);
+                pg = (int) (pg * a255);
+                pb = (int) (pb * a255);
+            }
+            as[p] = pa;
+            rs[p] = pr;
+            gs[p] = pg;
+            bs[p] = pb;
+        }
+
+        if (alpha) {
+            filterLine(as, length);
+        }
+        filterLine(rs, length);
+        filterLine(gs, length);
+        filterLine(bs, length);
+
+        int index = y;
+        for (int x = 0; x < width; x++) {
+            int p = x + margin;
+            float a = as[p];
+            float r = rs[p];
+            float g = gs[p];
+            float b = bs[p];
+            if (unpremultiply && a != 0 && a != 255) {
+                float f = 255.0f / a;
+                r *= f;
+                g *= f;
+                b *= f;
+            }
+            int ia = alpha ? PixelUtils.clamp((int) (a + 0.5)) : 0xff;
+            int ir = PixelUtils.clamp((int) (r + 0.5));
+            int ig = PixelUtils.clamp((int) (g + 0.5));
+            int ib = PixelUtils.clamp((int) (b + 0.5));
+            outPixels[index] = (ia << 24) | (ir << 16) | (ig << 8) | ib;
+            index += height;
+        }
+    }
+
+    /**
+     * The gray version of {@link #blurAndTranspose}, which
+     * blurs the 8-bit values of a TYPE_BYTE_GRAY image.
+     */
+    public void blurAndTransposeGray(byte[] in, byte[] out, int width, int height,
+                                     int edgeAction, ProgressTracker pt) {
+        int margin = edgeAction == CLAMP_EDGES ? 0 : (int) Math.ceil(3 * sigma);
+        int length = width + 2 * margin;
+
+        ThreadPool.forEachBand(height, pt, (startY, endY) -> {
+            float[] line = new float[length];
+            for (int y = startY; y < endY; y++) {
+                blurAndTransposeGrayLine(line, in, out, width, height, edgeAction, margin, y);
+            }
+        });
+    }
+
+
+    private void blurAndTransposeGrayLine(float[] line, byte[] in, byte[] out,
+                                          int width, int height,
+                                          int edgeAction, int margin, int y) {
+        int length = width + 2 * margin;
+        int ioffset = y * width;
+        for (int p = 0; p < length; p++) {
+            int ix = p - margin;
+            if (ix < 0 || ix >= width) {
+                if (edgeAction == CLAMP_EDGES) {
+                    ix = ix < 0 ? 0 : width - 1;
+                } else if (edgeAction == WRAP_EDGES) {
+                    ix = Math.floorMod(ix, width);
+                } else {
+                    line[p] = 0;
+                    continue;
+                }
+            }
+            line[p] = in[ioffset + ix] & 0xFF;
+        }
+
+        filterLine(line, length);
+
+        int index = y;
+        for (int x = 0; x < width; x++) {
+            out[index] = (byte) PixelUtils.clamp((int) (line[x + margin] + 0.5));
+            index += height;
+        }
+    }
+
+    /**
+     * Filters the given line in place with the causal and then with the
+     * anti-causal filter. The initial conditions correspond to an
+     * infinitely repeated edge pixel at both ends.
+     */
+    private void filterLine(float[] data, int length) {
+        float first = data[0];
+        float last = data[length - 1];
+
+        // causal pass, starting in the steady state of the first value
+        float w1 = first;
+        float w2 = first;
+        float w3 = first;
+        for (int i = 0; i < length; i++) {
+            float w = b * data[i] + a1 * w1 + a2 * w2 + a3 * w3;
+            data[i] = w;
+            w3 = w2;
+            w2 = w1;
+            w1 = w;
+        }
+
+        // the anti-causal pass would not be exact if it also started
+        // in a steady state, because the causal output is not constant
+        float u0 = w1 - last;
+        float u1 = w2 - last;
+        float u2 = w3 - last;
+        float y1 = m[0] * u0 + m[1] * u1 + m[2] * u2 + last;
+        float y2 = m[3] * u0 + m[4] * u1 + m[5] * u2 + last;
+        float y3 = m[6] * u0 + m[7] * u1 + m[8] * u2 + last;
+        for (int i = length - 1; i >= 0; i--) {
+            float v = b * data[i] + a1 * y1 + a2 * y2 + a3 * y3;
+            data[i] = v;
+            y3 = y2;
+            y2 = y1;
+            y1 = v;
+        }
+    }
+}
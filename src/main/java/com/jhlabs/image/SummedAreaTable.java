@@ -0,0 +1,220 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
+
+import java.util.concurrent.Future;
+
+/**
+ * A summed-area table (integral image) of packed ARGB pixels,
+ * which gives the per-channel sum, mean and variance
+ * of any rectangle in constant time.
+ *
+ * The channel sums are stored in int arrays, which can overflow
+ * for big images, but the differences used by the queries are
+ * still correct as long as the sum of a rectangle fits into 32 bits,
+ * which is true for rectangles with less than 2^24 pixels.
+ * The sums of squares are stored in long arrays.
+ */
+public final class SummedAreaTable {
+    public static final int ALPHA = 0;
+    public static final int RED = 1;
+    public static final int GREEN = 2;
+    public static final int BLUE = 3;
+
+    private static final int[] SHIFTS = {24, 16, 8, 0};
+
+    private final int width;
+    private final int height;
+
+    // the number of values in a row, one more than the width
+    private final int stride;
+
+    // indexed by channel, each with (width + 1) * (height + 1) values,
+    // where the first row and column are zeros
+    private final int[][] sums;
+    private final long[][] squares;
+
+    private SummedAreaTable(int width, int height, boolean withSquares) {
+        this.width = width;
+        this.height = height;
+        stride = width + 1;
+        int size = stride * (height + 1);
+        sums = new int[4][size];
+        squares = withSquares ? new long[4][size] : null;
+    }
+
+    /**
+     * Creates the table for the given pixels using the thread pool.
+     * The sums of squares (needed for the variance) are calculated
+     * only if withSquares is true.
+     */
+    public static SummedAreaTable build(int[] pixels, int width, int height, boolean withSquares) {
+        SummedAreaTable table = new SummedAreaTable(width, height, withSquares);
+        table.sumRows(pixels);
+        table.sumColumns();
+        return table;
+    }
+
+    // horizontal prefix sums, each row is independent
+    private void sumRows(int[] pixels) {
+        Future<?>[] futures = new Future[height];
+        for (int y = 0; y < height; y++) {
+            int finalY = y;
+            futures[y] = ThreadPool.submit(() -> sumRow(pixels, finalY));
+        }
+        ThreadPool.waitFor(futures, ProgressTracker.NULL_TRACKER);
+    }
+
+    private void sumRow(int[] pixels, int y) {
+        int inOffset = y * width;
+        int outOffset = (y + 1) * stride + 1;
+        for (int c = 0; c < 4; c++) {
+            int shift = SHIFTS[c];
+            int[] s = sums[c];
+            long[] sq = squares == null ? null : squares[c];
+            int sum = 0;
+            long sumSq = 0;
+            for (int x = 0; x < width; x++) {
+                int v = (pixels[inOffset + x] >>> shift) & 0xff;
+                sum += v;
+                s[outOffset + x] = sum;
+                if (sq != null) {
+                    sumSq += v * v;
+                    sq[outOffset + x] = sumSq;
+                }
+            }
+        }
+    }
+
+    // vertical prefix sums, processed in bands of columns so that
+    // the rows are still read sequentially
+    private void sumColumns() {
+        int bandWidth = 64;
+        int numBands = (stride + bandWidth - 1) / bandWidth;
+        Future<?>[] futures = new Future[numBands];
+        for (int i = 0; i < numBands; i++) {
+            int startX = i * bandWidth;
+            int endX = Math.min(stride, startX + bandWidth);
+            futures[i] = ThreadPool.submit(() -> sumColumns(startX, endX));
+        }
+        ThreadPool.waitFor(futures, ProgressTracker.NULL_TRACKER);
+    }
+
+    private void sumColumns(int startX, int endX) {
+        for (int c = 0; c < 4; c++) {
+            int[] s = sums[c];
+            long[] sq = squares == null ? null : squares[c];
+            for (int y = 2; y <= height; y++) {
+                int offset = y * stride;
+                int prevOffset = offset - stride;
+                for (int x = startX; x < endX; x++) {
+                    s[offset + x] += s[prevOffset + x];
+                }
+                if (sq != null) {
+                    for (int x = startX; x < endX; x++) {
+                        sq[offset + x] += sq[prevOffset + x];
+                    }
+                }
+            }
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the sum of the given channel in the rectangle
+     * from (x1, y1) inclusive to (x2, y2) exclusive.
+     * The coordinates must be within the image.
+     */
+    public long sum(int channel, int x1, int y1, int x2, int y2) {
+        int[] s = sums[channel];
+        int top = y1 * stride;
+        int bottom = y2 * stride;
+        return Integer.toUnsignedLong(s[bottom + x2] - s[bottom + x1] - s[top + x2] + s[top + x1]);
+    }
+
+    /**
+     * Returns the sum of the squared values of the given channel,
+     * see {@link #sum(int, int, int, int, int)}.
+     */
+    public long sumOfSquares(int channel, int x1, int y1, int x2, int y2) {
+        if (squares == null) {
+            throw new IllegalStateException("built without squares");
+        }
+        long[] sq = squares[channel];
+        int top = y1 * stride;
+        int bottom = y2 * stride;
+        return sq[bottom + x2] - sq[bottom + x1] - sq[top + x2] + sq[top + x1];
+    }
+
+    /**
+     * Returns the mean of the given channel in the rectangle,
+     * see {@link #sum(int, int, int, int, int)}.
+     */
+    public float mean(int channel, int x1, int y1, int x2, int y2) {
+        int area = (x2 - x1) * (y2 - y1);
+        return sum(channel, x1, y1, x2, y2) / (float) area;
+    }
+
+    /**
+     * Returns the (population) variance of the given channel in the rectangle,
+     * see {@link #sum(int, int, int, int, int)}.
+     */
+    public float variance(int channel, int x1, int y1, int x2, int y2) {
+        long area = (long) (x2 - x1) * (y2 - y1);
+        long sum = sum(channel, x1, y1, x2, y2);
+        long sumSq = sumOfSquares(channel, x1, y1, x2, y2);
+        double mean = sum / (double) area;
+        double variance = sumSq / (double) area - mean * mean;
+        return (float) Math.max(0, variance);
+    }
+
+    /**
+     * Returns the mean of all channels in the rectangle around (x, y)
+     * with the given radii as a packed ARGB pixel. The rectangle is
+     * clipped to the image, only the pixels inside it are averaged.
+     */
+    public int meanAround(int x, int y, int hRadius, int vRadius) {
+        int x1 = Math.max(0, x - hRadius);
+        int y1 = Math.max(0, y - vRadius);
+        int x2 = Math.min(width, x + hRadius + 1);
+        int y2 = Math.min(height, y + vRadius + 1);
+        int area = (x2 - x1) * (y2 - y1);
+        int halfArea = area / 2;
+
+        int top = y1 * stride;
+        int bottom = y2 * stride;
+        int result = 0;
+        for (int c = 0; c < 4; c++) {
+            int[] s = sums[c];
+            int sum = s[bottom + x2] - s[bottom + x1] - s[top + x2] + s[top + x1];
+            int mean = (int) ((Integer.toUnsignedLong(sum) + halfArea) / area);
+            result |= mean << SHIFTS[c];
+        }
+        return result;
+    }
+}
@@ -18,7 +18,7 @@ package com.jhlabs.image;
 
 import java.awt.image.BufferedImage;
 
-public abstract class TransferFilter extends PointFilter {
+public abstract class TransferFilter extends PointFilter implements GrayFilter {
     protected int[] rTable, gTable, bTable;
     protected boolean initialized = false;
 
@@ -43,9 +43,31 @@ public abstract class TransferFilter extends PointFilter {
         if (!initialized) {
             initialize();
         }
+        if (GrayFilter.isGrayPair(src, dst)) {
+            return filterGrayImage(src, dst);
+        }
         return super.filter(src, dst);
     }
 
+    /**
+     * Transforms the gray values with a lookup table, which gives the
+     * luminance of the transformed color for each gray value.
+     */
+    @Override
+    public void filterGray(byte[] src, byte[] dst, int width, int height) {
+        if (!initialized) {
+            initialize();
+        }
+        byte[] lut = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            int rgb = filterRGB(0, 0, 0xFF_00_00_00 | (i << 16) | (i << 8) | i);
+            lut[i] = (byte) PixelAccess.toGray(rgb);
+        }
+        for (int i = 0; i < src.length; i++) {
+            dst[i] = lut[src[i] & 0xFF];
+        }
+    }
+
     protected void initialize() {
         initialized = true;
         rTable = gTable = bTable = makeTable();
@@ -69,6 +69,11 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
     public static final int BILINEAR = 1;
     public static final int BILINEAR_OLD = 3;
 
+    /**
+     * Use bicubic (Catmull-Rom) interpolation.
+     */
+    public static final int BICUBIC = 4;
+
     /**
      * The action to take for pixels off the image edge.
      */
@@ -115,7 +120,7 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
     /**
      * Set the type of interpolation to perform.
      *
-     * @param interpolation one of NEAREST_NEIGHBOUR or BILINEAR
+     * @param interpolation one of NEAREST_NEIGHBOUR, BILINEAR or BICUBIC
      * @see #getInterpolation
      */
     public void setInterpolation(int interpolation) {
@@ -125,7 +130,7 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
     /**
      * Get the type of interpolation to perform.
      *
-     * @return one of NEAREST_NEIGHBOUR or BILINEAR
+     * @return one of NEAREST_NEIGHBOUR, BILINEAR or BICUBIC
      * @see #setInterpolation
      */
     public int getInterpolation() {
@@ -141,6 +146,31 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
      */
     protected abstract void transformInverse(int x, int y, float[] out);
 
+    /**
+     * Returns an object that describes everything (except the image size)
+     * that the results of {@link #transformInverse} depend on, for example
+     * {@code List.of(centreX, centreY, radius)}. If the key of a render equals
+     * the key of an earlier render of the same filter class with the same
+     * image size, then the inverse coordinates calculated for that render
+     * are reused from the shared {@link DisplacementMap} cache.
+     * It is called after the subclass has prepared its fields in filter().
+     *
+     * The default implementation returns null, which means that
+     * the coordinates are not cached. Subclasses with random or
+     * otherwise unrepeatable mappings must keep it that way.
+     */
+    protected Object getGeometryKey() {
+        return null;
+    }
+
+    /**
+     * A source of inverse coordinates: either the transformInverse
+     * method itself, or a precomputed {@link DisplacementMap}.
+     */
+    private interface CoordinateSource {
+        void transformInverse(int x, int y, float[] out);
+    }
+
     /**
      * Forward transform a rectangle. Used to determine the size of the output image.
      *
@@ -172,10 +202,33 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
 
         int[] inPixels = getRGB(src, 0, 0, srcWidth, srcHeight, null);
 
-        if (interpolation == BILINEAR) {
-            return filterPixelsBilinear(dst, srcWidth, srcHeight, inPixels);
-        } else if (interpolation == NEAREST_NEIGHBOUR) {
-            return filterPixelsNN(dst, srcWidth, srcHeight, inPixels);
+        if (interpolation == BILINEAR || interpolation == NEAREST_NEIGHBOUR || interpolation == BICUBIC) {
+            Object key = getGeometryKey();
+            DisplacementMap map = null;
+            if (key != null && DisplacementMap.isCacheable(srcWidth, srcHeight)) {
+                map = DisplacementMap.getCached(this, srcWidth, srcHeight, key);
+                if (map == null) {
+                    // calculating the map takes about as long as the sampling
+                    pt = createProgressTracker(2 * srcHeight);
+                    map = DisplacementMap.compute(this, srcWidth, srcHeight, key, pt);
+                    DisplacementMap.putInCache(this, map);
+                } else {
+                    pt = createProgressTracker(srcHeight);
+                }
+            } else {
+                pt = createProgressTracker(srcHeight);
+            }
+            CoordinateSource coords = map == null ? this::transformInverse : map::lookup;
+
+            if (interpolation == BILINEAR) {
+                dst = filterPixelsBilinear(dst, srcWidth, srcHeight, inPixels, coords);
+            } else if (interpolation == NEAREST_NEIGHBOUR) {
+                dst = filterPixelsNN(dst, srcWidth, srcHeight, inPixels, coords);
+            } else {
+                dst = filterPixelsBicubic(dst, srcWidth, srcHeight, inPixels, coords);
+            }
+            finishProgressTracker();
+            return dst;
         } else if (interpolation == BILINEAR_OLD) {
             return filterPixelsBilinearOLD(dst, srcWidth, srcHeight, inPixels);
         } else if (interpolation == NEAREST_NEIGHBOUR_OLD) {
@@ -253,14 +306,12 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
         return dst;
     }
 
-    protected BufferedImage filterPixelsNN(BufferedImage dst, int width, int height, int[] inPixels) {
+    private BufferedImage filterPixelsNN(BufferedImage dst, int width, int height, int[] inPixels, CoordinateSource coords) {
         int srcWidth = width;
         int srcHeight = height;
         int outWidth = width;
         int outHeight = height;
 
-        pt = createProgressTracker(outHeight);
-
         @SuppressWarnings("unchecked")
         Future<int[]>[] resultLines = new Future[outHeight];
 
@@ -272,7 +323,7 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
                 int[] outPixels = new int[outWidth];
 
                 for (int x = 0; x < outWidth; x++) {
-                    transformInverse(x, finalY, out);
+                    coords.transformInverse(x, finalY, out);
                     srcX = (int) out[0];
                     srcY = (int) out[1];
                     // int casting rounds towards zero, so we check out[0] < 0, not srcX < 0
@@ -285,12 +336,11 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
             resultLines[finalY] = ThreadPool.submit2(calculateLineTask);
         }
         ThreadPool.waitFor2(resultLines, dst, width, pt);
-        finishProgressTracker();
 
         return dst;
     }
 
-    private BufferedImage filterPixelsBilinear(BufferedImage dst, int width, int height, int[] inPixels) {
+    private BufferedImage filterPixelsBilinear(BufferedImage dst, int width, int height, int[] inPixels, CoordinateSource coords) {
         int srcWidth = width;
         int srcHeight = height;
         int srcWidth1 = width - 1;
@@ -300,8 +350,6 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
 //        int outX, outY;
 //		int index = 0;
 
-        pt = createProgressTracker(outHeight);
-
         @SuppressWarnings("unchecked")
         Future<int[]>[] resultLines = new Future[outHeight];
 
@@ -311,7 +359,7 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
             Callable<int[]> calculateLineTask = () -> {
                 int[] outPixels = new int[outWidth];
                 for (int x = 0; x < outWidth; x++) {
-                    transformInverse(x, finalY, out);
+                    coords.transformInverse(x, finalY, out);
                     int srcX = (int) FastMath.floor(out[0]);
                     int srcY = (int) FastMath.floor(out[1]);
                     float xWeight = out[0] - srcX;
@@ -340,11 +388,95 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
             resultLines[finalY] = ThreadPool.submit2(calculateLineTask);
         }
         ThreadPool.waitFor2(resultLines, dst, width, pt);
-        finishProgressTracker();
 
         return dst;
     }
 
+    private BufferedImage filterPixelsBicubic(BufferedImage dst, int width, int height, int[] inPixels, CoordinateSource coords) {
+        int srcWidth = width;
+        int srcHeight = height;
+
+        @SuppressWarnings("unchecked")
+        Future<int[]>[] resultLines = new Future[height];
+
+        for (int y = 0; y < height; y++) {
+            int finalY = y;
+            Callable<int[]> calculateLineTask = () -> {
+                float[] out = new float[2];
+                int[] neighbours = new int[16];
+                float[] wx = new float[4];
+                float[] wy = new float[4];
+                int[] outPixels = new int[width];
+                for (int x = 0; x < width; x++) {
+                    coords.transformInverse(x, finalY, out);
+                    int srcX = (int) FastMath.floor(out[0]);
+                    int srcY = (int) FastMath.floor(out[1]);
+                    float xWeight = out[0] - srcX;
+                    float yWeight = out[1] - srcY;
+
+                    if ((srcX >= 1) && (srcX < srcWidth - 2) && (srcY >= 1) && (srcY < srcHeight - 2)) {
+                        // all 16 neighbours are in the image
+                        int i = srcWidth * (srcY - 1) + srcX - 1;
+                        for (int row = 0; row < 4; row++) {
+                            System.arraycopy(inPixels, i, neighbours, row * 4, 4);
+                            i += srcWidth;
+                        }
+                    } else {
+                        for (int row = 0; row < 4; row++) {
+                            for (int col = 0; col < 4; col++) {
+                                neighbours[row * 4 + col] = getPixelBL(inPixels,
+                                        srcX - 1 + col, srcY - 1 + row, srcWidth, srcHeight);
+                            }
+                        }
+                    }
+                    catmullRomWeights(xWeight, wx);
+                    catmullRomWeights(yWeight, wy);
+                    outPixels[x] = bicubicInterpolate(wx, wy, neighbours);
+                }
+                return outPixels;
+            };
+
+            resultLines[finalY] = ThreadPool.submit2(calculateLineTask);
+        }
+        ThreadPool.waitFor2(resultLines, dst, width, pt);
+
+        return dst;
+    }
+
+    /**
+     * Catmull-Rom interpolation of the 4x4 neighbours (in row-major order)
+     * of a point, where wx and wy are the weights (see {@link #catmullRomWeights})
+     * for the fractional parts of its coordinates.
+     */
+    private static int bicubicInterpolate(float[] wx, float[] wy, int[] neighbours) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            float sum = 0;
+            for (int row = 0; row < 4; row++) {
+                float rowSum = 0;
+                for (int col = 0; col < 4; col++) {
+                    rowSum += wx[col] * ((neighbours[row * 4 + col] >> shift) & 0xFF);
+                }
+                sum += wy[row] * rowSum;
+            }
+            result |= PixelUtils.clamp((int) (sum + 0.5f)) << shift;
+        }
+        return result;
+    }
+
+    /**
+     * Puts the Catmull-Rom weights of the 4 neighbours into the given array,
+     * where t is the fractional part of the coordinate.
+     */
+    private static void catmullRomWeights(float t, float[] weights) {
+        float t2 = t * t;
+        float t3 = t2 * t;
+        weights[0] = 0.5f * (-t3 + 2 * t2 - t);
+        weights[1] = 0.5f * (3 * t3 - 5 * t2 + 2);
+        weights[2] = 0.5f * (-3 * t3 + 4 * t2 + t);
+        weights[3] = 0.5f * (t3 - t2);
+    }
+
     private int getPixelBL(int[] pixels, int x, int y, int width, int height) {
         if ((x < 0) || (x >= width)) {  // x out of range
             if ((y < 0) || (y >= height)) { // y also out of range {
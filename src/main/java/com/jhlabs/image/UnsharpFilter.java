@@ -16,6 +16,8 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import pixelitor.utils.ScratchPool;
+
 import java.awt.image.BufferedImage;
 
 /**
@@ -85,57 +87,81 @@ public class UnsharpFilter extends GaussianFilter {
             dst = createCompatibleDestImage(src, null);
         }
 
-        int[] inPixels = new int[width * height];
-        int[] outPixels = new int[width * height];
-//        src.getRGB(0, 0, width, height, inPixels, 0, width);
-        getRGB(src, 0, 0, width, height, inPixels);
-
-        if (radius > 0) {
-            convolveAndTranspose(kernel, inPixels, outPixels, width, height, alpha, alpha && premultiplyAlpha, false, CLAMP_EDGES, pt);
-            convolveAndTranspose(kernel, outPixels, inPixels, height, width, alpha, false, alpha && premultiplyAlpha, CLAMP_EDGES, pt);
-        }
+        int[] inPixels = ScratchPool.acquireIntArray(width * height);
+        int[] outPixels = ScratchPool.acquireIntArray(width * height);
+        try {
+//            src.getRGB(0, 0, width, height, inPixels, 0, width);
+            getRGB(src, 0, 0, width, height, inPixels);
 
-        // src.getRGB(0, 0, width, height, outPixels, 0, width);
-        // TODO system.arraycopy would be even faster
-        getRGB(src, 0, 0, width, height, outPixels);
-
-        float a = 4 * amount;
+            if (radius > 0) {
+                blur(inPixels, outPixels, width, height, pt);
+            }
 
-        int index = 0;
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int rgb1 = outPixels[index];
-                int r1 = (rgb1 >> 16) & 0xff;
-                int g1 = (rgb1 >> 8) & 0xff;
-                int b1 = rgb1 & 0xff;
-
-                int rgb2 = inPixels[index];
-                int r2 = (rgb2 >> 16) & 0xff;
-                int g2 = (rgb2 >> 8) & 0xff;
-                int b2 = rgb2 & 0xff;
-
-                if (Math.abs(r1 - r2) >= threshold) {
-                    r1 = PixelUtils.clamp((int) ((a + 1) * (r1 - r2) + r2));
-                }
-                if (Math.abs(g1 - g2) >= threshold) {
-                    g1 = PixelUtils.clamp((int) ((a + 1) * (g1 - g2) + g2));
-                }
-                if (Math.abs(b1 - b2) >= threshold) {
-                    b1 = PixelUtils.clamp((int) ((a + 1) * (b1 - b2) + b2));
+            // src.getRGB(0, 0, width, height, outPixels, 0, width);
+            // TODO system.arraycopy would be even faster
+            getRGB(src, 0, 0, width, height, outPixels);
+
+            float a = 4 * amount;
+
+            int index = 0;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int rgb1 = outPixels[index];
+                    int r1 = (rgb1 >> 16) & 0xff;
+                    int g1 = (rgb1 >> 8) & 0xff;
+                    int b1 = rgb1 & 0xff;
+
+                    int rgb2 = inPixels[index];
+                    int r2 = (rgb2 >> 16) & 0xff;
+                    int g2 = (rgb2 >> 8) & 0xff;
+                    int b2 = rgb2 & 0xff;
+
+                    if (Math.abs(r1 - r2) >= threshold) {
+                        r1 = PixelUtils.clamp((int) ((a + 1) * (r1 - r2) + r2));
+                    }
+                    if (Math.abs(g1 - g2) >= threshold) {
+                        g1 = PixelUtils.clamp((int) ((a + 1) * (g1 - g2) + g2));
+                    }
+                    if (Math.abs(b1 - b2) >= threshold) {
+                        b1 = PixelUtils.clamp((int) ((a + 1) * (b1 - b2) + b2));
+                    }
+
+                    inPixels[index] = (rgb1 & 0xff000000) | (r1 << 16) | (g1 << 8) | b1;
+                    index++;
                 }
-
-                inPixels[index] = (rgb1 & 0xff000000) | (r1 << 16) | (g1 << 8) | b1;
-                index++;
             }
-        }
 
-        dst.setRGB(0, 0, width, height, inPixels, 0, width);
+            setRGB(dst, 0, 0, width, height, inPixels);
 
-        finishProgressTracker();
+            finishProgressTracker();
+        } finally {
+            ScratchPool.release(inPixels);
+            ScratchPool.release(outPixels);
+        }
 
         return dst;
     }
 
+    /**
+     * Sharpens the 8-bit values of a gray image, the dst array
+     * can be the same as the src array.
+     */
+    @Override
+    public void filterGray(byte[] src, byte[] dst, int width, int height) {
+        byte[] blurred = new byte[src.length];
+        super.filterGray(src, blurred, width, height);
+
+        float a = 4 * amount;
+        for (int i = 0; i < src.length; i++) {
+            int v1 = src[i] & 0xFF;
+            int v2 = blurred[i] & 0xFF;
+            if (Math.abs(v1 - v2) >= threshold) {
+                v1 = PixelUtils.clamp((int) ((a + 1) * (v1 - v2) + v2));
+            }
+            dst[i] = (byte) v1;
+        }
+    }
+
     @Override
     public String toString() {
         return "Blur/Unsharp Mask...";
@@ -16,6 +16,7 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import pixelitor.ThreadPool;
 import pixelitor.utils.ProgressTracker;
 
 import java.awt.Rectangle;
@@ -24,6 +25,7 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
+import java.util.concurrent.Future;
 
 /**
  * A filter which performs a box blur with a different blur radius at each pixel. The radius can either be specified by
@@ -65,7 +67,7 @@ public class VariableBlurFilter extends AbstractBufferedImageOp {
         int width = src.getWidth();
         int height = src.getHeight();
 
-        pt = createProgressTracker(iterations * (width + height));
+        pt = createProgressTracker(iterations * height);
 
         if (dst == null) {
             dst = createCompatibleDestImage(src, null);
@@ -75,13 +77,23 @@ public class VariableBlurFilter extends AbstractBufferedImageOp {
         int[] outPixels = new int[width * height];
         getRGB(src, 0, 0, width, height, inPixels);
 
+        int[] mask = null;
+        if (blurMask != null) {
+            mask = new int[width * height];
+            getRGB(blurMask, 0, 0, width, height, mask);
+        }
+
         if (premultiplyAlpha) {
             ImageMath.premultiply(inPixels, 0, inPixels.length);
         }
 
         for (int i = 0; i < iterations; i++) {
-            blur(inPixels, outPixels, width, height, hRadius, 1, pt);
-            blur(outPixels, inPixels, height, width, vRadius, 2, pt);
+            SummedAreaTable sat = SummedAreaTable.build(inPixels, width, height, false);
+            blur(sat, mask, outPixels, width, height, pt);
+
+            int[] tmp = inPixels;
+            inPixels = outPixels;
+            outPixels = tmp;
         }
 
         if (premultiplyAlpha) {
@@ -123,90 +135,36 @@ public class VariableBlurFilter extends AbstractBufferedImageOp {
         return null;
     }
 
-    public void blur(int[] in, int[] out, int width, int height, float radius, int pass, ProgressTracker pt) {
-        int widthMinus1 = width - 1;
-        int[] r = new int[width];
-        int[] g = new int[width];
-        int[] b = new int[width];
-        int[] a = new int[width];
-        int[] mask = new int[width];
-
-        int inIndex = 0;
-
+    /**
+     * Averages a box around each pixel, the size of the box
+     * can be different at every pixel. Thanks to the summed-area
+     * table, the cost doesn't depend on the box size.
+     */
+    private void blur(SummedAreaTable sat, int[] mask, int[] out, int width, int height, ProgressTracker pt) {
+        Future<?>[] resultLines = new Future[height];
         for (int y = 0; y < height; y++) {
-            int outIndex = y;
-
-            if (blurMask != null) {
-                if (pass == 1) {
-                    getRGB(blurMask, 0, y, width, 1, mask);
-                } else {
-                    getRGB(blurMask, y, 0, 1, width, mask);
-                }
-            }
-
-            for (int x = 0; x < width; x++) {
-                int argb = in[inIndex + x];
-                a[x] = (argb >> 24) & 0xff;
-                r[x] = (argb >> 16) & 0xff;
-                g[x] = (argb >> 8) & 0xff;
-                b[x] = argb & 0xff;
-                if (x != 0) {
-                    a[x] += a[x - 1];
-                    r[x] += r[x - 1];
-                    g[x] += g[x - 1];
-                    b[x] += b[x - 1];
-                }
-            }
+            int finalY = y;
+            resultLines[y] = ThreadPool.submit(() -> blurLine(sat, mask, out, width, finalY));
+        }
+        ThreadPool.waitFor(resultLines, pt);
+    }
 
-            for (int x = 0; x < width; x++) {
-                // Get the blur radius at x, y
-                int ra;
-                if (blurMask != null) {
-                    if (pass == 1) {
-                        ra = (int) ((mask[x] & 0xff) * hRadius / 255.0f);
-                    } else {
-                        ra = (int) ((mask[x] & 0xff) * vRadius / 255.0f);
-                    }
-                } else {
-                    if (pass == 1) {
-                        ra = (int) (blurRadiusAt(x, y) * hRadius);
-                    } else {
-                        ra = (int) (blurRadiusAt(y, x) * vRadius);
-                    }
-                }
-
-                int divisor = 2 * ra + 1;
-                int ta = 0, tr = 0, tg = 0, tb = 0;
-                int i1 = x + ra;
-                if (i1 > widthMinus1) {
-                    int f = i1 - widthMinus1;
-                    int l = widthMinus1;
-                    ta += (a[l] - a[l - 1]) * f;
-                    tr += (r[l] - r[l - 1]) * f;
-                    tg += (g[l] - g[l - 1]) * f;
-                    tb += (b[l] - b[l - 1]) * f;
-                    i1 = widthMinus1;
-                }
-                int i2 = x - ra - 1;
-                if (i2 < 0) {
-                    ta -= a[0] * i2;
-                    tr -= r[0] * i2;
-                    tg -= g[0] * i2;
-                    tb -= b[0] * i2;
-                    i2 = 0;
-                }
-
-                ta += a[i1] - a[i2];
-                tr += r[i1] - r[i2];
-                tg += g[i1] - g[i2];
-                tb += b[i1] - b[i2];
-                out[outIndex] = ((ta / divisor) << 24) | ((tr / divisor) << 16) | ((tg / divisor) << 8) | (tb / divisor);
-
-                outIndex += height;
+    private void blurLine(SummedAreaTable sat, int[] mask, int[] out, int width, int y) {
+        int index = y * width;
+        for (int x = 0; x < width; x++) {
+            // Get the blur radius at x, y
+            int hr, vr;
+            if (mask != null) {
+                int m = mask[index] & 0xff;
+                hr = (int) (m * hRadius / 255.0f);
+                vr = (int) (m * vRadius / 255.0f);
+            } else {
+                float f = blurRadiusAt(x, y);
+                hr = (int) (f * hRadius);
+                vr = (int) (f * vRadius);
             }
-            inIndex += width;
-
-            pt.unitDone();
+            out[index] = sat.meanAround(x, y, hr, vr);
+            index++;
         }
     }
 
@@ -22,6 +22,7 @@ import java.awt.Shape;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 /**
  * A filter which produces a water ripple distortion.
@@ -215,6 +216,11 @@ public class WaterFilter extends TransformFilter {
         }
     }
 
+    @Override
+    protected Object getGeometryKey() {
+        return List.of(wavelength, amplitude, phase, icentreX, icentreY, radius, radius2);
+    }
+
     @Override
     public String toString() {
         return "Distort/Water Ripples...";
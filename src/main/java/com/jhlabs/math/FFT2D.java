@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.math;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
+
+import java.util.concurrent.Future;
+
+/**
+ * A 2D complex FFT on row-major float arrays, built on {@link FFTPlan}s.
+ *
+ * The columns are transformed in blocks: the values of several
+ * neighboring columns are gathered row by row into a scratch buffer,
+ * so that the memory is read sequentially instead of column-wise.
+ */
+public final class FFT2D {
+    // the number of columns that are transformed together
+    private static final int COLUMN_BLOCK = 16;
+
+    private final int cols;
+    private final int rows;
+    private final FFTPlan rowPlan;
+    private final FFTPlan colPlan;
+
+    /**
+     * Both dimensions must be powers of two.
+     */
+    public FFT2D(int cols, int rows) {
+        this.cols = cols;
+        this.rows = rows;
+        rowPlan = FFTPlan.forSize(cols);
+        colPlan = FFTPlan.forSize(rows);
+    }
+
+    /**
+     * Creates a transform whose dimensions are padded to the next powers of two.
+     */
+    public static FFT2D forMinSize(int minCols, int minRows) {
+        return new FFT2D(FFTPlan.paddedSize(minCols), FFTPlan.paddedSize(minRows));
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Transforms the arrays on the calling thread.
+     */
+    public void transform(float[] re, float[] im, boolean forward) {
+        transformRows(re, im, 0, rows, forward);
+        float[] blockRe = new float[COLUMN_BLOCK * rows];
+        float[] blockIm = new float[COLUMN_BLOCK * rows];
+        for (int x = 0; x < cols; x += COLUMN_BLOCK) {
+            transformColumns(re, im, x, Math.min(cols, x + COLUMN_BLOCK),
+                    blockRe, blockIm, forward);
+        }
+    }
+
+    /**
+     * Transforms the arrays using the thread pool.
+     */
+    public void transformInParallel(float[] re, float[] im, boolean forward) {
+        int numBands = Math.min(rows, 4 * Runtime.getRuntime().availableProcessors());
+        int bandHeight = (rows + numBands - 1) / numBands;
+        int numRowTasks = (rows + bandHeight - 1) / bandHeight;
+        Future<?>[] rowFutures = new Future[numRowTasks];
+        for (int i = 0; i < numRowTasks; i++) {
+            int startY = i * bandHeight;
+            int endY = Math.min(rows, startY + bandHeight);
+            rowFutures[i] = ThreadPool.submit(() ->
+                    transformRows(re, im, startY, endY, forward));
+        }
+        ThreadPool.waitFor(rowFutures, ProgressTracker.NULL_TRACKER);
+
+        int numColumnTasks = (cols + COLUMN_BLOCK - 1) / COLUMN_BLOCK;
+        Future<?>[] columnFutures = new Future[numColumnTasks];
+        for (int i = 0; i < numColumnTasks; i++) {
+            int startX = i * COLUMN_BLOCK;
+            int endX = Math.min(cols, startX + COLUMN_BLOCK);
+            columnFutures[i] = ThreadPool.submit(() -> {
+                float[] blockRe = new float[COLUMN_BLOCK * rows];
+                float[] blockIm = new float[COLUMN_BLOCK * rows];
+                transformColumns(re, im, startX, endX, blockRe, blockIm, forward);
+            });
+        }
+        ThreadPool.waitFor(columnFutures, ProgressTracker.NULL_TRACKER);
+    }
+
+    private void transformRows(float[] re, float[] im, int startY, int endY, boolean forward) {
+        for (int y = startY; y < endY; y++) {
+            rowPlan.transform(re, im, y * cols, forward);
+        }
+    }
+
+    private void transformColumns(float[] re, float[] im, int startX, int endX,
+                                  float[] blockRe, float[] blockIm, boolean forward) {
+        int blockWidth = endX - startX;
+
+        // gather: each column becomes contiguous in the block buffer
+        for (int y = 0; y < rows; y++) {
+            int rowOffset = y * cols + startX;
+            for (int c = 0; c < blockWidth; c++) {
+                blockRe[c * rows + y] = re[rowOffset + c];
+                blockIm[c * rows + y] = im[rowOffset + c];
+            }
+        }
+
+        for (int c = 0; c < blockWidth; c++) {
+            colPlan.transform(blockRe, blockIm, c * rows, forward);
+        }
+
+        // scatter back
+        for (int y = 0; y < rows; y++) {
+            int rowOffset = y * cols + startX;
+            for (int c = 0; c < blockWidth; c++) {
+                re[rowOffset + c] = blockRe[c * rows + y];
+                im[rowOffset + c] = blockIm[c * rows + y];
+            }
+        }
+    }
+}
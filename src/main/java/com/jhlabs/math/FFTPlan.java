@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.math;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A reusable plan for the radix-2 complex FFT of a given
+ * (power of two) size, with precomputed twiddle factors and
+ * bit reversal permutation.
+ *
+ * The plans are cached and immutable, therefore they can be shared
+ * between threads. Sizes that are not a power of two must be padded,
+ * see {@link #paddedSize(int)}.
+ */
+public final class FFTPlan {
+    private static final Map<Integer, FFTPlan> cache = new ConcurrentHashMap<>();
+
+    private final int size;
+    private final int[] bitReversed;
+    private final float[] cos;
+    private final float[] sin;
+
+    private FFTPlan(int size) {
+        this.size = size;
+
+        int logSize = Integer.numberOfTrailingZeros(size);
+        bitReversed = new int[size];
+        for (int i = 0; i < size; i++) {
+            bitReversed[i] = logSize == 0 ? 0 : Integer.reverse(i) >>> (32 - logSize);
+        }
+
+        int half = Math.max(1, size / 2);
+        cos = new float[half];
+        sin = new float[half];
+        for (int k = 0; k < half; k++) {
+            double angle = 2.0 * Math.PI * k / size;
+            cos[k] = (float) Math.cos(angle);
+            sin[k] = (float) Math.sin(angle);
+        }
+    }
+
+    /**
+     * Returns the shared plan for the given size, which must be a power of two.
+     */
+    public static FFTPlan forSize(int size) {
+        if (size <= 0 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("size = " + size);
+        }
+        return cache.computeIfAbsent(size, FFTPlan::new);
+    }
+
+    /**
+     * Returns the smallest power of two that is at least the given size.
+     */
+    public static int paddedSize(int minSize) {
+        if (minSize <= 1) {
+            return 1;
+        }
+        return Integer.highestOneBit(minSize - 1) << 1;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * In-place transform of the first size elements of the arrays.
+     * The inverse transform also divides by the size.
+     */
+    public void transform(float[] re, float[] im, boolean forward) {
+        transform(re, im, 0, forward);
+    }
+
+    /**
+     * In-place transform of size elements starting at the given offset.
+     */
+    public void transform(float[] re, float[] im, int offset, boolean forward) {
+        for (int i = 0; i < size; i++) {
+            int j = bitReversed[i];
+            if (i < j) {
+                int a = offset + i;
+                int b = offset + j;
+                float t = re[a];
+                re[a] = re[b];
+                re[b] = t;
+                t = im[a];
+                im[a] = im[b];
+                im[b] = t;
+            }
+        }
+
+        float sign = forward ? -1.0f : 1.0f;
+        for (int blockSize = 2; blockSize <= size; blockSize <<= 1) {
+            int half = blockSize >> 1;
+            int step = size / blockSize;
+            for (int start = offset, end = offset + size; start < end; start += blockSize) {
+                for (int k = 0; k < half; k++) {
+                    float wr = cos[k * step];
+                    float wi = sign * sin[k * step];
+                    int i = start + k;
+                    int j = i + half;
+                    float tr = wr * re[j] - wi * im[j];
+                    float ti = wr * im[j] + wi * re[j];
+                    re[j] = re[i] - tr;
+                    im[j] = im[i] - ti;
+                    re[i] += tr;
+                    im[i] += ti;
+                }
+            }
+        }
+
+        if (!forward) {
+            float scale = 1.0f / size;
+            for (int i = offset, end = offset + size; i < end; i++) {
+                re[i] *= scale;
+                im[i] *= scale;
+            }
+        }
+    }
+}
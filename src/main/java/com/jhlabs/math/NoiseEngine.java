@@ -0,0 +1,648 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.math;
+
+import java.util.Random;
+
+/**
+ * Seeded gradient (Perlin) and value noise with precomputed lattices.
+ *
+ * An instance never changes after construction, so it can be used
+ * from several threads without synchronization, and reseeding means
+ * creating a new instance. The methods don't allocate memory.
+ *
+ * The "row" methods evaluate a whole scanline, and look up the
+ * lattice corners only when a new lattice cell is entered.
+ *
+ * The tileable variants take a lattice period for both axes
+ * (0 means no tiling): the noise repeats after that many lattice cells,
+ * and the period is doubled for each fBm octave.
+ *
+ * The static methods of {@link Noise} use a legacy engine (see
+ * {@link #createLegacy(long)}), which reproduces the gradient tables
+ * and the lattice coordinates of the original Perlin noise code.
+ */
+public final class NoiseEngine {
+    private static final int SIZE = 256;
+    private static final int MASK = SIZE - 1;
+
+    // the gradient noise is scaled like in the original Noise class
+    private static final float SCALE_1D = 2.3f;
+    private static final float SCALE_2D = 1.5f;
+    private static final float SCALE_3D = 1.5f;
+
+    /**
+     * The fixed-point representation of 1.0 (16.16 format)
+     */
+    public static final int FIXED_ONE = 1 << 16;
+    private static final int FIXED_FRACTION_MASK = FIXED_ONE - 1;
+
+    private static final int FADE_LUT_BITS = 10;
+    private static final int FADE_LUT_SHIFT = 16 - FADE_LUT_BITS;
+
+    // the original code added this to the coordinates
+    // in order to make them positive before truncating them
+    private static final float LEGACY_OFFSET = 0x1000;
+
+    /**
+     * The interpolation curve between the lattice points
+     */
+    public enum Fade {
+        /**
+         * The cubic smoothstep of the original Perlin noise
+         */
+        CUBIC {
+            @Override
+            float apply(float t) {
+                return t * t * (3.0f - 2.0f * t);
+            }
+        },
+        /**
+         * The quintic smoothstep of the improved Perlin noise,
+         * its second derivative is also continuous
+         */
+        QUINTIC {
+            @Override
+            float apply(float t) {
+                return t * t * t * (t * (t * 6 - 15) + 10);
+            }
+        };
+
+        abstract float apply(float t);
+    }
+
+    private final long seed;
+    private final Fade fadeCurve;
+    private final int[] fixedFade;
+
+    // added to the floating-point coordinates, zero except in legacy mode
+    private final float offset;
+
+    // the permutation table, doubled to avoid index wrapping
+    private final int[] perm = new int[SIZE * 2];
+
+    // used for the last (z) lattice step of the 3D gradient noise,
+    // the same as perm, except in legacy mode, where it's the identity
+    private final int[] permZ;
+
+    private final float[] grad1 = new float[SIZE];
+    private final float[] grad2 = new float[SIZE * 2]; // x, y pairs
+    private final float[] grad3 = new float[SIZE * 3]; // x, y, z triplets
+
+    private final float[] values = new float[SIZE]; // in the range -1..1
+    private final int[] fixedValues = new int[SIZE];
+
+    public NoiseEngine(long seed, Fade fadeCurve) {
+        this(seed, fadeCurve, false);
+    }
+
+    private NoiseEngine(long seed, Fade fadeCurve, boolean legacy) {
+        this.seed = seed;
+        this.fadeCurve = fadeCurve;
+        fixedFade = createFixedFadeTable(fadeCurve);
+        Random random = new Random(seed);
+
+        if (legacy) {
+            offset = LEGACY_OFFSET;
+            initLegacyTables(random);
+            permZ = new int[SIZE * 2];
+            for (int i = 0; i < permZ.length; i++) {
+                permZ[i] = i & MASK;
+            }
+        } else {
+            offset = 0;
+            initTables(random);
+            permZ = perm;
+        }
+    }
+
+    /**
+     * Creates an engine with the cubic fade curve, the gradient tables,
+     * and the lattice coordinates of the original Perlin noise code, so
+     * that the old filters look exactly as before. The coordinates
+     * must be greater than -4096, and the tileable and fixed-point
+     * methods are not meant to be used in this mode.
+     */
+    public static NoiseEngine createLegacy(long seed) {
+        return new NoiseEngine(seed, Fade.CUBIC, true);
+    }
+
+    private void initTables(Random random) {
+        for (int i = 0; i < SIZE; i++) {
+            perm[i] = i;
+        }
+        for (int i = SIZE - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = perm[i];
+            perm[i] = perm[j];
+            perm[j] = tmp;
+        }
+        System.arraycopy(perm, 0, perm, SIZE, SIZE);
+
+        for (int i = 0; i < SIZE; i++) {
+            grad1[i] = 2 * random.nextFloat() - 1;
+
+            // random unit vectors, the rejection sampling
+            // avoids the bias towards the diagonals
+            float x, y, z, len;
+            do {
+                x = 2 * random.nextFloat() - 1;
+                y = 2 * random.nextFloat() - 1;
+                len = x * x + y * y;
+            } while (len > 1 || len < 0.0001f);
+            len = (float) Math.sqrt(len);
+            grad2[2 * i] = x / len;
+            grad2[2 * i + 1] = y / len;
+
+            do {
+                x = 2 * random.nextFloat() - 1;
+                y = 2 * random.nextFloat() - 1;
+                z = 2 * random.nextFloat() - 1;
+                len = x * x + y * y + z * z;
+            } while (len > 1 || len < 0.0001f);
+            len = (float) Math.sqrt(len);
+            grad3[3 * i] = x / len;
+            grad3[3 * i + 1] = y / len;
+            grad3[3 * i + 2] = z / len;
+
+            values[i] = 2 * random.nextFloat() - 1;
+            fixedValues[i] = (int) (values[i] * FIXED_ONE);
+        }
+    }
+
+    // the table initialization of the original Perlin noise code,
+    // including its quantized gradients and its permutation algorithm
+    private void initLegacyTables(Random random) {
+        float[] g = new float[3];
+        for (int i = 0; i < SIZE; i++) {
+            perm[i] = i;
+
+            grad1[i] = legacyRandomComponent(random);
+
+            g[0] = legacyRandomComponent(random);
+            g[1] = legacyRandomComponent(random);
+            float len = (float) Math.sqrt(g[0] * g[0] + g[1] * g[1]);
+            grad2[2 * i] = g[0] / len;
+            grad2[2 * i + 1] = g[1] / len;
+
+            g[0] = legacyRandomComponent(random);
+            g[1] = legacyRandomComponent(random);
+            g[2] = legacyRandomComponent(random);
+            len = (float) Math.sqrt(g[0] * g[0] + g[1] * g[1] + g[2] * g[2]);
+            grad3[3 * i] = g[0] / len;
+            grad3[3 * i + 1] = g[1] / len;
+            grad3[3 * i + 2] = g[2] / len;
+        }
+
+        for (int i = SIZE - 1; i >= 0; i--) {
+            int j = legacyRandom(random) % SIZE;
+            int tmp = perm[i];
+            perm[i] = perm[j];
+            perm[j] = tmp;
+        }
+        System.arraycopy(perm, 0, perm, SIZE, SIZE);
+
+        // not used by the original code, but the value noise should also work
+        for (int i = 0; i < SIZE; i++) {
+            values[i] = 2 * random.nextFloat() - 1;
+            fixedValues[i] = (int) (values[i] * FIXED_ONE);
+        }
+    }
+
+    private static float legacyRandomComponent(Random random) {
+        return (float) ((legacyRandom(random) % (SIZE + SIZE)) - SIZE) / SIZE;
+    }
+
+    private static int legacyRandom(Random random) {
+        return random.nextInt() & 0x7fffffff;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * 1D gradient noise, mostly in the range -1..1
+     */
+    public float gradient1(float x) {
+        x += offset;
+        int cellX = fastFloor(x);
+        float rx0 = x - cellX;
+        float rx1 = rx0 - 1.0f;
+
+        float u = rx0 * grad1[perm[cellX & MASK]];
+        float v = rx1 * grad1[perm[(cellX + 1) & MASK]];
+        return SCALE_1D * lerp(fade(rx0), u, v);
+    }
+
+    /**
+     * 2D gradient noise, mostly in the range -1..1
+     */
+    public float gradient2(float x, float y) {
+        return gradient2(x, y, 0, 0);
+    }
+
+    /**
+     * Tileable 2D gradient noise that repeats after the given number of lattice cells.
+     */
+    public float gradient2(float x, float y, int periodX, int periodY) {
+        x += offset;
+        y += offset;
+        int cellX = fastFloor(x);
+        int cellY = fastFloor(y);
+        float rx0 = x - cellX;
+        float ry0 = y - cellY;
+        float rx1 = rx0 - 1.0f;
+        float ry1 = ry0 - 1.0f;
+
+        int a = perm[wrap(cellX, periodX)];
+        int b = perm[wrap(cellX + 1, periodX)];
+        int j0 = wrap(cellY, periodY);
+        int j1 = wrap(cellY + 1, periodY);
+
+        int g00 = perm[a + j0] << 1;
+        int g10 = perm[b + j0] << 1;
+        int g01 = perm[a + j1] << 1;
+        int g11 = perm[b + j1] << 1;
+
+        float sx = fade(rx0);
+        float bottom = lerp(sx,
+                rx0 * grad2[g00] + ry0 * grad2[g00 + 1],
+                rx1 * grad2[g10] + ry0 * grad2[g10 + 1]);
+        float top = lerp(sx,
+                rx0 * grad2[g01] + ry1 * grad2[g01 + 1],
+                rx1 * grad2[g11] + ry1 * grad2[g11 + 1]);
+
+        return SCALE_2D * lerp(fade(ry0), bottom, top);
+    }
+
+    /**
+     * 3D gradient noise, mostly in the range -1..1
+     */
+    public float gradient3(float x, float y, float z) {
+        x += offset;
+        y += offset;
+        z += offset;
+        int cellX = fastFloor(x);
+        int cellY = fastFloor(y);
+        int cellZ = fastFloor(z);
+        float rx0 = x - cellX;
+        float ry0 = y - cellY;
+        float rz0 = z - cellZ;
+        float rx1 = rx0 - 1.0f;
+        float ry1 = ry0 - 1.0f;
+        float rz1 = rz0 - 1.0f;
+
+        int a = perm[cellX & MASK];
+        int b = perm[(cellX + 1) & MASK];
+        int j0 = cellY & MASK;
+        int j1 = (cellY + 1) & MASK;
+        int k0 = cellZ & MASK;
+        int k1 = (cellZ + 1) & MASK;
+
+        int aa = perm[a + j0];
+        int ba = perm[b + j0];
+        int ab = perm[a + j1];
+        int bb = perm[b + j1];
+
+        float sx = fade(rx0);
+        float sy = fade(ry0);
+
+        float near = lerp(sy,
+                lerp(sx,
+                        dot3(permZ[aa + k0], rx0, ry0, rz0),
+                        dot3(permZ[ba + k0], rx1, ry0, rz0)),
+                lerp(sx,
+                        dot3(permZ[ab + k0], rx0, ry1, rz0),
+                        dot3(permZ[bb + k0], rx1, ry1, rz0)));
+        float far = lerp(sy,
+                lerp(sx,
+                        dot3(permZ[aa + k1], rx0, ry0, rz1),
+                        dot3(permZ[ba + k1], rx1, ry0, rz1)),
+                lerp(sx,
+                        dot3(permZ[ab + k1], rx0, ry1, rz1),
+                        dot3(permZ[bb + k1], rx1, ry1, rz1)));
+
+        return SCALE_3D * lerp(fade(rz0), near, far);
+    }
+
+    private float dot3(int index, float x, float y, float z) {
+        int g = index * 3;
+        return x * grad3[g] + y * grad3[g + 1] + z * grad3[g + 2];
+    }
+
+    /**
+     * 2D value noise in the range -1..1
+     */
+    public float value2(float x, float y) {
+        return value2(x, y, 0, 0);
+    }
+
+    /**
+     * Tileable 2D value noise in the range -1..1
+     */
+    public float value2(float x, float y, int periodX, int periodY) {
+        x += offset;
+        y += offset;
+        int cellX = fastFloor(x);
+        int cellY = fastFloor(y);
+
+        int a = perm[wrap(cellX, periodX)];
+        int b = perm[wrap(cellX + 1, periodX)];
+        int j0 = wrap(cellY, periodY);
+        int j1 = wrap(cellY + 1, periodY);
+
+        float sx = fade(x - cellX);
+        float bottom = lerp(sx, values[perm[a + j0]], values[perm[b + j0]]);
+        float top = lerp(sx, values[perm[a + j1]], values[perm[b + j1]]);
+        return lerp(fade(y - cellY), bottom, top);
+    }
+
+    /**
+     * 3D value noise in the range -1..1
+     */
+    public float value3(float x, float y, float z) {
+        x += offset;
+        y += offset;
+        z += offset;
+        int cellX = fastFloor(x);
+        int cellY = fastFloor(y);
+        int cellZ = fastFloor(z);
+
+        int a = perm[cellX & MASK];
+        int b = perm[(cellX + 1) & MASK];
+        int j0 = cellY & MASK;
+        int j1 = (cellY + 1) & MASK;
+        int k0 = cellZ & MASK;
+        int k1 = (cellZ + 1) & MASK;
+
+        int aa = perm[a + j0];
+        int ba = perm[b + j0];
+        int ab = perm[a + j1];
+        int bb = perm[b + j1];
+
+        float sx = fade(x - cellX);
+        float sy = fade(y - cellY);
+
+        float near = lerp(sy,
+                lerp(sx, values[perm[aa + k0]], values[perm[ba + k0]]),
+                lerp(sx, values[perm[ab + k0]], values[perm[bb + k0]]));
+        float far = lerp(sy,
+                lerp(sx, values[perm[aa + k1]], values[perm[ba + k1]]),
+                lerp(sx, values[perm[ab + k1]], values[perm[bb + k1]]));
+        return lerp(fade(z - cellZ), near, far);
+    }
+
+    /**
+     * Fractional Brownian motion: the sum of gradient noise octaves,
+     * each with double frequency and gain-times amplitude.
+     */
+    public float fbm2(float x, float y, int octaves, float gain) {
+        float sum = 0.0f;
+        float amplitude = 1.0f;
+        for (int i = 0; i < octaves; i++) {
+            sum += amplitude * gradient2(x, y);
+            x *= 2;
+            y *= 2;
+            amplitude *= gain;
+        }
+        return sum;
+    }
+
+    /**
+     * Like fbm2, but sums the absolute values of the octaves.
+     */
+    public float turbulence2(float x, float y, int octaves, float gain) {
+        float sum = 0.0f;
+        float amplitude = 1.0f;
+        for (int i = 0; i < octaves; i++) {
+            sum += amplitude * Math.abs(gradient2(x, y));
+            x *= 2;
+            y *= 2;
+            amplitude *= gain;
+        }
+        return sum;
+    }
+
+    public float fbm3(float x, float y, float z, int octaves, float gain) {
+        float sum = 0.0f;
+        float amplitude = 1.0f;
+        for (int i = 0; i < octaves; i++) {
+            sum += amplitude * gradient3(x, y, z);
+            x *= 2;
+            y *= 2;
+            z *= 2;
+            amplitude *= gain;
+        }
+        return sum;
+    }
+
+    public float turbulence3(float x, float y, float z, int octaves, float gain) {
+        float sum = 0.0f;
+        float amplitude = 1.0f;
+        for (int i = 0; i < octaves; i++) {
+            sum += amplitude * Math.abs(gradient3(x, y, z));
+            x *= 2;
+            y *= 2;
+            z *= 2;
+            amplitude *= gain;
+        }
+        return sum;
+    }
+
+    /**
+     * Evaluates gradient noise fBm for count points of a scanline,
+     * starting at (x0, y) and stepping dx in the x direction.
+     * The results are written into the first count elements of out.
+     */
+    public void fbm2Row(float[] out, int count, float x0, float dx, float y,
+                        int octaves, float gain, int periodX, int periodY) {
+        octaves2Row(out, count, x0, dx, y, octaves, gain, periodX, periodY, false);
+    }
+
+    /**
+     * The scanline version of turbulence2, see {@link #fbm2Row}
+     */
+    public void turbulence2Row(float[] out, int count, float x0, float dx, float y,
+                               int octaves, float gain, int periodX, int periodY) {
+        octaves2Row(out, count, x0, dx, y, octaves, gain, periodX, periodY, true);
+    }
+
+    private void octaves2Row(float[] out, int count, float x0, float dx, float y,
+                             int octaves, float gain, int periodX, int periodY,
+                             boolean abs) {
+        for (int i = 0; i < count; i++) {
+            out[i] = 0.0f;
+        }
+        float amplitude = 1.0f;
+        for (int octave = 0; octave < octaves; octave++) {
+            addGradient2Row(out, count, x0, dx, y, amplitude, periodX, periodY, abs);
+            x0 *= 2;
+            dx *= 2;
+            y *= 2;
+            periodX *= 2;
+            periodY *= 2;
+            amplitude *= gain;
+        }
+    }
+
+    private void addGradient2Row(float[] out, int count, float x0, float dx, float y,
+                                 float amplitude, int periodX, int periodY, boolean abs) {
+        y += offset;
+        x0 += offset;
+        int cellY = fastFloor(y);
+        float ry0 = y - cellY;
+        float ry1 = ry0 - 1.0f;
+        float sy = fade(ry0);
+        int j0 = wrap(cellY, periodY);
+        int j1 = wrap(cellY + 1, periodY);
+
+        float scaledAmplitude = SCALE_2D * amplitude;
+
+        int lastCellX = Integer.MIN_VALUE;
+        float g00x = 0, g00y = 0, g10x = 0, g10y = 0;
+        float g01x = 0, g01y = 0, g11x = 0, g11y = 0;
+
+        for (int i = 0; i < count; i++) {
+            float x = x0 + i * dx;
+            int cellX = fastFloor(x);
+            if (cellX != lastCellX) {
+                // entered a new lattice cell, look up the corner gradients
+                lastCellX = cellX;
+                int a = perm[wrap(cellX, periodX)];
+                int b = perm[wrap(cellX + 1, periodX)];
+                int g00 = perm[a + j0] << 1;
+                int g10 = perm[b + j0] << 1;
+                int g01 = perm[a + j1] << 1;
+                int g11 = perm[b + j1] << 1;
+                g00x = grad2[g00];
+                g00y = grad2[g00 + 1];
+                g10x = grad2[g10];
+                g10y = grad2[g10 + 1];
+                g01x = grad2[g01];
+                g01y = grad2[g01 + 1];
+                g11x = grad2[g11];
+                g11y = grad2[g11 + 1];
+            }
+            float rx0 = x - cellX;
+            float rx1 = rx0 - 1.0f;
+            float sx = fade(rx0);
+
+            float bottom = lerp(sx, rx0 * g00x + ry0 * g00y, rx1 * g10x + ry0 * g10y);
+            float top = lerp(sx, rx0 * g01x + ry1 * g01y, rx1 * g11x + ry1 * g11y);
+            float n = lerp(sy, bottom, top);
+            out[i] += scaledAmplitude * (abs ? Math.abs(n) : n);
+        }
+    }
+
+    /**
+     * The fixed-point version of value noise fBm for a scanline.
+     * The coordinates and the results are in 16.16 fixed-point format,
+     * and each result is the sum of the octaves, with the amplitude of
+     * the first octave given as a fixed-point number.
+     */
+    public void valueFbm2RowFixed(int[] out, int count, long x0, long dx, long y,
+                                  int octaves, int amplitude, int gainFixed,
+                                  int periodX, int periodY) {
+        for (int i = 0; i < count; i++) {
+            out[i] = 0;
+        }
+        for (int octave = 0; octave < octaves; octave++) {
+            addValue2RowFixed(out, count, x0, dx, y, amplitude, periodX, periodY);
+            x0 *= 2;
+            dx *= 2;
+            y *= 2;
+            periodX *= 2;
+            periodY *= 2;
+            amplitude = (int) (((long) amplitude * gainFixed) >> 16);
+        }
+    }
+
+    private void addValue2RowFixed(int[] out, int count, long x0, long dx, long y,
+                                   int amplitude, int periodX, int periodY) {
+        int cellY = (int) (y >> 16);
+        int sy = fixedFade[(int) (y & FIXED_FRACTION_MASK) >>> FADE_LUT_SHIFT];
+        int j0 = wrap(cellY, periodY);
+        int j1 = wrap(cellY + 1, periodY);
+
+        int lastCellX = Integer.MIN_VALUE;
+        int v00 = 0, v10 = 0, v01 = 0, v11 = 0;
+
+        long x = x0;
+        for (int i = 0; i < count; i++, x += dx) {
+            int cellX = (int) (x >> 16);
+            if (cellX != lastCellX) {
+                lastCellX = cellX;
+                int a = perm[wrap(cellX, periodX)];
+                int b = perm[wrap(cellX + 1, periodX)];
+                v00 = fixedValues[perm[a + j0]];
+                v10 = fixedValues[perm[b + j0]];
+                v01 = fixedValues[perm[a + j1]];
+                v11 = fixedValues[perm[b + j1]];
+            }
+            int sx = fixedFade[(int) (x & FIXED_FRACTION_MASK) >>> FADE_LUT_SHIFT];
+            int bottom = lerpFixed(sx, v00, v10);
+            int top = lerpFixed(sx, v01, v11);
+            int n = lerpFixed(sy, bottom, top);
+            out[i] += (int) (((long) n * amplitude) >> 16);
+        }
+    }
+
+    private static int lerpFixed(int t, int a, int b) {
+        return a + (int) (((long) (b - a) * t) >> 16);
+    }
+
+    public static int toFixed(double d) {
+        return (int) (d * FIXED_ONE);
+    }
+
+    public static long toFixedLong(double d) {
+        return (long) (d * FIXED_ONE);
+    }
+
+    // maps a lattice coordinate into the permutation table,
+    // wrapping it first around the period if the noise is tileable
+    private static int wrap(int cell, int period) {
+        if (period > 0) {
+            cell = Math.floorMod(cell, period);
+        }
+        return cell & MASK;
+    }
+
+    private static int fastFloor(float x) {
+        int i = (int) x;
+        return x < i ? i - 1 : i;
+    }
+
+    private float fade(float t) {
+        return fadeCurve.apply(t);
+    }
+
+    private static float lerp(float t, float a, float b) {
+        return a + t * (b - a);
+    }
+
+    private static int[] createFixedFadeTable(Fade fadeCurve) {
+        int size = 1 << FADE_LUT_BITS;
+        int[] table = new int[size];
+        for (int i = 0; i < size; i++) {
+            table[i] = (int) (fadeCurve.apply(i / (float) size) * FIXED_ONE);
+        }
+        return table;
+    }
+}
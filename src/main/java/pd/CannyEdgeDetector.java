@@ -8,11 +8,14 @@
 package pd;
 
 import net.jafama.FastMath;
+import pixelitor.ThreadPool;
 import pixelitor.utils.ProgressTracker;
 import pixelitor.utils.StatusBarProgressTracker;
 
 import java.awt.image.BufferedImage;
+import java.lang.ref.SoftReference;
 import java.util.Arrays;
+import java.util.concurrent.Future;
 
 /**
  * <p><em>This software has been released into the public domain.
@@ -22,7 +25,8 @@ import java.util.Arrays;
  * <p>This class provides a configurable implementation of the Canny edge
  * detection algorithm. This classic algorithm has a number of shortcomings,
  * but remains an effective tool in many scenarios. <em>This class is designed
- * for single threaded use only.</em></p>
+ * for single threaded use only</em>, although the processing itself uses
+ * the thread pool, and the scratch buffers are reused between runs.</p>
  *
  * <p>Sample usage:</p>
  *
@@ -51,11 +55,19 @@ public class CannyEdgeDetector {
     private static final float MAGNITUDE_LIMIT = 1000.0F;
     private static final int MAGNITUDE_MAX = (int) (MAGNITUDE_SCALE * MAGNITUDE_LIMIT);
 
+    // the number of image rows processed by one task
+    private static final int BAND_HEIGHT = 64;
+
+    // the scratch buffers of the last run, which are reused by the next run
+    // if they are big enough, unless the garbage collector needed the memory
+    private static SoftReference<Buffers> pooledBuffers;
+
     // fields
 
     private int height;
     private int width;
     private int picsize;
+    private int numBands;
     private int[] data;
     private int[] magnitude;
     private BufferedImage sourceImage;
@@ -265,55 +277,115 @@ public class CannyEdgeDetector {
         this.contrastNormalized = contrastNormalized;
     }
 
+    /**
+     * Sets the progress tracker used by the next call to the process method.
+     * If it is not set, then a status bar progress tracker is used.
+     *
+     * @param pt a progress tracker
+     */
+
+    public void setProgressTracker(ProgressTracker pt) {
+        this.pt = pt;
+    }
+
+    /**
+     * Returns true if the scratch buffers left over from a previous run
+     * can be reused for an image with the given number of pixels,
+     * which means that processing it needs no significant extra memory.
+     */
+
+    public static synchronized boolean hasPooledBuffersFor(long numPixels) {
+        Buffers buffers = pooledBuffers == null ? null : pooledBuffers.get();
+        return buffers != null && buffers.capacity >= numPixels;
+    }
+
     // methods
 
     public void process() {
         width = sourceImage.getWidth();
         height = sourceImage.getHeight();
-
-        // the number of computational units are experimental values
-        // that seem to work pretty well
-        pt = new StatusBarProgressTracker("Canny", width + 450);
-
         picsize = width * height;
-        initArrays();
+        numBands = (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
 
-        pt.unitsDone(10);
-
-        readLuminance();
+        if (pt == null) {
+            // each parallel stage reports one unit for each band
+            int numUnits = 5 * numBands + 1;
+            if (contrastNormalized) {
+                numUnits++;
+            }
+            pt = new StatusBarProgressTracker("Canny", numUnits);
+        }
 
-        pt.unitsDone(50);
+        Buffers buffers = acquireBuffers(picsize);
+        try {
+            data = buffers.data;
+            magnitude = buffers.magnitude;
+            xConv = buffers.xConv;
+            yConv = buffers.yConv;
+            xGradient = buffers.xGradient;
+            yGradient = buffers.yGradient;
 
-        if (contrastNormalized) {
-            normalizeContrast();
-            pt.unitsDone(10);
-        }
+            readLuminance();
 
-        computeGradients(gaussianKernelRadius, gaussianKernelWidth);
-        int low = Math.round(lowThreshold * MAGNITUDE_SCALE);
-        int high = Math.round(highThreshold * MAGNITUDE_SCALE);
-        performHysteresis(low, high);
-        pt.unitDone();
+            if (contrastNormalized) {
+                normalizeContrast();
+                pt.unitDone();
+            }
 
-        thresholdEdges();
-        pt.unitDone();
+            computeGradients(gaussianKernelRadius, gaussianKernelWidth);
+            int low = Math.round(lowThreshold * MAGNITUDE_SCALE);
+            int high = Math.round(highThreshold * MAGNITUDE_SCALE);
+            performHysteresis(low, high);
+            pt.unitDone();
 
-        writeEdges(data);
+            thresholdEdges();
+
+            writeEdges(data);
+        } finally {
+            data = null;
+            magnitude = null;
+            xConv = null;
+            yConv = null;
+            xGradient = null;
+            yGradient = null;
+            releaseBuffers(buffers);
+        }
         pt.finished();
+        pt = null;
     }
 
     // private utility methods
 
-    private void initArrays() {
-        if (data == null || picsize != data.length) {
-            data = new int[picsize];
-            magnitude = new int[picsize];
+    private static synchronized Buffers acquireBuffers(int size) {
+        Buffers buffers = pooledBuffers == null ? null : pooledBuffers.get();
+        pooledBuffers = null;
+        if (buffers == null || buffers.capacity < size) {
+            buffers = null; // let the old ones be collected before allocating
+            buffers = new Buffers(size);
+        }
+        return buffers;
+    }
+
+    private static synchronized void releaseBuffers(Buffers buffers) {
+        pooledBuffers = new SoftReference<>(buffers);
+    }
 
-            xConv = new float[picsize];
-            yConv = new float[picsize];
-            xGradient = new float[picsize];
-            yGradient = new float[picsize];
+    /**
+     * Runs the given stage for each band of rows using the
+     * thread pool, and waits until all of them are finished.
+     */
+    private void forEachBand(BandStage stage) {
+        Future<?>[] futures = new Future[numBands];
+        for (int i = 0; i < numBands; i++) {
+            int startY = i * BAND_HEIGHT;
+            int endY = Math.min(height, startY + BAND_HEIGHT);
+            futures[i] = ThreadPool.submit(() -> stage.process(startY, endY));
         }
+        ThreadPool.waitFor(futures, pt);
+    }
+
+    private interface BandStage {
+        void process(int startY, int endY);
     }
 
     //NOTE: The elements of the method below (specifically the technique for
@@ -343,77 +415,126 @@ public class CannyEdgeDetector {
             kernel[kwidth] = (g1 + g2 + g3) / 3.0f / (2.0f * (float) Math.PI * kernelRadius * kernelRadius);
             diffKernel[kwidth] = g3 - g2;
         }
+        int kw = kwidth;
+
+        // All stages run on bands of rows, and they write every
+        // value of their rows (zeros outside the valid area),
+        // because the buffers can contain data from previous runs.
+        // The inner loops go along the rows.
+        forEachBand((startY, endY) -> convolveRows(startY, endY, kernel, kw));
+        forEachBand((startY, endY) -> gradientRows(startY, endY, diffKernel, kw));
+        forEachBand((startY, endY) -> suppressNonMaxima(startY, endY, kw));
+    }
 
-        pt.unitDone();
-
+    //perform convolution in x and y directions
+    private void convolveRows(int startY, int endY, float[] kernel, int kwidth) {
         int initX = kwidth - 1;
         int maxX = width - (kwidth - 1);
-        int initY = width * (kwidth - 1);
-        int maxY = width * (height - (kwidth - 1));
-
-        //perform convolution in x and y directions
-        for (int x = initX; x < maxX; x++) {
-            for (int y = initY; y < maxY; y += width) {
-                int index = x + y;
-                float sumX = data[index] * kernel[0];
-                float sumY = sumX;
-                int xOffset = 1;
-                int yOffset = width;
-                for (; xOffset < kwidth; ) {
-                    sumY += kernel[xOffset] * (data[index - yOffset] + data[index + yOffset]);
-                    sumX += kernel[xOffset] * (data[index - xOffset] + data[index + xOffset]);
-                    yOffset += width;
-                    xOffset++;
+        int initY = kwidth - 1;
+        int maxY = height - (kwidth - 1);
+
+        for (int y = startY; y < endY; y++) {
+            int rowStart = y * width;
+            if (y < initY || y >= maxY || initX >= maxX) {
+                Arrays.fill(xConv, rowStart, rowStart + width, 0);
+                Arrays.fill(yConv, rowStart, rowStart + width, 0);
+                continue;
+            }
+            int from = rowStart + initX;
+            int to = rowStart + maxX;
+            clearOutside(xConv, rowStart, from, to);
+            clearOutside(yConv, rowStart, from, to);
+
+            for (int index = from; index < to; index++) {
+                float v = data[index] * kernel[0];
+                xConv[index] = v;
+                yConv[index] = v;
+            }
+            // the sums are accumulated in the same order as
+            // the per-pixel loops of the original implementation
+            for (int k = 1; k < kwidth; k++) {
+                float kv = kernel[k];
+                int yOffset = k * width;
+                for (int index = from; index < to; index++) {
+                    yConv[index] += kv * (data[index - yOffset] + data[index + yOffset]);
+                    xConv[index] += kv * (data[index - k] + data[index + k]);
                 }
-
-                yConv[index] = sumY;
-                xConv[index] = sumX;
             }
-
         }
+    }
+
+    // zeroes the parts of a row that are outside the [from, to) range
+    private void clearOutside(float[] array, int rowStart, int from, int to) {
+        Arrays.fill(array, rowStart, from, 0);
+        Arrays.fill(array, to, rowStart + width, 0);
+    }
 
-        pt.unitsDone(200);
+    // calculates the gradients and then overwrites the yConv row with the
+    // gradient magnitudes, because only this row of yConv is needed for the
+    // x gradients, and xConv (needed for the y gradients) is not changed
+    private void gradientRows(int startY, int endY, float[] diffKernel, int kwidth) {
+        int initX = kwidth - 1;
+        int maxX = width - (kwidth - 1);
+        int initY = kwidth - 1;
+        int maxY = height - (kwidth - 1);
+        float[] gradMag = yConv;
+
+        for (int y = startY; y < endY; y++) {
+            int rowStart = y * width;
+            if (y < initY || y >= maxY || initX >= maxX) {
+                Arrays.fill(xGradient, rowStart, rowStart + width, 0);
+                Arrays.fill(yGradient, rowStart, rowStart + width, 0);
+                Arrays.fill(gradMag, rowStart, rowStart + width, 0);
+                continue;
+            }
 
-        for (int x = initX; x < maxX; x++) {
-            for (int y = initY; y < maxY; y += width) {
+            int from = rowStart + initX;
+            int to = rowStart + maxX;
+            clearOutside(xGradient, rowStart, from, to);
+            for (int index = from; index < to; index++) {
                 float sum = 0.0f;
-                int index = x + y;
                 for (int i = 1; i < kwidth; i++) {
                     sum += diffKernel[i] * (yConv[index - i] - yConv[index + i]);
                 }
-
                 xGradient[index] = sum;
             }
 
-        }
-
-        pt.unitsDone(100);
-
-        for (int x = kwidth; x < width - kwidth; x++) {
-            for (int y = initY; y < maxY; y += width) {
-                float sum = 0.0f;
-                int index = x + y;
-                int yOffset = width;
-                for (int i = 1; i < kwidth; i++) {
-                    sum += diffKernel[i] * (xConv[index - yOffset] - xConv[index + yOffset]);
-                    yOffset += width;
+            int yFrom = rowStart + Math.min(kwidth, width);
+            int yTo = Math.max(yFrom, rowStart + width - kwidth);
+            clearOutside(yGradient, rowStart, yFrom, yTo);
+            Arrays.fill(yGradient, yFrom, yTo, 0);
+            for (int i = 1; i < kwidth; i++) {
+                float dk = diffKernel[i];
+                int yOffset = i * width;
+                for (int index = yFrom; index < yTo; index++) {
+                    yGradient[index] += dk * (xConv[index - yOffset] - xConv[index + yOffset]);
                 }
-
-                yGradient[index] = sum;
             }
 
+            for (int index = rowStart; index < rowStart + width; index++) {
+                gradMag[index] = hypot(xGradient[index], yGradient[index]);
+            }
         }
+    }
 
-        pt.unitsDone(100);
+    //perform non-maximal supression
+    private void suppressNonMaxima(int startY, int endY, int kwidth) {
+        float[] gradMag = yConv;
+        int initX = kwidth;
+        int maxX = width - kwidth;
+        int initY = kwidth;
+        int maxY = height - kwidth;
+
+        for (int y = startY; y < endY; y++) {
+            int rowStart = y * width;
+            if (y < initY || y >= maxY || initX >= maxX) {
+                Arrays.fill(magnitude, rowStart, rowStart + width, 0);
+                continue;
+            }
+            Arrays.fill(magnitude, rowStart, rowStart + initX, 0);
+            Arrays.fill(magnitude, rowStart + maxX, rowStart + width, 0);
 
-        initX = kwidth;
-        maxX = width - kwidth;
-        initY = width * kwidth;
-        maxY = width * (height - kwidth);
-        for (int x = initX; x < maxX; x++) {
-            pt.unitDone();
-            for (int y = initY; y < maxY; y += width) {
-                int index = x + y;
+            for (int index = rowStart + initX; index < rowStart + maxX; index++) {
                 int indexN = index - width;
                 int indexS = index + width;
                 int indexW = index - 1;
@@ -425,17 +546,16 @@ public class CannyEdgeDetector {
 
                 float xGrad = xGradient[index];
                 float yGrad = yGradient[index];
-                float gradMag = hypot(xGrad, yGrad);
-
-                //perform non-maximal supression
-                float nMag = hypot(xGradient[indexN], yGradient[indexN]);
-                float sMag = hypot(xGradient[indexS], yGradient[indexS]);
-                float wMag = hypot(xGradient[indexW], yGradient[indexW]);
-                float eMag = hypot(xGradient[indexE], yGradient[indexE]);
-                float neMag = hypot(xGradient[indexNE], yGradient[indexNE]);
-                float seMag = hypot(xGradient[indexSE], yGradient[indexSE]);
-                float swMag = hypot(xGradient[indexSW], yGradient[indexSW]);
-                float nwMag = hypot(xGradient[indexNW], yGradient[indexNW]);
+                float gradMagnitude = gradMag[index];
+
+                float nMag = gradMag[indexN];
+                float sMag = gradMag[indexS];
+                float wMag = gradMag[indexW];
+                float eMag = gradMag[indexE];
+                float neMag = gradMag[indexNE];
+                float seMag = gradMag[indexSE];
+                float swMag = gradMag[indexSW];
+                float nwMag = gradMag[indexNW];
                 float tmp;
                 /*
                  * An explanation of what's happening here, for those who want
@@ -467,17 +587,17 @@ public class CannyEdgeDetector {
                  */
                 if (xGrad * yGrad <= 0 /*(1)*/
                     ? Math.abs(xGrad) >= Math.abs(yGrad) /*(2)*/
-                    ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * neMag - (xGrad + yGrad) * eMag) /*(3)*/
+                    ? (tmp = Math.abs(xGrad * gradMagnitude)) >= Math.abs(yGrad * neMag - (xGrad + yGrad) * eMag) /*(3)*/
                     && tmp > Math.abs(yGrad * swMag - (xGrad + yGrad) * wMag) /*(4)*/
-                    : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * neMag - (yGrad + xGrad) * nMag) /*(3)*/
+                    : (tmp = Math.abs(yGrad * gradMagnitude)) >= Math.abs(xGrad * neMag - (yGrad + xGrad) * nMag) /*(3)*/
                     && tmp > Math.abs(xGrad * swMag - (yGrad + xGrad) * sMag) /*(4)*/
                     : Math.abs(xGrad) >= Math.abs(yGrad) /*(2)*/
-                    ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * seMag + (xGrad - yGrad) * eMag) /*(3)*/
+                    ? (tmp = Math.abs(xGrad * gradMagnitude)) >= Math.abs(yGrad * seMag + (xGrad - yGrad) * eMag) /*(3)*/
                     && tmp > Math.abs(yGrad * nwMag + (xGrad - yGrad) * wMag) /*(4)*/
-                    : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * seMag + (yGrad - xGrad) * sMag) /*(3)*/
+                    : (tmp = Math.abs(yGrad * gradMagnitude)) >= Math.abs(xGrad * seMag + (yGrad - xGrad) * sMag) /*(3)*/
                     && tmp > Math.abs(xGrad * nwMag + (yGrad - xGrad) * nMag) /*(4)*/
                 ) {
-                    magnitude[index] = gradMag >= MAGNITUDE_LIMIT ? MAGNITUDE_MAX : (int) (MAGNITUDE_SCALE * gradMag);
+                    magnitude[index] = gradMagnitude >= MAGNITUDE_LIMIT ? MAGNITUDE_MAX : (int) (MAGNITUDE_SCALE * gradMagnitude);
                     //NOTE: The orientation of the edge is not employed by this
                     //implementation. It is a simple matter to compute it at
                     //this point as: Math.atan2(yGrad, xGrad);
@@ -504,43 +624,56 @@ public class CannyEdgeDetector {
         //luminance data from the image, and edge intensity from the processing.
         //This is done for memory efficiency, other implementations may wish
         //to separate these functions.
-        Arrays.fill(data, 0);
+        Arrays.fill(data, 0, picsize, 0);
 
-        int offset = 0;
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                if (data[offset] == 0 && magnitude[offset] >= high) {
-                    follow(x, y, offset, low);
-                }
-                offset++;
+        // the pixels are marked before they are pushed, so the
+        // stack never holds more entries than there are pixels
+        int[] stack = new int[1024];
+        int threshold = Math.max(low, 1);
+        for (int i = 0; i < picsize; i++) {
+            if (data[i] == 0 && magnitude[i] >= high) {
+                stack = follow(i, threshold, stack);
             }
         }
     }
 
-    private void follow(int x1, int y1, int i1, int threshold) {
-        int x0 = x1 == 0 ? x1 : x1 - 1;
-        int x2 = x1 == width - 1 ? x1 : x1 + 1;
-        int y0 = y1 == 0 ? y1 : y1 - 1;
-        int y2 = y1 == height - 1 ? y1 : y1 + 1;
+    // marks all pixels connected to the seed with a magnitude
+    // above the threshold, returns the (possibly grown) stack
+    private int[] follow(int seed, int threshold, int[] stack) {
+        data[seed] = 1;
+        stack[0] = seed;
+        int size = 1;
+        while (size > 0) {
+            int i1 = stack[--size];
+            int x1 = i1 % width;
+            int y1 = i1 / width;
+            int x0 = x1 == 0 ? x1 : x1 - 1;
+            int x2 = x1 == width - 1 ? x1 : x1 + 1;
+            int y0 = y1 == 0 ? y1 : y1 - 1;
+            int y2 = y1 == height - 1 ? y1 : y1 + 1;
 
-        data[i1] = magnitude[i1];
-        for (int x = x0; x <= x2; x++) {
             for (int y = y0; y <= y2; y++) {
-                int i2 = x + y * width;
-                if ((y != y1 || x != x1)
-                    && data[i2] == 0
-                    && magnitude[i2] >= threshold) {
-                    follow(x, y, i2, threshold);
-                    return;
+                for (int x = x0; x <= x2; x++) {
+                    int i2 = x + y * width;
+                    if (data[i2] == 0 && magnitude[i2] >= threshold) {
+                        data[i2] = 1;
+                        if (size == stack.length) {
+                            stack = Arrays.copyOf(stack, Math.min(picsize, 2 * size));
+                        }
+                        stack[size++] = i2;
+                    }
                 }
             }
         }
+        return stack;
     }
 
     private void thresholdEdges() {
-        for (int i = 0; i < picsize; i++) {
-            data[i] = data[i] > 0 ? -1 : 0xff000000;
-        }
+        forEachBand((startY, endY) -> {
+            for (int i = startY * width; i < endY * width; i++) {
+                data[i] = data[i] > 0 ? -1 : 0xff000000;
+            }
+        });
     }
 
     private static int luminance(float r, float g, float b) {
@@ -549,56 +682,67 @@ public class CannyEdgeDetector {
 
     private void readLuminance() {
         int type = sourceImage.getType();
+        Object pixels = sourceImage.getRaster().getDataElements(0, 0, width, height, null);
         if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) {
-            int[] pixels = (int[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
-            for (int i = 0; i < picsize; i++) {
-                int p = pixels[i];
-                int r = (p & 0xff0000) >> 16;
-                int g = (p & 0xff00) >> 8;
-                int b = p & 0xff;
-                data[i] = luminance(r, g, b);
-            }
+            int[] intPixels = (int[]) pixels;
+            forEachBand((startY, endY) -> {
+                for (int i = startY * width; i < endY * width; i++) {
+                    int p = intPixels[i];
+                    int r = (p & 0xff0000) >> 16;
+                    int g = (p & 0xff00) >> 8;
+                    int b = p & 0xff;
+                    data[i] = luminance(r, g, b);
+                }
+            });
         } else if (type == BufferedImage.TYPE_INT_ARGB_PRE) {
-            int[] pixels = (int[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
-            for (int i = 0; i < picsize; i++) {
-                int p = pixels[i];
-                int a = (p >>> 24) & 0xff;
-                int r = (p & 0xff0000) >> 16;
-                int g = (p & 0xff00) >> 8;
-                int b = p & 0xff;
-                int lum = luminance(r, g, b);
-                if (a != 255) {
-                    if (a == 0) {
-                        lum = 0;
-                    } else {
-                        float af = a / 255.0f;
-                        lum = (int) (lum / af);
-                        if (lum > 255) {
-                            lum = 255;
+            int[] intPixels = (int[]) pixels;
+            forEachBand((startY, endY) -> {
+                for (int i = startY * width; i < endY * width; i++) {
+                    int p = intPixels[i];
+                    int a = (p >>> 24) & 0xff;
+                    int r = (p & 0xff0000) >> 16;
+                    int g = (p & 0xff00) >> 8;
+                    int b = p & 0xff;
+                    int lum = luminance(r, g, b);
+                    if (a != 255) {
+                        if (a == 0) {
+                            lum = 0;
+                        } else {
+                            float af = a / 255.0f;
+                            lum = (int) (lum / af);
+                            if (lum > 255) {
+                                lum = 255;
+                            }
                         }
                     }
+                    data[i] = lum;
                 }
-                data[i] = lum;
-            }
+            });
         } else if (type == BufferedImage.TYPE_BYTE_GRAY) {
-            byte[] pixels = (byte[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
-            for (int i = 0; i < picsize; i++) {
-                data[i] = (pixels[i] & 0xff);
-            }
+            byte[] bytePixels = (byte[]) pixels;
+            forEachBand((startY, endY) -> {
+                for (int i = startY * width; i < endY * width; i++) {
+                    data[i] = (bytePixels[i] & 0xff);
+                }
+            });
         } else if (type == BufferedImage.TYPE_USHORT_GRAY) {
-            short[] pixels = (short[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
-            for (int i = 0; i < picsize; i++) {
-                data[i] = (pixels[i] & 0xffff) / 256;
-            }
+            short[] shortPixels = (short[]) pixels;
+            forEachBand((startY, endY) -> {
+                for (int i = startY * width; i < endY * width; i++) {
+                    data[i] = (shortPixels[i] & 0xffff) / 256;
+                }
+            });
         } else if (type == BufferedImage.TYPE_3BYTE_BGR) {
-            byte[] pixels = (byte[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
-            int offset = 0;
-            for (int i = 0; i < picsize; i++) {
-                int b = pixels[offset++] & 0xff;
-                int g = pixels[offset++] & 0xff;
-                int r = pixels[offset++] & 0xff;
-                data[i] = luminance(r, g, b);
-            }
+            byte[] bytePixels = (byte[]) pixels;
+            forEachBand((startY, endY) -> {
+                int offset = startY * width * 3;
+                for (int i = startY * width; i < endY * width; i++) {
+                    int b = bytePixels[offset++] & 0xff;
+                    int g = bytePixels[offset++] & 0xff;
+                    int r = bytePixels[offset++] & 0xff;
+                    data[i] = luminance(r, g, b);
+                }
+            });
         } else {
             throw new IllegalArgumentException("Unsupported image type: " + type);
         }
@@ -606,8 +750,8 @@ public class CannyEdgeDetector {
 
     private void normalizeContrast() {
         int[] histogram = new int[256];
-        for (int datum : data) {
-            histogram[datum]++;
+        for (int i = 0; i < picsize; i++) {
+            histogram[data[i]]++;
         }
         int[] remap = new int[256];
         int sum = 0;
@@ -621,7 +765,7 @@ public class CannyEdgeDetector {
             j = target;
         }
 
-        for (int i = 0; i < data.length; i++) {
+        for (int i = 0; i < picsize; i++) {
             data[i] = remap[data[i]];
         }
     }
@@ -635,4 +779,27 @@ public class CannyEdgeDetector {
         }
         edgesImage.getWritableTile(0, 0).setDataElements(0, 0, width, height, pixels);
     }
+
+    /**
+     * The picture-sized scratch arrays of a run
+     */
+    private static class Buffers {
+        private final int capacity;
+        private final int[] data;
+        private final int[] magnitude;
+        private final float[] xConv;
+        private final float[] yConv;
+        private final float[] xGradient;
+        private final float[] yGradient;
+
+        Buffers(int capacity) {
+            this.capacity = capacity;
+            data = new int[capacity];
+            magnitude = new int[capacity];
+            xConv = new float[capacity];
+            yConv = new float[capacity];
+            xGradient = new float[capacity];
+            yGradient = new float[capacity];
+        }
+    }
 }
@@ -39,8 +39,11 @@ import pixelitor.tools.pen.Paths;
 import pixelitor.tools.util.PPoint;
 import pixelitor.tools.util.PRectangle;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.MemoryGovernor;
 import pixelitor.utils.Messages;
+import pixelitor.utils.ScratchPool;
 import pixelitor.utils.VisibleForTesting;
+import pixelitor.utils.debug.Telemetry;
 
 import javax.swing.*;
 import java.awt.*;
@@ -52,6 +55,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
@@ -65,6 +69,8 @@ import static pixelitor.Composition.ImageChangeActions.FULL;
 import static pixelitor.Composition.LayerAdder.Position.*;
 import static pixelitor.io.FileUtils.stripExtension;
 import static pixelitor.utils.Utils.createCopyName;
+import static pixelitor.utils.debug.Telemetry.Category.COMPOSITE;
+import static pixelitor.utils.debug.Telemetry.Category.IO_WRITE;
 
 /**
  * An image composition consisting of multiple layers
@@ -356,6 +362,10 @@ public class Composition implements Serializable {
         if (layerList.size() < 2) {
             return;
         }
+        if (compositeImage == null && !MemoryGovernor.admitOrWarn("Flatten Image",
+                MemoryGovernor.bytesOfImage(canvas.getWidth(), canvas.getHeight()))) {
+            return;
+        }
 
         int numLayers = getNumLayers();
         BufferedImage bi = getCompositeImage();
@@ -406,7 +416,13 @@ public class Composition implements Serializable {
         assert checkInvariant();
 
         if (canMergeDown(activeLayer)) {
-            mergeDown(activeLayer);
+            // the backup copy of the image bellow, and
+            // the result if the merged layer is an adjustment
+            var bellowLayer = (ImageLayer) layerList.get(layerList.indexOf(activeLayer) - 1);
+            long neededBytes = 2 * MemoryGovernor.bytesOf(bellowLayer.getImage());
+            if (MemoryGovernor.admitOrWarn("Merge Down", neededBytes)) {
+                mergeDown(activeLayer);
+            }
         }
     }
 
@@ -427,6 +443,7 @@ public class Composition implements Serializable {
             bellowLayer.setImage(result);
         }
         g.dispose();
+        bellowLayer.invalidateOccupancy(null);
 
         bellowLayer.updateIconImage();
 
@@ -805,8 +822,11 @@ public class Composition implements Serializable {
 
 //        BufferedImage imageSoFar = ImageUtils.createCompatibleImage(getCanvasWidth(), getCanvasHeight());
 
-        BufferedImage imageSoFar = new BufferedImage(
+        Telemetry.Span span = Telemetry.start(COMPOSITE, layerList.size() + " layers");
+
+        BufferedImage initialImage = ScratchPool.acquireImage(
                 canvas.getWidth(), canvas.getHeight(), TYPE_INT_ARGB_PRE);
+        BufferedImage imageSoFar = initialImage;
         Graphics2D g = imageSoFar.createGraphics();
 
         boolean firstVisibleLayer = true;
@@ -814,6 +834,10 @@ public class Composition implements Serializable {
             if (layer.isVisible()) {
                 BufferedImage result = layer.applyLayer(g, imageSoFar, firstVisibleLayer);
                 if (result != null) { // adjustment layer or watermarking text layer
+                    if (imageSoFar == initialImage && result != initialImage) {
+                        // the replaced image was allocated here, it can be reused
+                        ScratchPool.release(initialImage);
+                    }
                     imageSoFar = result;
                     if (g != null) {
                         g.dispose();
@@ -825,6 +849,11 @@ public class Composition implements Serializable {
         }
 
         g.dispose();
+        if (imageSoFar == initialImage) {
+            // it's cached as the composite image, it won't come back
+            ScratchPool.keep(initialImage);
+        }
+        span.end();
 
         return imageSoFar;
     }
@@ -833,8 +862,31 @@ public class Composition implements Serializable {
         view.repaint();
     }
 
+    /**
+     * Repaints after the temporary drawing layer of the active layer changed,
+     * which doesn't change the pixels of any layer
+     */
+    public void tmpDrawingLayerChanged() {
+        invalidateCompositeCache();
+        activeLayer.invalidateMaskedImage();
+        if (view != null) {
+            view.invalidateTileCache();
+            view.repaint();
+        }
+    }
+
     public void repaintRegion(PPoint start, PPoint end, double thickness) {
         invalidateCompositeCache();
+
+        double minX = Math.min(start.getImX(), end.getImX()) - thickness;
+        double minY = Math.min(start.getImY(), end.getImY()) - thickness;
+        double maxX = Math.max(start.getImX(), end.getImX()) + thickness;
+        double maxY = Math.max(start.getImY(), end.getImY()) + thickness;
+        invalidateActiveLayerOccupancy(new Rectangle2D.Double(
+                minX, minY, maxX - minX, maxY - minY).getBounds());
+        // only the active layer (or its mask) can be changed here
+        activeLayer.invalidateMaskedImage();
+
         if (view != null) { // during reload image it can be null
             view.repaintRegion(start, end, thickness);
             view.repaintNavigator(false);
@@ -843,6 +895,9 @@ public class Composition implements Serializable {
 
     public void repaintRegion(PRectangle area) {
         invalidateCompositeCache();
+        invalidateActiveLayerOccupancy(area.getIm().getBounds());
+        activeLayer.invalidateMaskedImage();
+
         if (view != null) { // during reload image it can be null
             view.repaintRegion(area);
             view.repaintNavigator(false);
@@ -854,6 +909,9 @@ public class Composition implements Serializable {
             // stop the timer thread
             selection.die();
         }
+        for (ImageLayer layer : getImageLayersAndMasks()) {
+            layer.disposeBackingStore();
+        }
     }
 
     public void paintSelection(Graphics2D g) {
@@ -1164,6 +1222,11 @@ public class Composition implements Serializable {
      */
     public void imageChanged(ImageChangeActions actions, boolean sizeChanged) {
         invalidateCompositeCache();
+        invalidateActiveLayerOccupancy(null);
+        invalidateMaskedImages();
+        if (view != null) {
+            view.invalidateTileCache();
+        }
 
         if (actions.repaintNeeded()) {
             if (view != null) {
@@ -1177,6 +1240,121 @@ public class Composition implements Serializable {
         }
     }
 
+    /**
+     * Releases the cached composite image and the cached masked
+     * layer images, which will be recalculated when needed again.
+     * Returns the number of released bytes.
+     */
+    public long releaseCompositeCache() {
+        long bytes = MemoryGovernor.bytesOf(compositeImage);
+        invalidateCompositeCache();
+        return bytes + invalidateMaskedImages();
+    }
+
+    public long getCompositeCacheBytes() {
+        long sum = MemoryGovernor.bytesOf(compositeImage);
+        if (layerList == null) {
+            return sum;
+        }
+        for (Layer layer : layerList) {
+            sum += layer.getMaskedImageBytes();
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the number of bytes in the images of
+     * the image layers and of the layer masks.
+     */
+    public long getImageBytes() {
+        long sum = 0;
+        for (ImageLayer layer : getImageLayersAndMasks()) {
+            sum += layer.getHeapBytes();
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the number of bytes in the paged out
+     * image layers, which are stored outside the heap.
+     */
+    public long getOffHeapBytes() {
+        long sum = 0;
+        for (ImageLayer layer : getImageLayersAndMasks()) {
+            sum += layer.getOffHeapBytes();
+        }
+        return sum;
+    }
+
+    /**
+     * Pages out the image layers with at least the given number
+     * of bytes, starting with the biggest one, until the given number
+     * of bytes is released. The pixels are written before this method
+     * returns, so that the released heap bytes can be used right away.
+     * Returns the number of released heap bytes.
+     */
+    public long pageOutLayers(long minLayerBytes, long bytesToRelease) {
+        assert !isActive();
+
+        List<ImageLayer> candidates = new ArrayList<>();
+        for (ImageLayer layer : getImageLayersAndMasks()) {
+            if (layer.getHeapBytes() >= minLayerBytes) {
+                candidates.add(layer);
+            }
+        }
+        candidates.sort(Comparator.comparingLong(ImageLayer::getHeapBytes).reversed());
+
+        long released = 0;
+        for (ImageLayer layer : candidates) {
+            if (released >= bytesToRelease) {
+                break;
+            }
+            released += layer.pageOutNow();
+        }
+        return released;
+    }
+
+    /**
+     * Starts moving the paged out layers back into the heap in the background.
+     */
+    public void pageInLayers() {
+        for (ImageLayer layer : getImageLayersAndMasks()) {
+            layer.prefetchImage();
+        }
+    }
+
+    private List<ImageLayer> getImageLayersAndMasks() {
+        List<ImageLayer> retVal = new ArrayList<>();
+        for (Layer layer : layerList) {
+            if (layer instanceof ImageLayer) {
+                retVal.add((ImageLayer) layer);
+            }
+            if (layer.hasMask()) {
+                retVal.add(layer.getMask());
+            }
+        }
+        return retVal;
+    }
+
+    // the drawing tools modify the pixels of the active layer in-place
+    private void invalidateActiveLayerOccupancy(Rectangle region) {
+        if (activeLayer instanceof ImageLayer) {
+            ((ImageLayer) activeLayer).invalidateOccupancy(region);
+        }
+    }
+
+    // returns the number of released bytes
+    private long invalidateMaskedImages() {
+        long released = 0;
+        if (layerList == null) { // while deserializing
+            return released;
+        }
+        for (Layer layer : layerList) {
+            released += layer.invalidateMaskedImage();
+        }
+        return released;
+    }
+
     private void invalidateCompositeCache() {
         if (compositeImage != null) {
             compositeImage.flush();
@@ -1274,7 +1452,8 @@ public class Composition implements Serializable {
             System.out.println("Composition::saveAsync: saving " + f.getAbsolutePath());
         }
 
-        Runnable saveTask = format.getSaveTask(this, saveSettings);
+        Runnable saveTask = Telemetry.measured(IO_WRITE, format.toString(),
+                format.getSaveTask(this, saveSettings));
         FileFormat.setLastOutput(format);
         return saveAsync(saveTask, f, addToRecentMenus);
     }
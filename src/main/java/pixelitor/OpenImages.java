@@ -31,6 +31,9 @@ import pixelitor.selection.Selection;
 import pixelitor.selection.SelectionActions;
 import pixelitor.tools.Tools;
 import pixelitor.tools.pen.Path;
+import pixelitor.utils.MemoryGovernor;
+import pixelitor.utils.MemoryGovernor.MemoryConsumer;
+import pixelitor.utils.MemoryInfo;
 import pixelitor.utils.Messages;
 import pixelitor.utils.Rnd;
 import pixelitor.utils.ViewActivationListener;
@@ -61,6 +64,15 @@ public class OpenImages {
     private static final List<ViewActivationListener> activationListeners
             = new ArrayList<>();
 
+    // the layers of the inactive images that are at least this big
+    // are moved out of the heap when memory is needed, see TiledPixelStore
+    private static final long RECLAIM_LAYER_BYTES = 16 * MemoryInfo.ONE_MEGABYTE;
+
+    static {
+        MemoryGovernor.register(new CompositeCachesMemory());
+        MemoryGovernor.register(new LayersMemory());
+    }
+
     public static final MenuAction CLOSE_ALL_ACTION = new MenuAction("Close All") {
         @Override
         public void onClick() {
@@ -168,6 +180,7 @@ public class OpenImages {
 
         var comp = view.getComp();
         setActiveView(view, false);
+        comp.pageInLayers();
         SelectionActions.setEnabled(comp.hasSelection(), comp);
         view.activateUI(true);
 
@@ -558,4 +571,84 @@ public class OpenImages {
             activeView.getComp().setActivePath(path);
         }
     }
+
+    /**
+     * The cached composite images, which can be recalculated when needed
+     */
+    private static class CompositeCachesMemory implements MemoryConsumer {
+        @Override
+        public String getName() {
+            return "Composite caches";
+        }
+
+        @Override
+        public long getUsedBytes() {
+            long sum = 0;
+            for (View view : views) {
+                sum += view.getComp().getCompositeCacheBytes();
+            }
+            return sum;
+        }
+
+        @Override
+        public long reclaim(long bytes) {
+            if (!EventQueue.isDispatchThread()) {
+                return 0;
+            }
+            // the active composition's cache is released only if necessary
+            long released = 0;
+            for (View view : views) {
+                if (released >= bytes) {
+                    break;
+                }
+                if (view != activeView) {
+                    released += view.getComp().releaseCompositeCache();
+                }
+            }
+            if (released < bytes && activeView != null) {
+                released += activeView.getComp().releaseCompositeCache();
+            }
+            return released;
+        }
+    }
+
+    /**
+     * The pixels of the image layers and masks. The big layers of
+     * the inactive images can be paged out. Their pixels are written
+     * out in the background, and only the layers whose backing store
+     * is already up to date are released immediately.
+     */
+    private static class LayersMemory implements MemoryConsumer {
+        @Override
+        public String getName() {
+            return "Layers";
+        }
+
+        @Override
+        public long getUsedBytes() {
+            long sum = 0;
+            for (View view : views) {
+                sum += view.getComp().getImageBytes();
+            }
+            return sum;
+        }
+
+        @Override
+        public long reclaim(long bytes) {
+            if (!EventQueue.isDispatchThread()) {
+                return 0;
+            }
+            long released = 0;
+            for (View view : views) {
+                if (released >= bytes) {
+                    break;
+                }
+                if (view != activeView) {
+                    released += view.getComp().pageOutLayers(
+                            RECLAIM_LAYER_BYTES, bytes - released);
+                }
+            }
+            return released;
+        }
+    }
 }
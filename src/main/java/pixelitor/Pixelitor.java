@@ -95,7 +95,8 @@ public class Pixelitor {
             System.setProperty("swing.aatext", "true");
 
             if (GraphicsEnvironment.isHeadless()) {
-                System.err.println("Pixelitor can't be used in headless mode");
+                System.err.println("Pixelitor can't be used in headless mode, " +
+                        "use pixelitor.automate.macro.MacroRunner for batch processing");
                 System.exit(1);
             }
         }
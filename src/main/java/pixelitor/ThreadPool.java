@@ -19,6 +19,7 @@ package pixelitor;
 
 import com.jhlabs.image.AbstractBufferedImageOp;
 import pixelitor.utils.ProgressTracker;
+import pixelitor.utils.SubtaskProgressTracker;
 
 import java.awt.image.BufferedImage;
 import java.util.concurrent.Callable;
@@ -27,6 +28,7 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * A thread pool for parallel execution on multiple CPU cores
@@ -34,12 +36,36 @@ import java.util.concurrent.Future;
 public class ThreadPool {
     private static final int NUM_CORES = Runtime.getRuntime().availableProcessors();
 
+    private static final ThreadLocal<Boolean> IS_POOL_THREAD =
+            ThreadLocal.withInitial(() -> false);
+
     private static final ExecutorService executorService =
-            Executors.newFixedThreadPool(NUM_CORES);
+            Executors.newFixedThreadPool(NUM_CORES, createThreadFactory());
 
     private ThreadPool() {
     }
 
+    private static ThreadFactory createThreadFactory() {
+        ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+        return task -> defaultFactory.newThread(() -> {
+            IS_POOL_THREAD.set(true);
+            task.run();
+        });
+    }
+
+    public static int getNumCores() {
+        return NUM_CORES;
+    }
+
+    /**
+     * Returns true if the current thread belongs to this pool.
+     * Such threads must not wait for other tasks of the pool,
+     * because those might be queued behind the waiting ones.
+     */
+    public static boolean isPoolThread() {
+        return IS_POOL_THREAD.get();
+    }
+
     /**
      * Submits a task that doesn't return anything
      */
@@ -55,6 +81,32 @@ public class ThreadPool {
         return executorService.submit(task);
     }
 
+    /**
+     * A task that processes the lines from startY (inclusive) to endY (exclusive)
+     */
+    public interface BandTask {
+        void process(int startY, int endY);
+    }
+
+    /**
+     * Processes the given number of lines in bands, one task for each band,
+     * so that the tasks can reuse their scratch arrays for all of their lines.
+     * The progress tracker is updated in units of lines.
+     */
+    public static void forEachBand(int height, ProgressTracker pt, BandTask task) {
+        int numBands = Math.min(height, 4 * NUM_CORES);
+        int bandHeight = (height + numBands - 1) / numBands;
+        numBands = (height + bandHeight - 1) / bandHeight;
+
+        Future<?>[] futures = new Future[numBands];
+        for (int i = 0; i < numBands; i++) {
+            int startY = i * bandHeight;
+            int endY = Math.min(height, startY + bandHeight);
+            futures[i] = submit(() -> task.process(startY, endY));
+        }
+        waitFor(futures, new SubtaskProgressTracker(bandHeight, pt));
+    }
+
     /**
      * Waits until all the given futures complete their
      * computation, and updates the given
@@ -17,6 +17,7 @@
 
 package pixelitor.automate;
 
+import pixelitor.filters.FilterResultCache;
 import pixelitor.gui.utils.GUIUtils;
 import pixelitor.gui.utils.OKCancelDialog;
 import pixelitor.layers.Drawable;
@@ -54,6 +55,7 @@ public abstract class Wizard {
         try {
             showDialog(dialogParent, dialogTitle);
         } finally {
+            FilterResultCache.previewSessionEnded();
             finalCleanup();
         }
     }
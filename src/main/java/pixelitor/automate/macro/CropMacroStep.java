@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+package pixelitor.automate.macro;
+
+import pixelitor.utils.ImageUtils;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import static java.lang.String.format;
+
+/**
+ * The macro equivalent of {@link pixelitor.compactions.Crop}.
+ * Like in the GUI, the crop rectangle is clipped to the image.
+ */
+public class CropMacroStep implements MacroStep {
+    private final Rectangle rect;
+
+    public CropMacroStep(int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException(format(
+                    "invalid crop size %dx%d", width, height));
+        }
+        rect = new Rectangle(x, y, width, height);
+    }
+
+    @Override
+    public BufferedImage execute(BufferedImage src) {
+        Rectangle cropRect = rect.intersection(
+                new Rectangle(0, 0, src.getWidth(), src.getHeight()));
+        if (cropRect.isEmpty()) {
+            throw new IllegalArgumentException(format(
+                    "the crop rectangle %s is outside the %dx%d image",
+                    toScript(), src.getWidth(), src.getHeight()));
+        }
+        return ImageUtils.crop(src, cropRect);
+    }
+
+    @Override
+    public String toScript() {
+        return format("crop %d %d %d %d", rect.x, rect.y, rect.width, rect.height);
+    }
+}
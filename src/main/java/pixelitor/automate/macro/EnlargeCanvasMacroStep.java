@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+package pixelitor.automate.macro;
+
+import pixelitor.utils.ImageUtils;
+
+import java.awt.image.BufferedImage;
+
+import static java.lang.String.format;
+
+/**
+ * The macro equivalent of {@link pixelitor.compactions.EnlargeCanvas}.
+ * The new areas are transparent.
+ */
+public class EnlargeCanvasMacroStep implements MacroStep {
+    private final int north;
+    private final int east;
+    private final int south;
+    private final int west;
+
+    public EnlargeCanvasMacroStep(int north, int east, int south, int west) {
+        if (north < 0 || east < 0 || south < 0 || west < 0) {
+            throw new IllegalArgumentException("the enlargements can't be negative");
+        }
+        this.north = north;
+        this.east = east;
+        this.south = south;
+        this.west = west;
+    }
+
+    @Override
+    public BufferedImage execute(BufferedImage src) {
+        // cropping with a bigger rectangle enlarges the image
+        return ImageUtils.crop(src, -west, -north,
+                src.getWidth() + west + east,
+                src.getHeight() + north + south);
+    }
+
+    @Override
+    public String toScript() {
+        return format("enlarge-canvas %d %d %d %d", north, east, south, west);
+    }
+}
@@ -17,14 +17,125 @@
 
 package pixelitor.automate.macro;
 
+import pixelitor.filters.Filter;
+import pixelitor.filters.ParametrizedFilter;
+
+import java.awt.image.BufferedImage;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.lang.String.format;
+
 /**
- * Encapsulates a filter and its parameters
+ * Encapsulates a filter and its parameters.
  *
- * The macro functionality is not finished!
+ * The parameter values are stored as strings (see {@link ParamValues}),
+ * and a new filter instance is created for each execution, because
+ * the filters are not thread-safe, and the same step can be
+ * executed on several images in parallel.
  */
 public class FilterMacroStep implements MacroStep {
+    // the packages searched for filters given by their simple class name
+    private static final String[] FILTER_PACKAGES = {
+            "pixelitor.filters",
+            "pixelitor.filters.jhlabsproxies",
+            "pixelitor.filters.convolve",
+            "pixelitor.filters.lookup",
+            "pixelitor.filters.levels",
+            "pixelitor.filters.curves",
+            "pixelitor.filters.painters",
+    };
+
+    private final Class<? extends Filter> filterClass;
+    private final Map<String, String> paramValues;
+
+    public FilterMacroStep(Class<? extends Filter> filterClass,
+                           Map<String, String> paramValues) {
+        this.filterClass = filterClass;
+        this.paramValues = new LinkedHashMap<>(paramValues);
+
+        // fail early if the values can't be applied
+        createFilter();
+    }
+
+    /**
+     * Creates a step that replays the given filter
+     * with its current settings.
+     */
+    public static FilterMacroStep capture(Filter filter) {
+        Map<String, String> values = Collections.emptyMap();
+        if (filter instanceof ParametrizedFilter) {
+            values = ParamValues.capture(((ParametrizedFilter) filter).getParamSet());
+        }
+        return new FilterMacroStep(filter.getClass(), values);
+    }
+
+    /**
+     * Finds a filter class either by its fully qualified name or by
+     * its simple name in the filter packages. For the simple names
+     * the "JH" prefix of the JH Labs proxies can be omitted.
+     */
+    public static Class<? extends Filter> findFilterClass(String name) {
+        if (name.contains(".")) {
+            Class<? extends Filter> found = loadFilterClass(name);
+            if (found == null) {
+                throw new IllegalArgumentException("filter class not found: " + name);
+            }
+            return found;
+        }
+        for (String pkg : FILTER_PACKAGES) {
+            for (String prefix : new String[]{"", "JH"}) {
+                Class<? extends Filter> found = loadFilterClass(pkg + "." + prefix + name);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        throw new IllegalArgumentException("filter not found: " + name);
+    }
+
+    private static Class<? extends Filter> loadFilterClass(String className) {
+        Class<?> c;
+        try {
+            c = Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        if (!Filter.class.isAssignableFrom(c) || Modifier.isAbstract(c.getModifiers())) {
+            return null;
+        }
+        return c.asSubclass(Filter.class);
+    }
+
+    private Filter createFilter() {
+        Filter filter;
+        try {
+            filter = filterClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(format(
+                    "the filter %s can't be created", filterClass.getSimpleName()), e);
+        }
+        if (filter instanceof ParametrizedFilter) {
+            ParamValues.apply(((ParametrizedFilter) filter).getParamSet(), paramValues);
+        } else if (!paramValues.isEmpty()) {
+            throw new IllegalArgumentException(format(
+                    "the filter %s has no parameters", filterClass.getSimpleName()));
+        }
+        return filter;
+    }
+
     @Override
-    public void execute() {
+    public BufferedImage execute(BufferedImage src) {
+        return createFilter().transformImage(src);
+    }
 
+    @Override
+    public String toScript() {
+        StringBuilder sb = new StringBuilder("filter ").append(filterClass.getName());
+        paramValues.forEach((name, value) ->
+                sb.append("\n    ").append(name).append(" = ").append(value));
+        return sb.toString();
     }
 }
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+package pixelitor.automate.macro;
+
+import pixelitor.compactions.Flip.Direction;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Locale;
+
+/**
+ * The macro equivalent of {@link pixelitor.compactions.Flip}
+ */
+public class FlipMacroStep implements MacroStep {
+    private final Direction direction;
+
+    public FlipMacroStep(Direction direction) {
+        this.direction = direction;
+    }
+
+    @Override
+    public BufferedImage execute(BufferedImage src) {
+        BufferedImage dest = ImageUtils.createImageWithSameCM(src);
+        Graphics2D g2 = dest.createGraphics();
+        g2.setTransform(direction.createImageTransform(src));
+        g2.drawImage(src, 0, 0, src.getWidth(), src.getHeight(), null);
+        g2.dispose();
+        return dest;
+    }
+
+    @Override
+    public String toScript() {
+        return "flip " + direction.name().toLowerCase(Locale.ENGLISH);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+package pixelitor.automate.macro;
+
+import pixelitor.compactions.Flip;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+/**
+ * A sequence of {@link MacroStep}s, which can be written
+ * to and parsed from a simple line-based script. Example:
+ * <pre>
+ * # the lines starting with # are comments
+ * filter GaussianBlur
+ *     Radius = 5, 5
+ * resize 800 600 keep-proportions
+ * crop 10 10 400 300
+ * rotate 90
+ * flip horizontal
+ * enlarge-canvas 10 20 10 20
+ * </pre>
+ * The indented "name = value" lines set the parameters
+ * of the preceding filter, the others keep their defaults.
+ */
+public class Macro {
+    private final List<MacroStep> steps;
+
+    public Macro(List<MacroStep> steps) {
+        this.steps = List.copyOf(steps);
+    }
+
+    public static Macro read(Path scriptFile) throws IOException {
+        return parse(Files.readAllLines(scriptFile, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses the given script lines. Throws an IllegalArgumentException
+     * with the line number if the script is not valid.
+     */
+    public static Macro parse(List<String> lines) {
+        List<MacroStep> steps = new ArrayList<>();
+
+        String filterName = null;
+        int filterLineNr = 0;
+        Map<String, String> filterParams = new LinkedHashMap<>();
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            String trimmed = line.trim();
+            int lineNr = i + 1;
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            try {
+                boolean indented = Character.isWhitespace(line.charAt(0));
+                if (indented) {
+                    if (filterName == null) {
+                        throw new IllegalArgumentException("parameter without a filter");
+                    }
+                    int eqIndex = trimmed.indexOf('=');
+                    if (eqIndex < 1) {
+                        throw new IllegalArgumentException("expected 'name = value'");
+                    }
+                    filterParams.put(trimmed.substring(0, eqIndex).trim(),
+                            trimmed.substring(eqIndex + 1).trim());
+                    continue;
+                }
+
+                // a new step starts, the pending filter is complete
+                if (filterName != null) {
+                    steps.add(createFilterStep(filterName, filterParams, filterLineNr));
+                    filterName = null;
+                    filterParams.clear();
+                }
+
+                String[] tokens = trimmed.split("\\s+");
+                String command = tokens[0].toLowerCase(Locale.ENGLISH);
+                if (command.equals("filter")) {
+                    checkArgCount(tokens, 1);
+                    filterName = tokens[1];
+                    filterLineNr = lineNr;
+                } else {
+                    steps.add(parseCompStep(command, tokens));
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(format(
+                        "line %d: %s", lineNr, e.getMessage()), e);
+            }
+        }
+        if (filterName != null) {
+            steps.add(createFilterStep(filterName, filterParams, filterLineNr));
+        }
+        return new Macro(steps);
+    }
+
+    private static MacroStep createFilterStep(String name, Map<String, String> params, int lineNr) {
+        try {
+            return new FilterMacroStep(FilterMacroStep.findFilterClass(name), params);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(format(
+                    "line %d: %s", lineNr, e.getMessage()), e);
+        }
+    }
+
+    private static MacroStep parseCompStep(String command, String[] tokens) {
+        switch (command) {
+            case "resize":
+                if (tokens.length == 4 && tokens[3].equalsIgnoreCase("keep-proportions")) {
+                    return new ResizeMacroStep(parseInt(tokens[1]), parseInt(tokens[2]), true);
+                }
+                checkArgCount(tokens, 2);
+                return new ResizeMacroStep(parseInt(tokens[1]), parseInt(tokens[2]), false);
+            case "crop":
+                checkArgCount(tokens, 4);
+                return new CropMacroStep(parseInt(tokens[1]), parseInt(tokens[2]),
+                        parseInt(tokens[3]), parseInt(tokens[4]));
+            case "rotate":
+                checkArgCount(tokens, 1);
+                return RotateMacroStep.fromDegrees(parseInt(tokens[1]));
+            case "flip":
+                checkArgCount(tokens, 1);
+                if (tokens[1].equalsIgnoreCase("horizontal")) {
+                    return new FlipMacroStep(Flip.Direction.HORIZONTAL);
+                } else if (tokens[1].equalsIgnoreCase("vertical")) {
+                    return new FlipMacroStep(Flip.Direction.VERTICAL);
+                }
+                throw new IllegalArgumentException("the flip direction must be horizontal or vertical");
+            case "enlarge-canvas":
+                checkArgCount(tokens, 4);
+                return new EnlargeCanvasMacroStep(parseInt(tokens[1]), parseInt(tokens[2]),
+                        parseInt(tokens[3]), parseInt(tokens[4]));
+            case "tool":
+            case "stroke":
+                // see ToolStrokeMacroStep
+                throw new IllegalArgumentException("tool strokes are not " +
+                        "supported in macros, because the tools need an image view");
+            default:
+                throw new IllegalArgumentException("unknown command: " + tokens[0]);
+        }
+    }
+
+    private static void checkArgCount(String[] tokens, int expected) {
+        int found = tokens.length - 1;
+        if (found != expected) {
+            throw new IllegalArgumentException(format(
+                    "%s expects %d arguments, found %d", tokens[0], expected, found));
+        }
+    }
+
+    private static int parseInt(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not an integer: " + s, e);
+        }
+    }
+
+    /**
+     * Runs all steps on the given image and returns the result.
+     * The source image is not changed.
+     */
+    public BufferedImage execute(BufferedImage src) {
+        BufferedImage img = src;
+        for (MacroStep step : steps) {
+            BufferedImage next = step.execute(img);
+            if (img != src && img != next) {
+                img.flush();
+            }
+            img = next;
+        }
+        return img;
+    }
+
+    public List<MacroStep> getSteps() {
+        return steps;
+    }
+
+    public String toScript() {
+        StringBuilder sb = new StringBuilder();
+        for (MacroStep step : steps) {
+            sb.append(step.toScript()).append('\n');
+        }
+        return sb.toString();
+    }
+}
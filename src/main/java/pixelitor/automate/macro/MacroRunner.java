@@ -0,0 +1,288 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+package pixelitor.automate.macro;
+
+import pixelitor.io.FileFormat;
+import pixelitor.io.FileUtils;
+import pixelitor.io.TrackedIO;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.lang.String.format;
+
+/**
+ * The headless command-line entry point, which runs a
+ * {@link Macro} script on the files matching the input globs.
+ * <p>
+ * Usage: {@code java -cp <classpath> pixelitor.automate.macro.MacroRunner
+ * [-threads N] [-format EXT] -out DIR SCRIPT INPUT_GLOB...}
+ * <p>
+ * The files are processed by N threads (1 by default), in addition
+ * to the parallelism of the filters themselves. The output files
+ * have the same names as the inputs, with the given extension
+ * (if any), and are written in single-layered formats. If two
+ * inputs would be written to the same output file (for example
+ * files with the same name from different directories),
+ * nothing is processed.
+ */
+public class MacroRunner {
+    private static final String USAGE = "Usage: MacroRunner [-threads N] " +
+            "[-format EXT] -out DIR SCRIPT INPUT_GLOB...";
+
+    private final Macro macro;
+    private final Path outputDir;
+    private final String outputExt;
+    private final int numThreads;
+
+    public MacroRunner(Macro macro, Path outputDir, String outputExt, int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("numThreads = " + numThreads);
+        }
+        if (outputExt != null) {
+            checkOutputFormat(outputExt);
+        }
+        this.macro = macro;
+        this.outputDir = outputDir;
+        this.outputExt = outputExt;
+        this.numThreads = numThreads;
+    }
+
+    public static void main(String[] args) {
+        // must be set before the first AWT class is loaded
+        System.setProperty("java.awt.headless", "true");
+
+        int numThreads = 1;
+        String outputExt = null;
+        Path outputDir = null;
+        List<String> positionalArgs = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("-threads") && i + 1 < args.length) {
+                    numThreads = Integer.parseInt(args[++i]);
+                } else if (arg.equals("-format") && i + 1 < args.length) {
+                    outputExt = args[++i];
+                } else if (arg.equals("-out") && i + 1 < args.length) {
+                    outputDir = Paths.get(args[++i]);
+                } else {
+                    positionalArgs.add(arg);
+                }
+            }
+            if (outputDir == null || positionalArgs.size() < 2) {
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+
+            Macro macro = Macro.read(Paths.get(positionalArgs.get(0)));
+            List<Path> inputs = new ArrayList<>();
+            for (String glob : positionalArgs.subList(1, positionalArgs.size())) {
+                inputs.addAll(expandGlob(glob));
+            }
+
+            var runner = new MacroRunner(macro, outputDir, outputExt, numThreads);
+            int numFailed = runner.run(inputs);
+            System.exit(numFailed == 0 ? 0 : 1);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Processes the given files and returns the number of failures.
+     * The errors are reported on the standard error.
+     *
+     * @throws IllegalArgumentException if two inputs have the same output file
+     */
+    public int run(List<Path> inputs) throws IOException {
+        // the same file can be matched by several globs
+        Set<Path> uniqueInputs = new LinkedHashSet<>();
+        for (Path input : inputs) {
+            uniqueInputs.add(input.toAbsolutePath().normalize());
+        }
+        inputs = new ArrayList<>(uniqueInputs);
+        checkOutputCollisions(inputs);
+
+        Files.createDirectories(outputDir);
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (Path input : inputs) {
+            futures.add(executor.submit(() -> {
+                process(input);
+                return null;
+            }));
+        }
+        executor.shutdown();
+
+        int numFailed = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+                throw new IllegalStateException(e);
+            } catch (Exception e) {
+                numFailed++;
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                System.err.printf("%s: %s%n", inputs.get(i), cause);
+            }
+        }
+        return numFailed;
+    }
+
+    /**
+     * Runs the macro on a single file and returns the output path.
+     */
+    public Path process(Path input) throws IOException {
+        BufferedImage src;
+        try (InputStream is = Files.newInputStream(input)) {
+            src = TrackedIO.readFromStream(is, ProgressTracker.NULL_TRACKER);
+        }
+        if (src == null) {
+            throw new IOException("could not decode " + input);
+        }
+        // the same image type as for the images opened in the GUI
+        src = ImageUtils.toSysCompatibleImage(src);
+
+        BufferedImage result = macro.execute(src);
+
+        Path output = getOutputPath(input);
+        FileFormat format = checkOutputFormat(getOutputExt(input));
+        BufferedImage savable = format.toSavableImage(result);
+        try (OutputStream os = Files.newOutputStream(output)) {
+            TrackedIO.writeToStream(savable, os, format.toString(),
+                    ProgressTracker.NULL_TRACKER);
+        }
+        return output;
+    }
+
+    private String getOutputExt(Path input) {
+        if (outputExt != null) {
+            return outputExt;
+        }
+        String ext = FileUtils.findExtension(input.getFileName().toString()).orElse("png");
+        if (FileFormat.fromExtension(ext).map(FileFormat::isLayered).orElse(true)) {
+            ext = "png";
+        }
+        return ext;
+    }
+
+    private Path getOutputPath(Path input) {
+        String fileName = input.getFileName().toString();
+        return outputDir.resolve(FileUtils.replaceExt(fileName, getOutputExt(input)));
+    }
+
+    private void checkOutputCollisions(List<Path> inputs) {
+        Map<Path, Path> inputsByOutput = new HashMap<>();
+        for (Path input : inputs) {
+            Path output = getOutputPath(input);
+            Path other = inputsByOutput.putIfAbsent(output, input);
+            if (other != null) {
+                throw new IllegalArgumentException(format(
+                        "%s and %s would be written to the same file %s",
+                        other, input, output));
+            }
+        }
+    }
+
+    private static FileFormat checkOutputFormat(String ext) {
+        FileFormat format = FileFormat.fromExtension(ext).orElseThrow(
+                () -> new IllegalArgumentException("unknown output format: " + ext));
+        if (format.isLayered()) {
+            throw new IllegalArgumentException(format(
+                    "the layered %s format is not supported as an output", format));
+        }
+        return format;
+    }
+
+    /**
+     * Returns the regular files matching the given glob pattern,
+     * where the directories are searched starting with the
+     * longest path prefix that has no wildcards.
+     */
+    public static List<Path> expandGlob(String pattern) throws IOException {
+        String normalized = pattern.replace('\\', '/');
+        String[] parts = normalized.split("/");
+
+        int firstGlobPart = parts.length;
+        for (int i = 0; i < parts.length; i++) {
+            if (containsGlobChars(parts[i])) {
+                firstGlobPart = i;
+                break;
+            }
+        }
+        if (firstGlobPart == parts.length) {
+            // not a pattern, just a file name
+            Path path = Paths.get(pattern);
+            return Files.isRegularFile(path) ? List.of(path) : List.of();
+        }
+
+        String baseDirName = String.join("/", List.of(parts).subList(0, firstGlobPart));
+        if (baseDirName.isEmpty()) {
+            // the pattern is relative to the current dir or starts with "/"
+            baseDirName = normalized.startsWith("/") ? "/" : ".";
+        }
+        Path baseDir = Paths.get(baseDirName);
+        if (!Files.isDirectory(baseDir)) {
+            return List.of();
+        }
+
+        String relativePattern = String.join("/",
+                List.of(parts).subList(firstGlobPart, parts.length));
+        PathMatcher matcher = FileSystems.getDefault()
+                .getPathMatcher("glob:" + relativePattern);
+        int maxDepth = relativePattern.contains("**")
+                ? Integer.MAX_VALUE
+                : parts.length - firstGlobPart;
+
+        try (Stream<Path> paths = Files.walk(baseDir, maxDepth)) {
+            return paths
+                    .filter(Files::isRegularFile)
+                    .filter(path -> matcher.matches(baseDir.relativize(path)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean containsGlobChars(String s) {
+        return s.indexOf('*') >= 0 || s.indexOf('?') >= 0
+                || s.indexOf('[') >= 0 || s.indexOf('{') >= 0;
+    }
+}
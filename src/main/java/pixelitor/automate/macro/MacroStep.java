@@ -17,13 +17,26 @@
 
 package pixelitor.automate.macro;
 
+import java.awt.image.BufferedImage;
+
 /**
  * A step of a recorded macro.
  * Following the Command design pattern it encapsulates
  * a user action that can be replayed.
  *
- * The macro functionality is not finished!
+ * The steps work on flattened images, so that they
+ * can be replayed without a GUI, see {@link MacroRunner}.
  */
 public interface MacroStep {
-    void execute();
+    /**
+     * Applies this step to the given image. The returned image
+     * is a new one, the source image is not changed.
+     */
+    BufferedImage execute(BufferedImage src);
+
+    /**
+     * Returns the script representation of this step,
+     * which can be parsed by {@link Macro#parse}.
+     */
+    String toScript();
 }
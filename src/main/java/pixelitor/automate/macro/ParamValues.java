@@ -0,0 +1,234 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.automate.macro;
+
+import pixelitor.filters.gui.AbstractMultipleChoiceParam;
+import pixelitor.filters.gui.AngleParam;
+import pixelitor.filters.gui.BooleanParam;
+import pixelitor.filters.gui.ColorParam;
+import pixelitor.filters.gui.FilterParam;
+import pixelitor.filters.gui.GroupedRangeParam;
+import pixelitor.filters.gui.ImagePositionParam;
+import pixelitor.filters.gui.ParamSet;
+import pixelitor.filters.gui.RangeParam;
+
+import java.awt.Color;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+/**
+ * Converts the values of filter parameters to and from the
+ * strings used in macro scripts.
+ *
+ * Only the parameter types that have a simple textual
+ * representation are supported, the others (gradients,
+ * strokes, effects, etc.) keep their default values.
+ */
+public final class ParamValues {
+    private ParamValues() {
+        // should not be instantiated
+    }
+
+    /**
+     * Returns the values of the supported parameters
+     * in the given set, keyed by the parameter names.
+     */
+    public static Map<String, String> capture(ParamSet paramSet) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (FilterParam param : paramSet) {
+            String value = toString(param);
+            if (value != null) {
+                values.put(param.getName(), value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Sets the named parameters of the given set to the given values.
+     */
+    public static void apply(ParamSet paramSet, Map<String, String> values) {
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            FilterParam param = find(paramSet, entry.getKey());
+            setFromString(param, entry.getValue());
+        }
+    }
+
+    private static FilterParam find(ParamSet paramSet, String name) {
+        for (FilterParam param : paramSet) {
+            if (param.getName().equalsIgnoreCase(name)) {
+                return param;
+            }
+        }
+        throw new IllegalArgumentException(format(
+                "unknown parameter '%s', the known ones are %s",
+                name, paramSet.getParams()));
+    }
+
+    /**
+     * Returns the value of the given parameter as a string,
+     * or null if the parameter type is not supported.
+     */
+    public static String toString(FilterParam param) {
+        if (param instanceof RangeParam) {
+            return formatNumber(((RangeParam) param).getValueAsDouble());
+        } else if (param instanceof AngleParam) {
+            return String.valueOf(((AngleParam) param).getValueInDegrees());
+        } else if (param instanceof BooleanParam) {
+            return String.valueOf(((BooleanParam) param).isChecked());
+        } else if (param instanceof AbstractMultipleChoiceParam) {
+            return ((AbstractMultipleChoiceParam<?>) param).getSelectedItem().toString();
+        } else if (param instanceof ColorParam) {
+            return format("#%08X", ((ColorParam) param).getColor().getRGB());
+        } else if (param instanceof ImagePositionParam) {
+            var ipp = (ImagePositionParam) param;
+            return formatNumber(ipp.getRelativeX()) + ", " + formatNumber(ipp.getRelativeY());
+        } else if (param instanceof GroupedRangeParam) {
+            var grp = (GroupedRangeParam) param;
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < grp.getNumParams(); i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(formatNumber(grp.getValueAsDouble(i)));
+            }
+            return sb.toString();
+        }
+        return null;
+    }
+
+    /**
+     * Sets the given parameter from its string representation
+     * without triggering a filter execution.
+     */
+    public static void setFromString(FilterParam param, String value) {
+        String s = value.trim();
+        try {
+            if (param instanceof RangeParam) {
+                ((RangeParam) param).setValue(Double.parseDouble(s), false);
+            } else if (param instanceof AngleParam) {
+                ((AngleParam) param).setValueInDegrees(Double.parseDouble(s), false);
+            } else if (param instanceof BooleanParam) {
+                ((BooleanParam) param).setValue(parseBoolean(s), false, false);
+            } else if (param instanceof AbstractMultipleChoiceParam) {
+                selectChoice((AbstractMultipleChoiceParam<?>) param, s);
+            } else if (param instanceof ColorParam) {
+                ((ColorParam) param).setColor(parseColor(s), false);
+            } else if (param instanceof ImagePositionParam) {
+                double[] xy = parseNumbers(s, 2);
+                ((ImagePositionParam) param).setRelativeValues(
+                        (float) xy[0], (float) xy[1], false, false, false);
+            } else if (param instanceof GroupedRangeParam) {
+                setGroupedValues((GroupedRangeParam) param, s);
+            } else {
+                throw new IllegalArgumentException(format(
+                        "the parameter '%s' (%s) can't be set from a script",
+                        param.getName(), param.getClass().getSimpleName()));
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(format(
+                    "invalid value '%s' for the parameter '%s'",
+                    s, param.getName()), e);
+        }
+    }
+
+    private static void selectChoice(AbstractMultipleChoiceParam<?> param, String s) {
+        int numChoices = param.getSize();
+        for (int i = 0; i < numChoices; i++) {
+            Object choice = param.getElementAt(i);
+            if (choice.toString().equalsIgnoreCase(s)) {
+                param.setSelectedItem(choice);
+                return;
+            }
+        }
+        StringBuilder choices = new StringBuilder();
+        for (int i = 0; i < numChoices; i++) {
+            choices.append(i == 0 ? "" : ", ").append(param.getElementAt(i));
+        }
+        throw new IllegalArgumentException(format(
+                "invalid choice '%s' for the parameter '%s', the valid ones are %s",
+                s, param.getName(), choices));
+    }
+
+    private static void setGroupedValues(GroupedRangeParam param, String s) {
+        int numParams = param.getNumParams();
+        double[] values = parseNumbers(s, numParams);
+        boolean allEqual = true;
+        for (int i = 1; i < numParams; i++) {
+            if (values[i] != values[0]) {
+                allEqual = false;
+                break;
+            }
+        }
+        if (!allEqual && param.isLinked()) {
+            // otherwise changing one value would change the others
+            param.setLinked(false);
+        }
+        for (int i = 0; i < numParams; i++) {
+            param.getRangeParam(i).setValue(values[i], false);
+        }
+    }
+
+    private static boolean parseBoolean(String s) {
+        if (s.equalsIgnoreCase("true") || s.equalsIgnoreCase("yes")) {
+            return true;
+        } else if (s.equalsIgnoreCase("false") || s.equalsIgnoreCase("no")) {
+            return false;
+        }
+        throw new NumberFormatException("not a boolean: " + s);
+    }
+
+    /**
+     * Parses colors in the #RRGGBB or #AARRGGBB formats.
+     */
+    private static Color parseColor(String s) {
+        String hex = s.startsWith("#") ? s.substring(1) : s;
+        if (hex.length() == 6) {
+            return new Color(Integer.parseInt(hex, 16));
+        } else if (hex.length() == 8) {
+            return new Color((int) Long.parseLong(hex, 16), true);
+        }
+        throw new NumberFormatException("not a color: " + s);
+    }
+
+    private static double[] parseNumbers(String s, int expectedCount) {
+        String[] parts = s.split(",");
+        if (parts.length != expectedCount) {
+            throw new NumberFormatException(format(
+                    "expected %d comma-separated numbers", expectedCount));
+        }
+        double[] numbers = new double[expectedCount];
+        for (int i = 0; i < expectedCount; i++) {
+            numbers[i] = Double.parseDouble(parts[i].trim());
+        }
+        return numbers;
+    }
+
+    private static String formatNumber(double d) {
+        if (d == Math.rint(d) && Math.abs(d) < 1.0e9) {
+            return String.valueOf((long) d);
+        }
+        // at most 4 decimal places, without trailing zeros
+        String s = format(Locale.ENGLISH, "%.4f", d);
+        s = s.replaceAll("0+$", "");
+        return s.endsWith(".") ? s.substring(0, s.length() - 1) : s;
+    }
+}
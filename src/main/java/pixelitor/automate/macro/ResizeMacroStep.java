@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+package pixelitor.automate.macro;
+
+import pixelitor.utils.ImageUtils;
+
+import java.awt.image.BufferedImage;
+
+import static java.lang.String.format;
+
+/**
+ * The macro equivalent of {@link pixelitor.compactions.Resize}
+ */
+public class ResizeMacroStep implements MacroStep {
+    private final int width;
+    private final int height;
+
+    // if true, the image is resized to fit into the given
+    // size, otherwise it is stretched to exactly that size
+    private final boolean keepProportions;
+
+    public ResizeMacroStep(int width, int height, boolean keepProportions) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException(format(
+                    "invalid size %dx%d", width, height));
+        }
+        this.width = width;
+        this.height = height;
+        this.keepProportions = keepProportions;
+    }
+
+    @Override
+    public BufferedImage execute(BufferedImage src) {
+        int targetWidth = width;
+        int targetHeight = height;
+        if (keepProportions) {
+            double scale = Math.min(
+                    width / (double) src.getWidth(),
+                    height / (double) src.getHeight());
+            targetWidth = Math.max(1, (int) Math.round(src.getWidth() * scale));
+            targetHeight = Math.max(1, (int) Math.round(src.getHeight() * scale));
+        }
+        if (targetWidth == src.getWidth() && targetHeight == src.getHeight()) {
+            return ImageUtils.copyImage(src);
+        }
+        return ImageUtils.resizeAsync(src, targetWidth, targetHeight).join();
+    }
+
+    @Override
+    public String toScript() {
+        return format("resize %d %d%s", width, height,
+                keepProportions ? " keep-proportions" : "");
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+package pixelitor.automate.macro;
+
+import pixelitor.compactions.Rotate.SpecialAngle;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import static java.awt.RenderingHints.KEY_INTERPOLATION;
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+
+/**
+ * The macro equivalent of {@link pixelitor.compactions.Rotate}
+ */
+public class RotateMacroStep implements MacroStep {
+    private final SpecialAngle angle;
+
+    public RotateMacroStep(SpecialAngle angle) {
+        this.angle = angle;
+    }
+
+    /**
+     * Creates the step from the clockwise angle in degrees,
+     * which must be 90, 180 or 270.
+     */
+    public static RotateMacroStep fromDegrees(int degrees) {
+        for (SpecialAngle specialAngle : SpecialAngle.values()) {
+            if (specialAngle.getAngleDegree() == degrees) {
+                return new RotateMacroStep(specialAngle);
+            }
+        }
+        throw new IllegalArgumentException("the angle must be 90, 180 or 270, not " + degrees);
+    }
+
+    @Override
+    public BufferedImage execute(BufferedImage src) {
+        BufferedImage dest = angle.createDestImage(src);
+        Graphics2D g2 = dest.createGraphics();
+        // nearest neighbor should be ok for 90, 180, 270 degrees
+        g2.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g2.setTransform(angle.createImageTransform(src));
+        g2.drawImage(src, 0, 0, src.getWidth(), src.getHeight(), null);
+        g2.dispose();
+        return dest;
+    }
+
+    @Override
+    public String toScript() {
+        return "rotate " + angle.getAngleDegree();
+    }
+}
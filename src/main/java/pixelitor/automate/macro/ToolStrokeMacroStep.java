@@ -20,11 +20,9 @@ package pixelitor.automate.macro;
 /**
  * Encapsulates a tool stroke
  *
- * The macro functionality is not finished!
+ * This is not a {@link MacroStep} yet, because the tools depend on
+ * the views, while the macro steps work on flattened images.
+ * Until then the tool strokes are rejected by {@link Macro#parse}.
  */
-public class ToolStrokeMacroStep implements MacroStep {
-    @Override
-    public void execute() {
-
-    }
+public class ToolStrokeMacroStep {
 }
@@ -18,6 +18,7 @@
 package pixelitor.compactions;
 
 import pixelitor.Canvas;
+import pixelitor.Composition;
 import pixelitor.OpenImages;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.gui.View;
@@ -60,6 +61,16 @@ public class EnlargeCanvas extends SimpleCompAction {
         newCanvas.changeSize(newCanvasWidth, newCanvasHeight, view);
     }
 
+    @Override
+    protected long estimateMemoryNeeded(Composition comp) {
+        Canvas canvas = comp.getCanvas();
+        double oldArea = (double) canvas.getWidth() * canvas.getHeight();
+        double newArea = (double) (canvas.getWidth() + east + west)
+                * (canvas.getHeight() + north + south);
+        long imageBytes = comp.getImageBytes();
+        return imageBytes + (long) (imageBytes * newArea / oldArea);
+    }
+
     @Override
     protected String getEditName() {
         return NAME;
@@ -25,6 +25,7 @@ import pixelitor.guides.Guides;
 import pixelitor.history.CompositionReplacedEdit;
 import pixelitor.history.History;
 import pixelitor.selection.SelectionActions;
+import pixelitor.utils.MemoryGovernor;
 import pixelitor.utils.Messages;
 import pixelitor.utils.ProgressHandler;
 import pixelitor.utils.Utils;
@@ -83,6 +84,15 @@ public class Resize implements CompAction {
         }
         Dimension targetSize = new Dimension(canvasTargetWidth, canvasTargetHeight);
 
+        // the copy of the composition and the resized images
+        long imageBytes = oldComp.getImageBytes();
+        double areaRatio = ((double) canvasTargetWidth * canvasTargetHeight)
+                / ((double) canvasCurrWidth * canvasCurrHeight);
+        long neededBytes = imageBytes + (long) (imageBytes * areaRatio);
+        if (!MemoryGovernor.admitOrWarn("Resize", neededBytes)) {
+            return CompletableFuture.completedFuture(oldComp);
+        }
+
         // The resize runs outside the EDT so that the progress bar animation
         // can update and multiple resizing operations can run in parallel
         var progressHandler = Messages.startProgress("Resizing", -1);
@@ -28,6 +28,7 @@ import pixelitor.layers.ContentLayer;
 import pixelitor.layers.Layer;
 import pixelitor.layers.LayerMask;
 import pixelitor.selection.SelectionActions;
+import pixelitor.utils.MemoryGovernor;
 import pixelitor.utils.Messages;
 
 import javax.swing.*;
@@ -57,6 +58,10 @@ public abstract class SimpleCompAction extends AbstractAction implements CompAct
 
     @Override
     public CompletableFuture<Composition> process(Composition oldComp) {
+        if (!MemoryGovernor.admitOrWarn(getEditName(), estimateMemoryNeeded(oldComp))) {
+            return CompletableFuture.completedFuture(oldComp);
+        }
+
         View view = oldComp.getView();
         Composition newComp = oldComp.createCopy(true, true);
         Canvas newCanvas = newComp.getCanvas();
@@ -107,6 +112,14 @@ public abstract class SimpleCompAction extends AbstractAction implements CompAct
         }
     }
 
+    /**
+     * Returns the estimated number of bytes needed for the copy
+     * of the composition and for the transformed layer images.
+     */
+    protected long estimateMemoryNeeded(Composition comp) {
+        return 2 * comp.getImageBytes();
+    }
+
     protected abstract void changeCanvasSize(Canvas newCanvas, View view);
 
     protected abstract String getEditName();
@@ -23,6 +23,7 @@ import pixelitor.filters.gui.IntChoiceParam.Value;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ReseedActions;
 import pixelitor.filters.gui.ShowOriginal;
+import pixelitor.filters.impl.IFSRenderer;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Shapes;
 import pixelitor.utils.StatusBarProgressTracker;
@@ -33,9 +34,8 @@ import java.awt.Graphics2D;
 import java.awt.geom.Line2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.concurrent.ThreadLocalRandom;
 
 import static java.awt.RenderingHints.KEY_ANTIALIASING;
@@ -60,7 +60,7 @@ public class ChaosGame extends ParametrizedFilter {
     private final RangeParam numVerticesParam = new RangeParam("Number of Vertices", 3, 3, 10);
     private final RangeParam fraction = new RangeParam("Jump Fraction (%)", 1, 50, 99);
     private final RangeParam iterations = new RangeParam("Iterations (millions)",
-            1, 1, 10, true, BORDER, IGNORE_RANDOMIZE);
+            1, 1, 100, true, BORDER, IGNORE_RANDOMIZE);
     private final IntChoiceParam colors = new IntChoiceParam("Colors", new Value[]{
             new Value("None", COLORS_BW),
             new Value("Last Vertex", COLORS_LAST_VERTEX),
@@ -71,6 +71,9 @@ public class ChaosGame extends ParametrizedFilter {
     private final BooleanParam midpointJump = new BooleanParam("Jump to Midpoints", false);
     private final BooleanParam restrict = new BooleanParam("No Vertex Repetition", false);
     private final BooleanParam showPoly = new BooleanParam("Show Polygon", false, IGNORE_RANDOMIZE);
+    private final BooleanParam logDensity = new BooleanParam("Log Density Shading", false);
+
+    private long seed = ThreadLocalRandom.current().nextLong();
 
     public ChaosGame() {
         super(ShowOriginal.NO);
@@ -83,15 +86,14 @@ public class ChaosGame extends ParametrizedFilter {
                 centerJump,
                 midpointJump,
                 restrict,
-                showPoly).withAction(ReseedActions.noOpReseed());
+                logDensity,
+                showPoly).withAction(ReseedActions.reseedByCalling(
+                () -> seed = ThreadLocalRandom.current().nextLong()));
     }
 
     @Override
     public BufferedImage doTransform(BufferedImage src, BufferedImage dest) {
-        int numIterations = iterations.getValue() * 1_000_000;
-        int workUnit = numIterations / 20;
-        int numWorkUnits = 20;
-        var pt = new StatusBarProgressTracker(NAME, numWorkUnits);
+        long numIterations = iterations.getValue() * 1_000_000L;
 
         double minX = Double.POSITIVE_INFINITY;
         double minY = Double.POSITIVE_INFINITY;
@@ -187,62 +189,21 @@ public class ChaosGame extends ParametrizedFilter {
             p.y = MARGIN + vScale * (p.y - minY);
         }
 
-        int[] destPixels = ImageUtils.getPixelsAsArray(dest);
-        Arrays.fill(destPixels, 0xFF_FF_FF_FF); // fill with white
-
-        Random r = ThreadLocalRandom.current();
-
         double factor = fraction.getPercentageValD();
-        double factor2 = 1 - factor;
-
-        // start at a random location
-        double x = r.nextInt(width);
-        double y = r.nextInt(height);
-
         Point[] pointsArray = points.toArray(EMPTY_ARRAY);
-        int numPoints = points.size();
-
-        // throw away the first 50 points
-        Point last = null;
-        Point last2 = null;
-        for (int i = 0; i < 50; i++) {
-            int rand = r.nextInt(numPoints);
-            Point point = pointsArray[rand];
-            x = x * factor + point.x * factor2;
-            y = y * factor + point.y * factor2;
-            last2 = last;
-            last = point;
-        }
-
-        int counter = 0;
         boolean restrictRepetition = restrict.isChecked();
-        for (int i = 0; i < numIterations; i++) {
-            int rand = r.nextInt(numPoints);
-            Point point = pointsArray[rand];
-            if(restrictRepetition && point == last) {
-                continue;
-            }
-            x = x * factor + point.x * factor2;
-            y = y * factor + point.y * factor2;
-
-            int index = (int) x + width * (int) y;
+        boolean withColors = colorsValue != COLORS_BW;
 
-            if(colorsValue == COLORS_LAST_BUT_TWO) {
-                destPixels[index] = last2.color;
-            } else if(colorsValue == COLORS_LAST_BUT_ONE) {
-                destPixels[index] = last.color;
-            } else {
-                destPixels[index] = point.color;
-            }
-            last2 = last;
-            last = point;
+        var renderer = new IFSRenderer(width, height, withColors);
+        var pt = new StatusBarProgressTracker(NAME, IFSRenderer.NUM_CHAINS);
+        // the first 50 points of each chain are thrown away
+        renderer.render(() -> new Chain(pointsArray, factor, width, height,
+                        colorsValue, restrictRepetition),
+                numIterations, 50, seed, pt);
 
-            counter++;
-            if (counter == workUnit) {
-                counter = 0;
-                pt.unitDone();
-            }
-        }
+        int[] destPixels = ImageUtils.getPixelsAsArray(dest);
+        renderer.toneMap(destPixels, 0xFF_FF_FF_FF, 0xFF_00_00_00,
+                logDensity.isChecked());
 
         if (showPoly.isChecked()) {
             drawPolygon(dest, points, numVertices, colorsValue != COLORS_BW);
@@ -290,6 +251,74 @@ public class ChaosGame extends ParametrizedFilter {
         return false;
     }
 
+    /**
+     * The random walk of the chaos game
+     */
+    private static class Chain implements IFSRenderer.Chain {
+        private final Point[] points;
+        private final double factor;
+        private final double factor2;
+        private final int colorsValue;
+        private final boolean restrictRepetition;
+
+        private double x;
+        private double y;
+        private Point last;
+        private Point last2;
+        private Point current;
+
+        Chain(Point[] points, double factor, int width, int height,
+              int colorsValue, boolean restrictRepetition) {
+            this.points = points;
+            this.factor = factor;
+            factor2 = 1 - factor;
+            this.colorsValue = colorsValue;
+            this.restrictRepetition = restrictRepetition;
+
+            // start in the middle, the first points are thrown away anyway
+            x = width / 2.0;
+            y = height / 2.0;
+            current = points[0];
+            last = current;
+            last2 = current;
+        }
+
+        @Override
+        public boolean step(SplittableRandom random) {
+            Point point = points[random.nextInt(points.length)];
+            if (restrictRepetition && point == current) {
+                return false;
+            }
+            x = x * factor + point.x * factor2;
+            y = y * factor + point.y * factor2;
+
+            last2 = last;
+            last = current;
+            current = point;
+            return true;
+        }
+
+        @Override
+        public double getX() {
+            return x;
+        }
+
+        @Override
+        public double getY() {
+            return y;
+        }
+
+        @Override
+        public int getColor() {
+            if (colorsValue == COLORS_LAST_BUT_TWO) {
+                return last2.color;
+            } else if (colorsValue == COLORS_LAST_BUT_ONE) {
+                return last.color;
+            }
+            return current.color;
+        }
+    }
+
     /**
      * A point with double precision and an associated color
      */
@@ -17,8 +17,9 @@
 
 package pixelitor.filters;
 
-import com.jhlabs.image.ImageMath;
+import com.jhlabs.math.NoiseEngine;
 import pixelitor.ThreadPool;
+import pixelitor.filters.gui.BooleanParam;
 import pixelitor.filters.gui.ColorParam;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
@@ -28,9 +29,9 @@ import pixelitor.utils.StatusBarProgressTracker;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
-import java.util.Random;
-import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 
+import static com.jhlabs.math.NoiseEngine.Fade.QUINTIC;
 import static java.awt.Color.BLACK;
 import static java.awt.Color.WHITE;
 import static pixelitor.filters.gui.ColorParam.TransparencyPolicy.USER_ONLY_TRANSPARENCY;
@@ -42,7 +43,9 @@ import static pixelitor.filters.gui.ReseedActions.reseedByCalling;
 public class Clouds extends ParametrizedFilter {
     public static final String NAME = "Clouds";
 
-    private static int[] p;
+    private static final int MAX_OCTAVES = 8;
+
+    private static NoiseEngine noise;
 
     static {
         reseed();
@@ -53,6 +56,7 @@ public class Clouds extends ParametrizedFilter {
 
     private final ColorParam color1 = new ColorParam("Color 1", BLACK, USER_ONLY_TRANSPARENCY);
     private final ColorParam color2 = new ColorParam("Color 2", WHITE, USER_ONLY_TRANSPARENCY);
+    private final BooleanParam tileable = new BooleanParam("Tileable", false);
 
     public Clouds() {
         super(ShowOriginal.NO);
@@ -61,7 +65,8 @@ public class Clouds extends ParametrizedFilter {
                 scaleParam.withAdjustedRange(0.3),
                 roughnessParam,
                 color1,
-                color2
+                color2,
+                tileable
         ).withAction(reseedByCalling(Clouds::reseed));
     }
 
@@ -74,6 +79,7 @@ public class Clouds extends ParametrizedFilter {
                 roughnessParam.getPercentageValF(),
                 color1.getColor(),
                 color2.getColor(),
+                tileable.isChecked(),
                 pt);
 
         pt.finished();
@@ -82,149 +88,78 @@ public class Clouds extends ParametrizedFilter {
 
     public static void renderClouds(BufferedImage dest,
                                     float scale, float roughness,
-                                    Color c1, Color c2, ProgressTracker pt) {
+                                    Color c1, Color c2,
+                                    boolean tileable, ProgressTracker pt) {
         int width = dest.getWidth();
         int height = dest.getHeight();
         int[] destData = ImageUtils.getPixelsAsArray(dest);
         int[] color1 = {c1.getAlpha(), c1.getRed(), c1.getGreen(), c1.getBlue()};
         int[] color2 = {c2.getAlpha(), c2.getRed(), c2.getGreen(), c2.getBlue()};
 
-        Future<?>[] futures = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable lineTask = () -> calculateLine(scale, roughness, width, finalY, destData, color1, color2);
-            futures[y] = ThreadPool.submit(lineTask);
+        // the octaves with a smaller contribution are not visible
+        int octaves = 1;
+        float contribution = roughness;
+        while (octaves < MAX_OCTAVES && contribution > 0.03f) {
+            octaves++;
+            contribution *= roughness;
+        }
+
+        float frequencyX = 1.0f / scale;
+        float frequencyY = 1.0f / scale;
+        int periodX = 0;
+        int periodY = 0;
+        if (tileable) {
+            // adjust the frequencies so that a whole
+            // number of lattice cells fits into the image
+            periodX = Math.max(1, Math.round(width / scale));
+            periodY = Math.max(1, Math.round(height / scale));
+            frequencyX = periodX / (float) width;
+            frequencyY = periodY / (float) height;
         }
-        ThreadPool.waitFor(futures, pt);
+
+        NoiseEngine engine = noise;
+        int finalOctaves = octaves;
+        float finalFrequencyX = frequencyX;
+        float finalFrequencyY = frequencyY;
+        int finalPeriodX = periodX;
+        int finalPeriodY = periodY;
+
+        ThreadPool.forEachBand(height, pt, (startY, endY) -> {
+            float[] noiseValues = new float[width];
+            for (int y = startY; y < endY; y++) {
+                calculateLine(engine, noiseValues, finalFrequencyX,
+                        y * finalFrequencyY, finalOctaves, roughness,
+                        finalPeriodX, finalPeriodY, width, y,
+                        destData, color1, color2);
+            }
+        });
     }
 
-    private static void calculateLine(float startingScale, float roughness,
+    private static void calculateLine(NoiseEngine engine, float[] noiseValues,
+                                      float frequencyX, float noiseY,
+                                      int octaves, float roughness,
+                                      int periodX, int periodY,
                                       int width, int y, int[] destData,
                                       int[] color1, int[] color2) {
-        for (int x = 0; x < width; x++) {
-            float scale = startingScale;
-            float noiseValue = 0.0f;
-            float contribution = 1.0f;
-
-            for (int i = 0; i < 8 && contribution > 0.03f && scale > 0; i++) {
-                float scaledX = x / scale;
-                float scaledY = y / scale;
-                float n = perlinNoise2D(scaledX, scaledY);
-                noiseValue += contribution * n;
-                scale /= 2;
-                contribution *= roughness;
-            }
+        engine.fbm2Row(noiseValues, width, 0, frequencyX, noiseY,
+                octaves, roughness, periodX, periodY);
 
-            noiseValue = (1.0f + noiseValue) / 2.0f;
+        int offset = y * width;
+        for (int x = 0; x < width; x++) {
+            float noiseValue = (1.0f + noiseValues[x]) / 2.0f;
             if (noiseValue < 0.0f) {
                 noiseValue = 0.0f;
             } else if (noiseValue > 1.0f) {
                 noiseValue = 1.0f;
             }
 
-            destData[x + y * width] = ImageUtils.lerpAndPremultiply(
+            destData[offset + x] = ImageUtils.lerpAndPremultiply(
                     noiseValue, color1, color2);
         }
     }
 
-    /**
-     * A 2D version of the algorithm from http://mrl.nyu.edu/~perlin/noise/
-     */
-    private static float perlinNoise2D(float x, float y) {
-        // find unit grid cell containing point + wrap the integer cells at 255
-        int gridX = ((int) x) & 255;
-        int gridY = ((int) y) & 255;
-
-        // get relative coordinates of point within cell
-        x -= ((int) x);
-        y -= ((int) y);
-
-        // compute the fade curves for x and y
-        float u = fade(x);
-        float v = fade(y);
-
-        // calculate hashed gradient indices
-        int a = p[gridX] + gridY;
-        int aa = p[a];
-        int ab = p[a + 1];
-        int b = p[gridX + 1] + gridY;
-        int ba = p[b];
-        int bb = p[b + 1];
-
-        float noiseSE = grad2D(p[aa], x, y);
-        float noiseSW = grad2D(p[ba], x - 1, y);
-        float noiseNE = grad2D(p[ab], x, y - 1);
-        float noiseNW = grad2D(p[bb], x - 1, y - 1);
-
-        float noiseS = ImageMath.lerp(u, noiseSE, noiseSW);
-        float noiseN = ImageMath.lerp(u, noiseNE, noiseNW);
-
-        float noise = ImageMath.lerp(v, noiseS, noiseN);
-
-        // noise is in the range [-1..1]
-        return noise;
-    }
-
-    // a smooth interpolation between 0 and 1
-    // see http://en.wikipedia.org/wiki/Smoothstep
-    private static float fade(float t) {
-        return t * t * t * (t * (t * 6 - 15) + 10);
-    }
-
-//    // permutation table that contains the integers from 0 to 255 in random order
-//    static final int permutation[] = {151, 160, 137, 91, 90, 15,
-//            131, 13, 201, 95, 96, 53, 194, 233, 7, 225, 140, 36, 103, 30, 69, 142, 8, 99, 37, 240, 21, 10, 23,
-//            190, 6, 148, 247, 120, 234, 75, 0, 26, 197, 62, 94, 252, 219, 203, 117, 35, 11, 32, 57, 177, 33,
-//            88, 237, 149, 56, 87, 174, 20, 125, 136, 171, 168, 68, 175, 74, 165, 71, 134, 139, 48, 27, 166,
-//            77, 146, 158, 231, 83, 111, 229, 122, 60, 211, 133, 230, 220, 105, 92, 41, 55, 46, 245, 40, 244,
-//            102, 143, 54, 65, 25, 63, 161, 1, 216, 80, 73, 209, 76, 132, 187, 208, 89, 18, 169, 200, 196,
-//            135, 130, 116, 188, 159, 86, 164, 100, 109, 198, 173, 186, 3, 64, 52, 217, 226, 250, 124, 123,
-//            5, 202, 38, 147, 118, 126, 255, 82, 85, 212, 207, 206, 59, 227, 47, 16, 58, 17, 182, 189, 28, 42,
-//            223, 183, 170, 213, 119, 248, 152, 2, 44, 154, 163, 70, 221, 153, 101, 155, 167, 43, 172, 9,
-//            129, 22, 39, 253, 19, 98, 108, 110, 79, 113, 224, 232, 178, 185, 112, 104, 218, 246, 97, 228,
-//            251, 34, 242, 193, 238, 210, 144, 12, 191, 179, 162, 241, 81, 51, 145, 235, 249, 14, 239, 107,
-//            49, 192, 214, 31, 181, 199, 106, 157, 184, 84, 204, 176, 115, 121, 50, 45, 127, 4, 150, 254,
-//            138, 236, 205, 93, 222, 114, 67, 29, 24, 72, 243, 141, 128, 195, 78, 66, 215, 61, 156, 180
-//    };
-//
-//    // permutation table doubled
-//    static int p[] = new int[512];
-//        static {
-//        for (int i = 0; i < 256; i++) {
-//            p[i] = permutation[i];
-//            p[256 + i] = permutation[i];
-//        }
-//    }
-
-    private static float grad2D(int hash, float x, float y) {
-        int h = hash & 15;
-        float u = h < 8 ? x : y;
-        float v = h < 4 ? y : x;
-
-        return ((h & 1) == 0 ? u : -u) + ((h & 2) == 0 ? v : -v);
-    }
-
-    /**
-     * Fill the permutation table is with all the values with between 1 to 256,
-     * in random order, and duplicate that
-     */
     public static void reseed() {
-        p = new int[512];
-        for (int i = 0; i < 256; i++) {
-            p[i] = i;
-        }
-
-        Random random = new Random();
-
-        for (int i = 0; i < 256; i++) {
-            int j = random.nextInt(256);
-            int tmp = p[i];
-            p[i] = p[j];
-            p[j] = tmp;
-
-            // duplicate
-            p[i + 256] = p[i];
-        }
+        noise = new NoiseEngine(ThreadLocalRandom.current().nextLong(), QUINTIC);
     }
 
     @Override
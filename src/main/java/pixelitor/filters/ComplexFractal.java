@@ -17,12 +17,14 @@
 
 package pixelitor.filters;
 
+import pixelitor.filters.gui.BooleanParam;
 import pixelitor.filters.gui.ImagePositionParam;
 import pixelitor.filters.gui.IntChoiceParam;
 import pixelitor.filters.gui.IntChoiceParam.Value;
 import pixelitor.filters.gui.LogZoomParam;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
+import pixelitor.filters.impl.ComplexFractalImpl;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
@@ -51,6 +53,7 @@ public abstract class ComplexFractal extends ParametrizedFilter {
             new Value("Continuous", COLORS_CONTINUOUS),
             new Value("Blues", COLORS_BLUES),
     });
+    protected final BooleanParam smoothParam = new BooleanParam("Smooth Coloring", false);
     private final IntChoiceParam aaParam = new IntChoiceParam("Supersampling", new Value[]{
             new Value("None (Faster)", AA_NONE),
             new Value("2x2 (Better, Slower)", AA_2x2),
@@ -71,6 +74,7 @@ public abstract class ComplexFractal extends ParametrizedFilter {
                 zoomCenter.withDecimalPlaces(2),
                 iterationsParam,
                 colorsParam,
+                smoothParam,
                 aaParam);
     }
 
@@ -78,9 +82,12 @@ public abstract class ComplexFractal extends ParametrizedFilter {
     public BufferedImage doTransform(BufferedImage src, BufferedImage dest) {
         int aa = aaParam.getValue();
         if (aa == AA_NONE) {
+            getImpl().setPassListener(canShowIntermediateResults()
+                    ? this::showIntermediateResult : null);
             return doTransformAA(src, dest);
         } else if (aa == AA_2x2) {
             // transform an image with double size, then scale it down
+            getImpl().setPassListener(null);
             BufferedImage bigSrc = new BufferedImage(
                     src.getWidth() * 2, src.getHeight() * 2, src.getType());
             BufferedImage bigDest = doTransformAA(bigSrc, null);
@@ -99,6 +106,11 @@ public abstract class ComplexFractal extends ParametrizedFilter {
 
     protected abstract BufferedImage doTransformAA(BufferedImage src, BufferedImage dest);
 
+    /**
+     * Returns the renderer, creating it if necessary.
+     */
+    protected abstract ComplexFractalImpl getImpl();
+
     protected int[] createColors(int maxIterations) {
         int[] colors = new int[maxIterations + 1];
         if (colorsParam.getValue() == COLORS_CONTRASTING) {
@@ -25,6 +25,7 @@ import pixelitor.history.History;
 import pixelitor.utils.ImageUtils;
 
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 /**
  * The Fade filter
@@ -65,6 +66,12 @@ public class Fade extends ParametrizedFilter {
         return dest;
     }
 
+    @Override
+    public List<Object> getSettingsForCaching() {
+        // the result also depends on the history
+        return null;
+    }
+
     public void setOpacity(int newOpacity) {
         opacityParam.setValue(newOpacity);
     }
@@ -17,23 +17,34 @@
 
 package pixelitor.filters;
 
+import com.jhlabs.image.GrayFilter;
 import pixelitor.ChangeReason;
 import pixelitor.gui.PixelitorWindow;
+import pixelitor.gui.View;
 import pixelitor.gui.utils.Dialogs;
 import pixelitor.gui.utils.GUIUtils;
 import pixelitor.layers.Drawable;
 import pixelitor.layers.Layer;
 import pixelitor.layers.LayerMask;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.MemoryGovernor;
 import pixelitor.utils.Messages;
+import pixelitor.utils.ScratchPool;
+import pixelitor.utils.debug.Telemetry;
 import pixelitor.utils.test.RandomGUITest;
 
 import java.awt.Component;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.Serializable;
+import java.util.List;
 
 import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
 import static pixelitor.ChangeReason.FILTER_WITHOUT_DIALOG;
+import static pixelitor.ChangeReason.PERFORMANCE_TEST;
+import static pixelitor.ChangeReason.PREVIEWING;
+import static pixelitor.ChangeReason.TWEEN_PREVIEW;
+import static pixelitor.utils.debug.Telemetry.Category.FILTER;
 
 /**
  * The superclass of all Pixelitor filters and color adjustments
@@ -43,6 +54,10 @@ public abstract class Filter implements Serializable {
 
     private transient FilterAction filterAction;
 
+    // the layer or mask which receives the intermediate
+    // results while a dialog preview is calculated
+    private transient Drawable intermediateTarget;
+
     // used for making sure that there are no
     // unnecessary filter executions triggered
     public static long runCount = 0;
@@ -80,12 +95,19 @@ public abstract class Filter implements Serializable {
     }
 
     public void run(Drawable dr, ChangeReason cr, Component busyCursorParent) {
-        long startTime = System.nanoTime();
+        // the previews are admitted once, when the dialog or
+        // the tween animation starts, and not for every change
+        if (dr != null && !cr.isPreview()
+                && !MemoryGovernor.admitOrWarn(getName(), estimateMemoryNeeded(dr.getImage()))) {
+            return;
+        }
+
+        Telemetry.Span span = Telemetry.start(FILTER, getName());
 
         Runnable task = () -> transformAndHandleExceptions(dr, cr);
         GUIUtils.runWithBusyCursor(busyCursorParent, task);
 
-        long totalTime = (System.nanoTime() - startTime) / 1_000_000;
+        long totalTime = span.end() / 1_000_000;
         Messages.showPerformanceMessage(getName(), totalTime);
 
         FilterUtils.setLastFilter(this);
@@ -100,7 +122,15 @@ public abstract class Filter implements Serializable {
             }
 
             BufferedImage src = dr.getFilterSourceImage();
-            dest = transformImage(src);
+            // the masks are gray, but the intermediate results are not
+            if (cr == PREVIEWING && src.getType() != TYPE_BYTE_GRAY) {
+                intermediateTarget = dr;
+            }
+            try {
+                dest = transformImageWithCache(src, cr);
+            } finally {
+                intermediateTarget = null;
+            }
 
             assert dest != null;
 
@@ -137,24 +167,105 @@ public abstract class Filter implements Serializable {
         }
     }
 
+    private BufferedImage transformImageWithCache(BufferedImage src, ChangeReason cr) {
+        // the tween frames are all different, and the
+        // performance tests must really run the filter
+        Object key = null;
+        if (cr != TWEEN_PREVIEW && cr != PERFORMANCE_TEST) {
+            key = FilterResultCache.createKey(this, src, cr.isPreview());
+        }
+        if (key == null) {
+            return transformImage(src);
+        }
+
+        BufferedImage cached = FilterResultCache.get(key);
+        if (cached != null) {
+            // counted as a run, because it was requested as one
+            runCount++;
+            return cached;
+        }
+
+        BufferedImage dest = transformImage(src);
+        FilterResultCache.put(key, dest);
+        return dest;
+    }
+
+    /**
+     * Returns true if the filter is calculating a dialog
+     * preview, which can show intermediate results.
+     */
+    protected boolean canShowIntermediateResults() {
+        return intermediateTarget != null;
+    }
+
+    /**
+     * Shows an approximation of the final result in the preview
+     * while the filter is still running. The image must have the
+     * same size as the source, and it can't be modified later.
+     */
+    protected void showIntermediateResult(BufferedImage img) {
+        if (intermediateTarget == null) {
+            return;
+        }
+        intermediateTarget.changePreviewImage(img, getName(), PREVIEWING);
+
+        // the filter is running on the EDT, so the
+        // scheduled repaints would happen only at the end
+        View view = intermediateTarget.getComp().getView();
+        if (view != null) {
+            view.paintImmediately();
+        }
+    }
+
     public BufferedImage transformImage(BufferedImage src) {
         boolean convertFromGray = false;
         if (src.getType() == TYPE_BYTE_GRAY) { // editing a mask
+            if (this instanceof GrayFilter) {
+                if (!GrayFilter.isGrayPair(src, null)) {
+                    // for example a subimage: copy the values into a plain raster
+                    BufferedImage plain = new BufferedImage(
+                            src.getWidth(), src.getHeight(), TYPE_BYTE_GRAY);
+                    plain.getRaster().setRect(src.getRaster());
+                    src = plain;
+                }
+                runCount++;
+                return ((GrayFilter) this).filterGrayImage(src, null);
+            }
             if (!supportsGray()) {
                 convertFromGray = true;
-                src = ImageUtils.toSysCompatibleImage(src);
+                BufferedImage colorSrc = ScratchPool.acquireSysCompatibleImage(
+                        src.getWidth(), src.getHeight());
+                Graphics2D g = colorSrc.createGraphics();
+                g.drawImage(src, 0, 0, null);
+                g.dispose();
+                src = colorSrc;
             }
         }
 
         BufferedImage dest = null;
+        BufferedImage scratchDest = null;
         if (createDefaultDestImg()) {
-            dest = ImageUtils.createImageWithSameCM(src);
+            if (convertFromGray) {
+                // only an intermediate image, it's converted back below
+                scratchDest = ScratchPool.acquireSysCompatibleImage(
+                        src.getWidth(), src.getHeight());
+                dest = scratchDest;
+            } else {
+                dest = ImageUtils.createImageWithSameCM(src);
+            }
         }
 
         dest = transform(src, dest);
 
         if (convertFromGray) { // convert the result back
-            dest = ImageUtils.convertToGrayScaleImage(dest);
+            BufferedImage colorDest = dest;
+            dest = ImageUtils.convertToGrayScaleImage(colorDest);
+
+            // the color images are not needed anymore
+            ScratchPool.release(src);
+            if (scratchDest != null && scratchDest != src) {
+                ScratchPool.release(scratchDest);
+            }
         }
 
         runCount++;
@@ -164,6 +275,25 @@ public abstract class Filter implements Serializable {
         return dest;
     }
 
+    /**
+     * Returns the estimated number of bytes allocated while running this
+     * filter on the given image. The default is enough for the destination
+     * image and one intermediate image with the same size.
+     */
+    public long estimateMemoryNeeded(BufferedImage src) {
+        return 2 * MemoryGovernor.bytesOf(src);
+    }
+
+    /**
+     * Returns the values of all settings that influence the result
+     * in a form that can be compared with equals, or null if the results
+     * of this filter shouldn't be cached, because they also depend
+     * on something else than the source image and these settings.
+     */
+    public List<Object> getSettingsForCaching() {
+        return null;
+    }
+
     public void setFilterAction(FilterAction filterAction) {
         this.filterAction = filterAction;
     }
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters;
+
+import pixelitor.ThreadPool;
+import pixelitor.colors.FgBgColors;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.MemoryGovernor;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Future;
+
+import static pixelitor.utils.MemoryInfo.ONE_MEGABYTE;
+
+/**
+ * A bounded LRU cache of filter results, so that going back
+ * to recently used settings in a filter dialog, toggling "Show Original",
+ * or repeating the last filter on an unchanged image is instant.
+ *
+ * The key consists of the filter class, the values of its settings,
+ * the foreground/background colors, the number of reseeds so far,
+ * and a fingerprint (size, type and content hash) of the source image.
+ * The cache is registered at the {@link MemoryGovernor}, which
+ * can empty it if the memory is needed elsewhere.
+ */
+public final class FilterResultCache {
+    private static final int ROWS_PER_HASH_TASK = 64;
+
+    private static long maxBytes = Math.min(256L * ONE_MEGABYTE,
+            Runtime.getRuntime().maxMemory() / 8);
+
+    // a LinkedHashMap in access order, so that the eldest entry
+    // is the least recently used one
+    private static final Map<Key, BufferedImage> results =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private static long usedBytes = 0;
+
+    // incremented by every reseed, because after it the
+    // same settings produce a different result
+    private static long randomnessGeneration = 0;
+
+    // The hash of the last source image is remembered while
+    // previewing, because the source can't change while a
+    // filter dialog is shown, and it's always the same object
+    private static BufferedImage lastHashedSrc;
+    private static long lastHash;
+
+    static {
+        MemoryGovernor.register(new CacheMemory());
+    }
+
+    private FilterResultCache() {
+        // should not be instantiated
+    }
+
+    /**
+     * Returns the key for running the given filter on the given source,
+     * or null if the result of this run should not be cached.
+     */
+    static Object createKey(Filter filter, BufferedImage src, boolean previewing) {
+        List<Object> settings = filter.getSettingsForCaching();
+        if (settings == null) {
+            return null;
+        }
+        long hash = getContentHash(src, previewing);
+        synchronized (results) {
+            return new Key(filter.getClass(), settings,
+                    rgbOf(FgBgColors.getGUI() == null ? null : FgBgColors.getFGColor()),
+                    rgbOf(FgBgColors.getGUI() == null ? null : FgBgColors.getBGColor()),
+                    randomnessGeneration, src.getWidth(), src.getHeight(), src.getType(), hash);
+        }
+    }
+
+    // the colors can be missing in unit tests
+    private static int rgbOf(Color color) {
+        return color == null ? 0 : color.getRGB();
+    }
+
+    /**
+     * Returns a copy of the cached result for the given key, or null.
+     */
+    static BufferedImage get(Object key) {
+        BufferedImage cached;
+        synchronized (results) {
+            cached = results.get(key);
+        }
+        if (cached == null) {
+            return null;
+        }
+        // the returned image can become the new image of the layer
+        return ImageUtils.copyImage(cached);
+    }
+
+    /**
+     * Stores a copy of the given filter result, if there is enough memory.
+     */
+    static void put(Object key, BufferedImage result) {
+        long bytes = MemoryGovernor.bytesOf(result);
+        if (bytes > maxBytes / 4 || bytes * 4 > MemoryGovernor.getAvailableBytes()) {
+            return;
+        }
+        BufferedImage copy = ImageUtils.copyImage(result);
+        if (copy == null) {
+            return;
+        }
+        synchronized (results) {
+            BufferedImage old = results.put((Key) key, copy);
+            if (old != null) {
+                usedBytes -= MemoryGovernor.bytesOf(old);
+            }
+            usedBytes += bytes;
+            evict(maxBytes);
+        }
+    }
+
+    // removes the least recently used entries until at most
+    // the given number of bytes is used, and returns the released bytes
+    private static long evict(long maxRemaining) {
+        long released = 0;
+        Iterator<BufferedImage> it = results.values().iterator();
+        while (usedBytes > maxRemaining && it.hasNext()) {
+            long bytes = MemoryGovernor.bytesOf(it.next());
+            it.remove();
+            usedBytes -= bytes;
+            released += bytes;
+        }
+        return released;
+    }
+
+    /**
+     * Called when the randomness of the filters is reinitialized.
+     */
+    public static void randomnessReseeded() {
+        synchronized (results) {
+            randomnessGeneration++;
+        }
+    }
+
+    /**
+     * Called when a filter dialog is started, because the
+     * source image could have changed since the last preview.
+     */
+    public static void previewSessionStarted() {
+        synchronized (results) {
+            lastHashedSrc = null;
+        }
+    }
+
+    /**
+     * Called when a filter dialog is closed, so that
+     * the last source image is not kept in memory.
+     */
+    public static void previewSessionEnded() {
+        synchronized (results) {
+            lastHashedSrc = null;
+        }
+    }
+
+    private static long getContentHash(BufferedImage src, boolean previewing) {
+        synchronized (results) {
+            if (previewing && src == lastHashedSrc) {
+                return lastHash;
+            }
+        }
+        long hash = calcContentHash(src);
+        synchronized (results) {
+            lastHashedSrc = previewing ? src : null;
+            lastHash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * Calculates a 64-bit hash of the pixels using the thread pool.
+     */
+    static long calcContentHash(BufferedImage src) {
+        int height = src.getHeight();
+        int numTasks = (height + ROWS_PER_HASH_TASK - 1) / ROWS_PER_HASH_TASK;
+        long[] taskHashes = new long[numTasks];
+        Future<?>[] futures = new Future[numTasks];
+        Raster raster = src.getRaster();
+        for (int i = 0; i < numTasks; i++) {
+            int task = i;
+            futures[i] = ThreadPool.submit(() ->
+                    taskHashes[task] = hashRows(raster, task * ROWS_PER_HASH_TASK,
+                            Math.min(height, (task + 1) * ROWS_PER_HASH_TASK)));
+        }
+        ThreadPool.waitFor(futures, ProgressTracker.NULL_TRACKER);
+
+        long hash = 1;
+        for (long taskHash : taskHashes) {
+            hash = 31 * hash + taskHash;
+        }
+        return hash;
+    }
+
+    private static long hashRows(Raster raster, int startY, int endY) {
+        int width = raster.getWidth();
+        int minX = raster.getMinX();
+        int minY = raster.getMinY();
+        long hash = 1;
+        Object row = null;
+        for (int y = startY; y < endY; y++) {
+            row = raster.getDataElements(minX, minY + y, width, 1, row);
+            if (row instanceof int[]) {
+                for (int v : (int[]) row) {
+                    hash = mix(hash, v);
+                }
+            } else if (row instanceof byte[]) {
+                for (byte v : (byte[]) row) {
+                    hash = mix(hash, v);
+                }
+            } else if (row instanceof short[]) {
+                for (short v : (short[]) row) {
+                    hash = mix(hash, v);
+                }
+            } else {
+                throw new IllegalStateException("row is " + row.getClass().getName());
+            }
+        }
+        return hash;
+    }
+
+    // a multiplicative step with more avalanche than "31 * h + v"
+    private static long mix(long hash, int value) {
+        return (hash ^ value) * 0x9E3779B97F4A7C15L + 0x632BE59BD9B4E019L;
+    }
+
+    static int getNumEntries() {
+        synchronized (results) {
+            return results.size();
+        }
+    }
+
+    static long getUsedBytes() {
+        synchronized (results) {
+            return usedBytes;
+        }
+    }
+
+    static void setMaxBytes(long newMaxBytes) {
+        synchronized (results) {
+            maxBytes = newMaxBytes;
+            evict(maxBytes);
+        }
+    }
+
+    static long getMaxBytes() {
+        return maxBytes;
+    }
+
+    static void clear() {
+        synchronized (results) {
+            evict(0);
+            lastHashedSrc = null;
+        }
+    }
+
+    private static class Key {
+        private final Class<?> filterClass;
+        private final List<Object> settings;
+        private final int fgRGB;
+        private final int bgRGB;
+        private final long randomnessGeneration;
+        private final int width;
+        private final int height;
+        private final int type;
+        private final long contentHash;
+
+        Key(Class<?> filterClass, List<Object> settings, int fgRGB, int bgRGB,
+            long randomnessGeneration, int width, int height, int type, long contentHash) {
+            this.filterClass = filterClass;
+            this.settings = settings;
+            this.fgRGB = fgRGB;
+            this.bgRGB = bgRGB;
+            this.randomnessGeneration = randomnessGeneration;
+            this.width = width;
+            this.height = height;
+            this.type = type;
+            this.contentHash = contentHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return filterClass == other.filterClass
+                    && fgRGB == other.fgRGB
+                    && bgRGB == other.bgRGB
+                    && randomnessGeneration == other.randomnessGeneration
+                    && width == other.width
+                    && height == other.height
+                    && type == other.type
+                    && contentHash == other.contentHash
+                    && settings.equals(other.settings);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(filterClass, settings, fgRGB, bgRGB,
+                    randomnessGeneration, width, height, type, contentHash);
+        }
+    }
+
+    /**
+     * The cached results as a subsystem managed by the {@link MemoryGovernor}
+     */
+    private static class CacheMemory implements MemoryGovernor.MemoryConsumer {
+        @Override
+        public String getName() {
+            return "Filter Results";
+        }
+
+        @Override
+        public long getUsedBytes() {
+            return FilterResultCache.getUsedBytes();
+        }
+
+        @Override
+        public long reclaim(long bytes) {
+            synchronized (results) {
+                return evict(Math.max(0, usedBytes - bytes));
+            }
+        }
+    }
+}
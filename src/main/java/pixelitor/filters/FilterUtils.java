@@ -17,6 +17,7 @@
 
 package pixelitor.filters;
 
+import com.jhlabs.image.PixelAccess;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Rnd;
 
@@ -118,6 +119,22 @@ public class FilterUtils {
         return dest;
     }
 
+    /**
+     * Runs the given pixel operation on the gray values of a layer mask
+     * through a lookup table: each gray value g is transformed as
+     * the opaque color (g, g, g), and the result is converted back
+     * into the luminance of the transformed color.
+     */
+    public static void runRGBPixelOpOnGray(RGBPixelOp pixelOp, byte[] src, byte[] dest) {
+        byte[] lut = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            lut[i] = (byte) PixelAccess.toGray(pixelOp.changeRGB(255, i, i, i));
+        }
+        for (int i = 0; i < src.length; i++) {
+            dest[i] = lut[src[i] & 0xFF];
+        }
+    }
+
     public static void addFilter(FilterAction filter) {
         allFilters.add(filter);
     }
@@ -24,6 +24,7 @@ import pixelitor.filters.gui.IntChoiceParam;
 import pixelitor.filters.gui.IntChoiceParam.Value;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
+import pixelitor.utils.DisplayList;
 import pixelitor.utils.ProgressTracker;
 import pixelitor.utils.ReseedSupport;
 import pixelitor.utils.StatusBarProgressTracker;
@@ -31,7 +32,6 @@ import pixelitor.utils.StatusBarProgressTracker;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.GradientPaint;
-import java.awt.Graphics2D;
 import java.awt.Stroke;
 import java.awt.geom.Line2D;
 import java.awt.geom.Path2D;
@@ -45,7 +45,10 @@ import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
 import static pixelitor.filters.gui.RandomizePolicy.IGNORE_RANDOMIZE;
 
 /**
- * Renders a fractal tree
+ * Renders a fractal tree.
+ *
+ * The branches are recorded into a {@link DisplayList}, which
+ * rasterizes them in parallel tiles.
  */
 public class FractalTree extends ParametrizedFilter {
     public static final String NAME = "Fractal Tree";
@@ -89,8 +92,6 @@ public class FractalTree extends ParametrizedFilter {
     private double lengthDeviation;
     private double angleDeviation;
 
-    private ProgressTracker pt;
-
     public FractalTree() {
         super(ShowOriginal.NO);
 
@@ -118,9 +119,9 @@ public class FractalTree extends ParametrizedFilter {
         lengthDeviation = defaultLength * randPercent;
         angleDeviation = 10.0 * randPercent;
 
-        Graphics2D g = dest.createGraphics();
+        DisplayList branches = new DisplayList();
         if (quality.getValue() == QUALITY_BETTER) {
-            g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+            branches.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
         }
 
         int maxDepth = iterations.getValue();
@@ -160,23 +161,18 @@ public class FractalTree extends ParametrizedFilter {
             c = -c;
         }
 
-        int drawTreeCalls = 2;
-        for (int i = 1; i < maxDepth; i++) {
-            drawTreeCalls *= 2;
-        }
-        drawTreeCalls--;
-        pt = new StatusBarProgressTracker(NAME, drawTreeCalls);
-
-        drawTree(g, src.getWidth() / 2.0, src.getHeight(),
+        drawTree(branches, src.getWidth() / 2.0, src.getHeight(),
                 270 + genAngleRandomness(rand), maxDepth, rand, c);
 
-        g.dispose();
+        ProgressTracker pt = new StatusBarProgressTracker(NAME,
+                branches.getNumOperations());
+        branches.rasterize(dest, pt);
         pt.finished();
 
         return dest;
     }
 
-    private void drawTree(Graphics2D g, double x1, double y1,
+    private void drawTree(DisplayList branches, double x1, double y1,
                           double angle, int depth, Random rand, float c) {
         if (depth == 0) {
             return;
@@ -193,35 +189,33 @@ public class FractalTree extends ParametrizedFilter {
         double x2 = x1 + FastMath.cos(angleRad) * depth * genRandomLength(rand);
         double y2 = y1 + FastMath.sin(angleRad) * depth * genRandomLength(rand);
 
-        g.setStroke(widthLookup[depth]);
+        branches.setStroke(widthLookup[depth]);
         if (quality.getValue() == QUALITY_BETTER) {
             if (depth == 1) {
-                g.setColor(colorLookup[depth]);
+                branches.setColor(colorLookup[depth]);
             } else {
-                g.setPaint(new GradientPaint(
+                branches.setPaint(new GradientPaint(
                         (float) x1, (float) y1, colorLookup[depth],
                     (float) x2, (float) y2, colorLookup[nextDepth]));
             }
         } else {
-            g.setColor(colorLookup[depth]);
+            branches.setColor(colorLookup[depth]);
         }
 
-        connectPoints(g, x1, y1, x2, y2, c);
+        connectPoints(branches, x1, y1, x2, y2, c);
 
         int split = this.angle.getValue();
 
         double leftBranchAngle = angle - split + genAngleRandomness(rand);
         double rightBranchAngle = angle + split + genAngleRandomness(rand);
 
-        pt.unitDone();
-
         leftFirst = !leftFirst;
         if (leftFirst) {
-            drawTree(g, x2, y2, leftBranchAngle, nextDepth, rand, c);
-            drawTree(g, x2, y2, rightBranchAngle, nextDepth, rand, c);
+            drawTree(branches, x2, y2, leftBranchAngle, nextDepth, rand, c);
+            drawTree(branches, x2, y2, rightBranchAngle, nextDepth, rand, c);
         } else {
-            drawTree(g, x2, y2, rightBranchAngle, nextDepth, rand, c);
-            drawTree(g, x2, y2, leftBranchAngle, nextDepth, rand, c);
+            drawTree(branches, x2, y2, rightBranchAngle, nextDepth, rand, c);
+            drawTree(branches, x2, y2, leftBranchAngle, nextDepth, rand, c);
         }
     }
 
@@ -253,12 +247,12 @@ public class FractalTree extends ParametrizedFilter {
         return angle;
     }
 
-    private static void connectPoints(Graphics2D g,
+    private static void connectPoints(DisplayList branches,
                                       double x1, double y1,
                                       double x2, double y2, float c) {
         if (c == 0) {
             var line = new Line2D.Double(x1, y1, x2, y2);
-            g.draw(line);
+            branches.draw(line);
         } else {
             Path2D path = new Path2D.Double();
             path.moveTo(x1, y1);
@@ -277,7 +271,7 @@ public class FractalTree extends ParametrizedFilter {
             double ctrlY = cy + dx * c;
 
             path.curveTo(ctrlX, ctrlY, ctrlX, ctrlY, x2, y2);
-            g.draw(path);
+            branches.draw(path);
         }
     }
 
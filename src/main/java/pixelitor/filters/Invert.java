@@ -16,6 +16,7 @@
  */
 package pixelitor.filters;
 
+import com.jhlabs.image.GrayFilter;
 import com.jhlabs.image.PixelUtils;
 import pixelitor.utils.ImageUtils;
 
@@ -24,7 +25,7 @@ import java.awt.image.BufferedImage;
 /**
  * Invert filter
  */
-public class Invert extends Filter {
+public class Invert extends Filter implements GrayFilter {
     // for compatibility with older adjustment layer tests
     private static final long serialVersionUID = -6279018636064203421L;
 
@@ -102,7 +103,9 @@ public class Invert extends Filter {
     }
 
     @Override
-    public boolean supportsGray() {
-        return false;
+    public void filterGray(byte[] src, byte[] dest, int width, int height) {
+        for (int i = 0; i < src.length; i++) {
+            dest[i] = (byte) ~src[i];
+        }
     }
 }
\ No newline at end of file
@@ -45,17 +45,23 @@ public class JuliaSet extends ComplexFractal {
     }
 
     @Override
-    public BufferedImage doTransformAA(BufferedImage src, BufferedImage dest) {
-        if(filter == null) {
+    protected ComplexFractalImpl getImpl() {
+        if (filter == null) {
             filter = new JuliaSetImpl();
         }
+        return filter;
+    }
 
+    @Override
+    public BufferedImage doTransformAA(BufferedImage src, BufferedImage dest) {
+        // the renderer was already created by getImpl()
         filter.setZoom(zoomParam.getZoomRatio());
         filter.setZoomCenter(zoomCenter.getRelativeX(), zoomCenter.getRelativeY());
 
         int iterations = iterationsParam.getValue();
         filter.setColors(createColors(iterations));
         filter.setMaxIterations(iterations);
+        filter.setSmooth(smoothParam.isChecked());
 
         filter.setCy(cParam.getValueAsDPercentage(0));
         filter.setCx(cParam.getValueAsDPercentage(1));
@@ -73,11 +79,11 @@ class JuliaSetImpl extends ComplexFractalImpl {
     }
 
     @Override
-    public int filterRGB(int x, int y, int rgb) {
+    protected double calcValue(int x, int y) {
         double zx = cxStart + x * xMultiplier;
         double zy = cyStart + y * yMultiplier;
 
-        return calcIteratedColor(zx, zy, cx, cy);
+        return iterate(zx, zy, cx, cy);
     }
 
     public void setCy(double cx) {
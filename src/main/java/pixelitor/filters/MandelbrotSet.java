@@ -33,17 +33,23 @@ public class MandelbrotSet extends ComplexFractal {
     }
 
     @Override
-    public BufferedImage doTransformAA(BufferedImage src, BufferedImage dest) {
+    protected ComplexFractalImpl getImpl() {
         if (filter == null) {
             filter = new MandelbrotSetImpl();
         }
+        return filter;
+    }
 
+    @Override
+    public BufferedImage doTransformAA(BufferedImage src, BufferedImage dest) {
+        // the renderer was already created by getImpl()
         filter.setZoom(zoomParam.getZoomRatio());
         filter.setZoomCenter(zoomCenter.getRelativeX(), zoomCenter.getRelativeY());
 
         int iterations = iterationsParam.getValue();
         filter.setColors(createColors(iterations));
         filter.setMaxIterations(iterations);
+        filter.setSmooth(smoothParam.isChecked());
 
         return filter.filter(src, dest);
     }
@@ -55,7 +61,7 @@ class MandelbrotSetImpl extends ComplexFractalImpl {
     }
 
     @Override
-    public int filterRGB(int x, int y, int rgb) {
+    protected double calcValue(int x, int y) {
         // start with the complex number (0, 0)
         double zx = 0;
         double zy = 0;
@@ -70,7 +76,7 @@ class MandelbrotSetImpl extends ComplexFractalImpl {
         // 1. check if the point is in the period-2 bulb
         if (cx < -0.75 && cx > -1.25 && cy < 0.28 && cy > -0.28) { // approx. check
             if ((cx + 1) * (cx + 1) + cy * cy < 1 / 16.0) { // exact check
-                return colors[0];
+                return 0;
             }
         }
 
@@ -80,11 +86,11 @@ class MandelbrotSetImpl extends ComplexFractalImpl {
             double cy2 = cy * cy;
             double q = cm * cm + cy2;
             if (q * (q + cm) < cy2 / 4.0) { // exact check
-                return colors[0];
+                return 0;
             }
         }
 
-        return calcIteratedColor(zx, zy, cx, cy);
+        return iterate(zx, zy, cx, cy);
     }
 }
 
@@ -29,6 +29,7 @@ import pixelitor.utils.ImageUtils;
 
 import java.awt.Shape;
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 /**
  * A filter that keeps its settings in a ParamSet object
@@ -102,6 +103,11 @@ public abstract class ParametrizedFilter extends FilterWithGUI {
         return paramSet;
     }
 
+    @Override
+    public List<Object> getSettingsForCaching() {
+        return paramSet.getComparableValues();
+    }
+
     public void setAffectedAreaShapes(Shape[] affectedAreaShapes) {
         this.affectedAreaShapes = affectedAreaShapes;
     }
@@ -27,7 +27,10 @@ import pixelitor.filters.gui.IntChoiceParam.Value;
 import pixelitor.filters.gui.ShowOriginal;
 import pixelitor.filters.gui.StrokeParam;
 import pixelitor.filters.painters.AreaEffects;
+import pixelitor.tools.shapes.StrokeType;
+import pixelitor.utils.DisplayList;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.ProgressTracker;
 
 import java.awt.AlphaComposite;
 import java.awt.Color;
@@ -37,6 +40,7 @@ import java.awt.Shape;
 import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 import static java.awt.Color.BLACK;
 import static java.awt.Color.WHITE;
@@ -109,6 +113,15 @@ public abstract class ShapeFilter extends ParametrizedFilter {
         waterMark.setupDisableOtherIfChecked(background);
     }
 
+    @Override
+    public List<Object> getSettingsForCaching() {
+        if (strokeParam.getStrokeType() == StrokeType.WOBBLE) {
+            // the wobble stroke is random for every run
+            return null;
+        }
+        return super.getSettingsForCaching();
+    }
+
     @Override
     public BufferedImage doTransform(BufferedImage src, BufferedImage dest) {
         int srcWidth = src.getWidth();
@@ -116,15 +129,18 @@ public abstract class ShapeFilter extends ParametrizedFilter {
 
         Graphics2D g2;
         BufferedImage bumpImage = null;
+        BufferedImage canvas;
 
         if (waterMark.isChecked()) {
             bumpImage = new BufferedImage(srcWidth, srcHeight, TYPE_INT_RGB);
+            canvas = bumpImage;
             g2 = bumpImage.createGraphics();
             g2.setColor(BLACK);
             g2.fillRect(0, 0, srcWidth, srcHeight);
             g2.setColor(Color.GRAY);
         } else {
             dest = ImageUtils.createImageWithSameCM(src);
+            canvas = dest;
             g2 = dest.createGraphics();
             setupBackground(src, srcWidth, srcHeight, g2);
             setupForeground(srcWidth, srcHeight, g2);
@@ -153,7 +169,14 @@ public abstract class ShapeFilter extends ParametrizedFilter {
             // work with the outline so that we can have "inner glow"
             Shape outline = stroke.createStrokedShape(shape);
 
-            g2.fill(outline);
+            // the outline is rasterized in parallel tiles,
+            // with the paint and composite of the foreground
+            DisplayList displayList = new DisplayList();
+            displayList.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+            displayList.setPaint(g2.getPaint());
+            displayList.setComposite(g2.getComposite());
+            displayList.fill(outline);
+            displayList.rasterize(canvas, ProgressTracker.NULL_TRACKER);
 
             AreaEffects effects = effectsParam.getEffects();
             effects.drawOn(g2, outline);
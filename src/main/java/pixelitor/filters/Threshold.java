@@ -17,6 +17,7 @@
 
 package pixelitor.filters;
 
+import com.jhlabs.image.GrayFilter;
 import pixelitor.colors.ColorUtils;
 import pixelitor.filters.gui.IntChoiceParam;
 import pixelitor.filters.gui.IntChoiceParam.Value;
@@ -31,7 +32,7 @@ import static pixelitor.gui.utils.SliderSpinner.TextPosition.BORDER;
 /**
  * The Threshold filter
  */
-public class Threshold extends ParametrizedFilter {
+public class Threshold extends ParametrizedFilter implements GrayFilter {
     public static final String NAME = "Threshold";
 
     private static final int CRIT_LUMINOSITY = 1;
@@ -149,7 +150,8 @@ public class Threshold extends ParametrizedFilter {
     }
 
     @Override
-    public boolean supportsGray() {
-        return false;
+    public void filterGray(byte[] src, byte[] dest, int width, int height) {
+        RGBPixelOp pixelOp = getRGBPixelOp(threshold.getValueAsDouble(), criterion.getValue());
+        FilterUtils.runRGBPixelOpOnGray(pixelOp, src, dest);
     }
 }
@@ -29,6 +29,7 @@ import java.awt.Graphics2D;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 import static java.awt.RenderingHints.KEY_ANTIALIASING;
 import static java.awt.RenderingHints.KEY_INTERPOLATION;
@@ -72,6 +73,12 @@ public class TransformLayer extends ParametrizedFilter {
         return dest;
     }
 
+    @Override
+    public List<Object> getSettingsForCaching() {
+        // the result also depends on the layer offset
+        return null;
+    }
+
     private static Graphics2D createDestGraphics(BufferedImage dest) {
         Graphics2D g = dest.createGraphics();
         g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
@@ -17,7 +17,9 @@
 
 package pixelitor.filters;
 
+import com.jhlabs.math.NoiseEngine;
 import pixelitor.ThreadPool;
+import pixelitor.filters.gui.BooleanParam;
 import pixelitor.filters.gui.ColorParam;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
@@ -27,8 +29,8 @@ import pixelitor.utils.StatusBarProgressTracker;
 import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.util.Random;
-import java.util.concurrent.Future;
 
+import static com.jhlabs.math.NoiseEngine.Fade.CUBIC;
 import static java.awt.Color.BLACK;
 import static java.awt.Color.WHITE;
 import static pixelitor.filters.gui.ColorParam.TransparencyPolicy.USER_ONLY_TRANSPARENCY;
@@ -41,9 +43,7 @@ public class ValueNoise extends ParametrizedFilter {
     public static final String NAME = "Value Noise";
 
     private static final Random rand = new Random();
-    private static int r1;
-    private static int r2;
-    private static int r3;
+    private static NoiseEngine noise;
 
     static {
         reseed();
@@ -54,6 +54,7 @@ public class ValueNoise extends ParametrizedFilter {
 
     private final ColorParam color1 = new ColorParam("Color 1", BLACK, USER_ONLY_TRANSPARENCY);
     private final ColorParam color2 = new ColorParam("Color 2", WHITE, USER_ONLY_TRANSPARENCY);
+    private final BooleanParam tileable = new BooleanParam("Tileable", false);
 
     public ValueNoise() {
         super(ShowOriginal.NO);
@@ -62,7 +63,8 @@ public class ValueNoise extends ParametrizedFilter {
                 scale.withAdjustedRange(0.3),
                 details,
                 color1,
-                color2
+                color2,
+                tileable
         ).withAction(reseedByCalling(ValueNoise::reseed));
     }
 
@@ -82,102 +84,69 @@ public class ValueNoise extends ParametrizedFilter {
         int[] destData = ImageUtils.getPixelsAsArray(dest);
         int width = dest.getWidth();
         int height = dest.getHeight();
-        float frequency = 1.0f / scale.getValueAsFloat();
+        double frequencyX = 1.0 / scale.getValueAsDouble();
+        double frequencyY = frequencyX;
+        int periodX = 0;
+        int periodY = 0;
+        if (tileable.isChecked()) {
+            // a whole number of lattice cells must fit into the image
+            periodX = (int) Math.max(1, Math.round(width * frequencyX));
+            periodY = (int) Math.max(1, Math.round(height * frequencyY));
+            frequencyX = periodX / (double) width;
+            frequencyY = periodY / (double) height;
+        }
 
-        float persistence = 0.6f;
-        float amplitude = 1.0f;
+        // the noise is calculated in 16.16 fixed-point format
+        long dx = NoiseEngine.toFixedLong(frequencyX);
+        int persistence = NoiseEngine.toFixed(0.6);
+        int amplitude = NoiseEngine.FIXED_ONE;
+        int octaves = details.getValue();
 
+        NoiseEngine engine = noise;
         var pt = new StatusBarProgressTracker(NAME, height);
 
-        Future<?>[] futures = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable lineTask = () -> calculateLine(lookupTable, destData,
-                    width, frequency, persistence, amplitude, finalY);
-            futures[y] = ThreadPool.submit(lineTask);
-        }
-        ThreadPool.waitFor(futures, pt);
+        double finalFrequencyY = frequencyY;
+        int finalPeriodX = periodX;
+        int finalPeriodY = periodY;
+        ThreadPool.forEachBand(height, pt, (startY, endY) -> {
+            int[] noiseValues = new int[width];
+            for (int y = startY; y < endY; y++) {
+                long noiseY = NoiseEngine.toFixedLong(y * finalFrequencyY);
+                calculateLine(engine, noiseValues, lookupTable, destData,
+                        width, dx, noiseY, octaves, persistence, amplitude,
+                        finalPeriodX, finalPeriodY, y);
+            }
+        });
 
         pt.finished();
 
         return dest;
     }
 
-    private void calculateLine(int[] lookupTable, int[] destData,
-                               int width, float frequency, float persistence,
-                               float amplitude, int y) {
-        for (int x = 0; x < width; x++) {
-            int octaves = details.getValue();
-
-            int noise = (int) (255 * generateValueNoise(x, y,
-                    octaves, frequency, persistence, amplitude));
-
-            int value = lookupTable[noise];
-            destData[x + y * width] = value;
-        }
-    }
-
-    /**
-     * Returns a float between 0 and 1
-     */
-    @SuppressWarnings("WeakerAccess")
-    public static float generateValueNoise(int x, int y,
-                                           int octaves,
-                                           float frequency,
-                                           float persistence,
-                                           float amplitude) {
-        float total = 0.0f;
-
-        for (int lcv = 0; lcv < octaves; lcv++) {
-            total += smooth(x * frequency, y * frequency) * amplitude;
-            frequency *= 2;
-            amplitude *= persistence;
-        }
+    private static void calculateLine(NoiseEngine engine, int[] noiseValues,
+                                      int[] lookupTable, int[] destData,
+                                      int width, long dx, long noiseY,
+                                      int octaves, int persistence, int amplitude,
+                                      int periodX, int periodY, int y) {
+        engine.valueFbm2RowFixed(noiseValues, width, 0, dx, noiseY,
+                octaves, amplitude, persistence, periodX, periodY);
 
-        if (total < 0) {
-            total = 0.0f;
-        }
-        if (total > 1) {
-            total = 1.0f;
+        int offset = y * width;
+        for (int x = 0; x < width; x++) {
+            int total = noiseValues[x];
+            if (total < 0) {
+                total = 0;
+            } else if (total > NoiseEngine.FIXED_ONE) {
+                total = NoiseEngine.FIXED_ONE;
+            }
+
+            destData[offset + x] = lookupTable[(255 * total) >> 16];
         }
-
-        return total;
-    }
-
-    private static float smooth(float x, float y) {
-        float n1 = noise((int) x, (int) y);
-        float n2 = noise((int) x + 1, (int) y);
-        float n3 = noise((int) x, (int) y + 1);
-        float n4 = noise((int) x + 1, (int) y + 1);
-
-        float i1 = interpolate(n1, n2, x - (int) x);
-        float i2 = interpolate(n3, n4, x - (int) x);
-
-        return interpolate(i1, i2, y - (int) y);
     }
 
     public static void reseed() {
-        r1 = 1000 + rand.nextInt(90000);
-        r2 = 10000 + rand.nextInt(900000);
-        r3 = 100000 + rand.nextInt(1000000000);
-    }
-
-    private static float noise(int x, int y) {
-        int n = x + y * 57;
-        n = (n << 13) ^ n;
-
-        return (1.0f - ((n * (n * n * r1 + r2) + r3) & 0x7fffffff) / 1.07374182E+9f);
-    }
-
-    private static float interpolate(float x, float y, float a) {
-//        float val = (float) ((1 - FastMath.cos(a * Math.PI)) * 0.5);
-
-        // the smooth step is very similar but much faster than the cosine interpolation
-        // http://en.wikipedia.org/wiki/Smoothstep
-        // http://www.wolframalpha.com/input/?i=Plot[{3+*+a+*+a+-+2+*+a+*+a+*a%2C+%281+-+Cos[a+*+Pi]%29+*+0.5}%2C+{a%2C+0%2C+1}]
-        float val = a * a * (3 - 2 * a);
-
-        return x * (1 - val) + y * val;
+        // the cubic curve of the original value noise
+        noise = new NoiseEngine(rand.nextLong(), CUBIC);
     }
 
     public void setDetails(int newDetails) {
@@ -22,6 +22,7 @@ import pixelitor.filters.ParametrizedFilter;
 import pixelitor.filters.gui.ParametrizedFilterGUI;
 import pixelitor.gui.utils.GUIUtils;
 import pixelitor.layers.Drawable;
+import pixelitor.utils.MemoryGovernor;
 
 import static pixelitor.filters.animation.TweenWizardPage.SELECT_FILTER;
 
@@ -46,6 +47,15 @@ public class TweenWizard extends Wizard {
     }
 
     private void calculateAnimation() {
+        // the frames are rendered by the filter, then the
+        // composite image of each frame is written out
+        var canvas = dr.getComp().getCanvas();
+        long neededBytes = animation.getFilter().estimateMemoryNeeded(dr.getImage())
+                + 2 * MemoryGovernor.bytesOfImage(canvas.getWidth(), canvas.getHeight());
+        if (!MemoryGovernor.admitOrWarn("the tweening animation", neededBytes)) {
+            return;
+        }
+
         var progressMonitor = GUIUtils.createPercentageProgressMonitor("Rendering Frames");
 
         var task = new RenderTweenFramesTask(animation, dr);
@@ -38,6 +38,7 @@ import static javax.swing.SwingConstants.LEFT;
  */
 public class CustomConvolveGUI extends FilterGUI implements ActionListener {
     private static final int TEXTFIELD_PREFERRED_WIDTH = 70;
+    private static final int SMALL_TEXTFIELD_PREFERRED_WIDTH = 50;
 
     private JTextField[] textFields;
 
@@ -91,8 +92,9 @@ public class CustomConvolveGUI extends FilterGUI implements ActionListener {
 
         // this must come after adding the textFieldsP to the box
         var minimumSize = textFieldsP.getMinimumSize();
+        int textFieldWidth = size > 5 ? SMALL_TEXTFIELD_PREFERRED_WIDTH : TEXTFIELD_PREFERRED_WIDTH;
         textFieldsP.setPreferredSize(new Dimension(
-                size * TEXTFIELD_PREFERRED_WIDTH, minimumSize.height));
+                size * textFieldWidth, minimumSize.height));
     }
 
     private void addNormalizeButton(Box leftVerticalBox) {
@@ -131,7 +133,7 @@ public class CustomConvolveGUI extends FilterGUI implements ActionListener {
         } else if (size == 5) {
             init5x5Presets();
         } else {
-            throw new IllegalStateException("size = " + size);
+            initBigPresets();
         }
 
         presetsBox.add(Box.createVerticalStrut(20));
@@ -223,6 +225,44 @@ public class CustomConvolveGUI extends FilterGUI implements ActionListener {
         });
     }
 
+    /**
+     * The presets of the big kernels are calculated for the size
+     */
+    private void initBigPresets() {
+        int center = size / 2;
+        float[] boxBlur = new float[size * size];
+        float[] diskBlur = new float[size * size];
+        float[] motionBlur = new float[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int i = y * size + x;
+                boxBlur[i] = 1;
+                int dx = x - center;
+                int dy = y - center;
+                if (dx * dx + dy * dy <= center * center) {
+                    diskBlur[i] = 1;
+                }
+                if (x + y == size - 1) {
+                    motionBlur[i] = 1;
+                }
+            }
+        }
+        initPreset("Box Blur", normalize(boxBlur));
+        initPreset("Disk Blur", normalize(diskBlur));
+        initPreset("Motion Blur", normalize(motionBlur));
+    }
+
+    private static float[] normalize(float[] values) {
+        float sum = 0;
+        for (float value : values) {
+            sum += value;
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] /= sum;
+        }
+        return values;
+    }
+
     private void init3x3Presets() {
         initPreset("Corner Blur", new float[]{
                 0.25f, 0.0f, 0.25f,
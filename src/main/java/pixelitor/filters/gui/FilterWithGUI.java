@@ -18,8 +18,10 @@
 package pixelitor.filters.gui;
 
 import pixelitor.filters.Filter;
+import pixelitor.filters.FilterResultCache;
 import pixelitor.gui.utils.DialogBuilder;
 import pixelitor.layers.Drawable;
+import pixelitor.utils.MemoryGovernor;
 
 import static pixelitor.gui.utils.Screens.Align.FRAME_RIGHT;
 
@@ -42,6 +44,11 @@ public abstract class FilterWithGUI extends Filter {
 
     @Override
     public void startOn(Drawable dr) {
+        if (!MemoryGovernor.admitOrWarn(getName(), estimateMemoryNeeded(dr.getImage()))) {
+            return;
+        }
+
+        FilterResultCache.previewSessionStarted();
         dr.startPreviewing();
 
         FilterGUI gui = createGUI(dr);
@@ -51,8 +58,14 @@ public abstract class FilterWithGUI extends Filter {
                 .content(gui)
                 .align(FRAME_RIGHT)
                 .withScrollbars()
-                .okAction(() -> dr.onFilterDialogAccepted(getName()))
-                .cancelAction(dr::onFilterDialogCanceled)
+                .okAction(() -> {
+                    dr.onFilterDialogAccepted(getName());
+                    FilterResultCache.previewSessionEnded();
+                })
+                .cancelAction(() -> {
+                    dr.onFilterDialogCanceled();
+                    FilterResultCache.previewSessionEnded();
+                })
                 .show();
     }
 }
@@ -235,6 +235,10 @@ public class GradientParam extends AbstractFilterParam {
         return List.of(gradientSlider.getValues());
     }
 
+    float[] getThumbPositions() {
+        return gradientSlider.getThumbPositions();
+    }
+
     @Override
     public String toString() {
         return format("%s[name = '%s']", getClass().getSimpleName(), getName());
@@ -201,6 +201,7 @@ public class IntChoiceParam extends AbstractMultipleChoiceParam<IntChoiceParam.V
     private static final IntChoiceParam.Value[] interpolationChoices = {
             new Value("Bilinear (Better)", TransformFilter.BILINEAR),
             new Value("Nearest Neighbour (Faster)", TransformFilter.NEAREST_NEIGHBOUR),
+            new Value("Bicubic (Smoother)", TransformFilter.BICUBIC),
 //            new Value("Nearest Neighbour (OLD)", TransformFilter.NEAREST_NEIGHBOUR_OLD),
 //            new Value("Bilinear (OLD)", TransformFilter.BILINEAR_OLD),
     };
@@ -21,8 +21,11 @@ import pixelitor.filters.Filter;
 import pixelitor.utils.Icons;
 import pixelitor.utils.Utils;
 
+import java.awt.Color;
 import java.awt.Rectangle;
+import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -198,6 +201,47 @@ public class ParamSet implements Iterable<FilterParam> {
                 });
     }
 
+    /**
+     * Returns the values of all params in a list that can be compared
+     * with equals, or null if some value can't be compared.
+     * Unlike the {@link CompositeState}, this also includes the params
+     * that can't be animated.
+     */
+    public List<Object> getComparableValues() {
+        List<Object> values = new ArrayList<>(paramList.size() + 1);
+        for (FilterParam param : paramList) {
+            Object value = param.getParamValue();
+            if (!isComparable(value)) {
+                return null;
+            }
+            values.add(value);
+            if (param instanceof GradientParam) {
+                // the value contains only the colors
+                values.add(Arrays.toString(((GradientParam) param).getThumbPositions()));
+            }
+        }
+        return values;
+    }
+
+    private static boolean isComparable(Object value) {
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                if (!isComparable(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return value == null
+                || value instanceof Number
+                || value instanceof Boolean
+                || value instanceof String
+                || value instanceof Enum
+                || value instanceof Color
+                || value instanceof Point2D
+                || value instanceof IntChoiceParam.Value;
+    }
+
     /**
      * A ParamSet can be animated if at least
      * one contained filter parameter can be
@@ -18,6 +18,7 @@
 package pixelitor.filters.gui;
 
 import com.jhlabs.math.Noise;
+import pixelitor.filters.FilterResultCache;
 import pixelitor.utils.Icons;
 
 /**
@@ -49,7 +50,12 @@ public class ReseedActions {
 
     public static FilterButtonModel reseedByCalling(Runnable beforeTriggeringTask,
                                                     String text, String toolTip) {
-        var filterAction = new FilterButtonModel(text, beforeTriggeringTask,
+        // the earlier results with the same settings can't be reused
+        Runnable task = () -> {
+            FilterResultCache.randomnessReseeded();
+            beforeTriggeringTask.run();
+        };
+        var filterAction = new FilterButtonModel(text, task,
                 Icons.getTwoDicesIcon(), toolTip, "reseed");
         filterAction.setIgnoreFinalAnimationSettingMode(false);
         return filterAction;
@@ -24,6 +24,7 @@ import pixelitor.utils.Shapes;
 import java.awt.Shape;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 /**
  * The implementation of the {@link CircleToSquare} filter.
@@ -99,4 +100,9 @@ public class CircleToSquareFilter extends CenteredTransformFilter {
             out[1] = y + amount * (transformedY - y);
         }
     }
+
+    @Override
+    protected Object getGeometryKey() {
+        return List.of(cx, cy, radiusX, radiusY, radiusRatio, amount);
+    }
 }
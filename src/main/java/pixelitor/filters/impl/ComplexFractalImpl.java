@@ -17,11 +17,30 @@
 
 package pixelitor.filters.impl;
 
-import com.jhlabs.image.PointFilter;
+import com.jhlabs.image.AbstractBufferedImageOp;
 
 import java.awt.image.BufferedImage;
+import java.util.function.Consumer;
+
+/**
+ * The common implementation of the Mandelbrot and Julia sets,
+ * rendered with the {@link EscapeTimeRenderer}.
+ */
+public abstract class ComplexFractalImpl extends AbstractBufferedImageOp {
+    // the squared escape radius for the discrete coloring
+    private static final double BAILOUT = 4;
+
+    // a bigger escape radius makes the smooth coloring smoother
+    private static final double SMOOTH_BAILOUT = 256 * 256;
+
+    // two points of an orbit closer than this are considered
+    // equal by the periodicity checking
+    private static final double PERIODICITY_EPSILON = 1.0e-13;
+
+    // smaller images are rendered fast enough without
+    // showing the coarse passes of the progressive rendering
+    private static final int MIN_PROGRESSIVE_PIXELS = 512 * 512;
 
-public abstract class ComplexFractalImpl extends PointFilter {
     // the bounds in the complex space
     private final double cxMin;
     private final double cxMax;
@@ -45,9 +64,13 @@ public abstract class ComplexFractalImpl extends PointFilter {
 
     private int maxIterations = 570;
     private double zoom = 1.0f;
+    private boolean smooth = false;
 
     protected int[] colors;
 
+    // receives the coarse passes, if not null
+    private Consumer<BufferedImage> passListener;
+
     protected ComplexFractalImpl(String filterName, double cxMin, double cxMax, double cyMin, double cyMax) {
         super(filterName);
 
@@ -62,11 +85,17 @@ public abstract class ComplexFractalImpl extends PointFilter {
 
     @Override
     public BufferedImage filter(BufferedImage src, BufferedImage dst) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        if (dst == null) {
+            dst = createCompatibleDestImage(src, null);
+        }
+
         double zoomedRangeCX = cxRange / zoom;
         double zoomedRangeCY = cyRange / zoom;
 
-        xMultiplier = zoomedRangeCX / src.getWidth();
-        yMultiplier = zoomedRangeCY / src.getHeight();
+        xMultiplier = zoomedRangeCX / width;
+        yMultiplier = zoomedRangeCY / height;
 
         // the zoom center in the "C-space"
         double zoomCenterCX = cxMin + zoomCenterX * cxRange;
@@ -95,44 +124,106 @@ public abstract class ComplexFractalImpl extends PointFilter {
             cyStart =  cyZoomedMin;
         }
 
-        return super.filter(src, dst);
+        var renderer = new EscapeTimeRenderer(width, height, this::calcValue, smooth);
+        var pt = createProgressTracker((height + 63) / 64);
+        float[] values;
+        if (passListener != null && width * height >= MIN_PROGRESSIVE_PIXELS) {
+            values = renderer.renderProgressively(pass ->
+                    passListener.accept(createImage(pass, width, height, src)), pt);
+        } else {
+            values = renderer.render(pt);
+        }
+        finishProgressTracker();
+
+        setRGB(dst, 0, 0, width, height, valuesToColors(values));
+
+        return dst;
+    }
+
+    private BufferedImage createImage(float[] values, int width, int height, BufferedImage src) {
+        BufferedImage img = createCompatibleDestImage(src, null);
+        setRGB(img, 0, 0, width, height, valuesToColors(values));
+        return img;
+    }
+
+    private int[] valuesToColors(float[] values) {
+        int[] pixels = new int[values.length];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = valueToColor(values[i]);
+        }
+        return pixels;
     }
 
-    protected int calcIteratedColor(double zx, double zy, double cx, double cy) {
-        int it = iterate(zx, zy, cx, cy, maxIterations);
-        return colors[it];
+    /**
+     * Returns the number of remaining iterations for the given
+     * pixel, see {@link EscapeTimeRenderer.PixelFunction}
+     */
+    protected abstract double calcValue(int x, int y);
+
+    private int valueToColor(float value) {
+        int it = (int) value;
+        if (!smooth || it >= maxIterations) {
+            return colors[it];
+        }
+        // interpolate between the neighboring colors
+        float f = value - it;
+        int c1 = colors[it];
+        int c2 = colors[it + 1];
+        int color = 0xFF_00_00_00;
+        for (int shift = 0; shift <= 16; shift += 8) {
+            int v1 = (c1 >>> shift) & 0xFF;
+            int v2 = (c2 >>> shift) & 0xFF;
+            color |= ((int) (v1 + (v2 - v1) * f + 0.5f)) << shift;
+        }
+        return color;
     }
 
-    private static int iterate(double x, double y, double cx, double cy, int maxIt) {
-        int it = maxIt;
+    /**
+     * Iterates z -> z^2 + c, starting from the given z.
+     * The points whose orbit becomes periodic are detected as
+     * inside the set before reaching the maximal number of iterations.
+     */
+    protected double iterate(double x, double y, double cx, double cy) {
+        double bailout = smooth ? SMOOTH_BAILOUT : BAILOUT;
+        int it = maxIterations;
         double x2 = 0;
         double y2 = 0;
         double xy;
-        while (x2 + y2 <= 4 && it > 0) {
+
+        // Brent's cycle detection: the orbit is compared with a saved
+        // point, which is updated at exponentially growing intervals
+        double savedX = x;
+        double savedY = y;
+        int checkLimit = 8;
+        int sinceSaved = 0;
+
+        while (x2 + y2 <= bailout && it > 0) {
             it--;
             xy = x * y;
             x2 = x * x;
             y2 = y * y;
             x = x2 - y2 + cx;
             y = xy + xy + cy;
-        }
-        return it;
-    }
 
-    private static int iterateUnOpt(double x, double y, double cx, double cy, int maxIt) {
-        int it = maxIt;
-        while (x * x + y * y < 4 && it > 0) {
-            it--;
-            double xTmp = x * x - y * y + cx;
-            double yTmp = 2.0 * x * y + cy;
-            if (x == xTmp && y == yTmp) {
-                it = 0;
-                break;
+            if (Math.abs(x - savedX) < PERIODICITY_EPSILON
+                    && Math.abs(y - savedY) < PERIODICITY_EPSILON) {
+                return 0;
+            }
+            if (++sinceSaved == checkLimit) {
+                sinceSaved = 0;
+                checkLimit *= 2;
+                savedX = x;
+                savedY = y;
             }
-            y = yTmp;
-            x = xTmp;
         }
-        return it;
+        if (!smooth || it == 0) {
+            return it;
+        }
+
+        // the continuous (normalized) iteration count
+        double logModulus = Math.log(x2 + y2) / 2;
+        double value = it - 1 + Math.log(logModulus / Math.log(2)) / Math.log(2);
+        return Math.max(0, Math.min(maxIterations, value));
     }
 
     public void setZoom(double zoom) {
@@ -151,4 +242,16 @@ public abstract class ComplexFractalImpl extends PointFilter {
     public void setMaxIterations(int maxIterations) {
         this.maxIterations = maxIterations;
     }
+
+    public void setSmooth(boolean smooth) {
+        this.smooth = smooth;
+    }
+
+    /**
+     * Sets the listener that receives an approximate image after each
+     * coarse pass of the rendering, or null for rendering in one go.
+     */
+    public void setPassListener(Consumer<BufferedImage> passListener) {
+        this.passListener = passListener;
+    }
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.impl;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
+
+import java.util.Arrays;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Renders escape-time fractals (like the Mandelbrot and Julia sets)
+ * into a buffer of iteration values.
+ *
+ * The image is split into tiles, which are rendered in parallel
+ * with rectangle subdivision (the Mariani-Silver algorithm): if all
+ * the pixels on the border of a rectangle have the same value, then the
+ * inside is filled with that value without iterating it, otherwise
+ * the rectangle is split into four, until the rectangles become small.
+ */
+public class EscapeTimeRenderer {
+    /**
+     * Calculates the value of a pixel, which is the number of
+     * remaining iterations (possibly with a fractional part) when
+     * the point escaped, and 0 for the points inside the set.
+     * It's called from several threads.
+     */
+    public interface PixelFunction {
+        double calcValue(int x, int y);
+    }
+
+    private static final int TILE_SIZE = 64;
+
+    // rectangles which are narrower than this are not subdivided further
+    private static final int MIN_SUBDIVIDE_SIZE = 6;
+
+    // the steps of the progressive passes, each of them calculates
+    // only the pixels which were not calculated in the earlier passes
+    private static final int[] PROGRESSIVE_STEPS = {8, 4, 2};
+
+    private static final float NOT_CALCULATED = Float.NaN;
+
+    private final int width;
+    private final int height;
+    private final PixelFunction function;
+    private final boolean fillOnlyInside;
+    private final float[] values;
+
+    /**
+     * If fillOnlyInside is true, then only the rectangles whose border
+     * is inside the set are filled without iterating. This is necessary
+     * for smooth coloring, where the values of the escaped points
+     * on a uniform border are usually not exactly the same.
+     */
+    public EscapeTimeRenderer(int width, int height,
+                              PixelFunction function, boolean fillOnlyInside) {
+        this.width = width;
+        this.height = height;
+        this.function = function;
+        this.fillOnlyInside = fillOnlyInside;
+
+        values = new float[width * height];
+        Arrays.fill(values, NOT_CALCULATED);
+    }
+
+    /**
+     * Calculates all the values, and returns them in row-major order.
+     * The progress tracker receives one unit for each tile row.
+     */
+    public float[] render(ProgressTracker pt) {
+        int numTileRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        int numTileCols = (width + TILE_SIZE - 1) / TILE_SIZE;
+        Future<?>[] futures = new Future[numTileRows];
+        for (int row = 0; row < numTileRows; row++) {
+            int y0 = row * TILE_SIZE;
+            int y1 = Math.min(height, y0 + TILE_SIZE) - 1;
+            futures[row] = ThreadPool.submit(() -> {
+                for (int col = 0; col < numTileCols; col++) {
+                    int x0 = col * TILE_SIZE;
+                    int x1 = Math.min(width, x0 + TILE_SIZE) - 1;
+                    subdivide(x0, y0, x1, y1);
+                }
+            });
+        }
+        ThreadPool.waitFor(futures, pt);
+        return values;
+    }
+
+    /**
+     * Renders the values in coarse-to-fine passes. After each
+     * coarse pass the given listener receives an approximation
+     * of the result, where each calculated pixel is repeated in
+     * its block. The pixels of the coarse passes are not calculated
+     * again, so the total work is about the same as with
+     * {@link #render(ProgressTracker)}.
+     */
+    public float[] renderProgressively(Consumer<float[]> passListener, ProgressTracker pt) {
+        for (int i = 0; i < PROGRESSIVE_STEPS.length; i++) {
+            int step = PROGRESSIVE_STEPS[i];
+            int prevStep = i == 0 ? 0 : PROGRESSIVE_STEPS[i - 1];
+            calcGrid(step, prevStep);
+            passListener.accept(createBlockImage(step));
+        }
+        return render(pt);
+    }
+
+    // calculates the pixels of the grid with the given step,
+    // except for those which are also on the previous grid
+    private void calcGrid(int step, int prevStep) {
+        int numRows = (height + step - 1) / step;
+        Future<?>[] futures = new Future[numRows];
+        for (int i = 0; i < numRows; i++) {
+            int y = i * step;
+            futures[i] = ThreadPool.submit(() -> {
+                boolean onPrevRow = prevStep != 0 && y % prevStep == 0;
+                for (int x = 0; x < width; x += step) {
+                    if (onPrevRow && x % prevStep == 0) {
+                        continue;
+                    }
+                    values[x + y * width] = (float) function.calcValue(x, y);
+                }
+            });
+        }
+        ThreadPool.waitFor(futures, ProgressTracker.NULL_TRACKER);
+    }
+
+    private float[] createBlockImage(int step) {
+        float[] block = new float[values.length];
+        for (int y = 0; y < height; y++) {
+            int gridRowStart = (y - y % step) * width;
+            for (int x = 0; x < width; x++) {
+                block[x + y * width] = values[gridRowStart + x - x % step];
+            }
+        }
+        return block;
+    }
+
+    // the Mariani-Silver algorithm for the rectangle
+    // between the given inclusive coordinates
+    private void subdivide(int x0, int y0, int x1, int y1) {
+        if (x1 - x0 < MIN_SUBDIVIDE_SIZE || y1 - y0 < MIN_SUBDIVIDE_SIZE) {
+            for (int y = y0; y <= y1; y++) {
+                for (int x = x0; x <= x1; x++) {
+                    valueAt(x, y);
+                }
+            }
+            return;
+        }
+
+        float first = valueAt(x0, y0);
+        boolean uniform = true;
+        for (int x = x0; x <= x1; x++) {
+            uniform &= valueAt(x, y0) == first;
+            uniform &= valueAt(x, y1) == first;
+        }
+        for (int y = y0 + 1; y < y1; y++) {
+            uniform &= valueAt(x0, y) == first;
+            uniform &= valueAt(x1, y) == first;
+        }
+
+        if (uniform && (!fillOnlyInside || first == 0)) {
+            for (int y = y0 + 1; y < y1; y++) {
+                int offset = y * width;
+                Arrays.fill(values, offset + x0 + 1, offset + x1, first);
+            }
+            return;
+        }
+
+        // the sub-rectangles share their borders
+        int mx = (x0 + x1) / 2;
+        int my = (y0 + y1) / 2;
+        subdivide(x0, y0, mx, my);
+        subdivide(mx, y0, x1, my);
+        subdivide(x0, my, mx, y1);
+        subdivide(mx, my, x1, y1);
+    }
+
+    // returns the value of the given pixel, calculating it only if necessary
+    private float valueAt(int x, int y) {
+        int index = x + y * width;
+        float value = values[index];
+        if (Float.isNaN(value)) {
+            value = (float) function.calcValue(x, y);
+            values[index] = value;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.impl;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.MemoryGovernor;
+import pixelitor.utils.ProgressTracker;
+import pixelitor.utils.VisibleForTesting;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Renders iterated function systems (like the chaos game)
+ * in parallel. The iterations are divided among a fixed number
+ * of random walks ("chains"), each with its own seeded random
+ * generator, so that the result depends only on the seed.
+ *
+ * The chains are scheduled on the thread pool, and each running
+ * chain plots into one of the private accumulation buffers, which
+ * are merged and tone mapped at the end. The number of buffers follows
+ * the number of cores, but it is limited by the available memory.
+ */
+public class IFSRenderer {
+    /**
+     * The number of chains, the progress tracker
+     * of the rendering receives one unit for each.
+     */
+    public static final int NUM_CHAINS = 16;
+
+    /**
+     * A random walk whose visited points are plotted.
+     * Each worker uses its own instance, therefore
+     * the implementations don't need to be thread-safe.
+     */
+    public interface Chain {
+        /**
+         * Moves to the next point, and returns
+         * false if it should not be plotted.
+         */
+        boolean step(SplittableRandom random);
+
+        double getX();
+
+        double getY();
+
+        /**
+         * The RGB color of the current point, the alpha is ignored.
+         */
+        int getColor();
+    }
+
+    private final int width;
+    private final int height;
+    private final boolean withColors;
+
+    // the merged buffers
+    private int[] counts;
+    private long[] redSums;
+    private long[] greenSums;
+    private long[] blueSums;
+
+    /**
+     * If withColors is false, only the density is accumulated,
+     * and the colors of the chains are ignored.
+     */
+    public IFSRenderer(int width, int height, boolean withColors) {
+        this.width = width;
+        this.height = height;
+        this.withColors = withColors;
+    }
+
+    /**
+     * Runs the given number of iterations in total, distributed among
+     * the chains. Each chain is first advanced burnIn times without
+     * plotting, so that it converges to the attractor.
+     */
+    public void render(Supplier<Chain> chainFactory, long numIterations,
+                       int burnIn, long seed, ProgressTracker pt) {
+        render(chainFactory, numIterations, burnIn, seed, calcNumBuffers(), pt);
+    }
+
+    // one buffer for each core, if there is enough memory for them
+    private int calcNumBuffers() {
+        long bufferBytes = (long) width * height * (withColors ? 28 : 4);
+        // half of the free memory can be used for the private buffers
+        long affordable = MemoryGovernor.getAvailableBytes() / 2 / Math.max(1, bufferBytes);
+        int numCores = Math.min(ThreadPool.getNumCores(), NUM_CHAINS);
+        return (int) Math.max(1, Math.min(numCores, affordable));
+    }
+
+    @VisibleForTesting
+    void render(Supplier<Chain> chainFactory, long numIterations,
+                int burnIn, long seed, int numBuffers, ProgressTracker pt) {
+        BlockingQueue<Accumulator> freeBuffers = new LinkedBlockingQueue<>();
+        Accumulator[] buffers = new Accumulator[numBuffers];
+        for (int i = 0; i < numBuffers; i++) {
+            buffers[i] = new Accumulator();
+            freeBuffers.add(buffers[i]);
+        }
+
+        SplittableRandom seeds = new SplittableRandom(seed);
+        Future<?>[] futures = new Future[NUM_CHAINS];
+        for (int i = 0; i < NUM_CHAINS; i++) {
+            long chainIterations = numIterations / NUM_CHAINS
+                    + (i < numIterations % NUM_CHAINS ? 1 : 0);
+            Chain chain = chainFactory.get();
+            SplittableRandom random = seeds.split();
+            futures[i] = ThreadPool.submit(() ->
+                    runChain(chain, random, burnIn, chainIterations, freeBuffers));
+        }
+        ThreadPool.waitFor(futures, pt);
+
+        merge(buffers);
+    }
+
+    // The buffer is taken only for the duration of the chain. If there are
+    // fewer buffers than pool threads, this waits for a running chain.
+    private static void runChain(Chain chain, SplittableRandom random, int burnIn,
+                                 long numIterations, BlockingQueue<Accumulator> freeBuffers) {
+        Accumulator buffer;
+        try {
+            buffer = freeBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            buffer.run(chain, random, burnIn, numIterations);
+        } finally {
+            freeBuffers.add(buffer);
+        }
+    }
+
+    // the first buffer becomes the merged buffer, the
+    // sums don't depend on which chain used which buffer
+    private void merge(Accumulator[] buffers) {
+        Accumulator first = buffers[0];
+        counts = first.counts;
+        redSums = first.redSums;
+        greenSums = first.greenSums;
+        blueSums = first.blueSums;
+
+        for (int b = 1; b < buffers.length; b++) {
+            Accumulator buffer = buffers[b];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += buffer.counts[i];
+            }
+            if (withColors) {
+                addTo(redSums, buffer.redSums);
+                addTo(greenSums, buffer.greenSums);
+                addTo(blueSums, buffer.blueSums);
+            }
+            buffers[b] = null; // can be garbage collected
+        }
+    }
+
+    private static void addTo(long[] sums, long[] other) {
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] += other[i];
+        }
+    }
+
+    /**
+     * Returns the number of times the given pixel was visited.
+     */
+    public int getCount(int x, int y) {
+        return counts[x + y * width];
+    }
+
+    /**
+     * Writes the tone mapped result into the given pixels. The
+     * color of a visited pixel is the average color of the visits
+     * (or the given foreground color, if colors are not used).
+     * Without the log-density tone mapping all visited pixels are opaque,
+     * otherwise they are blended with the background proportionally
+     * to the logarithm of the number of visits.
+     */
+    public void toneMap(int[] pixels, int bgColor, int fgColor, boolean logDensity) {
+        int maxCount = 0;
+        for (int count : counts) {
+            maxCount = Math.max(maxCount, count);
+        }
+        double logMax = Math.log1p(maxCount);
+
+        for (int i = 0; i < pixels.length; i++) {
+            int count = counts[i];
+            if (count == 0) {
+                pixels[i] = bgColor;
+                continue;
+            }
+            int color = fgColor;
+            if (withColors) {
+                int r = (int) (redSums[i] / count);
+                int g = (int) (greenSums[i] / count);
+                int b = (int) (blueSums[i] / count);
+                color = 0xFF_00_00_00 | r << 16 | g << 8 | b;
+            }
+            if (logDensity) {
+                double weight = Math.log1p(count) / logMax;
+                color = mix(bgColor, color, weight);
+            }
+            pixels[i] = color;
+        }
+    }
+
+    private static int mix(int bg, int fg, double weight) {
+        int result = 0xFF_00_00_00;
+        for (int shift = 0; shift <= 16; shift += 8) {
+            int bgValue = (bg >>> shift) & 0xFF;
+            int fgValue = (fg >>> shift) & 0xFF;
+            int value = (int) (bgValue + (fgValue - bgValue) * weight + 0.5);
+            result |= value << shift;
+        }
+        return result;
+    }
+
+    /**
+     * A private accumulation buffer, used by one chain at a time
+     */
+    private class Accumulator {
+        private final int[] counts;
+        private final long[] redSums;
+        private final long[] greenSums;
+        private final long[] blueSums;
+
+        Accumulator() {
+            int numPixels = width * height;
+            counts = new int[numPixels];
+            if (withColors) {
+                redSums = new long[numPixels];
+                greenSums = new long[numPixels];
+                blueSums = new long[numPixels];
+            } else {
+                redSums = null;
+                greenSums = null;
+                blueSums = null;
+            }
+        }
+
+        void run(Chain chain, SplittableRandom random, int burnIn, long numIterations) {
+            for (int i = 0; i < burnIn; i++) {
+                chain.step(random);
+            }
+            for (long i = 0; i < numIterations; i++) {
+                if (!chain.step(random)) {
+                    continue;
+                }
+                int x = (int) chain.getX();
+                int y = (int) chain.getY();
+                if (x < 0 || x >= width || y < 0 || y >= height) {
+                    continue;
+                }
+                int index = x + y * width;
+                counts[index]++;
+                if (withColors) {
+                    int color = chain.getColor();
+                    redSums[index] += (color >>> 16) & 0xFF;
+                    greenSums[index] += (color >>> 8) & 0xFF;
+                    blueSums[index] += color & 0xFF;
+                }
+            }
+        }
+    }
+}
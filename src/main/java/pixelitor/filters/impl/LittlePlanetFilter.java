@@ -21,6 +21,8 @@ import net.jafama.FastMath;
 import pixelitor.filters.LittlePlanet;
 import pixelitor.utils.Utils;
 
+import java.util.List;
+
 /**
  * The implementation of the {@link LittlePlanet} filter.
  * This is actually a rectangular -> polar filter with some extra features
@@ -75,4 +77,9 @@ public class LittlePlanetFilter extends CenteredTransformFilter {
     public void setInnerZoom(float innerZoom) {
         this.innerZoom = 1 - innerZoom / 2.0f;
     }
+
+    @Override
+    protected Object getGeometryKey() {
+        return List.of(cx, cy, rotateResult, zoom, innerZoom, inverted);
+    }
 }
@@ -17,15 +17,17 @@
 
 package pixelitor.filters.impl;
 
+import com.jhlabs.image.GrayFilter;
 import com.jhlabs.image.WholeImageFilter;
 import pixelitor.filters.Morphology;
 
 import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 
 /**
  * The implementation of the {@link Morphology} filter.
  */
-public class MorphologyFilter extends WholeImageFilter {
+public class MorphologyFilter extends WholeImageFilter implements GrayFilter {
     private int iterations = 1;
 
     public static final int OP_ERODE = 1;
@@ -52,6 +54,56 @@ public class MorphologyFilter extends WholeImageFilter {
         this.iterations = iterations;
     }
 
+    @Override
+    public BufferedImage filter(BufferedImage src, BufferedImage dst) {
+        if (GrayFilter.isGrayPair(src, dst)) {
+            return filterGrayImage(src, dst);
+        }
+        return super.filter(src, dst);
+    }
+
+    @Override
+    public void filterGray(byte[] src, byte[] dst, int width, int height) {
+        byte[] in = new byte[src.length];
+        System.arraycopy(src, 0, in, 0, src.length);
+        boolean erode = op == OP_ERODE;
+        boolean diamond = kernel == KERNEL_DIAMOND;
+
+        pt = createProgressTracker(iterations);
+        for (int it = 0; it < iterations; it++) {
+            if (it > 0) {
+                System.arraycopy(dst, 0, in, 0, in.length);
+            }
+            int index = 0;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int v = erode ? 0xff : 0;
+                    for (int dy = -1; dy <= 1; dy++) {
+                        int iy = y + dy;
+                        if (iy < 0 || iy >= height) {
+                            continue;
+                        }
+                        int xOffset = iy * width;
+                        for (int dx = -1; dx <= 1; dx++) {
+                            if (diamond && dx != 0 && dy != 0) {
+                                continue;
+                            }
+                            int ix = x + dx;
+                            if (ix < 0 || ix >= width) {
+                                continue;
+                            }
+                            int compared = in[xOffset + ix] & 0xff;
+                            v = erode ? Math.min(v, compared) : Math.max(v, compared);
+                        }
+                    }
+                    dst[index++] = (byte) v;
+                }
+            }
+            pt.unitDone();
+        }
+        finishProgressTracker();
+    }
+
     @Override
     protected int[] filterPixels(int width, int height, int[] inPixels, Rectangle transformedSpace) {
         int[] outPixels = new int[width * height];
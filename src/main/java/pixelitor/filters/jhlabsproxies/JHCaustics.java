@@ -25,6 +25,7 @@ import pixelitor.filters.gui.ShowOriginal;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 import static pixelitor.filters.gui.ColorParam.TransparencyPolicy.USER_ONLY_TRANSPARENCY;
 import static pixelitor.filters.gui.RandomizePolicy.IGNORE_RANDOMIZE;
@@ -82,4 +83,10 @@ public class JHCaustics extends ParametrizedFilter {
         dest = filter.filter(src, dest);
         return dest;
     }
-}
\ No newline at end of file
+
+    @Override
+    public List<Object> getSettingsForCaching() {
+        // the sampling positions are random for every run
+        return null;
+    }
+}
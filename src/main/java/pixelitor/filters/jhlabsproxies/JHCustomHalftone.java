@@ -22,6 +22,7 @@ import pixelitor.OpenImages;
 import pixelitor.utils.ImageUtils;
 
 import java.awt.image.BufferedImage;
+import java.util.List;
 import java.util.Optional;
 
 public class JHCustomHalftone extends JHMaskedHalftone {
@@ -35,6 +36,12 @@ public class JHCustomHalftone extends JHMaskedHalftone {
         );
     }
 
+    @Override
+    public List<Object> getSettingsForCaching() {
+        // the result also depends on another composition
+        return null;
+    }
+
     @Override
     protected BufferedImage createMaskImage(BufferedImage src) {
         Optional<Composition> opt = OpenImages.findCompByName("Untitled1");
@@ -78,12 +78,6 @@ public class JHFocus extends ParametrizedFilter {
             return new BoxBlurFilter(hRadius, vRadius, numberOfIterations.getValue(), getName()).filter(src, dest);
         }
 
-        if (src.getWidth() == 1 || src.getHeight() == 1) {
-            // otherwise we can get ArrayIndexOutOfBoundsException
-            // in VariableBlurFilter.blur
-            return src;
-        }
-
         if (filter == null) {
             filter = new FocusImpl(NAME);
         }
@@ -24,6 +24,7 @@ import pixelitor.filters.gui.ReseedActions;
 import pixelitor.filters.gui.ShowOriginal;
 
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 import static pixelitor.filters.gui.IntChoiceParam.EDGE_REPEAT_PIXELS;
 
@@ -65,4 +66,10 @@ public class JHFrostedGlass extends ParametrizedFilter {
         dest = filter.filter(src, dest);
         return dest;
     }
-}
\ No newline at end of file
+
+    @Override
+    public List<Object> getSettingsForCaching() {
+        // the displacements are random for every run
+        return null;
+    }
+}
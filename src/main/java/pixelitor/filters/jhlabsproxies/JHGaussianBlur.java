@@ -21,6 +21,8 @@ package pixelitor.filters.jhlabsproxies;
 import com.jhlabs.image.GaussianFilter;
 import pixelitor.filters.ParametrizedFilter;
 import pixelitor.filters.gui.BooleanParam;
+import pixelitor.filters.gui.IntChoiceParam;
+import pixelitor.filters.gui.IntChoiceParam.Value;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
 import pixelitor.utils.ImageUtils;
@@ -34,6 +36,10 @@ public class JHGaussianBlur extends ParametrizedFilter {
     public static final String NAME = "Gaussian Blur";
 
     private final RangeParam radius = new RangeParam("Radius", 1, 2, 101);
+    private final IntChoiceParam engine = new IntChoiceParam("Method", new Value[]{
+            new Value("Exact", GaussianFilter.KERNEL_ENGINE),
+            new Value("Fast (Recursive)", GaussianFilter.RECURSIVE_ENGINE),
+    });
     private final BooleanParam hpSharpening = BooleanParam.forHPSharpening();
 
     private GaussianFilter filter;
@@ -43,6 +49,7 @@ public class JHGaussianBlur extends ParametrizedFilter {
 
         setParams(
                 radius.withDecimalPlaces(1),
+                engine,
                 hpSharpening
         );
     }
@@ -58,6 +65,7 @@ public class JHGaussianBlur extends ParametrizedFilter {
         }
 
         filter.setRadius(radius.getValueAsFloat());
+        filter.setEngine(engine.getValue());
         filter.setPremultiplyAlpha(false);
 
         dest = filter.filter(src, dest);
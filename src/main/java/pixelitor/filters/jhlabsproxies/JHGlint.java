@@ -25,6 +25,7 @@ import pixelitor.filters.gui.ShowOriginal;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 import static java.awt.Color.WHITE;
 
@@ -84,4 +85,10 @@ public class JHGlint extends ParametrizedFilter {
         dest = filter.filter(src, dest);
         return dest;
     }
-}
\ No newline at end of file
+
+    @Override
+    public List<Object> getSettingsForCaching() {
+        // the glints are placed randomly for every run
+        return null;
+    }
+}
@@ -20,11 +20,20 @@ package pixelitor.filters.jhlabsproxies;
 import com.jhlabs.image.QuantizeFilter;
 import pixelitor.filters.ParametrizedFilter;
 import pixelitor.filters.gui.BooleanParam;
+import pixelitor.filters.gui.IntChoiceParam;
+import pixelitor.filters.gui.IntChoiceParam.Value;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
 
 import java.awt.image.BufferedImage;
 
+import static com.jhlabs.image.QuantizationEngine.DITHER_FLOYD_STEINBERG;
+import static com.jhlabs.image.QuantizationEngine.DITHER_NONE;
+import static com.jhlabs.image.QuantizationEngine.DITHER_ORDERED;
+import static com.jhlabs.image.QuantizationEngine.K_MEANS;
+import static com.jhlabs.image.QuantizationEngine.MEDIAN_CUT;
+import static com.jhlabs.image.QuantizationEngine.OCTREE;
+
 /**
  * Quantize filter based on the JHLabs QuantizeFilter
  */
@@ -32,7 +41,16 @@ public class JHQuantize extends ParametrizedFilter {
     public static final String NAME = "Quantize";
 
     private final RangeParam numberOfColors = new RangeParam("Number of Colors", 2, 2, 256);
-    private final BooleanParam dither = new BooleanParam("Dither", false);
+    private final IntChoiceParam method = new IntChoiceParam("Method", new Value[]{
+            new Value("Octree", OCTREE),
+            new Value("Median Cut", MEDIAN_CUT),
+            new Value("K-Means (Slower)", K_MEANS),
+    });
+    private final IntChoiceParam dither = new IntChoiceParam("Dither", new Value[]{
+            new Value("None", DITHER_NONE),
+            new Value("Floyd-Steinberg", DITHER_FLOYD_STEINBERG),
+            new Value("Ordered", DITHER_ORDERED),
+    });
     private final BooleanParam serpentine = new BooleanParam("Dither with Serpentine", false);
 
     private QuantizeFilter filter;
@@ -40,11 +58,13 @@ public class JHQuantize extends ParametrizedFilter {
     public JHQuantize() {
         super(ShowOriginal.YES);
 
-        // enable serpentine only if dither is checked
-        dither.setupEnableOtherIfChecked(serpentine);
+        // enable serpentine only for error diffusion
+        dither.setupEnableOtherIf(serpentine,
+                selected -> selected.getValue() == DITHER_FLOYD_STEINBERG);
 
         setParams(
                 numberOfColors,
+                method,
                 dither,
                 serpentine
         );
@@ -57,7 +77,8 @@ public class JHQuantize extends ParametrizedFilter {
         }
 
         filter.setNumColors(numberOfColors.getValue());
-        filter.setDither(dither.isChecked());
+        filter.setMethod(method.getValue());
+        filter.setDitherType(dither.getValue());
         filter.setSerpentine(serpentine.isChecked());
 
         dest = filter.filter(src, dest);
@@ -17,6 +17,8 @@
 
 package pixelitor.filters.levels;
 
+import com.jhlabs.image.GrayFilter;
+import pixelitor.filters.FilterUtils;
 import pixelitor.filters.gui.FilterGUI;
 import pixelitor.filters.gui.FilterWithGUI;
 import pixelitor.filters.levels.gui.LevelsGUI;
@@ -32,7 +34,7 @@ import java.util.Objects;
 /**
  * The Levels filter
  */
-public class Levels extends FilterWithGUI {
+public class Levels extends FilterWithGUI implements GrayFilter {
     private RGBLookup rgbLookup;
 
     public Levels() {
@@ -71,7 +73,13 @@ public class Levels extends FilterWithGUI {
     }
 
     @Override
-    public boolean supportsGray() {
-        return false;
+    public void filterGray(byte[] src, byte[] dest, int width, int height) {
+        if (rgbLookup == null) {
+            throw new IllegalStateException("rgbLookup not initialized");
+        }
+
+        short[][] table = ((ShortLookupTable) rgbLookup.getLookupOp()).getTable();
+        FilterUtils.runRGBPixelOpOnGray((a, r, g, b) ->
+                a << 24 | table[0][r] << 16 | table[1][g] << 8 | table[2][b], src, dest);
     }
 }
\ No newline at end of file
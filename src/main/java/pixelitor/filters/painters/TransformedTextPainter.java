@@ -18,10 +18,13 @@
 package pixelitor.filters.painters;
 
 import org.jdesktop.swingx.painter.TextPainter;
+import org.jdesktop.swingx.painter.effects.AbstractAreaEffect;
 import org.jdesktop.swingx.painter.effects.AreaEffect;
 import pixelitor.Canvas;
 
 import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 
 import static java.awt.RenderingHints.*;
@@ -41,6 +44,23 @@ public class TransformedTextPainter extends TextPainter {
     private double rotation = 0;
     private Rectangle boundingBox = new Rectangle();
 
+    // the transformation of the text relative to the graphics it is painted on
+    private transient AffineTransform layoutTransform;
+
+    // The text (with the effects) rendered without the translation.
+    // Moving the text only changes the location where it is drawn,
+    // any other change clears it via clearCache()
+    private transient BufferedImage rasterCache;
+    private transient boolean rasterCacheValid = false;
+    private transient int rasterCacheX;
+    private transient int rasterCacheY;
+    private transient int rasterCacheCanvasWidth;
+    private transient int rasterCacheCanvasHeight;
+
+    // the text size measured by the last layout
+    private transient int lastTextWidth;
+    private transient int lastTextHeight;
+
     /**
      * Return last painted bounding box for rendered text.
      * Note that this is not pixel perfect rectangle.
@@ -107,14 +127,13 @@ public class TransformedTextPainter extends TextPainter {
         // paint the effects on an explicitly transformed shape
         // instead of simply painting them on the transformed graphics
         // so that the direction of the drop shadow effect does not rotate
-        var tx = g.getTransform();
         g.setTransform(origTransform);
 
         AreaEffect[] effects = getAreaEffects();
         if (effects.length != 0) {
             // provideShape must be called on an untransformed shape
             Shape shape = provideShape(g, component, canvasWidth, canvasHeight);
-            Shape transformedShape = tx.createTransformedShape(shape);
+            Shape transformedShape = layoutTransform.createTransformedShape(shape);
             for (AreaEffect ef : effects) {
                 ef.apply(g, transformedShape, canvasWidth, canvasHeight);
             }
@@ -134,30 +153,141 @@ public class TransformedTextPainter extends TextPainter {
 
         int textWidth = metrics.stringWidth(text);
         int textHeight = metrics.getHeight();
+        lastTextWidth = textWidth;
+        lastTextHeight = textHeight;
         boundingBox = calculateLayout(textWidth, textHeight, canvasWidth, canvasHeight);
 
+        layoutTransform = new AffineTransform();
         if (rotation != 0) {
             assert rotatedRect != null;
 
             double topLeftX = rotatedRect.getTopLeftX();
             double topLeftY = rotatedRect.getTopLeftY();
-            g.translate(topLeftX, topLeftY);
-            g.rotate(rotation, 0, 0);
+            layoutTransform.translate(topLeftX, topLeftY);
+            layoutTransform.rotate(rotation, 0, 0);
         } else {
             assert rotatedRect == null;
-            g.translate(boundingBox.x, boundingBox.y);
+            layoutTransform.translate(boundingBox.x, boundingBox.y);
         }
+        g.transform(layoutTransform);
         return metrics;
     }
 
+    /**
+     * Paints the text like paint(), but reuses the previously rendered
+     * raster if only the translation changed since the last call.
+     */
+    public void paintCached(Graphics2D g, int canvasWidth, int canvasHeight) {
+        if (!isVisible() || canvasWidth < 1 || canvasHeight < 1) {
+            return;
+        }
+
+        if (!rasterCacheValid
+                || rasterCacheCanvasWidth != canvasWidth
+                || rasterCacheCanvasHeight != canvasHeight) {
+            renderRasterCache(canvasWidth, canvasHeight);
+        } else {
+            // only the layout has to be updated for the current translation
+            boundingBox = calculateLayout(lastTextWidth,
+                    lastTextHeight, canvasWidth, canvasHeight);
+        }
+
+        if (rasterCache != null) {
+            g.drawImage(rasterCache,
+                    rasterCacheX + translationX,
+                    rasterCacheY + translationY, null);
+        }
+    }
+
+    private void renderRasterCache(int canvasWidth, int canvasHeight) {
+        discardRasterCache();
+
+        int origTx = translationX;
+        int origTy = translationY;
+        translationX = 0;
+        translationY = 0;
+
+        String text = getText();
+        Shape textShape = getTextShape(canvasWidth, canvasHeight);
+        Rectangle bounds = textShape.getBounds().union(boundingBox);
+        int margin = calcEffectsMargin();
+        bounds.grow(margin, margin);
+
+        if (!text.isEmpty() && !bounds.isEmpty()) {
+            rasterCache = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D cacheG = rasterCache.createGraphics();
+            cacheG.translate(-bounds.x, -bounds.y);
+            configureGraphics(cacheG);
+            doPaint(cacheG, null, canvasWidth, canvasHeight);
+            cacheG.dispose();
+            rasterCacheX = bounds.x;
+            rasterCacheY = bounds.y;
+        }
+
+        translationX = origTx;
+        translationY = origTy;
+
+        // the layout calculated during the rendering was for a zero translation
+        boundingBox = calculateLayout(lastTextWidth,
+                lastTextHeight, canvasWidth, canvasHeight);
+
+        rasterCacheCanvasWidth = canvasWidth;
+        rasterCacheCanvasHeight = canvasHeight;
+        rasterCacheValid = true;
+    }
+
+    // returns how far the area effects can reach outside the text shape
+    private int calcEffectsMargin() {
+        int margin = 2; // for antialiasing
+        for (AreaEffect effect : getAreaEffects()) {
+            if (effect instanceof AbstractAreaEffect) {
+                var areaEffect = (AbstractAreaEffect) effect;
+                int reach = 2 * (int) Math.ceil(areaEffect.getEffectWidth());
+                Point2D offset = areaEffect.getOffset();
+                if (offset != null) {
+                    reach += (int) Math.ceil(Math.max(
+                            Math.abs(offset.getX()), Math.abs(offset.getY())));
+                }
+                margin = Math.max(margin, reach + 2);
+            }
+        }
+        return margin;
+    }
+
+    /**
+     * Forgets the cached raster, the next paintCached call will re-render the text.
+     */
+    public void invalidateRasterCache() {
+        rasterCacheValid = false;
+    }
+
+    private void discardRasterCache() {
+        if (rasterCache != null) {
+            rasterCache.flush();
+            rasterCache = null;
+        }
+        rasterCacheValid = false;
+    }
+
+    @Override
+    public void clearCache() {
+        super.clearCache();
+
+        // called through setDirty(true) by all the setters
+        // that affect the rendered text
+        invalidateRasterCache();
+    }
+
     public Shape getTextShape(Canvas canvas) {
+        return getTextShape(canvas.getWidth(), canvas.getHeight());
+    }
+
+    private Shape getTextShape(int canvasWidth, int canvasHeight) {
         // create this image just to get a Graphics2D somehow...
         BufferedImage tmp = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
         Graphics2D g2 = tmp.createGraphics();
         var imgOrigTransform = g2.getTransform();
 
-        int canvasWidth = canvas.getWidth();
-        int canvasHeight = canvas.getHeight();
         setupGraphics(g2, canvasWidth, canvasHeight, getText());
         var at = g2.getTransform();
         g2.setTransform(imgOrigTransform); // provideShape must be called with untransformed Graphics
@@ -185,7 +315,10 @@ public class TransformedTextPainter extends TextPainter {
     }
 
     public void setRotation(double rotation) {
-        this.rotation = rotation;
+        if (this.rotation != rotation) {
+            this.rotation = rotation;
+            invalidateRasterCache();
+        }
     }
 
     public int getTx() {
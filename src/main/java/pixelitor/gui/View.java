@@ -83,6 +83,8 @@ public class View extends JComponent
 
     private Navigator navigator;
 
+    private final ViewTileCache tileCache = new ViewTileCache();
+
     private static boolean showPixelGrid = false;
 
     public View(Composition comp) {
@@ -147,6 +149,7 @@ public class View extends JComponent
         Layers.activeLayerChanged(newComp.getActiveLayer(), false);
 
         oldComp.setView(null);
+        tileCache.invalidateAll();
 
         newMaskViewMode.activate(this, newComp.getActiveLayer(), "comp replaced");
         repaintNavigator(true);
@@ -332,7 +335,18 @@ public class View extends JComponent
         g2.translate((int) canvasStartX, (int) canvasStartY);
 
         boolean showMask = maskViewMode.showMask();
-        if (!showMask) {
+
+        // the tiles can't be used with HiDPI scaling
+        boolean useTileCache = !showMask && !maskViewMode.showRuby()
+                && (componentTransform.getType() & ~AffineTransform.TYPE_TRANSLATION) == 0;
+        if (useTileCache) {
+            BufferedImage compositeImage = comp.getCompositeImage();
+            Rectangle visible = getVisibleRect();
+            visible.translate(-(int) canvasStartX, -(int) canvasStartY);
+            tileCache.paint(g2, compositeImage, scaling,
+                    canvasCoWidth, canvasCoHeight, visible,
+                    tileG -> paintCheckerboardAndImage(tileG, compositeImage, canvasCoWidth, canvasCoHeight));
+        } else if (!showMask) {
             checkerBoardPainter.paint(g2, this, canvasCoWidth, canvasCoHeight);
         }
 
@@ -343,7 +357,7 @@ public class View extends JComponent
             LayerMask mask = comp.getActiveLayer().getMask();
             assert mask != null : "no mask in " + maskViewMode;
             mask.paintLayerOnGraphics(g2, true);
-        } else {
+        } else if (!useTileCache) {
             BufferedImage compositeImage = comp.getCompositeImage();
             ImageUtils.drawImageWithClipping(g2, compositeImage);
 
@@ -382,6 +396,22 @@ public class View extends JComponent
         g2.setClip(originalClip);
     }
 
+    // paints the content of the cached tiles
+    private void paintCheckerboardAndImage(Graphics2D g, BufferedImage compositeImage,
+                                           int canvasCoWidth, int canvasCoHeight) {
+        checkerBoardPainter.paint(g, this, canvasCoWidth, canvasCoHeight);
+        g.scale(scaling, scaling);
+        ImageUtils.drawImageWithClipping(g, compositeImage);
+    }
+
+    /**
+     * Discards the cached tiles of the view, the next repaint
+     * will render the composite image again.
+     */
+    public void invalidateTileCache() {
+        tileCache.invalidateAll();
+    }
+
     public void paintImmediately() {
         paintImmediately(getX(), getY(), getWidth(), getHeight());
     }
@@ -484,15 +514,26 @@ public class View extends JComponent
         double repWidth = endX - startX;
         double repHeight = endY - startY;
 
-        repaint((int) startX, (int) startY,
+        Rectangle region = new Rectangle((int) startX, (int) startY,
                 (int) repWidth, (int) repHeight);
+        invalidateTiles(region);
+        repaint(region);
     }
 
     /**
      * Repaints only a region of the image
      */
     public void repaintRegion(PRectangle area) {
-        repaint(area.getCo());
+        Rectangle region = area.getCo();
+        invalidateTiles(region);
+        repaint(region);
+    }
+
+    // the region is in component space
+    private void invalidateTiles(Rectangle region) {
+        Rectangle relative = new Rectangle(region);
+        relative.translate(-(int) canvasStartX, -(int) canvasStartY);
+        tileCache.invalidate(relative);
     }
 
 //    /**
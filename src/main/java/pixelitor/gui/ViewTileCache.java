@@ -0,0 +1,184 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.gui;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+
+/**
+ * Caches the checkerboard and the zoomed composite image of
+ * a {@link View} in tiles, so that the repaints that only change
+ * the overlays (selection, guides, tool handles) blit the cached
+ * tiles instead of scaling the composite image again.
+ *
+ * The tile coordinates are relative to the start of the canvas
+ * in component space, therefore the tiles remain valid while
+ * scrolling. If the composite image changes, only the tiles of the
+ * repainted regions are rendered again, if the change was announced
+ * with {@link #invalidate(Rectangle)}, otherwise all tiles are discarded.
+ * All tiles are also discarded when the zoom or the canvas size changes.
+ */
+class ViewTileCache {
+    static final int TILE_SIZE = 256;
+
+    // the keys are calculated from the tile column and row
+    private final Map<Long, BufferedImage> tiles = new HashMap<>();
+
+    private BufferedImage cachedComposite;
+    private double cachedScaling;
+    private int cachedWidth;
+    private int cachedHeight;
+
+    // true if the changes of the composite image since the
+    // last paint were covered by region invalidations
+    private boolean regionsInvalidated;
+
+    /**
+     * Discards all tiles.
+     */
+    synchronized void invalidateAll() {
+        clear();
+        cachedComposite = null;
+        regionsInvalidated = false;
+    }
+
+    /**
+     * Discards the tiles intersecting the given region, which is relative
+     * to the canvas start. Also announces that the next change of the
+     * composite image only affects the invalidated regions.
+     */
+    synchronized void invalidate(Rectangle region) {
+        if (cachedComposite == null || tiles.isEmpty()) {
+            return;
+        }
+        // one more pixel for the rounding errors
+        int firstCol = Math.max(0, Math.floorDiv(region.x - 1, TILE_SIZE));
+        int firstRow = Math.max(0, Math.floorDiv(region.y - 1, TILE_SIZE));
+        int lastCol = Math.floorDiv(region.x + region.width + 1, TILE_SIZE);
+        int lastRow = Math.floorDiv(region.y + region.height + 1, TILE_SIZE);
+        tiles.keySet().removeIf(key -> {
+            int col = colOf(key);
+            int row = rowOf(key);
+            return col >= firstCol && col <= lastCol && row >= firstRow && row <= lastRow;
+        });
+        regionsInvalidated = true;
+    }
+
+    /**
+     * Paints the tiles intersecting the clip of the given Graphics,
+     * which must be translated to the canvas start. The missing tiles
+     * are painted by the given renderer, which receives a Graphics
+     * with the same coordinate system and with a clip for the tile.
+     * The tiles outside the given visible area are discarded.
+     */
+    synchronized void paint(Graphics2D g, BufferedImage composite,
+                            double scaling, int width, int height,
+                            Rectangle visible, Consumer<Graphics2D> renderer) {
+        if (scaling != cachedScaling || width != cachedWidth || height != cachedHeight) {
+            clear();
+            cachedScaling = scaling;
+            cachedWidth = width;
+            cachedHeight = height;
+        } else if (composite != cachedComposite && !regionsInvalidated) {
+            clear();
+        }
+        cachedComposite = composite;
+        regionsInvalidated = false;
+
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, width, height);
+        }
+        clip = clip.intersection(new Rectangle(0, 0, width, height));
+        if (clip.isEmpty()) {
+            return;
+        }
+
+        int firstCol = clip.x / TILE_SIZE;
+        int firstRow = clip.y / TILE_SIZE;
+        int lastCol = (clip.x + clip.width - 1) / TILE_SIZE;
+        int lastRow = (clip.y + clip.height - 1) / TILE_SIZE;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                BufferedImage tile = tiles.get(keyOf(col, row));
+                if (tile == null) {
+                    tile = renderTile(col, row, renderer);
+                    tiles.put(keyOf(col, row), tile);
+                }
+                g.drawImage(tile, col * TILE_SIZE, row * TILE_SIZE, null);
+            }
+        }
+
+        discardInvisible(visible);
+    }
+
+    private BufferedImage renderTile(int col, int row, Consumer<Graphics2D> renderer) {
+        int x = col * TILE_SIZE;
+        int y = row * TILE_SIZE;
+        int tileWidth = Math.min(TILE_SIZE, cachedWidth - x);
+        int tileHeight = Math.min(TILE_SIZE, cachedHeight - y);
+
+        // the checkerboard makes the tiles opaque
+        BufferedImage tile = new BufferedImage(tileWidth, tileHeight, TYPE_INT_RGB);
+        Graphics2D tileG = tile.createGraphics();
+        tileG.translate(-x, -y);
+        tileG.setClip(x, y, tileWidth, tileHeight);
+        renderer.accept(tileG);
+        tileG.dispose();
+        return tile;
+    }
+
+    private void discardInvisible(Rectangle visible) {
+        int firstCol = Math.floorDiv(visible.x, TILE_SIZE);
+        int firstRow = Math.floorDiv(visible.y, TILE_SIZE);
+        int lastCol = Math.floorDiv(visible.x + visible.width, TILE_SIZE);
+        int lastRow = Math.floorDiv(visible.y + visible.height, TILE_SIZE);
+        tiles.keySet().removeIf(key -> {
+            int col = colOf(key);
+            int row = rowOf(key);
+            return col < firstCol || col > lastCol || row < firstRow || row > lastRow;
+        });
+    }
+
+    private void clear() {
+        tiles.values().forEach(BufferedImage::flush);
+        tiles.clear();
+    }
+
+    int getNumTiles() {
+        return tiles.size();
+    }
+
+    private static long keyOf(int col, int row) {
+        return ((long) col << 32) | (row & 0xFFFF_FFFFL);
+    }
+
+    private static int colOf(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int rowOf(long key) {
+        return (int) key;
+    }
+}
@@ -20,6 +20,7 @@ package pixelitor.gui.utils;
 import pixelitor.io.FileUtils;
 import pixelitor.io.TrackedIO;
 import pixelitor.utils.JProgressBarTracker;
+import pixelitor.utils.MemoryGovernor;
 import pixelitor.utils.Messages;
 import pixelitor.utils.ProgressPanel;
 import pixelitor.utils.ProgressTracker;
@@ -27,6 +28,7 @@ import pixelitor.utils.ProgressTracker;
 import javax.swing.*;
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.EventQueue;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
@@ -62,6 +64,8 @@ public class ImagePreviewPanel extends JPanel implements PropertyChangeListener
         thumbsCache = new HashMap<>();
 
         this.progressPanel.setVisible(true);
+
+        MemoryGovernor.register(new ThumbsCacheMemory());
     }
 
     // the property change events form the JFileChooser
@@ -140,5 +144,37 @@ public class ImagePreviewPanel extends JPanel implements PropertyChangeListener
             g.drawString(msg, MSG_X - 1, MSG_Y - 1);
         }
     }
-}
 
+    /**
+     * The cached thumbnails as a subsystem managed by the {@link MemoryGovernor}
+     */
+    private class ThumbsCacheMemory implements MemoryGovernor.MemoryConsumer {
+        @Override
+        public String getName() {
+            return "Thumbnails";
+        }
+
+        @Override
+        public long getUsedBytes() {
+            long sum = 0;
+            for (ThumbInfo info : thumbsCache.values()) {
+                sum += MemoryGovernor.bytesOf(info.getThumb());
+            }
+            return sum;
+        }
+
+        @Override
+        public long reclaim(long bytes) {
+            if (!EventQueue.isDispatchThread()) {
+                return 0;
+            }
+            // the currently shown thumbnail is still referenced
+            long released = getUsedBytes();
+            thumbsCache.clear();
+            if (thumbInfo != null) {
+                released -= MemoryGovernor.bytesOf(thumbInfo.getThumb());
+            }
+            return Math.max(0, released);
+        }
+    }
+}
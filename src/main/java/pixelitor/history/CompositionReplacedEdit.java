@@ -158,6 +158,15 @@ public class CompositionReplacedEdit extends PixelitorEdit {
         return !reload;
     }
 
+    @Override
+    public long getMemorySize() {
+        if (backupCompRef == null) {
+            return 0;
+        }
+        Composition backupComp = backupCompRef.get();
+        return backupComp == null ? 0 : backupComp.getImageBytes();
+    }
+
     @Override
     public void die() {
         super.die();
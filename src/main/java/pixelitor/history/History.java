@@ -25,6 +25,7 @@ import pixelitor.menus.MenuAction;
 import pixelitor.menus.MenuAction.AllowedLayerType;
 import pixelitor.utils.AppPreferences;
 import pixelitor.utils.Icons;
+import pixelitor.utils.MemoryGovernor;
 import pixelitor.utils.Messages;
 import pixelitor.utils.VisibleForTesting;
 import pixelitor.utils.debug.DebugNode;
@@ -36,6 +37,7 @@ import javax.swing.event.UndoableEditListener;
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
 import javax.swing.undo.UndoableEditSupport;
+import java.awt.EventQueue;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.util.List;
@@ -54,6 +56,7 @@ public class History {
 
     static {
         setUndoLevels(AppPreferences.loadUndoLevels());
+        MemoryGovernor.register(new HistoryMemory());
     }
 
     public static final Action UNDO_ACTION = new MenuAction(
@@ -401,4 +404,31 @@ public class History {
         assertEditToBeRedoneNameIs(editName);
         redo();
     }
+
+    /**
+     * The history backups as a subsystem managed by the {@link MemoryGovernor}
+     */
+    private static class HistoryMemory implements MemoryGovernor.MemoryConsumer {
+        @Override
+        public String getName() {
+            return "History";
+        }
+
+        @Override
+        public long getUsedBytes() {
+            return undoManager.getMemorySize();
+        }
+
+        @Override
+        public long reclaim(long bytes) {
+            if (!EventQueue.isDispatchThread()) {
+                return 0;
+            }
+            long released = undoManager.discardOldestEdits(bytes);
+            if (released > 0) {
+                Messages.showInStatusBar("The oldest history steps were discarded to free memory.");
+            }
+            return released;
+        }
+    }
 }
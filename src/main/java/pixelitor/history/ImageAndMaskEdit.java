@@ -51,6 +51,11 @@ public class ImageAndMaskEdit extends ImageEdit {
         maskImageEdit.setEmbedded(true);
     }
 
+    @Override
+    public long getMemorySize() {
+        return super.getMemorySize() + maskImageEdit.getMemorySize();
+    }
+
     @Override
     public boolean canRepeat() {
         return canRepeat;
@@ -19,13 +19,17 @@ package pixelitor.history;
 
 import pixelitor.Composition;
 import pixelitor.layers.Drawable;
+import pixelitor.utils.MemoryGovernor;
 import pixelitor.utils.debug.DebugNode;
+import pixelitor.utils.debug.Telemetry;
 
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
 import java.awt.image.BufferedImage;
 import java.lang.ref.SoftReference;
 
+import static pixelitor.utils.debug.Telemetry.Category.HISTORY;
+
 /**
  * A PixelitorEdit that represents the changes made to an image.
  */
@@ -57,7 +61,9 @@ public class ImageEdit extends FadeableEdit {
 
     public static ImageEdit createEmbedded(Drawable dr) {
         // If there is a selection, only the bounds of the selected area is saved.
+        Telemetry.Span span = Telemetry.start(HISTORY, "Embedded Image Edit");
         BufferedImage backup = dr.getSelectedSubImage(true);
+        span.end();
 
         ImageEdit edit = new ImageEdit("", dr.getComp(),
                 dr, backup,
@@ -124,6 +130,11 @@ public class ImageEdit extends FadeableEdit {
         return true;
     }
 
+    @Override
+    public long getMemorySize() {
+        return imgRef == null ? 0 : MemoryGovernor.bytesOf(imgRef.get());
+    }
+
     @Override
     public void die() {
         super.die();
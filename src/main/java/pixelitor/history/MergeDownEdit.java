@@ -79,6 +79,11 @@ public class MergeDownEdit extends PixelitorEdit {
         imageLayer.updateIconImage();
     }
 
+    @Override
+    public long getMemorySize() {
+        return imageEdit.getMemorySize();
+    }
+
     @Override
     public void die() {
         super.die();
@@ -86,6 +86,15 @@ public class MultiEdit extends PixelitorEdit {
         }
     }
 
+    @Override
+    public long getMemorySize() {
+        long sum = 0;
+        for (PixelitorEdit edit : edits) {
+            sum += edit.getMemorySize();
+        }
+        return sum;
+    }
+
     @Override
     public void die() {
         super.die();
@@ -20,8 +20,10 @@ package pixelitor.history;
 import pixelitor.Composition;
 import pixelitor.layers.Drawable;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.MemoryGovernor;
 import pixelitor.utils.debug.DebugNode;
 import pixelitor.utils.debug.DebugUtils;
+import pixelitor.utils.debug.Telemetry;
 
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
@@ -32,6 +34,7 @@ import java.awt.image.Raster;
 import java.lang.ref.SoftReference;
 
 import static java.lang.String.format;
+import static pixelitor.utils.debug.Telemetry.Category.HISTORY;
 
 /**
  * Represents the changes made to a part of an image (for example brush strokes).
@@ -53,7 +56,9 @@ public class PartialImageEdit extends FadeableEdit {
         this.dr = dr;
         this.saveRect = saveRect;
 
+        Telemetry.Span span = Telemetry.start(HISTORY, name);
         Raster backupRaster = image.getData(this.saveRect);
+        span.end();
         backupRasterRef = new SoftReference<>(backupRaster);
 
 //        EventQueue.invokeLater(() -> Utils.debugRaster(backupRaster, "Partial Image"));
@@ -134,6 +139,11 @@ public class PartialImageEdit extends FadeableEdit {
         System.out.println("PartialImageEdit::debugRaster debugging raster: " + name + ": " + msg);
     }
 
+    @Override
+    public long getMemorySize() {
+        return backupRasterRef == null ? 0 : MemoryGovernor.bytesOf(backupRasterRef.get());
+    }
+
     @Override
     public void die() {
         super.die();
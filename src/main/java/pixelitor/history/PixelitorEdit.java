@@ -121,6 +121,14 @@ public abstract class PixelitorEdit extends AbstractUndoableEdit {
         return false;
     }
 
+    /**
+     * Returns the (estimated) number of bytes held by this edit,
+     * which would be released if the edit was discarded.
+     */
+    public long getMemorySize() {
+        return 0;
+    }
+
     @Override
     public String toString() {
         return name;
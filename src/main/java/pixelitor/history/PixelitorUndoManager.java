@@ -288,6 +288,47 @@ public class PixelitorUndoManager extends UndoManager implements ListModel<Pixel
         manualSelectionChange = true;
     }
 
+    /**
+     * Returns the memory held by all the edits, including the undone ones.
+     */
+    public synchronized long getMemorySize() {
+        long sum = 0;
+        for (UndoableEdit edit : edits) {
+            sum += ((PixelitorEdit) edit).getMemorySize();
+        }
+        return sum;
+    }
+
+    /**
+     * Discards the oldest (not undone) edits until at least the given
+     * number of bytes is released, but keeps the last done edit, so
+     * that the last operation can still be undone.
+     * Returns the number of released bytes.
+     */
+    public synchronized long discardOldestEdits(long bytes) {
+        // all edits are significant, so this is the index of the next add
+        int numDone = edits.indexOf(editToBeUndone()) + 1;
+        int numToDiscard = 0;
+        long released = 0;
+        while (numToDiscard < numDone - 1 && released < bytes) {
+            released += getElementAt(numToDiscard).getMemorySize();
+            numToDiscard++;
+        }
+        if (numToDiscard == 0) {
+            return 0;
+        }
+
+        // the edits die while they are removed
+        trimEdits(0, numToDiscard - 1);
+
+        manualSelectionChange = false;
+        fireIntervalRemoved(this, 0, numToDiscard - 1);
+        selectionModel.setSelectedIndex(edits.indexOf(editToBeUndone()));
+        manualSelectionChange = true;
+
+        return released;
+    }
+
     public DebugNode getDebugNode() {
         var node = new DebugNode("edits", this);
 
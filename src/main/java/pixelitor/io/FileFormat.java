@@ -19,6 +19,7 @@ package pixelitor.io;
 import pixelitor.Composition;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Utils;
+import pixelitor.utils.debug.Telemetry;
 
 import java.awt.EventQueue;
 import java.awt.image.BufferedImage;
@@ -26,6 +27,8 @@ import java.io.File;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
+import static pixelitor.utils.debug.Telemetry.Category.IO_READ;
+
 /**
  * The input and output file formats
  */
@@ -44,7 +47,8 @@ public enum FileFormat {
         @Override
         public CompletableFuture<Composition> readFrom(File file) {
             return CompletableFuture.supplyAsync(
-                    Utils.toSupplier(() -> PXCFormat.read(file)),
+                    Telemetry.measured(IO_READ, toString(),
+                            Utils.toSupplier(() -> PXCFormat.read(file))),
                     IOThread.getExecutor());
         }
     }, ORA(true, true) {
@@ -56,7 +60,8 @@ public enum FileFormat {
         @Override
         public CompletableFuture<Composition> readFrom(File file) {
             return CompletableFuture.supplyAsync(
-                    Utils.toSupplier(() -> OpenRaster.read(file)),
+                    Telemetry.measured(IO_READ, toString(),
+                            Utils.toSupplier(() -> OpenRaster.read(file))),
                     IOThread.getExecutor());
         }
     };
@@ -77,29 +82,44 @@ public enum FileFormat {
 
     public CompletableFuture<Composition> readFrom(File file) {
         // overwritten for multi-layered formats
-        return readSimpleFrom(file);
+        return readSimpleFrom(file, toString());
     }
 
     /**
      * Loads a composition from a file with a single-layer image format
      */
-    private static CompletableFuture<Composition> readSimpleFrom(File file) {
+    private static CompletableFuture<Composition> readSimpleFrom(File file, String formatName) {
         return CompletableFuture.supplyAsync(
-                () -> TrackedIO.uncheckedRead(file), IOThread.getExecutor())
+                Telemetry.measured(IO_READ, formatName,
+                        () -> TrackedIO.uncheckedRead(file)), IOThread.getExecutor())
                 .handle((img, e) -> IO.handleDecodingError(file, img, e))
                 .thenApplyAsync(img -> Composition.fromImage(img, file, null),
                         EventQueue::invokeLater);
     }
 
     private void saveSingleLayered(Composition comp, SaveSettings settings) {
-        BufferedImage img = comp.getCompositeImage();
+        BufferedImage img = toSavableImage(comp.getCompositeImage());
+        IO.saveImageToFile(img, settings);
+    }
+
+    /**
+     * Converts the given (flattened) image into a type
+     * that can be written in this single-layered format.
+     */
+    public BufferedImage toSavableImage(BufferedImage img) {
+        assert !supportsMultipleLayers;
+
         if (!supportsAlpha) {
             // no alpha support, convert first to RGB
             img = ImageUtils.convertToRGB(img, false);
-        } else if(this == GIF) {
+        } else if (this == GIF) {
             img = ImageUtils.convertToIndexed(img, false);
         }
-        IO.saveImageToFile(img, settings);
+        return img;
+    }
+
+    public boolean isLayered() {
+        return supportsMultipleLayers;
     }
 
     @Override
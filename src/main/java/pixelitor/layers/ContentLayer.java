@@ -87,6 +87,16 @@ public abstract class ContentLayer extends Layer {
      */
     public abstract int getMouseHitPixelAtPoint(Point p);
 
+    /**
+     * Returns false if the layer certainly has no pixel with an alpha
+     * above the given threshold at the given point. This is cheaper than
+     * {@link #getMouseHitPixelAtPoint(Point)}, which has to be called
+     * only if this returns true.
+     */
+    public boolean isHitCandidateAt(Point p, int alphaThreshold) {
+        return true;
+    }
+
     @Override
     public void startMovement() {
         tmpTx = 0;
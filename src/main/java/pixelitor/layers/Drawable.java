@@ -57,6 +57,8 @@ public interface Drawable {
 
     void mergeTmpDrawingLayerDown();
 
+    void discardTmpDrawingLayer();
+
     BufferedImage getCanvasSizedSubImage();
 
     BufferedImage getFilterSourceImage();
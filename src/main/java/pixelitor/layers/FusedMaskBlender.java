@@ -0,0 +1,214 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.concurrent.Future;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+
+/**
+ * Blends a masked image layer into the composite image in a single
+ * pass over the packed pixels: the mask alpha, the layer opacity and
+ * the normal ("source over") blending are applied together, without
+ * first creating a canvas-sized masked image.
+ *
+ * Only the common formats are supported: an int ARGB layer image
+ * (premultiplied or not), a byte mask and a premultiplied
+ * int ARGB composite.
+ */
+final class FusedMaskBlender {
+    private static final int ROWS_PER_TASK = 32;
+
+    private FusedMaskBlender() {
+        // should not be instantiated
+    }
+
+    /**
+     * Returns true if the given composite image can be blended into
+     * directly, instead of painting on the given Graphics2D.
+     */
+    static boolean canBlendInto(BufferedImage dest, Graphics2D g) {
+        return dest.getType() == TYPE_INT_ARGB_PRE
+                && isSimpleIntRaster(dest.getRaster())
+                && g.getTransform().isIdentity()
+                && g.getClip() == null;
+    }
+
+    /**
+     * Returns true if the given layer image and mask
+     * transparency image can be read directly.
+     */
+    static boolean canRead(BufferedImage layerImage, BufferedImage maskImage) {
+        int type = layerImage.getType();
+        if ((type != TYPE_INT_ARGB && type != TYPE_INT_ARGB_PRE)
+                || !isSimpleIntRaster(layerImage.getRaster())) {
+            return false;
+        }
+        Raster maskRaster = maskImage.getRaster();
+        SampleModel sm = maskRaster.getSampleModel();
+        return maskRaster.getDataBuffer() instanceof DataBufferByte
+                && sm instanceof ComponentSampleModel
+                && sm.getNumBands() == 1
+                && ((ComponentSampleModel) sm).getPixelStride() == 1
+                && maskRaster.getSampleModelTranslateX() == 0
+                && maskRaster.getSampleModelTranslateY() == 0
+                && maskRaster.getDataBuffer().getOffset() == 0;
+    }
+
+    private static boolean isSimpleIntRaster(Raster raster) {
+        return raster.getDataBuffer() instanceof DataBufferInt
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+                && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0
+                && raster.getDataBuffer().getOffset() == 0;
+    }
+
+    /**
+     * Blends the layer image translated by (tx, ty) and masked by
+     * the mask translated by (maskTx, maskTy) into the destination.
+     * Outside the mask the layer is not masked, just as with
+     * the DstIn compositing of the mask image.
+     */
+    static void blend(BufferedImage dest,
+                      BufferedImage layerImage, int tx, int ty,
+                      BufferedImage maskImage, int maskTx, int maskTy,
+                      float opacity) {
+        int[] destPixels = ((DataBufferInt) dest.getRaster().getDataBuffer()).getData();
+        int destStride = ((SinglePixelPackedSampleModel) dest.getSampleModel()).getScanlineStride();
+        int[] srcPixels = ((DataBufferInt) layerImage.getRaster().getDataBuffer()).getData();
+        int srcStride = ((SinglePixelPackedSampleModel) layerImage.getSampleModel()).getScanlineStride();
+        byte[] maskPixels = ((DataBufferByte) maskImage.getRaster().getDataBuffer()).getData();
+        int maskStride = ((ComponentSampleModel) maskImage.getSampleModel()).getScanlineStride();
+
+        // the layer's area within the destination
+        int startX = Math.max(0, tx);
+        int endX = Math.min(dest.getWidth(), tx + layerImage.getWidth());
+        int startY = Math.max(0, ty);
+        int endY = Math.min(dest.getHeight(), ty + layerImage.getHeight());
+        if (startX >= endX || startY >= endY) {
+            return;
+        }
+        int opacity256 = Math.round(opacity * 256);
+        boolean premultiplied = layerImage.isAlphaPremultiplied();
+        Region mask = new Region(maskPixels, maskStride, maskTx, maskTy,
+                maskImage.getWidth(), maskImage.getHeight());
+
+        int numTasks = (endY - startY + ROWS_PER_TASK - 1) / ROWS_PER_TASK;
+        Future<?>[] futures = new Future[numTasks];
+        for (int i = 0; i < numTasks; i++) {
+            int fromY = startY + i * ROWS_PER_TASK;
+            int toY = Math.min(endY, fromY + ROWS_PER_TASK);
+            futures[i] = ThreadPool.submit(() -> {
+                for (int y = fromY; y < toY; y++) {
+                    blendRow(destPixels, y * destStride,
+                            srcPixels, (y - ty) * srcStride - tx,
+                            mask, y, startX, endX, opacity256, premultiplied);
+                }
+            });
+        }
+        ThreadPool.waitFor(futures, ProgressTracker.NULL_TRACKER);
+    }
+
+    private static void blendRow(int[] dest, int destOffset,
+                                 int[] src, int srcOffset,
+                                 Region mask, int y,
+                                 int startX, int endX, int opacity256,
+                                 boolean premultiplied) {
+        boolean rowInMask = y >= mask.y && y < mask.y + mask.height;
+        int maskOffset = (y - mask.y) * mask.stride - mask.x;
+        int maskStartX = Math.max(startX, mask.x);
+        int maskEndX = Math.min(endX, mask.x + mask.width);
+
+        for (int x = startX; x < endX; x++) {
+            int srcPixel = src[srcOffset + x];
+            int a = srcPixel >>> 24;
+            if (a == 0) {
+                continue;
+            }
+            // the combined factor of the mask and the opacity
+            int k = 255;
+            if (rowInMask && x >= maskStartX && x < maskEndX) {
+                k = mask.pixels[maskOffset + x] & 0xFF;
+            }
+            k = (k * opacity256 + 128) >> 8;
+            a = mul255(a, k);
+            if (a == 0) {
+                continue;
+            }
+
+            int r = (srcPixel >>> 16) & 0xFF;
+            int g = (srcPixel >>> 8) & 0xFF;
+            int b = srcPixel & 0xFF;
+            // the result of the scaling is premultiplied in both cases
+            int scale = premultiplied ? k : a;
+            r = mul255(r, scale);
+            g = mul255(g, scale);
+            b = mul255(b, scale);
+
+            int di = destOffset + x;
+            if (a != 255) {
+                int destPixel = dest[di];
+                int inv = 255 - a;
+                a += mul255(destPixel >>> 24, inv);
+                r += mul255((destPixel >>> 16) & 0xFF, inv);
+                g += mul255((destPixel >>> 8) & 0xFF, inv);
+                b += mul255(destPixel & 0xFF, inv);
+            }
+            dest[di] = a << 24 | r << 16 | g << 8 | b;
+        }
+    }
+
+    // a * b / 255, correctly rounded for values in 0..255
+    private static int mul255(int a, int b) {
+        int t = a * b + 128;
+        return (t + (t >>> 8)) >>> 8;
+    }
+
+    /**
+     * The bytes of the mask and its position in canvas coordinates
+     */
+    private static class Region {
+        final byte[] pixels;
+        final int stride;
+        final int x;
+        final int y;
+        final int width;
+        final int height;
+
+        Region(byte[] pixels, int stride, int x, int y, int width, int height) {
+            this.pixels = pixels;
+            this.stride = stride;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+    }
+}
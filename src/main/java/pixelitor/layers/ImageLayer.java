@@ -17,6 +17,8 @@
 
 package pixelitor.layers;
 
+import org.jdesktop.swingx.painter.CheckerboardPainter;
+import pixelitor.Build;
 import pixelitor.Canvas;
 import pixelitor.ChangeReason;
 import pixelitor.Composition;
@@ -25,9 +27,11 @@ import pixelitor.compactions.Flip;
 import pixelitor.compactions.Rotate;
 import pixelitor.gui.utils.Dialogs;
 import pixelitor.history.*;
+import pixelitor.io.IOThread;
 import pixelitor.io.PXCFormat;
 import pixelitor.tools.Tools;
 import pixelitor.utils.*;
+import pixelitor.utils.debug.Telemetry;
 import pixelitor.utils.test.Assertions;
 
 import java.awt.*;
@@ -38,7 +42,10 @@ import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 import static java.awt.RenderingHints.KEY_INTERPOLATION;
 import static java.awt.RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
@@ -50,6 +57,7 @@ import static pixelitor.Composition.ImageChangeActions.REPAINT;
 import static pixelitor.compactions.Flip.Direction.HORIZONTAL;
 import static pixelitor.layers.ImageLayer.State.*;
 import static pixelitor.utils.ImageUtils.copyImage;
+import static pixelitor.utils.debug.Telemetry.Category.HISTORY;
 
 /**
  * An image layer.
@@ -98,6 +106,32 @@ public class ImageLayer extends ContentLayer implements Drawable {
      */
     private transient boolean imageContentChanged = false;
 
+    /**
+     * The off-heap copy of the pixels. Once a layer is paged out, it keeps
+     * this store (and rewrites it when it's paged out again).
+     * While the layer is paged out, the image is null.
+     */
+    private transient TiledPixelStore backingStore;
+
+    // true if the backing store has the current pixels of the image
+    private transient boolean backingStoreUpToDate;
+
+    // incremented whenever the pixels of the image might change,
+    // so that a page out running in the background can detect it
+    private transient int imageGeneration;
+
+    private transient boolean pageOutInProgress;
+
+    // the pixels of the backing store being read on the IO thread
+    private transient CompletableFuture<BufferedImage> prefetch;
+
+    /**
+     * Used for excluding this layer from the hit testing without
+     * reading the pixels. Valid only for the current image reference,
+     * the in-place modifications must invalidate it.
+     */
+    private transient OccupancyMap occupancy;
+
     private ImageLayer(Composition comp, String name, Layer owner) {
         super(comp, name, owner);
     }
@@ -219,7 +253,10 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
     private void writeObject(ObjectOutputStream out) throws IOException {
         out.defaultWriteObject();
-        PXCFormat.serializeImage(out, image);
+
+        // a paged out layer is saved without keeping it in the heap
+        BufferedImage img = isPagedOut() ? backingStore.toImage() : image;
+        PXCFormat.serializeImage(out, img);
     }
 
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
@@ -230,6 +267,9 @@ public class ImageLayer extends ContentLayer implements Drawable {
         filterSourceImage = null;
         image = null;
         trimmedBoundingBox = null;
+        backingStore = null;
+        backingStoreUpToDate = false;
+        prefetch = null;
 
         in.defaultReadObject();
         setImage(PXCFormat.deserializeImage(in));
@@ -267,6 +307,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
     @Override
     public ImageLayer duplicate(boolean compCopy) {
+        pageIn();
         BufferedImage imageCopy = copyImage(image);
         if (imageCopy == null) {
             // there was an out of memory error
@@ -286,6 +327,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
     @Override
     public BufferedImage getImage() {
+        pageIn();
         return image;
     }
 
@@ -303,6 +345,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
      */
     @Override
     public BufferedImage getSelectedSubImage(boolean copyIfNoSelection) {
+        pageIn();
         var selection = comp.getSelection();
         if (selection == null) { // no selection => return full image
             if (copyIfNoSelection) {
@@ -322,6 +365,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
      */
     @Override
     public BufferedImage getImageForFilterDialogs() {
+        pageIn();
         var selection = comp.getSelection();
         if (selection == null) {
             return image;
@@ -340,6 +384,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
     @Override
     public BufferedImage getCanvasSizedSubImage() {
+        pageIn();
         if (!isBigLayer()) {
             return image;
         }
@@ -437,6 +482,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
     private void setImageWithSelection(BufferedImage newImage, boolean isUndoRedo) {
         image = replaceSelectedRegion(image, newImage, isUndoRedo);
         imageRefChanged();
+        invalidateOccupancy(null);
 
         comp.imageChanged(INVALIDATE_CACHE);
     }
@@ -480,7 +526,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
             return src;
         } else {
             Rectangle bounds = selection.getShapeBounds(1);
-            BufferedImage tmpImg = ImageUtils.createSysCompatibleImage(bounds.width, bounds.height);
+            BufferedImage tmpImg = ScratchPool.acquireSysCompatibleImage(bounds.width, bounds.height);
             Graphics2D g2 = ImageUtils.setupForSoftSelection(tmpImg, selection.getShape(), bounds.x, bounds.y);
 
             g2.drawImage(newImg, 0, 0, null);
@@ -489,6 +535,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
             Graphics2D srcG = src.createGraphics();
             srcG.drawImage(tmpImg, bounds.x - getTx(), bounds.y - getTy(), null);
             srcG.dispose();
+            ScratchPool.release(tmpImg);
 
             return src;
         }
@@ -499,6 +546,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
      */
     @Override
     public void setImage(BufferedImage newImage) {
+        imageMightChange();
         BufferedImage oldRef = image;
         image = requireNonNull(newImage);
         imageRefChanged();
@@ -517,6 +565,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
      * Replaces the image with history and icon update
      */
     public void replaceImage(BufferedImage newImage, String editName) {
+        pageIn();
         BufferedImage oldImage = image;
         setImage(newImage);
 
@@ -530,6 +579,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
      */
     @Override
     public void startPreviewing() {
+        pageIn();
         assert state == NORMAL : "state was " + state;
 
         if (comp.hasSelection()) {
@@ -563,13 +613,16 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
     @Override
     public void onFilterDialogAccepted(String filterName) {
+        pageIn();
         assert state == PREVIEW || state == SHOW_ORIGINAL;
         assert previewImage != null;
 
         if (imageContentChanged) {
+            Telemetry.Span span = Telemetry.start(HISTORY, filterName);
+            BufferedImage backup = getSelectedSubImage(true);
+            span.end();
             var edit = new ImageEdit(filterName, comp, this,
-                    getSelectedSubImage(true),
-                    false, true);
+                    backup, false, true);
             History.add(edit);
         }
 
@@ -610,6 +663,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
     @Override
     public void changePreviewImage(BufferedImage img, String filterName, ChangeReason cr) {
+        pageIn();
         // typically we should be in PREVIEW mode
         if (state == SHOW_ORIGINAL) {
             // this is OK, something was adjusted while in show original mode
@@ -649,6 +703,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
     @Override
     public void filterWithoutDialogFinished(BufferedImage transformedImage, ChangeReason cr, String filterName) {
+        pageIn();
         requireNonNull(transformedImage);
 
         comp.setDirty(true);
@@ -696,6 +751,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
     @Override
     public void changeImageForUndoRedo(BufferedImage img, boolean ignoreSelection) {
+        pageIn();
         requireNonNull(img);
         assert img != image; // simple filters always change something
         assert state == NORMAL;
@@ -713,7 +769,16 @@ public class ImageLayer extends ContentLayer implements Drawable {
     public Rectangle getImageBounds() {
         return new Rectangle(
                 translationX, translationY,
-                image.getWidth(), image.getHeight());
+                getImageWidth(), getImageHeight());
+    }
+
+    // these don't page in the layer
+    private int getImageWidth() {
+        return image != null ? image.getWidth() : backingStore.getWidth();
+    }
+
+    private int getImageHeight() {
+        return image != null ? image.getHeight() : backingStore.getHeight();
     }
 
     private void invalidateTrimCache() {
@@ -740,8 +805,38 @@ public class ImageLayer extends ContentLayer implements Drawable {
         return getEffectiveBoundingBox();
     }
 
+    @Override
+    public boolean isHitCandidateAt(Point p, int alphaThreshold) {
+        if (isPagedOut()) {
+            return getImageBounds().contains(p);
+        }
+        if (occupancy == null || !occupancy.isFor(image, alphaThreshold)) {
+            occupancy = new OccupancyMap(image, alphaThreshold);
+        }
+        return occupancy.isOccupied(p.x - translationX, p.y - translationY);
+    }
+
+    /**
+     * Must be called when the pixels of the image are modified
+     * without replacing the image. The region is relative to
+     * the canvas, and if it's null, then the whole image changed.
+     */
+    public void invalidateOccupancy(Rectangle region) {
+        if (occupancy == null) {
+            return;
+        }
+        if (region == null) {
+            occupancy.invalidateAll();
+        } else {
+            Rectangle imageRegion = new Rectangle(region);
+            imageRegion.translate(-translationX, -translationY);
+            occupancy.invalidate(imageRegion);
+        }
+    }
+
     @Override
     public int getMouseHitPixelAtPoint(Point p) {
+        pageIn();
         int x = p.x - translationX;
         int y = p.y - translationY;
         if (x >= 0 && y >= 0 && x < image.getWidth() && y < image.getHeight()) {
@@ -795,6 +890,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
     @Override
     public void flip(Flip.Direction direction) {
+        pageIn();
         var imageTransform = direction.createImageTransform(image);
         int txAbs = -getTx();
         int tyAbs = -getTy();
@@ -828,6 +924,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
     @Override
     public void rotate(Rotate.SpecialAngle angle) {
+        pageIn();
         int tx = getTx();
         int ty = getTy();
         int txAbs = -tx;
@@ -882,6 +979,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
     public void crop(Rectangle2D cropRect,
                      boolean deleteCroppedPixels,
                      boolean allowGrowing) {
+        pageIn();
         assert !cropRect.isEmpty() : "empty crop rectangle";
 
         if (!deleteCroppedPixels && !allowGrowing) {
@@ -958,6 +1056,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
      * Returns true if something was changed.
      */
     public boolean toCanvasSize() {
+        pageIn();
         int imageWidth = image.getWidth();
         int imageHeight = image.getHeight();
         int canvasWidth = comp.getCanvasWidth();
@@ -1000,6 +1099,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
     @Override
     public void enlargeCanvas(int north, int east, int south, int west) {
+        pageIn();
         // all coordinates in this method are
         // relative to the previous state of the canvas
         Rectangle imageBounds = getImageBounds();
@@ -1022,6 +1122,11 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
     @Override
     public TmpDrawingLayer createTmpDrawingLayer(Composite c, boolean softSelection) {
+        pageIn();
+        if (tmpDrawingLayer != null) {
+            // release the pooled image of the replaced layer
+            tmpDrawingLayer.dispose();
+        }
         tmpDrawingLayer = new TmpDrawingLayer(this, c, softSelection);
         return tmpDrawingLayer;
     }
@@ -1038,6 +1143,16 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
         tmpDrawingLayer.dispose();
         tmpDrawingLayer = null;
+        invalidateOccupancy(null);
+    }
+
+    @Override
+    public void discardTmpDrawingLayer() {
+        if (tmpDrawingLayer == null) {
+            return;
+        }
+        tmpDrawingLayer.dispose();
+        tmpDrawingLayer = null;
     }
 
     @Override
@@ -1064,6 +1179,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
     @Override
     public CompletableFuture<Void> resize(Dimension newSize) {
+        pageIn();
         boolean bigLayer = isBigLayer();
 
         int imgTargetWidth = newSize.width;
@@ -1121,6 +1237,11 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
     @Override
     public void paintLayerOnGraphics(Graphics2D g, boolean firstVisibleLayer) {
+        if (isPagedOut()) {
+            // only the visible tiles are materialized
+            backingStore.paint(g, getTx(), getTy());
+            return;
+        }
         BufferedImage visibleImage = getVisibleImage();
 
         if (tmpDrawingLayer == null) {
@@ -1146,6 +1267,22 @@ public class ImageLayer extends ContentLayer implements Drawable {
         }
     }
 
+    @Override
+    protected boolean blendWithMask(BufferedImage dest, float opacity) {
+        if (isPagedOut() || tmpDrawingLayer != null
+                || (Tools.isShapesDrawing() && isActive() && !isMaskEditing())) {
+            return false;
+        }
+        BufferedImage visibleImage = getVisibleImage();
+        BufferedImage maskImage = mask.getTransparencyImage();
+        if (!FusedMaskBlender.canRead(visibleImage, maskImage)) {
+            return false;
+        }
+        FusedMaskBlender.blend(dest, visibleImage, getTx(), getTy(),
+                maskImage, mask.getTx(), mask.getTy(), opacity);
+        return true;
+    }
+
     protected void paintLayerOnGraphicsWOTmpLayer(Graphics2D g,
                                                   BufferedImage visibleImage,
                                                   boolean firstVisibleLayer) {
@@ -1175,7 +1312,8 @@ public class ImageLayer extends ContentLayer implements Drawable {
             // and then the result must be composited into the main Graphics,
             // otherwise we don't get the correct result if this layer is not the
             // first visible layer and has a blending mode different from normal
-            BufferedImage tmp = comp.getCanvas().createTmpImage();
+            BufferedImage tmp = ScratchPool.acquireSysCompatibleImage(
+                    comp.getCanvasWidth(), comp.getCanvasHeight());
             Graphics2D tmpG = tmp.createGraphics();
             tmpG.drawImage(visibleImage, getTx(), getTy(), null);
 
@@ -1184,12 +1322,13 @@ public class ImageLayer extends ContentLayer implements Drawable {
             tmpG.dispose();
 
             g.drawImage(tmp, 0, 0, null);
-            tmp.flush();
+            ScratchPool.release(tmp);
         }
     }
 
     @Override
     public void debugImages() {
+        pageIn();
         Utils.debugImage(image, "image");
         if (previewImage != null) {
             Utils.debugImage(previewImage, "previewImage");
@@ -1216,6 +1355,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
      * to the transparency of the layer
      */
     public BufferedImage applyLayerMask(boolean addToHistory) {
+        pageIn();
         // the image reference will not be replaced
         BufferedImage oldImage = copyImage(image);
 
@@ -1239,6 +1379,231 @@ public class ImageLayer extends ContentLayer implements Drawable {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Starts moving the pixels of this layer out of the heap. The pixels are
+     * written into the backing store on the IO thread, and the image is
+     * released on the EDT, unless it was changed in the meantime.
+     * If the backing store is up to date, the image is released immediately.
+     * The returned future completes with the number of released heap bytes.
+     */
+    public CompletableFuture<Long> pageOut() {
+        assert Build.isUnitTesting() || EventQueue.isDispatchThread();
+
+        if (!canPageOut()) {
+            return CompletableFuture.completedFuture(0L);
+        }
+        if (backingStoreUpToDate) {
+            return CompletableFuture.completedFuture(releaseImage());
+        }
+
+        BufferedImage img = image;
+        int generation = imageGeneration;
+        TiledPixelStore store = backingStore;
+        pageOutInProgress = true;
+        return CompletableFuture
+                .supplyAsync(() -> writeBackingStore(store, img), IOThread.getExecutor())
+                .thenApplyAsync(writtenStore -> finishPageOut(writtenStore, img, generation),
+                        EventQueue::invokeLater);
+    }
+
+    /**
+     * Like {@link #pageOut()}, but the pixels are written on the calling thread,
+     * so that the heap bytes are released when this method returns.
+     * This is used when an operation is waiting for the memory.
+     * Returns the number of released heap bytes.
+     */
+    public long pageOutNow() {
+        assert Build.isUnitTesting() || EventQueue.isDispatchThread();
+
+        if (!canPageOut()) {
+            return 0;
+        }
+        if (backingStoreUpToDate) {
+            return releaseImage();
+        }
+        // the image can't change while the EDT is blocked
+        return finishPageOut(writeBackingStore(backingStore, image), image, imageGeneration);
+    }
+
+    private boolean canPageOut() {
+        return image != null && !pageOutInProgress && state == NORMAL
+                && tmpDrawingLayer == null && TiledPixelStore.canStore(image);
+    }
+
+    // returns null if the pixels couldn't be written
+    private static TiledPixelStore writeBackingStore(TiledPixelStore store, BufferedImage img) {
+        try {
+            if (store != null && store.canRewrite(img)) {
+                store.write(img);
+                return store;
+            }
+            return TiledPixelStore.from(img, TiledPixelStore.Backend.FILE);
+        } catch (IOException e) {
+            // the layer simply remains in the heap
+            return null;
+        }
+    }
+
+    private long finishPageOut(TiledPixelStore writtenStore, BufferedImage img, int generation) {
+        pageOutInProgress = false;
+        if (writtenStore == null) {
+            return 0;
+        }
+        if (writtenStore != backingStore) {
+            if (backingStore != null) {
+                backingStore.dispose();
+            }
+            backingStore = writtenStore;
+            prefetch = null;
+        }
+        if (img != image || generation != imageGeneration || !canPageOut()) {
+            // the written pixels might be outdated
+            return 0;
+        }
+        backingStoreUpToDate = true;
+        return releaseImage();
+    }
+
+    private long releaseImage() {
+        long bytes = MemoryGovernor.bytesOf(image);
+        image.flush();
+        image = null;
+        filterSourceImage = null;
+        return bytes;
+    }
+
+    /**
+     * Moves the pixels of a paged out layer back into the heap.
+     * All the methods that need the image call this first, and
+     * because they might change the pixels, the backing store
+     * is no longer considered up to date.
+     */
+    private void pageIn() {
+        if (isPagedOut()) {
+            image = readBackingStore();
+        }
+        imageMightChange();
+    }
+
+    // if a prefetch is already reading the pixels, then its result is
+    // awaited instead of reading the backing store a second time
+    private BufferedImage readBackingStore() {
+        CompletableFuture<BufferedImage> started = prefetch;
+        prefetch = null;
+        if (started != null) {
+            try {
+                return started.join();
+            } catch (CompletionException e) {
+                // try again on this thread, and report the error if it happens again
+            }
+        }
+        return backingStore.toImage();
+    }
+
+    /**
+     * Starts moving the pixels of a paged out layer back into the heap on
+     * the IO thread, so that the EDT doesn't have to wait for them later.
+     */
+    public void prefetchImage() {
+        if (!isPagedOut() || prefetch != null) {
+            return;
+        }
+        TiledPixelStore store = backingStore;
+        CompletableFuture<BufferedImage> started = CompletableFuture
+                .supplyAsync(store::toImage, IOThread.getExecutor());
+        prefetch = started;
+        started.thenAcceptAsync(img -> {
+            if (prefetch == started) {
+                prefetch = null;
+                if (isPagedOut() && backingStore == store) {
+                    // the backing store remains up to date
+                    image = img;
+                }
+            }
+        }, EventQueue::invokeLater);
+    }
+
+    /**
+     * Returns a supplier that creates the icon of a paged out layer from the
+     * tiles of the backing store, without moving the pixels back into the heap.
+     * The supplier can run on any thread, and it returns null if the
+     * backing store is disposed in the meantime.
+     */
+    public Supplier<BufferedImage> createPagedOutThumbnailCreator(int size, CheckerboardPainter painter) {
+        assert isPagedOut();
+
+        TiledPixelStore store = backingStore;
+        int tx = getTx();
+        int ty = getTy();
+        int canvasWidth = comp.getCanvasWidth();
+        int canvasHeight = comp.getCanvasHeight();
+        return () -> {
+            Dimension thumbDim = ImageUtils.calcThumbDimensions(canvasWidth, canvasHeight, size);
+            BufferedImage thumb = ImageUtils.createSysCompatibleImage(thumbDim.width, thumbDim.height);
+            Graphics2D g = thumb.createGraphics();
+            try {
+                if (painter != null) {
+                    painter.paint(g, null, thumbDim.width, thumbDim.height);
+                }
+                g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+                g.scale(thumbDim.width / (double) canvasWidth,
+                        thumbDim.height / (double) canvasHeight);
+                // only the tiles within the canvas are read
+                g.clipRect(0, 0, canvasWidth, canvasHeight);
+                store.paint(g, tx, ty, false);
+            } catch (IllegalStateException | UncheckedIOException e) {
+                if (store.isDisposed()) {
+                    // the layer was deleted or paged out again
+                    return null;
+                }
+                throw e;
+            } finally {
+                g.dispose();
+            }
+            return thumb;
+        };
+    }
+
+    private void imageMightChange() {
+        imageGeneration++;
+        backingStoreUpToDate = false;
+    }
+
+    /**
+     * Deletes the backing store when the layer is no longer used.
+     */
+    public void disposeBackingStore() {
+        if (backingStore != null) {
+            backingStore.dispose();
+            backingStore = null;
+            backingStoreUpToDate = false;
+            prefetch = null;
+        }
+    }
+
+    public boolean isPagedOut() {
+        return image == null && backingStore != null;
+    }
+
+    @VisibleForTesting
+    TiledPixelStore getBackingStore() {
+        return backingStore;
+    }
+
+    /**
+     * Returns the number of bytes used by the image in the heap.
+     */
+    public long getHeapBytes() {
+        return MemoryGovernor.bytesOf(image);
+    }
+
+    /**
+     * Returns the number of bytes stored outside the heap.
+     */
+    public long getOffHeapBytes() {
+        return isPagedOut() ? backingStore.getBytes() : 0;
+    }
+
     @VisibleForTesting
     public BufferedImage getPreviewImage() {
         return previewImage;
@@ -1249,16 +1614,17 @@ public class ImageLayer extends ContentLayer implements Drawable {
                 + ", canvasHeight=" + comp.getCanvasHeight()
                 + ", tx=" + translationX
                 + ", ty=" + translationY
-                + ", imgWidth=" + image.getWidth()
-                + ", imgHeight=" + image.getHeight()
+                + ", imgWidth=" + getImageWidth()
+                + ", imgHeight=" + getImageHeight()
                 + '}';
     }
 
     @Override
     public String toString() {
         return getClass().getSimpleName()
-                + "{img=" + image.getWidth() + "x" + image.getHeight()
+                + "{img=" + getImageWidth() + "x" + getImageHeight()
                 + ", state=" + state
+                + ", pagedOut=" + isPagedOut()
                 + ", super=" + super.toString()
                 + '}';
     }
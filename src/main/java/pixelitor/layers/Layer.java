@@ -24,7 +24,9 @@ import pixelitor.gui.View;
 import pixelitor.history.*;
 import pixelitor.tools.Tools;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.MemoryGovernor;
 import pixelitor.utils.Messages;
+import pixelitor.utils.ScratchPool;
 
 import javax.swing.*;
 import java.awt.*;
@@ -82,6 +84,11 @@ public abstract class Layer implements Serializable {
 
     private transient List<LayerChangeListener> changeListeners;
 
+    // the canvas-sized result of applying the mask, which
+    // is reused until the layer or the mask is changed
+    private transient BufferedImage maskedImage;
+    private transient boolean maskedImageFirstVisible;
+
     // unit tests use a different LayerUI implementation
     // by assigning a different UI factory
     public static Function<Layer, LayerUI> uiFactory = LayerButton::new;
@@ -478,7 +485,7 @@ public abstract class Layer implements Serializable {
                 setupDrawingComposite(g, firstVisibleLayer);
                 paintLayerOnGraphics(g, firstVisibleLayer);
             } else {
-                paintLayerOnGraphicsWithMask(g, firstVisibleLayer);
+                paintLayerOnGraphicsWithMask(g, imageSoFar, firstVisibleLayer);
             }
         }
         return null;
@@ -490,26 +497,77 @@ public abstract class Layer implements Serializable {
     public abstract void paintLayerOnGraphics(Graphics2D g, boolean firstVisibleLayer);
 
     /**
-     * Returns the masked image for the non-adjustment case.
-     * The returned image is canvas-sized, and the masks and the
-     * translations are taken into account
+     * Paints this layer with its mask for the non-adjustment case.
+     * In the normal blending mode the layer can be blended directly
+     * into the composite image, otherwise the (cached) canvas-sized
+     * masked image is painted with the composite of the layer.
+     */
+    private void paintLayerOnGraphicsWithMask(Graphics2D g,
+                                              BufferedImage imageSoFar,
+                                              boolean firstVisibleLayer) {
+        boolean normal = firstVisibleLayer || blendingMode == BlendingMode.NORMAL;
+        if (normal && imageSoFar.getWidth() == comp.getCanvasWidth()
+                && imageSoFar.getHeight() == comp.getCanvasHeight()
+                && FusedMaskBlender.canBlendInto(imageSoFar, g)
+                && blendWithMask(imageSoFar, opacity)) {
+            return;
+        }
+
+        setupDrawingComposite(g, firstVisibleLayer);
+        g.drawImage(getMaskedImage(firstVisibleLayer), 0, 0, null);
+    }
+
+    /**
+     * Blends this layer with its mask directly into the given canvas-sized,
+     * premultiplied image in the normal blending mode. Returns false
+     * if this is not possible for the current state of this layer.
+     */
+    protected boolean blendWithMask(BufferedImage dest, float opacity) {
+        return false;
+    }
+
+    /**
+     * Returns the canvas-sized image of this layer with the
+     * mask applied, the translations are taken into account
      */
-    private void paintLayerOnGraphicsWithMask(Graphics2D g, boolean firstVisibleLayer) {
-        // 1. create the masked image
-        // TODO the masked image should be cached
-        BufferedImage maskedImage = new BufferedImage(
+    private BufferedImage getMaskedImage(boolean firstVisibleLayer) {
+        if (maskedImage != null
+                && maskedImageFirstVisible == firstVisibleLayer
+                && maskedImage.getWidth() == comp.getCanvasWidth()
+                && maskedImage.getHeight() == comp.getCanvasHeight()) {
+            return maskedImage;
+        }
+        invalidateMaskedImage();
+
+        maskedImage = ScratchPool.acquireImage(
                 comp.getCanvasWidth(), comp.getCanvasHeight(), TYPE_INT_ARGB);
+        maskedImageFirstVisible = firstVisibleLayer;
         Graphics2D mig = maskedImage.createGraphics();
         paintLayerOnGraphics(mig, firstVisibleLayer);
         mig.setComposite(DstIn);
         mig.drawImage(mask.getTransparencyImage(),
                 mask.getTx(), mask.getTy(), null);
         mig.dispose();
+        return maskedImage;
+    }
 
-        // 2. paint the masked image onto the graphics
-//            g.drawImage(maskedImage, getTx(), getTy(), null);
-        setupDrawingComposite(g, firstVisibleLayer);
-        g.drawImage(maskedImage, 0, 0, null);
+    /**
+     * Must be called when the pixels of this layer or of its mask
+     * change, so that the cached masked image is recalculated.
+     * Returns the number of released bytes.
+     */
+    public long invalidateMaskedImage() {
+        if (maskedImage == null) {
+            return 0;
+        }
+        long bytes = MemoryGovernor.bytesOf(maskedImage);
+        ScratchPool.release(maskedImage);
+        maskedImage = null;
+        return bytes;
+    }
+
+    public long getMaskedImageBytes() {
+        return MemoryGovernor.bytesOf(maskedImage);
     }
 
     /**
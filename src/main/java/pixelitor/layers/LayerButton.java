@@ -20,11 +20,11 @@ package pixelitor.layers;
 import com.bric.util.JVM;
 import org.jdesktop.swingx.painter.CheckerboardPainter;
 import pixelitor.Build;
-import pixelitor.ThreadPool;
 import pixelitor.gui.PixelitorWindow;
 import pixelitor.gui.View;
 import pixelitor.utils.Icons;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.ThumbnailService;
 import pixelitor.utils.VisibleForTesting;
 
 import javax.swing.*;
@@ -370,21 +370,24 @@ public class LayerButton extends JToggleButton implements LayerUI {
         assert EventQueue.isDispatchThread() : "not on EDT";
 
         boolean isMask = layer instanceof LayerMask;
+        CheckerboardPainter painter = isMask ? null : checkerBoardPainter;
+
+        if (layer.isPagedOut()) {
+            // painted from the tiles, the layer isn't moved back into the heap
+            ThumbnailService.submit(layer,
+                    layer.createPagedOutThumbnailCreator(thumbSize, painter),
+                    thumb -> {
+                        if (thumb != null) {
+                            updateIconOnEDT(layer, isMask, thumb);
+                        }
+                    });
+            return;
+        }
 
         BufferedImage img = layer.getCanvasSizedSubImage();
-
-        Runnable notEDT = () -> {
-            CheckerboardPainter painter = null;
-            if (!isMask) {
-                painter = checkerBoardPainter;
-            }
-
-            BufferedImage thumb = createThumbnail(img, thumbSize, painter);
-
-            SwingUtilities.invokeLater(() ->
-                    updateIconOnEDT(layer, isMask, thumb));
-        };
-        ThreadPool.submit(notEDT);
+        ThumbnailService.submit(layer, img,
+                src -> createThumbnail(src, thumbSize, painter),
+                thumb -> updateIconOnEDT(layer, isMask, thumb));
     }
 
     private void updateIconOnEDT(ImageLayer layer, boolean isMask, BufferedImage thumb) {
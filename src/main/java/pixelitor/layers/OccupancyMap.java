@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * A coarse map of the cells of an image that contain at least one
+ * pixel with an alpha above a threshold. It's used for excluding layers
+ * from the hit testing without reading their pixels.
+ *
+ * The cells are evaluated lazily when they are first queried,
+ * and the changed regions can be invalidated incrementally.
+ * The coordinates are relative to the image.
+ */
+final class OccupancyMap {
+    static final int CELL_SIZE = 32;
+
+    private static final byte UNKNOWN = 0;
+    private static final byte EMPTY = 1;
+    private static final byte OCCUPIED = 2;
+
+    private final BufferedImage image;
+    private final int alphaThreshold;
+    private final int numCols;
+    private final int numRows;
+    private final byte[] cells;
+
+    OccupancyMap(BufferedImage image, int alphaThreshold) {
+        this.image = image;
+        this.alphaThreshold = alphaThreshold;
+        numCols = (image.getWidth() + CELL_SIZE - 1) / CELL_SIZE;
+        numRows = (image.getHeight() + CELL_SIZE - 1) / CELL_SIZE;
+        cells = new byte[numCols * numRows];
+    }
+
+    boolean isFor(BufferedImage img, int threshold) {
+        return image == img && alphaThreshold == threshold;
+    }
+
+    /**
+     * Returns false if the cell containing the given point has no pixels
+     * with an alpha above the threshold, or if the point is outside the image.
+     */
+    boolean isOccupied(int x, int y) {
+        if (x < 0 || y < 0 || x >= image.getWidth() || y >= image.getHeight()) {
+            return false;
+        }
+        int index = (y / CELL_SIZE) * numCols + x / CELL_SIZE;
+        byte state = cells[index];
+        if (state == UNKNOWN) {
+            state = scanCell(x / CELL_SIZE, y / CELL_SIZE) ? OCCUPIED : EMPTY;
+            cells[index] = state;
+        }
+        return state == OCCUPIED;
+    }
+
+    private boolean scanCell(int col, int row) {
+        if (!image.getColorModel().hasAlpha()) {
+            return true;
+        }
+        int x = col * CELL_SIZE;
+        int y = row * CELL_SIZE;
+        int width = Math.min(CELL_SIZE, image.getWidth() - x);
+        int height = Math.min(CELL_SIZE, image.getHeight() - y);
+
+        WritableRaster raster = image.getRaster();
+        int alphaBand = raster.getNumBands() - 1;
+        int[] alphas = raster.getSamples(x, y, width, height, alphaBand, (int[]) null);
+        for (int alpha : alphas) {
+            if (alpha > alphaThreshold) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks the cells intersecting the given region as unknown.
+     */
+    void invalidate(Rectangle region) {
+        int firstCol = Math.max(0, Math.floorDiv(region.x, CELL_SIZE));
+        int firstRow = Math.max(0, Math.floorDiv(region.y, CELL_SIZE));
+        int lastCol = Math.min(numCols - 1, Math.floorDiv(region.x + region.width, CELL_SIZE));
+        int lastRow = Math.min(numRows - 1, Math.floorDiv(region.y + region.height, CELL_SIZE));
+        for (int row = firstRow; row <= lastRow; row++) {
+            int rowStart = row * numCols;
+            for (int col = firstCol; col <= lastCol; col++) {
+                cells[rowStart + col] = UNKNOWN;
+            }
+        }
+    }
+
+    void invalidateAll() {
+        Arrays.fill(cells, UNKNOWN);
+    }
+}
@@ -129,6 +129,9 @@ public class TextLayer extends ContentLayer {
     }
 
     public void commitSettings(TextSettings oldSettings) {
+        // the cached raster must never survive a settings change
+        painter.invalidateRasterCache();
+
         updateLayerName();
         TextLayerChangeEdit edit = new TextLayerChangeEdit(
                 comp,
@@ -192,6 +195,12 @@ public class TextLayer extends ContentLayer {
         return 0x00000000;
     }
 
+    @Override
+    public boolean isHitCandidateAt(Point p, int alphaThreshold) {
+        // the bounding box is cached, unlike the rotated bounding shape
+        return painter.getBoundingBox().contains(p);
+    }
+
     public ImageLayer replaceWithRasterized() {
         return replaceWithRasterized(true);
     }
@@ -235,8 +244,12 @@ public class TextLayer extends ContentLayer {
 
     @Override
     public void paintLayerOnGraphics(Graphics2D g, boolean firstVisibleLayer) {
-        painter.setFillPaint(settings.getColor());
-        painter.paint(g, null, comp.getCanvasWidth(), comp.getCanvasHeight());
+        Color color = settings.getColor();
+        if (!color.equals(painter.getFillPaint())) {
+            // setting the fill paint would invalidate the cached raster
+            painter.setFillPaint(color);
+        }
+        painter.paintCached(g, comp.getCanvasWidth(), comp.getCanvasHeight());
     }
 
     @Override
@@ -278,6 +291,7 @@ public class TextLayer extends ContentLayer {
 
         isAdjustment = settings.isWatermark();
         settings.configurePainter(painter);
+        painter.invalidateRasterCache();
     }
 
     public TextSettings getSettings() {
@@ -0,0 +1,540 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import pixelitor.utils.MemoryGovernor;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static pixelitor.utils.MemoryInfo.ONE_MEGABYTE;
+
+/**
+ * Stores the pixels of an int-packed image outside the Java heap,
+ * divided into square tiles, so that the big pixel arrays of inactive
+ * layers don't take heap space and are not scanned by the garbage collector.
+ *
+ * The tiles of a tile row are stored consecutively, either in one direct
+ * buffer per tile row or in a scratch file. The same store can be
+ * rewritten with the new pixels of an image with the same size.
+ * The tiles are materialized into small BufferedImages only when they
+ * are painted, the whole image is recreated only when it's needed for editing.
+ *
+ * The recently painted tiles are kept in a bounded LRU cache shared by
+ * all stores, so that repainting the same area doesn't read the tiles
+ * again. The cache is registered at the {@link MemoryGovernor}.
+ */
+public final class TiledPixelStore {
+    public static final int TILE_SIZE = 256;
+
+    public enum Backend {
+        /**
+         * Direct buffers, limited by -XX:MaxDirectMemorySize
+         */
+        DIRECT,
+        /**
+         * A scratch file in the temp directory, which is accessed with
+         * positional reads and writes. Nothing is mapped into the memory,
+         * and the read channel is closed when the store is disposed,
+         * therefore the file can be deleted at any time.
+         */
+        FILE
+    }
+
+    private static long maxCachedTileBytes = Math.min(64L * ONE_MEGABYTE,
+            Runtime.getRuntime().maxMemory() / 32);
+
+    // a LinkedHashMap in access order, the keys are the store and the tile index
+    private static final Map<List<Object>, BufferedImage> tileCache =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private static long cachedTileBytes = 0;
+
+    static {
+        MemoryGovernor.register(new TileCacheMemory());
+    }
+
+    private final int width;
+    private final int height;
+    private final int numCols;
+    private final int numRows;
+    private final ColorModel colorModel;
+
+    // exactly one of these is used
+    private final Path scratchFile;
+    private IntBuffer[] tileRows;
+
+    // opened at the first read and kept open until the store is disposed,
+    // the positional reads can be used from several threads
+    private FileChannel readChannel;
+
+    private volatile boolean disposed;
+
+    private TiledPixelStore(int width, int height, ColorModel colorModel, Path scratchFile) {
+        this.width = width;
+        this.height = height;
+        this.colorModel = colorModel;
+        this.scratchFile = scratchFile;
+        numCols = (width + TILE_SIZE - 1) / TILE_SIZE;
+        numRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    /**
+     * Returns true if the pixels of the given image can be stored,
+     * which is the case for the images with one int per pixel.
+     */
+    public static boolean canStore(BufferedImage img) {
+        return img.getRaster().getDataBuffer() instanceof DataBufferInt
+                && img.getSampleModel() instanceof SinglePixelPackedSampleModel;
+    }
+
+    /**
+     * Returns true if this store can be rewritten with the pixels of the given image.
+     */
+    public boolean canRewrite(BufferedImage img) {
+        return !disposed && canStore(img)
+                && img.getWidth() == width && img.getHeight() == height
+                && img.getColorModel().equals(colorModel);
+    }
+
+    /**
+     * Copies the pixels of the given image into a new store.
+     */
+    public static TiledPixelStore from(BufferedImage img, Backend backend) throws IOException {
+        assert canStore(img);
+
+        Path scratchFile = null;
+        if (backend == Backend.FILE) {
+            scratchFile = Files.createTempFile("pixelitor", ".tiles");
+            scratchFile.toFile().deleteOnExit();
+        }
+
+        TiledPixelStore store = new TiledPixelStore(img.getWidth(), img.getHeight(),
+                img.getColorModel(), scratchFile);
+        try {
+            if (scratchFile == null) {
+                store.allocateDirectBuffers();
+            }
+            store.write(img);
+        } catch (IOException | OutOfMemoryError e) {
+            // direct buffers throw OutOfMemoryError if the
+            // direct memory limit is reached, but the heap is fine
+            store.dispose();
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            throw new IOException(e);
+        }
+        return store;
+    }
+
+    private void allocateDirectBuffers() {
+        tileRows = new IntBuffer[numRows];
+        for (int row = 0; row < numRows; row++) {
+            tileRows[row] = ByteBuffer.allocateDirect(width * getTileHeight(row) * 4)
+                    .order(ByteOrder.nativeOrder())
+                    .asIntBuffer();
+        }
+    }
+
+    private int getTileWidth(int col) {
+        return Math.min(TILE_SIZE, width - col * TILE_SIZE);
+    }
+
+    private int getTileHeight(int row) {
+        return Math.min(TILE_SIZE, height - row * TILE_SIZE);
+    }
+
+    // the offset (in pixels) of the tile within its tile row,
+    // all the tiles before the last column have the full tile width
+    private int getTileOffset(int col, int row) {
+        return col * TILE_SIZE * getTileHeight(row);
+    }
+
+    // the position (in bytes) of the tile in the scratch file,
+    // all the tile rows before the last one have the full tile height
+    private long getFilePosition(int col, int row) {
+        return 4L * ((long) row * TILE_SIZE * width + getTileOffset(col, row));
+    }
+
+    // returns null for the direct buffers
+    private FileChannel openWriteChannel() throws IOException {
+        if (scratchFile == null) {
+            return null;
+        }
+        return FileChannel.open(scratchFile, WRITE);
+    }
+
+    // returns null for the direct buffers
+    private synchronized FileChannel getReadChannel() throws IOException {
+        checkNotDisposed();
+        if (scratchFile == null) {
+            return null;
+        }
+        if (readChannel == null) {
+            readChannel = FileChannel.open(scratchFile, READ);
+        }
+        return readChannel;
+    }
+
+    private ByteBuffer createIOBuffer() {
+        if (scratchFile == null) {
+            return null;
+        }
+        return ByteBuffer.allocate(TILE_SIZE * TILE_SIZE * 4).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Replaces the stored pixels with the pixels of the given image,
+     * which must have the same size and color model.
+     */
+    public void write(BufferedImage img) throws IOException {
+        checkNotDisposed();
+        assert canRewrite(img);
+
+        WritableRaster raster = img.getRaster();
+        int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+        ByteBuffer ioBuffer = createIOBuffer();
+        try (FileChannel channel = openWriteChannel()) {
+            for (int row = 0; row < numRows; row++) {
+                int th = getTileHeight(row);
+                for (int col = 0; col < numCols; col++) {
+                    int tw = getTileWidth(col);
+                    raster.getDataElements(col * TILE_SIZE, row * TILE_SIZE, tw, th, pixels);
+                    writeTile(channel, ioBuffer, col, row, pixels, tw * th);
+                }
+            }
+        }
+        removeCachedTiles();
+    }
+
+    private void writeTile(FileChannel channel, ByteBuffer ioBuffer,
+                           int col, int row, int[] pixels, int length) throws IOException {
+        if (channel == null) {
+            IntBuffer buffer = tileRows[row].duplicate();
+            buffer.position(getTileOffset(col, row));
+            buffer.put(pixels, 0, length);
+            return;
+        }
+        ioBuffer.clear().limit(length * 4);
+        ioBuffer.asIntBuffer().put(pixels, 0, length);
+        long position = getFilePosition(col, row);
+        while (ioBuffer.hasRemaining()) {
+            position += channel.write(ioBuffer, position);
+        }
+    }
+
+    private void readTile(FileChannel channel, ByteBuffer ioBuffer,
+                          int col, int row, int[] pixels, int length) throws IOException {
+        if (channel == null) {
+            IntBuffer buffer = tileRows[row].duplicate();
+            buffer.position(getTileOffset(col, row));
+            buffer.get(pixels, 0, length);
+            return;
+        }
+        ioBuffer.clear().limit(length * 4);
+        long position = getFilePosition(col, row);
+        while (ioBuffer.hasRemaining()) {
+            int read = channel.read(ioBuffer, position);
+            if (read < 0) {
+                throw new EOFException(scratchFile.toString());
+            }
+            position += read;
+        }
+        ioBuffer.flip();
+        ioBuffer.asIntBuffer().get(pixels, 0, length);
+    }
+
+    /**
+     * Recreates the whole image from the stored tiles.
+     *
+     * @throws UncheckedIOException if the scratch file can't be read
+     */
+    public BufferedImage toImage() {
+        checkNotDisposed();
+        WritableRaster raster = colorModel.createCompatibleWritableRaster(width, height);
+
+        int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+        ByteBuffer ioBuffer = createIOBuffer();
+        try {
+            FileChannel channel = getReadChannel();
+            for (int row = 0; row < numRows; row++) {
+                int th = getTileHeight(row);
+                for (int col = 0; col < numCols; col++) {
+                    int tw = getTileWidth(col);
+                    readTile(channel, ioBuffer, col, row, pixels, tw * th);
+                    raster.setDataElements(col * TILE_SIZE, row * TILE_SIZE, tw, th, pixels);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Materializes the tile at the given tile column and row.
+     *
+     * @throws UncheckedIOException if the scratch file can't be read
+     */
+    public BufferedImage getTile(int col, int row) {
+        try {
+            return readTileImage(getReadChannel(), createIOBuffer(), col, row);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // returns the cached tile, or reads it and (optionally) caches it
+    private BufferedImage getTile(FileChannel channel, ByteBuffer ioBuffer,
+                                  int col, int row, boolean cacheTile) throws IOException {
+        List<Object> key = List.of(this, row * numCols + col);
+        synchronized (tileCache) {
+            BufferedImage tile = tileCache.get(key);
+            if (tile != null) {
+                return tile;
+            }
+        }
+        BufferedImage tile = readTileImage(channel, ioBuffer, col, row);
+        if (cacheTile) {
+            synchronized (tileCache) {
+                // not cached if the store was disposed while the tile was read
+                if (!disposed && tileCache.put(key, tile) == null) {
+                    cachedTileBytes += MemoryGovernor.bytesOf(tile);
+                    evictTiles(maxCachedTileBytes);
+                }
+            }
+        }
+        return tile;
+    }
+
+    private BufferedImage readTileImage(FileChannel channel, ByteBuffer ioBuffer,
+                                        int col, int row) throws IOException {
+        int tw = getTileWidth(col);
+        int th = getTileHeight(row);
+        WritableRaster raster = colorModel.createCompatibleWritableRaster(tw, th);
+
+        // a compatible raster has no padding, the tile can be copied directly
+        int[] pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+        readTile(channel, ioBuffer, col, row, pixels, tw * th);
+
+        return new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Paints the image at the given translation, materializing
+     * only the tiles that intersect the clip of the given Graphics.
+     * The materialized tiles are cached for the next repaint.
+     *
+     * @throws UncheckedIOException if the scratch file can't be read
+     */
+    public void paint(Graphics2D g, int tx, int ty) {
+        paint(g, tx, ty, true);
+    }
+
+    /**
+     * Paints the image like {@link #paint(Graphics2D, int, int)}, but if
+     * cacheTiles is false, then the newly read tiles are not cached. This is
+     * meant for one-off paintings of the whole image, such as thumbnails,
+     * which would otherwise evict the tiles that are repainted often.
+     */
+    public void paint(Graphics2D g, int tx, int ty, boolean cacheTiles) {
+        checkNotDisposed();
+        int firstCol = 0;
+        int lastCol = numCols - 1;
+        int firstRow = 0;
+        int lastRow = numRows - 1;
+
+        Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            int x1 = clip.x - tx;
+            int y1 = clip.y - ty;
+            int x2 = x1 + clip.width;
+            int y2 = y1 + clip.height;
+            if (x2 <= 0 || y2 <= 0 || x1 >= width || y1 >= height) {
+                return;
+            }
+            firstCol = Math.max(0, x1 / TILE_SIZE);
+            lastCol = Math.min(numCols - 1, (x2 - 1) / TILE_SIZE);
+            firstRow = Math.max(0, y1 / TILE_SIZE);
+            lastRow = Math.min(numRows - 1, (y2 - 1) / TILE_SIZE);
+        }
+
+        ByteBuffer ioBuffer = createIOBuffer();
+        try {
+            FileChannel channel = getReadChannel();
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int col = firstCol; col <= lastCol; col++) {
+                    BufferedImage tile = getTile(channel, ioBuffer, col, row, cacheTiles);
+                    g.drawImage(tile, tx + col * TILE_SIZE, ty + row * TILE_SIZE, null);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of bytes stored outside the heap.
+     */
+    public long getBytes() {
+        return 4L * width * height;
+    }
+
+    public boolean isFileBacked() {
+        return scratchFile != null;
+    }
+
+    /**
+     * Deletes the scratch file and the cached tiles. The memory of the direct
+     * buffers is freed by the garbage collector when the store is no longer referenced.
+     */
+    public void dispose() {
+        disposed = true;
+        removeCachedTiles();
+        if (scratchFile != null) {
+            synchronized (this) {
+                if (readChannel != null) {
+                    try {
+                        readChannel.close();
+                    } catch (IOException e) {
+                        // the file is deleted anyway
+                    }
+                    readChannel = null;
+                }
+            }
+            try {
+                Files.deleteIfExists(scratchFile);
+            } catch (IOException e) {
+                // can happen on Windows while a read is in progress,
+                // deleteOnExit will take care of it
+            }
+        }
+    }
+
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    private void removeCachedTiles() {
+        synchronized (tileCache) {
+            Iterator<Map.Entry<List<Object>, BufferedImage>> it = tileCache.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<List<Object>, BufferedImage> entry = it.next();
+                if (entry.getKey().get(0) == this) {
+                    cachedTileBytes -= MemoryGovernor.bytesOf(entry.getValue());
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    // evicts the least recently used tiles, must be called while holding
+    // the lock of the cache, returns the number of released bytes
+    private static long evictTiles(long maxRemaining) {
+        long released = 0;
+        Iterator<BufferedImage> it = tileCache.values().iterator();
+        while (cachedTileBytes > maxRemaining && it.hasNext()) {
+            long bytes = MemoryGovernor.bytesOf(it.next());
+            it.remove();
+            cachedTileBytes -= bytes;
+            released += bytes;
+        }
+        return released;
+    }
+
+    static long getCachedTileBytes() {
+        synchronized (tileCache) {
+            return cachedTileBytes;
+        }
+    }
+
+    static void setMaxCachedTileBytes(long newMaxBytes) {
+        synchronized (tileCache) {
+            maxCachedTileBytes = newMaxBytes;
+            evictTiles(maxCachedTileBytes);
+        }
+    }
+
+    static long getMaxCachedTileBytes() {
+        return maxCachedTileBytes;
+    }
+
+    private void checkNotDisposed() {
+        if (disposed) {
+            throw new IllegalStateException("disposed");
+        }
+    }
+
+    /**
+     * Lets the {@link MemoryGovernor} empty the cache of materialized tiles.
+     */
+    private static class TileCacheMemory implements MemoryGovernor.MemoryConsumer {
+        @Override
+        public String getName() {
+            return "Layer Tiles";
+        }
+
+        @Override
+        public long getUsedBytes() {
+            return getCachedTileBytes();
+        }
+
+        @Override
+        public long reclaim(long bytes) {
+            synchronized (tileCache) {
+                return evictTiles(Math.max(0, cachedTileBytes - bytes));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TiledPixelStore{width=" + width
+                + ", height=" + height
+                + ", fileBacked=" + isFileBacked() + '}';
+    }
+}
@@ -21,7 +21,9 @@ import pixelitor.Composition;
 import pixelitor.selection.Selection;
 import pixelitor.tools.util.ImDrag;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.ScratchPool;
 
+import java.awt.AlphaComposite;
 import java.awt.Composite;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
@@ -35,12 +37,15 @@ import java.util.Objects;
 public class TmpDrawingLayer {
     private BufferedImage image;
     private final Graphics2D g;
-    private final Composite composite;
+    private Composite composite;
 
     private final boolean smallImage;
     private int selStartX = 0;
     private int selStartY = 0;
 
+    // the selection shape, if a soft selection is used
+    private Shape softSelShape;
+
     public TmpDrawingLayer(ImageLayer imageLayer, Composite composite, boolean softSelection) {
         this.composite = Objects.requireNonNull(composite);
 
@@ -50,7 +55,8 @@ public class TmpDrawingLayer {
             Shape selShape = sel.getShape();
             if (sel.isRectangular() || !softSelection) {
                 // hard selection clipping
-                image = comp.getCanvas().createTmpImage();
+                image = ScratchPool.acquireSysCompatibleImage(
+                        comp.getCanvasWidth(), comp.getCanvasHeight());
                 g = image.createGraphics();
                 g.setClip(selShape);
                 smallImage = false;
@@ -61,14 +67,16 @@ public class TmpDrawingLayer {
                 Rectangle bounds = selShape.getBounds();
                 selStartX = bounds.x;
                 selStartY = bounds.y;
-                image = ImageUtils.createSysCompatibleImage(bounds.width, bounds.height);
+                softSelShape = selShape;
+                image = ScratchPool.acquireSysCompatibleImage(bounds.width, bounds.height);
                 g = ImageUtils.setupForSoftSelection(image, selShape, selStartX, selStartY);
 //                g.translate(selStartX, selStartY);
                 smallImage = true;
             }
         } else {
             // no selection
-            image = comp.getCanvas().createTmpImage();
+            image = ScratchPool.acquireSysCompatibleImage(
+                    comp.getCanvasWidth(), comp.getCanvasHeight());
             g = image.createGraphics();
             smallImage = false;
         }
@@ -90,9 +98,35 @@ public class TmpDrawingLayer {
         return image.getHeight();
     }
 
+    public void setComposite(Composite composite) {
+        this.composite = Objects.requireNonNull(composite);
+    }
+
+    /**
+     * Restores the initial, transparent state, so that the
+     * layer can be reused for drawing something else.
+     */
+    public void clear() {
+        Graphics2D tmpG;
+        if (smallImage) {
+            // restore the soft selection mask, the original
+            // graphics still uses it with the SrcIn composite
+            tmpG = ImageUtils.setupForSoftSelection(image, softSelShape, selStartX, selStartY);
+        } else {
+            tmpG = image.createGraphics();
+            tmpG.setComposite(AlphaComposite.Clear);
+            tmpG.fillRect(0, 0, image.getWidth(), image.getHeight());
+        }
+        tmpG.dispose();
+    }
+
+    public boolean isDisposed() {
+        return image == null;
+    }
+
     public void dispose() {
         g.dispose();
-        image.flush();
+        ScratchPool.release(image);
         image = null;
     }
 
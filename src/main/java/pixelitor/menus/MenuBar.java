@@ -45,6 +45,7 @@ import pixelitor.gui.utils.GUIUtils;
 import pixelitor.gui.utils.Themes;
 import pixelitor.guides.Guides;
 import pixelitor.history.History;
+import pixelitor.io.Dirs;
 import pixelitor.io.FileChoosers;
 import pixelitor.io.IO;
 import pixelitor.io.OptimizedJpegSavePanel;
@@ -58,17 +59,21 @@ import pixelitor.selection.SelectionActions;
 import pixelitor.tools.brushes.CopyBrush;
 import pixelitor.utils.*;
 import pixelitor.utils.debug.AppNode;
+import pixelitor.utils.debug.Telemetry;
 import pixelitor.utils.test.Events;
 import pixelitor.utils.test.RandomGUITest;
 import pixelitor.utils.test.SplashImageCreator;
 
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.BorderLayout;
 import java.awt.GraphicsConfiguration;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.util.ResourceBundle;
 
@@ -950,6 +955,7 @@ public class MenuBar extends JMenuBar {
 
         sub.addFilter(Convolve.createFilterAction(3));
         sub.addFilter(Convolve.createFilterAction(5));
+        sub.addFilter(Convolve.createFilterAction(9));
 
         sub.addSeparator();
 
@@ -1441,6 +1447,13 @@ public class MenuBar extends JMenuBar {
             }
         });
 
+        helpMenu.add(new MenuAction("Export Performance Data...") {
+            @Override
+            public void onClick() {
+                exportPerformanceData(pw);
+            }
+        });
+
         helpMenu.add(new MenuAction("Check for Update...") {
             @Override
             public void onClick() {
@@ -1457,4 +1470,21 @@ public class MenuBar extends JMenuBar {
 
         return helpMenu;
     }
+
+    private static void exportPerformanceData(PixelitorWindow pw) {
+        JFileChooser chooser = new JFileChooser(Dirs.getLastSave());
+        chooser.setSelectedFile(new File("pixelitor_performance.csv"));
+        chooser.addChoosableFileFilter(new FileNameExtensionFilter("JSON files", "json"));
+        chooser.setFileFilter(new FileNameExtensionFilter("CSV files", "csv"));
+        if (chooser.showSaveDialog(pw) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        try {
+            Telemetry.exportTo(file);
+            Messages.showInStatusBar("Performance data exported to " + file.getName());
+        } catch (IOException e) {
+            Messages.showException(e);
+        }
+    }
 }
@@ -17,7 +17,9 @@
 
 package pixelitor.menus.help;
 
+import pixelitor.OpenImages;
 import pixelitor.gui.utils.GridBagHelper;
+import pixelitor.utils.MemoryGovernor;
 import pixelitor.utils.MemoryInfo;
 
 import javax.swing.*;
@@ -48,5 +50,15 @@ class SystemInfoPanel extends JPanel {
         gbh.addTwoLabels("Used Memory:", mi.getUsedMemory());
         gbh.addTwoLabels("Free Memory:", mi.getFreeMemory());
         gbh.addTwoLabels("Max Memory:", mi.getMaxMemory());
+
+        MemoryGovernor.getUsageBySubsystem().forEach((subsystem, bytes) ->
+                gbh.addTwoLabels("  " + subsystem + ":",
+                        bytes / MemoryInfo.ONE_MEGABYTE + " megabytes"));
+
+        long pagedOut = OpenImages.getViews().stream()
+                .mapToLong(view -> view.getComp().getOffHeapBytes())
+                .sum();
+        gbh.addTwoLabels("Paged Out Layers:",
+                pagedOut / MemoryInfo.ONE_MEGABYTE + " megabytes");
     }
 }
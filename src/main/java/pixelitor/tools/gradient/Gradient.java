@@ -17,7 +17,6 @@
 
 package pixelitor.tools.gradient;
 
-import pixelitor.Canvas;
 import pixelitor.gui.View;
 import pixelitor.layers.BlendingMode;
 import pixelitor.layers.Drawable;
@@ -30,8 +29,8 @@ import java.awt.MultipleGradientPaint.CycleMethod;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 
-import static java.awt.RenderingHints.KEY_ANTIALIASING;
-import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
+import static java.awt.RenderingHints.KEY_INTERPOLATION;
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR;
 import static pixelitor.colors.FgBgColors.getBGColor;
 import static pixelitor.colors.FgBgColors.getFGColor;
 
@@ -78,40 +77,64 @@ public class Gradient {
 
     public void drawOn(Drawable dr) {
         Graphics2D g;
-        var comp = dr.getComp();
-        Canvas canvas = comp.getCanvas();
-        int canvasWidth = canvas.getWidth();
-        int canvasHeight = canvas.getHeight();
-        boolean smallImage; // the temporary image might be smaller than the canvas, if there is selection
+        int width;
+        int height;
         if (dr instanceof LayerMask) {
             BufferedImage subImage = dr.getCanvasSizedSubImage();
             g = subImage.createGraphics();
-            assert canvasWidth == subImage.getWidth();
-            assert canvasHeight == subImage.getHeight();
-            smallImage = false;
+            width = subImage.getWidth();
+            height = subImage.getHeight();
         } else {
             Composite composite = blendingMode.getComposite(opacity);
+            // the temporary image might be smaller than the canvas, if there is selection
             TmpDrawingLayer tmpDrawingLayer = dr.createTmpDrawingLayer(composite, true);
             g = tmpDrawingLayer.getGraphics();
-            smallImage = tmpDrawingLayer.hasSmallImage();
+            width = tmpDrawingLayer.getWidth();
+            height = tmpDrawingLayer.getHeight();
             imDrag = tmpDrawingLayer.translateDrag(imDrag);
         }
 
-        g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
-        Paint paint = type.createPaint(imDrag, colors, cycleMethod);
-        g.setPaint(paint);
-        if (smallImage) {
-            Rectangle bounds = comp.getSelection().getShapeBounds(0);
-            g.fillRect(0, 0, bounds.width, bounds.height);
-        } else {
-            g.fillRect(0, 0, canvasWidth, canvasHeight);
-        }
+        BufferedImage rendered = GradientRenderer.render(
+                type, imDrag, colors, cycleMethod, width, height);
+        g.drawImage(rendered, 0, 0, null);
+        rendered.flush();
 
         g.dispose();
         dr.mergeTmpDrawingLayerDown();
         dr.updateIconImage();
     }
 
+    /**
+     * Shows a quick, low-resolution version of this gradient
+     * in a temporary layer, without changing the pixels of the drawable.
+     * If the given temporary layer is not null, it is cleared and reused,
+     * otherwise a new one is created. Returns the used temporary layer.
+     * Not supported for layer masks.
+     */
+    public TmpDrawingLayer drawPreviewOn(Drawable dr, TmpDrawingLayer tmpDrawingLayer) {
+        assert !(dr instanceof LayerMask);
+
+        Composite composite = blendingMode.getComposite(opacity);
+        if (tmpDrawingLayer == null) {
+            tmpDrawingLayer = dr.createTmpDrawingLayer(composite, true);
+        } else {
+            tmpDrawingLayer.clear();
+            tmpDrawingLayer.setComposite(composite);
+        }
+        int width = tmpDrawingLayer.getWidth();
+        int height = tmpDrawingLayer.getHeight();
+        ImDrag drag = tmpDrawingLayer.translateDrag(imDrag);
+
+        BufferedImage preview = GradientRenderer.renderPreview(
+                type, drag, colors, cycleMethod, width, height);
+        Graphics2D g = tmpDrawingLayer.getGraphics();
+        g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(preview, 0, 0, width, height, null);
+        preview.flush();
+
+        return tmpDrawingLayer;
+    }
+
     /**
      * Returns whether the gradient pixels fully cover the originals.
      * If true, then it should not be necessary to save the images for undo.
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.gradient;
+
+import pixelitor.ThreadPool;
+import pixelitor.tools.util.ImDrag;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.MultipleGradientPaint.CycleMethod;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.Future;
+
+import static java.awt.RenderingHints.KEY_ANTIALIASING;
+import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+
+/**
+ * Renders gradients into images using the thread pool.
+ *
+ * The image is split into horizontal bands, and each band is filled
+ * with its own paint (shifted by the band's position), so the paint
+ * contexts - including the supersampling of the custom paints around
+ * their discontinuities - run in parallel. Each band writes its pixels
+ * directly into its own part of the result's int array.
+ */
+public class GradientRenderer {
+    private static final int BAND_HEIGHT = 32;
+
+    /**
+     * The maximal number of pixels in a low-resolution preview
+     */
+    private static final int MAX_PREVIEW_PIXELS = 400_000;
+
+    private GradientRenderer() {
+        // should not be instantiated
+    }
+
+    /**
+     * Renders the gradient into a new image with the given size.
+     */
+    public static BufferedImage render(GradientType type, ImDrag drag, Color[] colors,
+                                       CycleMethod cycle, int width, int height) {
+        BufferedImage result = new BufferedImage(width, height, TYPE_INT_ARGB);
+        int[] resultPixels = getPixels(result);
+
+        int numBands = (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+        Future<?>[] futures = new Future[numBands];
+        for (int i = 0; i < numBands; i++) {
+            int startY = i * BAND_HEIGHT;
+            int bandHeight = Math.min(BAND_HEIGHT, height - startY);
+            futures[i] = ThreadPool.submit(() -> renderBand(type, drag, colors, cycle,
+                    resultPixels, width, startY, bandHeight));
+        }
+        ThreadPool.waitFor(futures, ProgressTracker.NULL_TRACKER);
+
+        return result;
+    }
+
+    private static void renderBand(GradientType type, ImDrag drag, Color[] colors,
+                                   CycleMethod cycle, int[] resultPixels,
+                                   int width, int startY, int bandHeight) {
+        BufferedImage band = new BufferedImage(width, bandHeight, TYPE_INT_ARGB);
+        Graphics2D g = band.createGraphics();
+        g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+
+        // the custom paints work in device space, therefore instead
+        // of translating the graphics, the gradient itself is moved
+        g.setPaint(type.createPaint(drag.translate(0, -startY), colors, cycle));
+        g.fillRect(0, 0, width, bandHeight);
+        g.dispose();
+
+        int[] bandPixels = getPixels(band);
+        System.arraycopy(bandPixels, 0, resultPixels, startY * width, bandPixels.length);
+    }
+
+    private static int[] getPixels(BufferedImage img) {
+        return ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Renders the gradient with a reduced resolution, so that
+     * the result has at most MAX_PREVIEW_PIXELS pixels.
+     * The returned image must be scaled up to the given size.
+     */
+    public static BufferedImage renderPreview(GradientType type, ImDrag drag, Color[] colors,
+                                              CycleMethod cycle, int width, int height) {
+        double scale = Math.min(1.0, Math.sqrt(MAX_PREVIEW_PIXELS / ((double) width * height)));
+        if (scale == 1.0) {
+            return render(type, drag, colors, cycle, width, height);
+        }
+        int previewWidth = Math.max(1, (int) Math.ceil(width * scale));
+        int previewHeight = Math.max(1, (int) Math.ceil(height * scale));
+        ImDrag previewDrag = drag.transform(AffineTransform.getScaleInstance(
+                previewWidth / (double) width, previewHeight / (double) height));
+        return render(type, previewDrag, colors, cycle, previewWidth, previewHeight);
+    }
+}
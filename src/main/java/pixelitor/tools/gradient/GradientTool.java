@@ -24,6 +24,8 @@ import pixelitor.gui.View;
 import pixelitor.history.History;
 import pixelitor.layers.Drawable;
 import pixelitor.layers.Layer;
+import pixelitor.layers.LayerMask;
+import pixelitor.layers.TmpDrawingLayer;
 import pixelitor.menus.DrawableAction;
 import pixelitor.tools.ClipStrategy;
 import pixelitor.tools.DragTool;
@@ -75,6 +77,11 @@ public class GradientTool extends DragTool {
     private Gradient lastGradient;
     private boolean ignoreRegenerate = false;
 
+    // the drawable that currently shows a low-resolution preview, if any,
+    // and its temporary layer, which is reused while dragging
+    private Drawable previewDrawable;
+    private TmpDrawingLayer previewLayer;
+
     public GradientTool() {
         super("Gradient", 'G', "gradient_tool_icon.png",
                 "<b>click</b> and <b>drag</b> to draw a gradient, " +
@@ -191,13 +198,15 @@ public class GradientTool extends DragTool {
 
     @Override
     public void ongoingDrag(PMouseEvent e) {
-        // the gradient will be drawn only when the mouse is released
+        // the gradient will be drawn only when the mouse is released,
+        // but while a handle is dragged, a low-resolution preview is shown
 
         if (activePoint != null) {
             // draw the handles
             double x = e.getCoX();
             double y = e.getCoY();
             activePoint.mouseDragged(x, y, e.isShiftDown());
+            showPreview(e);
         } else {
             // if we are dragging a new gradient from scratch,
             // we don't want to show the old handles
@@ -207,8 +216,40 @@ public class GradientTool extends DragTool {
         e.repaint();
     }
 
+    private void showPreview(PMouseEvent e) {
+        var comp = e.getComp();
+        Drawable dr = comp.getActiveDrawable();
+        if (dr == null || dr instanceof LayerMask) {
+            return;
+        }
+        ImDrag imDrag = handles.toImDrag(e.getView());
+        if (imDrag.isClick()) {
+            return;
+        }
+        if (dr != previewDrawable) {
+            hidePreview();
+        } else if (previewLayer != null && previewLayer.isDisposed()) {
+            // replaced or merged by something else in the meantime
+            previewLayer = null;
+        }
+        previewLayer = createGradient(imDrag).drawPreviewOn(dr, previewLayer);
+        previewDrawable = dr;
+        comp.tmpDrawingLayerChanged();
+    }
+
+    private void hidePreview() {
+        if (previewDrawable != null) {
+            previewDrawable.discardTmpDrawingLayer();
+            previewDrawable.getComp().tmpDrawingLayerChanged();
+            previewDrawable = null;
+            previewLayer = null;
+        }
+    }
+
     @Override
     public void dragFinished(PMouseEvent e) {
+        hidePreview();
+
         if (userDrag.isClick()) {
             if (activePoint == null) {
                 // clicked outside the handles
@@ -294,6 +335,7 @@ public class GradientTool extends DragTool {
 
     @Override
     public void resetInitialState() {
+        hidePreview();
         handles = null;
         activePoint = null;
         OpenImages.repaintActive();
@@ -378,12 +420,16 @@ public class GradientTool extends DragTool {
         return (GradientType) typeCB.getSelectedItem();
     }
 
-    private void drawGradient(Drawable dr, ImDrag imDrag, boolean addToHistory, String editName) {
-        Gradient gradient = new Gradient(imDrag,
+    private Gradient createGradient(ImDrag imDrag) {
+        return new Gradient(imDrag,
                 getType(), getCycleType(), getGradientColorType(),
                 revertCB.isSelected(),
                 blendingModePanel.getBlendingMode(),
                 blendingModePanel.getOpacity());
+    }
+
+    private void drawGradient(Drawable dr, ImDrag imDrag, boolean addToHistory, String editName) {
+        Gradient gradient = createGradient(imDrag);
 
         if (addToHistory) {
             boolean isFirst = lastGradient == null;
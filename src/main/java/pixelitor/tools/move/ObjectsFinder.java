@@ -98,6 +98,11 @@ public class ObjectsFinder {
             }
 
             ContentLayer contentLayer = (ContentLayer) layer;
+
+            // most layers can be excluded without reading their pixels
+            if (!contentLayer.isHitCandidateAt(pPixel, pixelAlphaThreshold)) {
+                continue;
+            }
             int pixel = contentLayer.getMouseHitPixelAtPoint(pPixel);
 
             if (((pixel >> 24) & 0xff) > pixelAlphaThreshold) {
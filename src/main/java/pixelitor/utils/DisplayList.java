@@ -0,0 +1,570 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import pixelitor.ThreadPool;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.MultipleGradientPaint;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.awt.BasicStroke.JOIN_MITER;
+import static java.awt.RenderingHints.KEY_ANTIALIASING;
+import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
+import static java.awt.geom.PathIterator.SEG_CLOSE;
+import static java.awt.geom.PathIterator.SEG_CUBICTO;
+import static java.awt.geom.PathIterator.SEG_LINETO;
+import static java.awt.geom.PathIterator.SEG_MOVETO;
+import static java.awt.geom.PathIterator.SEG_QUADTO;
+
+/**
+ * Records fill and draw operations in device space, and rasterizes
+ * them into an image in parallel, with the same result as drawing
+ * everything with a single Graphics2D.
+ *
+ * The image is split into square tiles, and the operations touching a tile
+ * are rendered by the thread pool with a Graphics2D clipped to the tile.
+ * Some operations can't be clipped to tiles without changing their pixels
+ * (see isTileable), these are rendered with an unclipped Graphics2D.
+ * The long path segments can't cross the edges of a clip, therefore
+ * the tiles around them are rendered together, as one group with a bigger
+ * clip, and only the rest of the operation is split into tiles.
+ * The tasks are ordered by their dependencies: the tasks touching a tile
+ * run in the order of the recorded operations, but the tasks of
+ * different tiles can run at the same time.
+ */
+public class DisplayList {
+    private static final int MIN_TILE_SIZE = 256;
+
+    // more tiles than threads, so that the threads get similar amounts of work
+    private static final int TILES_PER_CORE = 4;
+
+    // extra margin around the bounds for the antialiasing
+    // and for the stroke normalization
+    private static final int BOUNDS_MARGIN = 2;
+
+    // Marlin splits the path segments that are longer than this (measured
+    // along the control points with the Manhattan norm) where they cross
+    // the edges of the clip, which changes their rasterization slightly
+    private static final double MAX_TILED_SEGMENT_LENGTH = calcMaxTiledSegmentLength();
+
+    private final List<Operation> operations = new ArrayList<>();
+    private final RenderingHints hints = new RenderingHints(null);
+
+    private Paint paint = Color.WHITE;
+    private Stroke stroke = new BasicStroke();
+    private Composite composite = AlphaComposite.SrcOver;
+
+    /**
+     * Sets a rendering hint, which is used for all operations.
+     */
+    public void setRenderingHint(RenderingHints.Key key, Object value) {
+        hints.put(key, value);
+    }
+
+    public void setPaint(Paint paint) {
+        this.paint = paint;
+    }
+
+    public void setColor(Color color) {
+        paint = color;
+    }
+
+    public void setStroke(Stroke stroke) {
+        this.stroke = stroke;
+    }
+
+    public void setComposite(Composite composite) {
+        this.composite = composite;
+    }
+
+    public void fill(Shape shape) {
+        Rectangle bounds = outset(shape.getBounds2D(), 0);
+        operations.add(new Operation(shape, null, paint, composite,
+                bounds, findLongSegments(shape, 0)));
+    }
+
+    public void draw(Shape shape) {
+        Rectangle bounds;
+        Rectangle longSegments;
+        if (stroke instanceof BasicStroke) {
+            BasicStroke bs = (BasicStroke) stroke;
+            // the square caps extend the diagonal lines by half
+            // the width in both directions, the miter joins by
+            // at most half the width times the miter limit
+            double factor = Math.sqrt(2);
+            if (bs.getLineJoin() == JOIN_MITER) {
+                factor = Math.max(factor, bs.getMiterLimit());
+            }
+            double extent = bs.getLineWidth() / 2.0 * factor;
+            bounds = outset(shape.getBounds2D(), extent);
+            // Marlin's stroker splits the segments of the original shape
+            longSegments = findLongSegments(shape, extent);
+        } else {
+            // other strokes are filled as stroked shapes
+            Shape strokedShape = stroke.createStrokedShape(shape);
+            bounds = outset(strokedShape.getBounds2D(), 0);
+            longSegments = findLongSegments(strokedShape, 0);
+        }
+        operations.add(new Operation(shape, stroke, paint, composite, bounds, longSegments));
+    }
+
+    private static Rectangle outset(Rectangle2D r, double amount) {
+        double margin = amount + BOUNDS_MARGIN;
+        int x1 = (int) Math.floor(r.getMinX() - margin);
+        int y1 = (int) Math.floor(r.getMinY() - margin);
+        int x2 = (int) Math.ceil(r.getMaxX() + margin);
+        int y2 = (int) Math.ceil(r.getMaxY() + margin);
+        return new Rectangle(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    private static double calcMaxTiledSegmentLength() {
+        if ("false".equals(System.getProperty("sun.java2d.renderer.clip"))
+                || "false".equals(System.getProperty("sun.java2d.renderer.clip.subdivider"))) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double minLength = 100.0;
+        String minLengthProperty = System.getProperty("sun.java2d.renderer.clip.subdivider.minLength");
+        if (minLengthProperty != null) {
+            try {
+                minLength = Double.parseDouble(minLengthProperty);
+            } catch (NumberFormatException e) {
+                // ignored, Marlin also uses the default
+            }
+        }
+        if (minLength <= 0) {
+            // every segment can be split
+            return -1;
+        }
+        // with a safety margin for the normalization of the coordinates
+        return minLength * 0.9;
+    }
+
+    /**
+     * Returns the bounds of the long segments of the given shape,
+     * outset by the given amount, or null if there are no long segments.
+     */
+    private static Rectangle findLongSegments(Shape shape, double outsetAmount) {
+        Rectangle2D longBounds = null;
+        double[] coords = new double[6];
+        double lastX = 0;
+        double lastY = 0;
+        double moveX = 0;
+        double moveY = 0;
+        for (PathIterator it = shape.getPathIterator(null); !it.isDone(); it.next()) {
+            double length;
+            double startX = lastX;
+            double startY = lastY;
+            int numPoints = 1;
+            int type = it.currentSegment(coords);
+            switch (type) {
+                case SEG_MOVETO:
+                    moveX = coords[0];
+                    moveY = coords[1];
+                    lastX = moveX;
+                    lastY = moveY;
+                    continue;
+                case SEG_LINETO:
+                    length = manhattan(lastX, lastY, coords[0], coords[1]);
+                    lastX = coords[0];
+                    lastY = coords[1];
+                    break;
+                case SEG_QUADTO:
+                    length = manhattan(lastX, lastY, coords[0], coords[1])
+                            + manhattan(coords[0], coords[1], coords[2], coords[3]);
+                    lastX = coords[2];
+                    lastY = coords[3];
+                    numPoints = 2;
+                    break;
+                case SEG_CUBICTO:
+                    length = manhattan(lastX, lastY, coords[0], coords[1])
+                            + manhattan(coords[0], coords[1], coords[2], coords[3])
+                            + manhattan(coords[2], coords[3], coords[4], coords[5]);
+                    lastX = coords[4];
+                    lastY = coords[5];
+                    numPoints = 3;
+                    break;
+                case SEG_CLOSE:
+                    length = manhattan(lastX, lastY, moveX, moveY);
+                    coords[0] = moveX;
+                    coords[1] = moveY;
+                    lastX = moveX;
+                    lastY = moveY;
+                    break;
+                default:
+                    throw new IllegalStateException("type = " + type);
+            }
+            if (length > MAX_TILED_SEGMENT_LENGTH) {
+                // the segment is inside the hull of its control points
+                if (longBounds == null) {
+                    longBounds = new Rectangle2D.Double(startX, startY, 0, 0);
+                } else {
+                    longBounds.add(startX, startY);
+                }
+                for (int i = 0; i < numPoints; i++) {
+                    longBounds.add(coords[2 * i], coords[2 * i + 1]);
+                }
+            }
+        }
+        if (longBounds == null) {
+            return null;
+        }
+        return outset(longBounds, outsetAmount);
+    }
+
+    private static double manhattan(double x1, double y1, double x2, double y2) {
+        return Math.abs(x2 - x1) + Math.abs(y2 - y1);
+    }
+
+    /**
+     * Returns whether the given operation gives the same pixels
+     * when it is clipped to tiles, apart from its long segments.
+     */
+    private boolean isTileable(Operation op) {
+        // the contexts of these paints calculate the colors incrementally
+        // (in float precision) from the start of each region requested by
+        // the antialiasing renderer, therefore their antialiased pixels
+        // depend slightly on the tile boundaries
+        return !(op.paint instanceof MultipleGradientPaint
+                && hints.get(KEY_ANTIALIASING) == VALUE_ANTIALIAS_ON);
+    }
+
+    public int getNumOperations() {
+        return operations.size();
+    }
+
+    @VisibleForTesting
+    int getNumTileableOperations() {
+        return (int) operations.stream()
+                .filter(this::isTileable)
+                .count();
+    }
+
+    @VisibleForTesting
+    int getNumOperationsWithLongSegments() {
+        return (int) operations.stream()
+                .filter(op -> op.longSegments != null)
+                .count();
+    }
+
+    /**
+     * Renders the recorded operations on top of the current contents
+     * of the image. The progress tracker gets one unit for each operation.
+     */
+    public void rasterize(BufferedImage dest, ProgressTracker pt) {
+        if (ThreadPool.getNumCores() == 1 || ThreadPool.isPoolThread()) {
+            // a pool thread must not wait for other tasks of the pool
+            renderInOnePass(dest);
+            pt.unitsDone(operations.size());
+            return;
+        }
+        int tileSize = calcTileSize(dest.getWidth(), dest.getHeight());
+        new TiledRasterization(dest, tileSize).run(pt);
+    }
+
+    @VisibleForTesting
+    void rasterize(BufferedImage dest, int tileSize, ProgressTracker pt) {
+        new TiledRasterization(dest, tileSize).run(pt);
+    }
+
+    private void renderInOnePass(BufferedImage dest) {
+        Graphics2D g = createGraphics(dest, null);
+        for (Operation op : operations) {
+            op.renderOn(g);
+        }
+        g.dispose();
+    }
+
+    private Graphics2D createGraphics(BufferedImage dest, Rectangle clip) {
+        Graphics2D g = dest.createGraphics();
+        g.setRenderingHints(hints);
+        if (clip != null) {
+            g.setClip(clip);
+        }
+        return g;
+    }
+
+    // every tile processes the whole geometry of the operations touching it,
+    // therefore the tiles shouldn't be smaller than necessary
+    private static int calcTileSize(int width, int height) {
+        int numCores = ThreadPool.getNumCores();
+        double tileArea = width * (double) height / (numCores * TILES_PER_CORE);
+        return Math.max(MIN_TILE_SIZE, (int) Math.ceil(Math.sqrt(tileArea)));
+    }
+
+    private static int divideRoundingUp(int size, int tileSize) {
+        return (size + tileSize - 1) / tileSize;
+    }
+
+    /**
+     * A group of operations rendered together with the same clip: a tile,
+     * the tiles around some long segments, or (for the operations
+     * that aren't tileable) the whole image.
+     */
+    private static class Task {
+        private final Rectangle clip;
+        private final List<Operation> ops = new ArrayList<>();
+        private final List<Task> successors = new ArrayList<>();
+
+        // the number of operations reported to the progress tracker
+        private int units;
+
+        // the number of unfinished predecessors
+        private int numPredecessors;
+        private AtomicInteger pending;
+
+        private Task(Rectangle clip) {
+            this.clip = clip;
+        }
+    }
+
+    /**
+     * The task graph of one rasterization. The tasks never wait for each other:
+     * the task finishing the last predecessor of a task submits it to the pool.
+     */
+    private class TiledRasterization {
+        private final BufferedImage dest;
+        private final List<Task> tasks = new ArrayList<>();
+        private final int numTilesX;
+        private final Task[] openTasks;
+        private final Task[] lastTasks;
+
+        // the task collecting the current run of grouped operations
+        private Task groupTask;
+
+        // the operations which don't touch the image
+        private int skippedUnits;
+
+        // the units of the finished tasks, or -1 for a failed one
+        private final BlockingQueue<Integer> finishedUnits = new LinkedBlockingQueue<>();
+        private volatile Throwable failure;
+
+        TiledRasterization(BufferedImage dest, int tileSize) {
+            this.dest = dest;
+            int width = dest.getWidth();
+            int height = dest.getHeight();
+            numTilesX = divideRoundingUp(width, tileSize);
+            int numTilesY = divideRoundingUp(height, tileSize);
+            int numTiles = numTilesX * numTilesY;
+
+            // for each tile, the task collecting its current tileable operations
+            openTasks = new Task[numTiles];
+            // for each tile, the last task touching it
+            lastTasks = new Task[numTiles];
+
+            for (Operation op : operations) {
+                Rectangle b = op.bounds;
+                int firstX = Math.max(0, Math.floorDiv(b.x, tileSize));
+                int firstY = Math.max(0, Math.floorDiv(b.y, tileSize));
+                int lastX = Math.min(numTilesX - 1, Math.floorDiv(b.x + b.width, tileSize));
+                int lastY = Math.min(numTilesY - 1, Math.floorDiv(b.y + b.height, tileSize));
+                if (firstX > lastX || firstY > lastY) {
+                    skippedUnits++;
+                    continue;
+                }
+
+                if (!isTileable(op)) {
+                    addToGroup(op, null, firstX, firstY, lastX, lastY);
+                    continue;
+                }
+
+                // the tiles around the long segments, if they touch the image
+                int groupFirstX = 0;
+                int groupFirstY = 0;
+                int groupLastX = -1;
+                int groupLastY = -1;
+                Rectangle lb = op.longSegments;
+                if (lb != null) {
+                    groupFirstX = Math.max(firstX, Math.floorDiv(lb.x, tileSize));
+                    groupFirstY = Math.max(firstY, Math.floorDiv(lb.y, tileSize));
+                    groupLastX = Math.min(lastX, Math.floorDiv(lb.x + lb.width, tileSize));
+                    groupLastY = Math.min(lastY, Math.floorDiv(lb.y + lb.height, tileSize));
+                }
+                boolean grouped = groupFirstX <= groupLastX && groupFirstY <= groupLastY;
+                if (grouped) {
+                    int x = groupFirstX * tileSize;
+                    int y = groupFirstY * tileSize;
+                    Rectangle clip = new Rectangle(x, y,
+                            Math.min(width, (groupLastX + 1) * tileSize) - x,
+                            Math.min(height, (groupLastY + 1) * tileSize) - y);
+                    addToGroup(op, clip, groupFirstX, groupFirstY, groupLastX, groupLastY);
+                } else {
+                    // the group can't be continued, because
+                    // this operation can touch any of its tiles
+                    groupTask = null;
+                }
+
+                // the rest of the operation is split into tiles
+                boolean counted = grouped;
+                for (int ty = firstY; ty <= lastY; ty++) {
+                    for (int tx = firstX; tx <= lastX; tx++) {
+                        if (tx >= groupFirstX && tx <= groupLastX
+                                && ty >= groupFirstY && ty <= groupLastY) {
+                            continue;
+                        }
+                        int tile = ty * numTilesX + tx;
+                        Task task = openTasks[tile];
+                        if (task == null) {
+                            int x = tx * tileSize;
+                            int y = ty * tileSize;
+                            task = new Task(new Rectangle(x, y,
+                                    Math.min(tileSize, width - x), Math.min(tileSize, height - y)));
+                            tasks.add(task);
+                            link(lastTasks[tile], task);
+                            lastTasks[tile] = task;
+                            openTasks[tile] = task;
+                        }
+                        task.ops.add(op);
+                        if (!counted) {
+                            task.units++;
+                            counted = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        // Adds the operation to the group with the given clip (null for the
+        // whole image), which covers the given tiles. Consecutive operations
+        // with the same clip are rendered by the same task.
+        private void addToGroup(Operation op, Rectangle clip,
+                                int firstX, int firstY, int lastX, int lastY) {
+            if (groupTask == null || !Objects.equals(groupTask.clip, clip)) {
+                groupTask = new Task(clip);
+                tasks.add(groupTask);
+            }
+            groupTask.ops.add(op);
+            groupTask.units++;
+            for (int ty = firstY; ty <= lastY; ty++) {
+                for (int tx = firstX; tx <= lastX; tx++) {
+                    int tile = ty * numTilesX + tx;
+                    if (lastTasks[tile] != groupTask) {
+                        // the later operations of this tile must wait
+                        openTasks[tile] = null;
+                        link(lastTasks[tile], groupTask);
+                        lastTasks[tile] = groupTask;
+                    }
+                }
+            }
+        }
+
+        private void link(Task predecessor, Task successor) {
+            if (predecessor != null) {
+                predecessor.successors.add(successor);
+                successor.numPredecessors++;
+            }
+        }
+
+        void run(ProgressTracker pt) {
+            pt.unitsDone(skippedUnits);
+            for (Task task : tasks) {
+                task.pending = new AtomicInteger(task.numPredecessors);
+            }
+            for (Task task : tasks) {
+                if (task.numPredecessors == 0) {
+                    submit(task);
+                }
+            }
+
+            try {
+                for (int i = 0; i < tasks.size(); i++) {
+                    int units = finishedUnits.take();
+                    if (units < 0) {
+                        throw new IllegalStateException(failure);
+                    }
+                    pt.unitsDone(units);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void submit(Task task) {
+            ThreadPool.submit(() -> execute(task));
+        }
+
+        private void execute(Task task) {
+            try {
+                Graphics2D g = createGraphics(dest, task.clip);
+                for (Operation op : task.ops) {
+                    op.renderOn(g);
+                }
+                g.dispose();
+            } catch (Throwable e) {
+                failure = e;
+                finishedUnits.add(-1);
+                return;
+            }
+
+            for (Task successor : task.successors) {
+                if (successor.pending.decrementAndGet() == 0) {
+                    submit(successor);
+                }
+            }
+            finishedUnits.add(task.units);
+        }
+    }
+
+    private static class Operation {
+        private final Shape shape;
+        private final Stroke stroke; // null for fills
+        private final Paint paint;
+        private final Composite composite;
+        private final Rectangle bounds;
+        private final Rectangle longSegments; // null if there are none
+
+        private Operation(Shape shape, Stroke stroke, Paint paint,
+                          Composite composite, Rectangle bounds, Rectangle longSegments) {
+            this.shape = shape;
+            this.stroke = stroke;
+            this.paint = paint;
+            this.composite = composite;
+            this.bounds = bounds;
+            this.longSegments = longSegments;
+        }
+
+        private void renderOn(Graphics2D g) {
+            g.setPaint(paint);
+            g.setComposite(composite);
+            if (stroke == null) {
+                g.fill(shape);
+            } else {
+                g.setStroke(stroke);
+                g.draw(shape);
+            }
+        }
+    }
+}
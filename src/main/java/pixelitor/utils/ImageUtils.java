@@ -21,6 +21,9 @@ import com.jhlabs.composite.OverlayComposite;
 import com.jhlabs.composite.ScreenComposite;
 import com.jhlabs.image.BoxBlurFilter;
 import com.jhlabs.image.EmbossFilter;
+import com.jhlabs.image.InverseColorMap;
+import com.jhlabs.image.PixelAccess;
+import com.jhlabs.image.QuantizationEngine;
 import org.jdesktop.swingx.graphics.BlendComposite;
 import org.jdesktop.swingx.painter.CheckerboardPainter;
 import pixelitor.Canvas;
@@ -42,6 +45,7 @@ import java.net.URL;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
 
+import static com.jhlabs.image.QuantizationEngine.DITHER_FLOYD_STEINBERG;
 import static java.awt.AlphaComposite.SRC_OVER;
 import static java.awt.BasicStroke.CAP_ROUND;
 import static java.awt.BasicStroke.JOIN_ROUND;
@@ -62,11 +66,19 @@ public class ImageUtils {
     public static final double DEG_315_IN_RADIANS = 0.7853981634;
     private static final Color CHECKERBOARD_GRAY = new Color(200, 200, 200);
 
-    private static final GraphicsConfiguration graphicsConfiguration = GraphicsEnvironment
+    // null in headless mode, where there is no screen device
+    private static final GraphicsConfiguration graphicsConfiguration = GraphicsEnvironment.isHeadless()
+            ? null
+            : GraphicsEnvironment
             .getLocalGraphicsEnvironment()
             .getDefaultScreenDevice()
             .getDefaultConfiguration();
-    private static final ColorModel defaultColorModel = graphicsConfiguration.getColorModel();
+
+    // the headless fallback is the premultiplied ARGB model,
+    // which is what the typical desktop configurations return
+    private static final ColorModel defaultColorModel = graphicsConfiguration == null
+            ? new BufferedImage(1, 1, TYPE_INT_ARGB_PRE).getColorModel()
+            : graphicsConfiguration.getColorModel();
 
     private ImageUtils() {
     }
@@ -84,8 +96,7 @@ public class ImageUtils {
             return input;
         }
 
-        BufferedImage output = graphicsConfiguration
-                .createCompatibleImage(input.getWidth(), input.getHeight(), TRANSLUCENT);
+        BufferedImage output = createSysCompatibleImage(input.getWidth(), input.getHeight());
         Graphics2D g = output.createGraphics();
         g.drawImage(input, 0, 0, null);
         g.dispose();
@@ -100,6 +111,9 @@ public class ImageUtils {
     public static BufferedImage createSysCompatibleImage(int width, int height) {
         assert width > 0 && height > 0;
 
+        if (graphicsConfiguration == null) {
+            return new BufferedImage(width, height, TYPE_INT_ARGB_PRE);
+        }
         return graphicsConfiguration.createCompatibleImage(width, height, TRANSLUCENT);
     }
 
@@ -110,6 +124,9 @@ public class ImageUtils {
     public static VolatileImage createSysCompatibleVolatileImage(int width, int height) {
         assert width > 0 && height > 0;
 
+        if (graphicsConfiguration == null) {
+            throw new IllegalStateException("volatile images need a screen device");
+        }
         return graphicsConfiguration.createCompatibleVolatileImage(width, height, TRANSLUCENT);
     }
 
@@ -400,22 +417,10 @@ public class ImageUtils {
 
             DataBufferInt srcDataBuffer = (DataBufferInt) src.getRaster().getDataBuffer();
             pixels = srcDataBuffer.getData();
-        } else if (src.getType() == TYPE_BYTE_GRAY) {
-            // TODO this does not seem to work - why?
-            int width = src.getWidth();
-            int height = src.getHeight();
-            pixels = src.getRGB(0, 0, width, height, null, 0, width);
         } else {
-            int width = src.getWidth();
-            int height = src.getHeight();
-            pixels = new int[width * height];
-            PixelGrabber pg = new PixelGrabber(src, 0, 0, width, height, pixels, 0, width);
-
-            try {
-                pg.grabPixels();
-            } catch (InterruptedException e) {
-                Messages.showException(e);
-            }
+            // a copy, converted without the per-pixel color model
+            // calls for the gray and the byte-interleaved images
+            pixels = PixelAccess.getRGB(src, 0, 0, src.getWidth(), src.getHeight(), null);
         }
         return pixels;
     }
@@ -517,62 +522,51 @@ public class ImageUtils {
         return dest;
     }
 
-    // based on http://gman.eichberger.de/2007/07/transparent-gifs-in-java.html
-    // TODO an optimized palette should be created based on the image content
+    /**
+     * Converts the image to an 8-bit indexed image with an optimized
+     * (median cut) palette and Floyd-Steinberg dithering.
+     * The pixels with an alpha less than 128 become transparent.
+     */
     public static BufferedImage convertToIndexed(BufferedImage src, boolean flushOld) {
         assert src != null;
 
-        if (src.isAlphaPremultiplied()) {
-            // otherwise transparent parts will be black when
-            // this is drawn on the transparent image
+        if (src.getType() != TYPE_INT_ARGB) {
             src = convertToARGB(src, flushOld);
             flushOld = true;
         }
 
-        BufferedImage dest = new BufferedImage(
-                src.getWidth(), src.getHeight(), TYPE_BYTE_INDEXED);
+        int width = src.getWidth();
+        int height = src.getHeight();
+        int[] pixels = getPixelsAsArray(src);
 
-        Graphics2D g = dest.createGraphics();
-        // this hideous color will be transparent
-        g.setColor(new Color(231, 20, 189));
-        g.fillRect(0, 0, src.getWidth(), src.getHeight());
-        g.dispose();
+        // the last palette index is reserved for the transparent pixels
+        int[] palette = QuantizationEngine.createPalette(pixels, 255,
+                QuantizationEngine.MEDIAN_CUT, true);
+        int transparentIndex = palette.length;
+        byte[] indexes = QuantizationEngine.remap(pixels, width, height,
+                new InverseColorMap(palette), DITHER_FLOYD_STEINBERG, false, transparentIndex);
 
-        dest = makeIndexedTransparent(dest, 0, 0);
+        int size = palette.length + 1;
+        byte[] reds = new byte[size];
+        byte[] greens = new byte[size];
+        byte[] blues = new byte[size];
+        for (int i = 0; i < palette.length; i++) {
+            reds[i] = (byte) (palette[i] >> 16);
+            greens[i] = (byte) (palette[i] >> 8);
+            blues[i] = (byte) palette[i];
+        }
+        IndexColorModel icm = new IndexColorModel(8, size, reds, greens, blues, transparentIndex);
 
-        g = dest.createGraphics();
-        g.drawImage(src, 0, 0, null);
-        g.dispose();
+        WritableRaster raster = icm.createCompatibleWritableRaster(width, height);
+        raster.setDataElements(0, 0, width, height, indexes);
 
         if (flushOld) {
             src.flush();
         }
 
-        return dest;
+        return new BufferedImage(icm, raster, false, null);
     }
 
-    private static BufferedImage makeIndexedTransparent(BufferedImage image, int x, int y) {
-        ColorModel cm = image.getColorModel();
-        assert cm instanceof IndexColorModel;
-
-        IndexColorModel icm = (IndexColorModel) cm;
-        WritableRaster raster = image.getRaster();
-
-        int size = icm.getMapSize();
-        byte[] reds = new byte[size];
-        byte[] greens = new byte[size];
-        byte[] blues = new byte[size];
-        icm.getReds(reds);
-        icm.getGreens(greens);
-        icm.getBlues(blues);
-
-        int pixel = raster.getSample(x, y, 0);
-        IndexColorModel icm2 = new IndexColorModel(8, size, reds, greens, blues, pixel);
-
-        return new BufferedImage(icm2, raster, image.isAlphaPremultiplied(), null);
-    }
-
-
     // without this the drawing on large images would be very slow
     // TODO is this faster? the simple g.drawImage also respects the clipping
 
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.lang.String.format;
+import static pixelitor.utils.MemoryInfo.ONE_MEGABYTE;
+
+/**
+ * Admission control for the operations that allocate big images.
+ *
+ * Before such an operation starts, it asks for the estimated number
+ * of bytes it will need. If the heap doesn't have that much free space,
+ * the registered {@link MemoryConsumer}s are asked to release their
+ * reclaimable memory (history backups, caches), and if even that is not
+ * enough, the operation is rejected up front, instead of running
+ * into an OutOfMemoryError halfway through.
+ */
+public final class MemoryGovernor {
+    /**
+     * A subsystem that holds a significant amount of memory.
+     */
+    public interface MemoryConsumer {
+        String getName();
+
+        /**
+         * Returns the (estimated) number of bytes held by this subsystem.
+         */
+        long getUsedBytes();
+
+        /**
+         * Tries to release at least the given number of bytes, and
+         * returns the number of bytes actually released. It's called on
+         * the thread asking for the memory, and the subsystems which are
+         * not thread-safe can return 0 when called outside the EDT.
+         */
+        default long reclaim(long bytes) {
+            return 0;
+        }
+    }
+
+    // the reclaiming happens in the registration order
+    private static final List<MemoryConsumer> consumers = new CopyOnWriteArrayList<>();
+
+    // the free space that should remain after admitting an operation,
+    // because the estimates can't be exact
+    private static final long SAFETY_MARGIN = 32L * ONE_MEGABYTE;
+
+    private MemoryGovernor() {
+        // should not be instantiated
+    }
+
+    public static void register(MemoryConsumer consumer) {
+        consumers.add(consumer);
+    }
+
+    public static void unregister(MemoryConsumer consumer) {
+        consumers.remove(consumer);
+    }
+
+    /**
+     * Returns true if an operation needing the given number
+     * of bytes can run, after releasing memory if necessary.
+     */
+    public static boolean admit(long neededBytes) {
+        if (neededBytes <= 0) {
+            return true;
+        }
+        long needed = neededBytes + SAFETY_MARGIN;
+        if (getAvailableBytes() >= needed) {
+            return true;
+        }
+
+        // the used memory can include garbage
+        System.gc();
+        long available = getAvailableBytes();
+        if (available >= needed) {
+            return true;
+        }
+
+        for (MemoryConsumer consumer : consumers) {
+            long released = consumer.reclaim(needed - available);
+            if (released > 0) {
+                System.gc();
+                available = getAvailableBytes();
+                if (available >= needed) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Like {@link #admit(long)}, but also tells the user if the
+     * operation with the given name was rejected.
+     */
+    public static boolean admitOrWarn(String operation, long neededBytes) {
+        if (admit(neededBytes)) {
+            return true;
+        }
+        String msg = format("There is not enough memory for %s.\n" +
+                        "Available memory is %d megabytes, the memory needed " +
+                        "for this operation is %d megabytes.",
+                operation, getAvailableBytes() / ONE_MEGABYTE,
+                neededBytes / ONE_MEGABYTE);
+        Messages.showInfo("Not enough memory", msg);
+        return false;
+    }
+
+    /**
+     * Returns the number of bytes that can still be allocated,
+     * including the not yet allocated part of the maximal heap.
+     */
+    public static long getAvailableBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return runtime.maxMemory() - used;
+    }
+
+    /**
+     * Returns the memory usage of the registered subsystems, and
+     * the rest of the used heap with the key "Other".
+     */
+    public static Map<String, Long> getUsageBySubsystem() {
+        Map<String, Long> usage = new LinkedHashMap<>();
+        long sum = 0;
+        for (MemoryConsumer consumer : consumers) {
+            long used = consumer.getUsedBytes();
+            usage.merge(consumer.getName(), used, Long::sum);
+            sum += used;
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long heapUsed = runtime.totalMemory() - runtime.freeMemory();
+        usage.put("Other", Math.max(0, heapUsed - sum));
+        return usage;
+    }
+
+    /**
+     * Returns the number of bytes in the pixel data of the given image.
+     */
+    public static long bytesOf(BufferedImage img) {
+        if (img == null) {
+            return 0;
+        }
+        return bytesOf(img.getRaster());
+    }
+
+    public static long bytesOf(Raster raster) {
+        if (raster == null) {
+            return 0;
+        }
+        DataBuffer buffer = raster.getDataBuffer();
+        long bytesPerElement = DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+        return (long) buffer.getSize() * buffer.getNumBanks() * bytesPerElement;
+    }
+
+    /**
+     * Returns the number of bytes in an ARGB image with the given size.
+     */
+    public static long bytesOfImage(long width, long height) {
+        return 4 * width * height;
+    }
+}
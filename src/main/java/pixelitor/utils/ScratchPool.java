@@ -0,0 +1,394 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import pixelitor.Build;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static pixelitor.utils.MemoryInfo.ONE_MEGABYTE;
+
+/**
+ * A pool of temporary images and int arrays, bucketed by their size
+ * (and type), so that the canvas-sized scratch buffers of the filters
+ * and of the compositing don't have to be allocated again and again.
+ *
+ * The buffers are taken out with an acquire method and given back with
+ * the matching release method, after which the caller must not use them.
+ * The acquired images are cleared, the content of the acquired arrays
+ * is undefined. The total size of the pooled buffers is bounded
+ * (the least recently released ones are dropped first), and the pool
+ * is registered at the {@link MemoryGovernor}, which can empty it.
+ *
+ * In development mode the buffers that are acquired, but garbage
+ * collected without being released are reported as leaks.
+ */
+public final class ScratchPool {
+    private static long maxBytes = Math.min(128L * ONE_MEGABYTE,
+            Runtime.getRuntime().maxMemory() / 16);
+
+    // the pooled buffers of each size, the last released one is reused first
+    private static final Map<Object, ArrayDeque<Entry>> buckets = new HashMap<>();
+
+    // all pooled buffers, in the order of their release
+    private static final Set<Entry> releaseOrder = new LinkedHashSet<>();
+
+    // for detecting buffers that are released twice
+    private static final Map<Object, Entry> pooled = new IdentityHashMap<>();
+
+    private static long pooledBytes = 0;
+
+    private static boolean leakDetection = Build.isDevelopment();
+    private static final ReferenceQueue<Object> leakQueue = new ReferenceQueue<>();
+    private static final Map<Object, LeakRef> outstanding = new WeakHashMap<>();
+    private static final Set<LeakRef> leakRefs = Collections.newSetFromMap(new IdentityHashMap<>());
+    private static int numLeaks = 0;
+
+    private static int sysCompatibleType = -1;
+
+    static {
+        MemoryGovernor.register(new PoolMemory());
+    }
+
+    private ScratchPool() {
+        // should not be instantiated
+    }
+
+    /**
+     * Returns a cleared image with the given size and type, which
+     * must be one of the int types or TYPE_BYTE_GRAY.
+     */
+    public static BufferedImage acquireImage(int width, int height, int type) {
+        if (!isPoolableType(type)) {
+            throw new IllegalArgumentException("type = " + type);
+        }
+        BufferedImage img = (BufferedImage) take(new ImageKey(width, height, type));
+        if (img == null) {
+            img = new BufferedImage(width, height, type);
+        } else {
+            clear(img);
+        }
+        track(img);
+        return img;
+    }
+
+    /**
+     * Returns a cleared image with the same type as the
+     * images created by {@link ImageUtils#createSysCompatibleImage}.
+     */
+    public static BufferedImage acquireSysCompatibleImage(int width, int height) {
+        if (sysCompatibleType == -1) {
+            sysCompatibleType = ImageUtils.createSysCompatibleImage(1, 1).getType();
+        }
+        if (!isPoolableType(sysCompatibleType)) {
+            // can't be pooled, just allocated
+            BufferedImage img = ImageUtils.createSysCompatibleImage(width, height);
+            track(img);
+            return img;
+        }
+        return acquireImage(width, height, sysCompatibleType);
+    }
+
+    /**
+     * Returns an int array with the given length. Its content is undefined.
+     */
+    public static int[] acquireIntArray(int length) {
+        int[] array = (int[]) take(length);
+        if (array == null) {
+            array = new int[length];
+        }
+        track(array);
+        return array;
+    }
+
+    /**
+     * Gives back an image that was acquired from this pool, or any other
+     * image with a poolable type, if it's not referenced elsewhere.
+     */
+    public static void release(BufferedImage img) {
+        Objects.requireNonNull(img);
+        untrack(img);
+        if (!isPoolable(img)) {
+            return;
+        }
+        var key = new ImageKey(img.getWidth(), img.getHeight(), img.getType());
+        put(key, img, MemoryGovernor.bytesOf(img));
+    }
+
+    public static void release(int[] array) {
+        Objects.requireNonNull(array);
+        untrack(array);
+        put(array.length, array, 4L * array.length);
+    }
+
+    /**
+     * Tells the pool that an acquired image will not be released,
+     * because it's kept by the caller, so that it's not reported as a leak.
+     */
+    public static void keep(BufferedImage img) {
+        untrack(img);
+    }
+
+    private static boolean isPoolableType(int type) {
+        return type == TYPE_INT_ARGB || type == TYPE_INT_ARGB_PRE
+                || type == TYPE_INT_RGB || type == TYPE_BYTE_GRAY;
+    }
+
+    // only whole images, not subimages, which share the data with their parents
+    private static boolean isPoolable(BufferedImage img) {
+        if (!isPoolableType(img.getType())) {
+            return false;
+        }
+        WritableRaster raster = img.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        return raster.getParent() == null
+                && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0
+                && buffer.getNumBanks() == 1
+                && buffer.getOffset() == 0
+                && buffer.getSize() == img.getWidth() * img.getHeight();
+    }
+
+    private static void clear(BufferedImage img) {
+        DataBuffer buffer = img.getRaster().getDataBuffer();
+        if (buffer instanceof DataBufferInt) {
+            Arrays.fill(((DataBufferInt) buffer).getData(), 0);
+        } else {
+            Arrays.fill(((DataBufferByte) buffer).getData(), (byte) 0);
+        }
+    }
+
+    private static synchronized Object take(Object key) {
+        ArrayDeque<Entry> bucket = buckets.get(key);
+        if (bucket == null) {
+            return null;
+        }
+        Entry entry = bucket.pollLast();
+        if (bucket.isEmpty()) {
+            buckets.remove(key);
+        }
+        if (entry == null) {
+            return null;
+        }
+        releaseOrder.remove(entry);
+        pooled.remove(entry.buffer);
+        pooledBytes -= entry.bytes;
+        return entry.buffer;
+    }
+
+    private static synchronized void put(Object key, Object buffer, long bytes) {
+        if (pooled.containsKey(buffer)) {
+            throw new IllegalStateException("released twice");
+        }
+        if (bytes > maxBytes) {
+            return;
+        }
+        while (pooledBytes + bytes > maxBytes) {
+            evictOldest();
+        }
+        Entry entry = new Entry(key, buffer, bytes);
+        buckets.computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(entry);
+        releaseOrder.add(entry);
+        pooled.put(buffer, entry);
+        pooledBytes += bytes;
+    }
+
+    private static void evictOldest() {
+        Iterator<Entry> it = releaseOrder.iterator();
+        Entry oldest = it.next();
+        it.remove();
+        ArrayDeque<Entry> bucket = buckets.get(oldest.key);
+        bucket.removeFirstOccurrence(oldest);
+        if (bucket.isEmpty()) {
+            buckets.remove(oldest.key);
+        }
+        pooled.remove(oldest.buffer);
+        pooledBytes -= oldest.bytes;
+    }
+
+    public static synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    public static synchronized int getNumPooled() {
+        return pooled.size();
+    }
+
+    public static synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @VisibleForTesting
+    public static synchronized void setMaxBytes(long maxBytes) {
+        ScratchPool.maxBytes = maxBytes;
+        while (pooledBytes > maxBytes) {
+            evictOldest();
+        }
+    }
+
+    /**
+     * Drops all pooled buffers and returns the number of released bytes.
+     */
+    public static synchronized long clear() {
+        long released = pooledBytes;
+        buckets.clear();
+        releaseOrder.clear();
+        pooled.clear();
+        pooledBytes = 0;
+        return released;
+    }
+
+    private static synchronized void track(Object buffer) {
+        if (!leakDetection) {
+            return;
+        }
+        checkLeaks();
+        var ref = new LeakRef(buffer, new Throwable("acquired here"));
+        outstanding.put(buffer, ref);
+        leakRefs.add(ref);
+    }
+
+    private static synchronized void untrack(Object buffer) {
+        if (!leakDetection) {
+            return;
+        }
+        LeakRef ref = outstanding.remove(buffer);
+        if (ref != null) {
+            // cleared references are not enqueued
+            ref.clear();
+            leakRefs.remove(ref);
+        }
+        checkLeaks();
+    }
+
+    /**
+     * Reports the acquired buffers that were garbage collected
+     * without being released, and returns the number of leaks so far.
+     */
+    public static synchronized int checkLeaks() {
+        LeakRef ref;
+        while ((ref = (LeakRef) leakQueue.poll()) != null) {
+            if (leakRefs.remove(ref)) {
+                numLeaks++;
+                System.err.println("ScratchPool: a buffer was not released");
+                ref.acquisition.printStackTrace();
+            }
+        }
+        return numLeaks;
+    }
+
+    @VisibleForTesting
+    public static synchronized void setLeakDetection(boolean leakDetection) {
+        ScratchPool.leakDetection = leakDetection;
+        if (!leakDetection) {
+            outstanding.clear();
+            leakRefs.clear();
+        }
+    }
+
+    private static class Entry {
+        private final Object key;
+        private final Object buffer;
+        private final long bytes;
+
+        Entry(Object key, Object buffer, long bytes) {
+            this.key = key;
+            this.buffer = buffer;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class ImageKey {
+        private final int width;
+        private final int height;
+        private final int type;
+
+        ImageKey(int width, int height, int type) {
+            this.width = width;
+            this.height = height;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ImageKey)) {
+                return false;
+            }
+            ImageKey other = (ImageKey) o;
+            return width == other.width && height == other.height && type == other.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return (width * 31 + height) * 31 + type;
+        }
+    }
+
+    private static class LeakRef extends WeakReference<Object> {
+        private final Throwable acquisition;
+
+        LeakRef(Object buffer, Throwable acquisition) {
+            super(buffer, leakQueue);
+            this.acquisition = acquisition;
+        }
+    }
+
+    /**
+     * The pooled buffers as a subsystem managed by the {@link MemoryGovernor}
+     */
+    private static class PoolMemory implements MemoryGovernor.MemoryConsumer {
+        @Override
+        public String getName() {
+            return "Scratch Buffers";
+        }
+
+        @Override
+        public long getUsedBytes() {
+            return getPooledBytes();
+        }
+
+        @Override
+        public long reclaim(long bytes) {
+            return clear();
+        }
+    }
+}
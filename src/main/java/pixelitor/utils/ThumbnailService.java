@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import pixelitor.utils.debug.Telemetry;
+
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static pixelitor.utils.debug.Telemetry.Category.THUMBNAIL;
+
+/**
+ * Creates thumbnails (such as the layer icons) on a dedicated
+ * low-priority thread, so that they don't compete with the
+ * filters in the {@link pixelitor.ThreadPool}.
+ *
+ * The requests are coalesced by their key: if a request for the
+ * same key is still waiting, then only its source and callback
+ * are replaced. The requests for the same key are also throttled,
+ * so that during fast edits a thumbnail is created at most once
+ * in every {@link #THROTTLE_MILLIS} milliseconds.
+ */
+public final class ThumbnailService {
+    private static final long THROTTLE_MILLIS = 150;
+
+    private static final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor(ThumbnailService::createThread);
+
+    // the requests that are scheduled, but not yet started
+    private static final Map<Object, Request> waiting = new HashMap<>();
+
+    // the start time of the last request for each key, guarded by "waiting"
+    private static final Map<Object, Long> lastStarts = new WeakHashMap<>();
+
+    private ThumbnailService() {
+        // should not be instantiated
+    }
+
+    private static Thread createThread(Runnable r) {
+        Thread thread = new Thread(r, "Thumbnails");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    }
+
+    /**
+     * Creates the thumbnail of the given image with the given
+     * function on the thumbnail thread, and passes it to the
+     * given callback on the EDT.
+     */
+    public static void submit(Object key, BufferedImage src,
+                              Function<BufferedImage, BufferedImage> creator,
+                              Consumer<BufferedImage> callbackOnEDT) {
+        submit(key, () -> creator.apply(src), callbackOnEDT);
+    }
+
+    /**
+     * Creates a thumbnail with the given supplier on the thumbnail thread,
+     * and passes it to the given callback on the EDT. This is used if there
+     * is no source image in the heap, the supplier must be thread-safe.
+     */
+    public static void submit(Object key, Supplier<BufferedImage> creator,
+                              Consumer<BufferedImage> callbackOnEDT) {
+        Request request = new Request(creator, callbackOnEDT);
+        synchronized (waiting) {
+            if (waiting.put(key, request) != null) {
+                // coalesced into the already scheduled task
+                return;
+            }
+            long delay = 0;
+            Long lastStart = lastStarts.get(key);
+            if (lastStart != null) {
+                long sinceLast = System.currentTimeMillis() - lastStart;
+                delay = Math.max(0, THROTTLE_MILLIS - sinceLast);
+            }
+            executor.schedule(() -> run(key), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void run(Object key) {
+        Request request;
+        synchronized (waiting) {
+            request = waiting.remove(key);
+            lastStarts.put(key, System.currentTimeMillis());
+        }
+        try {
+            Telemetry.Span span = Telemetry.start(THUMBNAIL, key.getClass().getSimpleName());
+            BufferedImage thumb = request.creator.get();
+            span.end();
+            SwingUtilities.invokeLater(() -> request.callback.accept(thumb));
+        } catch (Exception e) {
+            Messages.showExceptionOnEDT(e);
+        }
+    }
+
+    private static class Request {
+        private final Supplier<BufferedImage> creator;
+        private final Consumer<BufferedImage> callback;
+
+        Request(Supplier<BufferedImage> creator,
+                Consumer<BufferedImage> callback) {
+            this.creator = creator;
+            this.callback = callback;
+        }
+    }
+}
@@ -34,6 +34,7 @@ public class AppNode extends DebugNode {
         add(DebugNodes.createSystemNode());
         add(Tools.getCurrent().getDebugNode());
         add(History.getDebugNode());
+        add(Telemetry.createDebugNode());
 
         addImageNodes();
     }
@@ -0,0 +1,438 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils.debug;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Records the execution times and the allocated bytes of the
+ * potentially slow operations, so that it can be found out which
+ * operations make the users wait.
+ *
+ * The statistics are collected per category and operation name
+ * (for example per filter), and they can be seen in the
+ * "Internal State" debug tree or exported in CSV or JSON format.
+ */
+public final class Telemetry {
+    public enum Category {
+        FILTER("Filters"),
+        COMPOSITE("Composite Recalculation"),
+        HISTORY("History Snapshots"),
+        IO_READ("File Reads"),
+        IO_WRITE("File Writes"),
+        THUMBNAIL("Thumbnails");
+
+        private final String displayName;
+
+        Category(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+
+    private static final Map<Key, Stats> stats = new ConcurrentHashMap<>();
+
+    // null if the JVM can't measure the allocated bytes
+    private static final com.sun.management.ThreadMXBean threadBean = findThreadBean();
+
+    private Telemetry() {
+        // should not be instantiated
+    }
+
+    private static com.sun.management.ThreadMXBean findThreadBean() {
+        try {
+            var bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                var sunBean = (com.sun.management.ThreadMXBean) bean;
+                if (sunBean.isThreadAllocatedMemorySupported()
+                        && sunBean.isThreadAllocatedMemoryEnabled()) {
+                    return sunBean;
+                }
+            }
+        } catch (Throwable e) {
+            // the jdk.management module is not available
+        }
+        return null;
+    }
+
+    /**
+     * Starts measuring an operation. The returned span must be ended
+     * (or closed) on the same thread after the operation finished.
+     */
+    public static Span start(Category category, String operation) {
+        return new Span(category, operation);
+    }
+
+    /**
+     * Returns a runnable that measures the given one when it runs.
+     */
+    public static Runnable measured(Category category, String operation, Runnable task) {
+        return () -> {
+            try (Span span = start(category, operation)) {
+                task.run();
+            }
+        };
+    }
+
+    /**
+     * Returns a supplier that measures the given one when it runs.
+     */
+    public static <T> Supplier<T> measured(Category category, String operation, Supplier<T> task) {
+        return () -> {
+            try (Span span = start(category, operation)) {
+                return task.get();
+            }
+        };
+    }
+
+    /**
+     * Records an already measured operation. A negative
+     * number of allocated bytes means that it's unknown.
+     */
+    public static void record(Category category, String operation,
+                              long nanos, long allocatedBytes) {
+        stats.computeIfAbsent(new Key(category, operation), k -> new Stats())
+                .record(nanos, allocatedBytes);
+    }
+
+    // The allocations are counted for all threads, because most
+    // operations use the thread pool. This means that concurrently
+    // running operations (for example thumbnail creation during a filter)
+    // are also included, so the numbers are only approximate.
+    private static long getAllocatedBytesOfAllThreads() {
+        if (threadBean == null) {
+            return -1;
+        }
+        long[] ids = threadBean.getAllThreadIds();
+        long[] bytes = threadBean.getThreadAllocatedBytes(ids);
+        long sum = 0;
+        for (long b : bytes) {
+            if (b > 0) { // -1 for the threads that terminated in the meantime
+                sum += b;
+            }
+        }
+        return sum;
+    }
+
+    public static void reset() {
+        stats.clear();
+    }
+
+    /**
+     * Returns the snapshots of the collected statistics,
+     * sorted by category and operation name.
+     */
+    public static List<OperationStats> getStats() {
+        List<OperationStats> list = new ArrayList<>(stats.size());
+        stats.forEach((key, s) -> list.add(s.snapshot(key)));
+        list.sort(Comparator.comparing((OperationStats s) -> s.category)
+                .thenComparing(s -> s.operation));
+        return list;
+    }
+
+    public static DebugNode createDebugNode() {
+        var node = new DebugNode("Performance", stats);
+        List<OperationStats> all = getStats();
+        for (Category category : Category.values()) {
+            var categoryNode = new DebugNode(category.toString(), category);
+            for (OperationStats s : all) {
+                if (s.category == category) {
+                    categoryNode.add(s.createDebugNode());
+                }
+            }
+            node.add(categoryNode);
+        }
+        return node;
+    }
+
+    public static String toCSV() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("category,operation,count,mean ms,p50 ms,p90 ms,p99 ms,max ms,mean allocated MB\n");
+        for (OperationStats s : getStats()) {
+            sb.append(s.category.name()).append(',')
+                    .append(quoteCSV(s.operation)).append(',')
+                    .append(s.count).append(',')
+                    .append(millis(s.meanNanos)).append(',')
+                    .append(millis(s.p50Nanos)).append(',')
+                    .append(millis(s.p90Nanos)).append(',')
+                    .append(millis(s.p99Nanos)).append(',')
+                    .append(millis(s.maxNanos)).append(',')
+                    .append(s.meanAllocatedBytes < 0 ? "" : megabytes(s.meanAllocatedBytes))
+                    .append('\n');
+        }
+        return sb.toString();
+    }
+
+    public static String toJSON() {
+        StringBuilder sb = new StringBuilder("[");
+        List<OperationStats> all = getStats();
+        for (int i = 0; i < all.size(); i++) {
+            OperationStats s = all.get(i);
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append("  {\"category\": \"").append(s.category.name())
+                    .append("\", \"operation\": \"").append(escapeJSON(s.operation))
+                    .append("\", \"count\": ").append(s.count)
+                    .append(", \"meanMs\": ").append(millis(s.meanNanos))
+                    .append(", \"p50Ms\": ").append(millis(s.p50Nanos))
+                    .append(", \"p90Ms\": ").append(millis(s.p90Nanos))
+                    .append(", \"p99Ms\": ").append(millis(s.p99Nanos))
+                    .append(", \"maxMs\": ").append(millis(s.maxNanos))
+                    .append(", \"meanAllocatedMB\": ")
+                    .append(s.meanAllocatedBytes < 0 ? "null" : megabytes(s.meanAllocatedBytes))
+                    .append('}');
+        }
+        sb.append(all.isEmpty() ? "]\n" : "\n]\n");
+        return sb.toString();
+    }
+
+    /**
+     * Writes the statistics into the given file, in JSON format
+     * if the file has a "json" extension, and in CSV format otherwise.
+     */
+    public static void exportTo(File file) throws IOException {
+        boolean json = file.getName().toLowerCase(Locale.ENGLISH).endsWith(".json");
+        Files.writeString(file.toPath(), json ? toJSON() : toCSV(), UTF_8);
+    }
+
+    private static String millis(long nanos) {
+        return format(Locale.ENGLISH, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private static String megabytes(long bytes) {
+        return format(Locale.ENGLISH, "%.3f", bytes / (1024.0 * 1024.0));
+    }
+
+    private static String quoteCSV(String s) {
+        if (s.contains(",") || s.contains("\"") || s.contains("\n")) {
+            return '"' + s.replace("\"", "\"\"") + '"';
+        }
+        return s;
+    }
+
+    private static String escapeJSON(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A running measurement
+     */
+    public static class Span implements AutoCloseable {
+        private final Category category;
+        private final String operation;
+        private final long startNanos;
+        private final long startAllocated;
+        private boolean ended;
+
+        private Span(Category category, String operation) {
+            this.category = category;
+            this.operation = operation;
+            startAllocated = getAllocatedBytesOfAllThreads();
+            startNanos = System.nanoTime();
+        }
+
+        /**
+         * Records the measurement and returns the elapsed nanoseconds.
+         */
+        public long end() {
+            long nanos = System.nanoTime() - startNanos;
+            if (!ended) {
+                ended = true;
+                long allocated = -1;
+                if (startAllocated >= 0) {
+                    allocated = Math.max(0, getAllocatedBytesOfAllThreads() - startAllocated);
+                }
+                record(category, operation, nanos, allocated);
+            }
+            return nanos;
+        }
+
+        @Override
+        public void close() {
+            end();
+        }
+    }
+
+    /**
+     * An immutable snapshot of the statistics of an operation
+     */
+    public static class OperationStats {
+        private final Category category;
+        private final String operation;
+        private final long count;
+        private final long meanNanos;
+        private final long p50Nanos;
+        private final long p90Nanos;
+        private final long p99Nanos;
+        private final long maxNanos;
+        private final long meanAllocatedBytes;
+
+        private OperationStats(Category category, String operation, long count,
+                               long meanNanos, long[] percentiles, long maxNanos,
+                               long meanAllocatedBytes) {
+            this.category = category;
+            this.operation = operation;
+            this.count = count;
+            this.meanNanos = meanNanos;
+            p50Nanos = percentiles[0];
+            p90Nanos = percentiles[1];
+            p99Nanos = percentiles[2];
+            this.maxNanos = maxNanos;
+            this.meanAllocatedBytes = meanAllocatedBytes;
+        }
+
+        public Category getCategory() {
+            return category;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMeanNanos() {
+            return meanNanos;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP90Nanos() {
+            return p90Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * Returns the mean number of allocated bytes,
+         * or -1 if it couldn't be measured.
+         */
+        public long getMeanAllocatedBytes() {
+            return meanAllocatedBytes;
+        }
+
+        private DebugNode createDebugNode() {
+            var node = new DebugNode(operation, this);
+            node.addString("count", String.valueOf(count));
+            node.addString("mean", millis(meanNanos) + " ms");
+            node.addString("p50", millis(p50Nanos) + " ms");
+            node.addString("p90", millis(p90Nanos) + " ms");
+            node.addString("p99", millis(p99Nanos) + " ms");
+            node.addString("max", millis(maxNanos) + " ms");
+            if (meanAllocatedBytes >= 0) {
+                node.addString("mean allocated", megabytes(meanAllocatedBytes) + " MB");
+            }
+            return node;
+        }
+    }
+
+    private static class Key {
+        private final Category category;
+        private final String operation;
+
+        Key(Category category, String operation) {
+            this.category = category;
+            this.operation = operation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return category == key.category && operation.equals(key.operation);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * category.hashCode() + operation.hashCode();
+        }
+    }
+
+    private static class Stats {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private long totalNanos;
+        private long totalAllocated;
+        private long numAllocMeasurements;
+
+        synchronized void record(long nanos, long allocatedBytes) {
+            histogram.record(nanos);
+            totalNanos += nanos;
+            if (allocatedBytes >= 0) {
+                totalAllocated += allocatedBytes;
+                numAllocMeasurements++;
+            }
+        }
+
+        synchronized OperationStats snapshot(Key key) {
+            long count = histogram.getCount();
+            long[] percentiles = new long[PERCENTILES.length];
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                percentiles[i] = histogram.getPercentile(PERCENTILES[i]);
+            }
+            long meanAllocated = numAllocMeasurements == 0
+                    ? -1 : totalAllocated / numAllocMeasurements;
+            long mean = count == 0 ? 0 : totalNanos / count;
+            return new OperationStats(key.category, key.operation, count,
+                    mean, percentiles, histogram.getMax(), meanAllocated);
+        }
+    }
+}
@@ -26,10 +26,21 @@ import java.util.Random;
  * proportional to their weights.
  */
 public class WeightedCaller {
-    private final Random random = new Random();
+    private final Random random;
     private final List<Runnable> tasks = new ArrayList<>();
     private static final boolean RANDOMIZE_WEIGHTS = false;
 
+    public WeightedCaller() {
+        this(new Random());
+    }
+
+    /**
+     * Creates a caller whose choices are reproducible with the given random.
+     */
+    public WeightedCaller(Random random) {
+        this.random = random;
+    }
+
     public void registerCallback(int weight, Runnable r) {
         int realWeight = weight;
 
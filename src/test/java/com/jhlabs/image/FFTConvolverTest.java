@@ -0,0 +1,186 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.TestHelper;
+
+import java.awt.image.Kernel;
+import java.util.Random;
+
+import static com.jhlabs.image.ConvolveFilter.CLAMP_EDGES;
+import static com.jhlabs.image.ConvolveFilter.WRAP_EDGES;
+import static com.jhlabs.image.ConvolveFilter.ZERO_EDGES;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+@DisplayName("FFTConvolver tests")
+public class FFTConvolverTest {
+    private static final int WIDTH = 83;
+    private static final int HEIGHT = 51;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @Test
+    @DisplayName("1D convolution matches the direct convolution")
+    void convolveAndTranspose() {
+        int[] in = randomPixels(WIDTH, HEIGHT);
+        float[] matrix = GaussianFilter.makeKernel(15).getKernelData(null);
+        int cols2 = matrix.length / 2;
+
+        for (int edgeAction : new int[]{CLAMP_EDGES, WRAP_EDGES, ZERO_EDGES}) {
+            int[] out = new int[WIDTH * HEIGHT];
+            FFTConvolver.convolveAndTranspose(matrix, in, out, WIDTH, HEIGHT,
+                    true, false, false, edgeAction, NULL_TRACKER);
+
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    float[] expected = new float[4];
+                    for (int d = -cols2; d <= cols2; d++) {
+                        int ix = edgeIndex(x + d, WIDTH, edgeAction);
+                        if (ix >= 0) {
+                            addWeighted(expected, in[y * WIDTH + ix], matrix[cols2 + d]);
+                        }
+                    }
+                    // the output is transposed
+                    assertClose(out[x * HEIGHT + y], expected);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("2D convolution matches the direct convolution")
+    void convolve2D() {
+        check2DConvolution(WIDTH, HEIGHT);
+    }
+
+    @Test
+    @DisplayName("2D convolution with several tiles matches the direct convolution")
+    void convolve2DTiles() {
+        check2DConvolution(300, 280);
+    }
+
+    @Test
+    @DisplayName("the 9x9 custom convolution uses the FFT")
+    void customConvolution() {
+        int size = 9;
+        float[] matrix = new float[size * size];
+        Random random = new Random(11);
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = random.nextFloat() / matrix.length;
+        }
+        Kernel kernel = new Kernel(size, size, matrix);
+        assertThat(FFTConvolver.isWorthFor2D(kernel)).isTrue();
+
+        ConvolveFilter filter = new ConvolveFilter(kernel, "test");
+        int[] in = randomPixels(WIDTH, HEIGHT);
+        int[] viaFFT = new int[in.length];
+        // the clamped edges of the direct convolution repeat the center pixel
+        filter.convolve(kernel, in, viaFFT, WIDTH, HEIGHT, true, ZERO_EDGES);
+        int[] direct = new int[in.length];
+        filter.convolveHV(kernel, in, direct, WIDTH, HEIGHT, true, ZERO_EDGES);
+
+        for (int i = 0; i < in.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                assertThat((viaFFT[i] >> shift) & 0xff)
+                        .isCloseTo((direct[i] >> shift) & 0xff, within(1));
+            }
+        }
+    }
+
+    private static void check2DConvolution(int width, int height) {
+        int[] in = randomPixels(width, height);
+        int kw = 11;
+        int kh = 9;
+        float[] matrix = new float[kw * kh];
+        Random random = new Random(7);
+        float sum = 0;
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = random.nextFloat();
+            sum += matrix[i];
+        }
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] /= sum;
+        }
+        Kernel kernel = new Kernel(kw, kh, matrix);
+
+        for (int edgeAction : new int[]{CLAMP_EDGES, WRAP_EDGES, ZERO_EDGES}) {
+            int[] out = new int[width * height];
+            FFTConvolver.convolve2D(kernel, in, out, width, height,
+                    true, edgeAction, NULL_TRACKER);
+
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    float[] expected = new float[4];
+                    for (int row = 0; row < kh; row++) {
+                        int iy = edgeIndex(y + row - kh / 2, height, edgeAction);
+                        for (int col = 0; col < kw; col++) {
+                            int ix = edgeIndex(x + col - kw / 2, width, edgeAction);
+                            if (ix >= 0 && iy >= 0) {
+                                addWeighted(expected, in[iy * width + ix], matrix[row * kw + col]);
+                            }
+                        }
+                    }
+                    assertClose(out[y * width + x], expected);
+                }
+            }
+        }
+    }
+
+    private static int[] randomPixels(int width, int height) {
+        Random random = new Random(42);
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return pixels;
+    }
+
+    private static void addWeighted(float[] argb, int rgb, float weight) {
+        argb[0] += weight * ((rgb >> 24) & 0xff);
+        argb[1] += weight * ((rgb >> 16) & 0xff);
+        argb[2] += weight * ((rgb >> 8) & 0xff);
+        argb[3] += weight * (rgb & 0xff);
+    }
+
+    private static void assertClose(int actual, float[] expected) {
+        assertThat((actual >> 24) & 0xff).isCloseTo(Math.round(expected[0]), within(1));
+        assertThat((actual >> 16) & 0xff).isCloseTo(Math.round(expected[1]), within(1));
+        assertThat((actual >> 8) & 0xff).isCloseTo(Math.round(expected[2]), within(1));
+        assertThat(actual & 0xff).isCloseTo(Math.round(expected[3]), within(1));
+    }
+
+    private static int edgeIndex(int i, int size, int edgeAction) {
+        if (i >= 0 && i < size) {
+            return i;
+        }
+        if (edgeAction == CLAMP_EDGES) {
+            return i < 0 ? 0 : size - 1;
+        } else if (edgeAction == WRAP_EDGES) {
+            return Math.floorMod(i, size);
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.TestHelper;
+import pixelitor.filters.impl.MorphologyFilter;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("native gray filtering tests")
+public class GrayFilterTest {
+    private static final int WIDTH = 97;
+    private static final int HEIGHT = 61;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @Test
+    @DisplayName("gaussian blur")
+    void gaussian() {
+        GaussianFilter filter = new GaussianFilter("test");
+        filter.setPremultiplyAlpha(false);
+
+        filter.setRadius(3.5f);
+        assertMatchesColorPath(filter, 0);
+
+        filter.setRadius(20);
+        filter.setEngine(GaussianFilter.RECURSIVE_ENGINE);
+        assertMatchesColorPath(filter, 0);
+
+        // the color version uses the FFT for big kernels
+        filter.setEngine(GaussianFilter.KERNEL_ENGINE);
+        assertMatchesColorPath(filter, 1);
+    }
+
+    @Test
+    @DisplayName("unsharp mask")
+    void unsharp() {
+        UnsharpFilter filter = new UnsharpFilter("test");
+        filter.setPremultiplyAlpha(false);
+        filter.setRadius(3);
+        filter.setAmount(0.3f);
+        filter.setThreshold(2);
+
+        BufferedImage gray = createGrayImage();
+        BufferedImage expected = filterColor(filter, gray);
+        BufferedImage actual = filter.filterGrayImage(gray, null);
+        assertThat(maxDiff(expected, actual)).isLessThanOrEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("box blur")
+    void boxBlur() {
+        BoxBlurFilter filter = new BoxBlurFilter(4, 2, 3, "test");
+        filter.setPremultiplyAlpha(false);
+        assertMatchesColorPath(filter, 0);
+    }
+
+    @Test
+    @DisplayName("curves")
+    void curves() {
+        CurvesFilter filter = new CurvesFilter("test");
+        Curve rgb = new Curve();
+        rgb.addKnot(0.3f, 0.6f);
+        Curve red = new Curve();
+        red.addKnot(0.5f, 0.2f);
+        filter.setCurves(rgb, red, new Curve(), new Curve());
+        assertMatchesColorPath(filter, 0);
+    }
+
+    @Test
+    @DisplayName("morphology")
+    void morphology() {
+        MorphologyFilter filter = new MorphologyFilter("test");
+        filter.setIterations(2);
+        for (int kernel : new int[]{MorphologyFilter.KERNEL_DIAMOND, MorphologyFilter.KERNEL_SQUARE}) {
+            filter.setKernel(kernel);
+            filter.setOp(MorphologyFilter.OP_ERODE);
+            assertMatchesColorPath(filter, 0);
+            filter.setOp(MorphologyFilter.OP_DILATE);
+            assertMatchesColorPath(filter, 0);
+        }
+    }
+
+    @Test
+    @DisplayName("in-place filtering")
+    void inPlace() {
+        BufferedImage gray = createGrayImage();
+        BufferedImage expected = new GaussianFilter(5, "test").filter(gray, null);
+
+        BufferedImage actual = ImageUtils.copyImage(gray);
+        new GaussianFilter(5, "test").filter(actual, actual);
+
+        assertThat(ImageUtils.getGrayPixelsAsByteArray(actual))
+                .containsExactly(ImageUtils.getGrayPixelsAsByteArray(expected));
+    }
+
+    private static void assertMatchesColorPath(BufferedImageOp filter, int tolerance) {
+        BufferedImage gray = createGrayImage();
+        BufferedImage expected = filterColor(filter, gray);
+
+        BufferedImage actual = filter.filter(gray, null);
+        assertThat(actual.getType()).isEqualTo(TYPE_BYTE_GRAY);
+        assertThat(maxDiff(expected, actual)).isLessThanOrEqualTo(tolerance);
+    }
+
+    private static BufferedImage filterColor(BufferedImageOp filter, BufferedImage gray) {
+        BufferedImage color = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        Graphics2D g = color.createGraphics();
+        g.drawImage(gray, 0, 0, null);
+        g.dispose();
+        return ImageUtils.convertToGrayScaleImage(filter.filter(color, null));
+    }
+
+    private static int maxDiff(BufferedImage expected, BufferedImage actual) {
+        byte[] expectedValues = ImageUtils.getGrayPixelsAsByteArray(expected);
+        byte[] actualValues = ImageUtils.getGrayPixelsAsByteArray(actual);
+        int maxDiff = 0;
+        for (int i = 0; i < expectedValues.length; i++) {
+            int diff = Math.abs((expectedValues[i] & 0xFF) - (actualValues[i] & 0xFF));
+            maxDiff = Math.max(maxDiff, diff);
+        }
+        return maxDiff;
+    }
+
+    private static BufferedImage createGrayImage() {
+        Random random = new Random(7);
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, TYPE_BYTE_GRAY);
+        byte[] values = ImageUtils.getGrayPixelsAsByteArray(img);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int v = (x * 255 / WIDTH + random.nextInt(60)) % 256;
+                if ((x / 20 + y / 15) % 3 == 0) {
+                    v = 255 - v;
+                }
+                values[y * WIDTH + x] = (byte) v;
+            }
+        }
+        return img;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_3BYTE_BGR;
+import static java.awt.image.BufferedImage.TYPE_4BYTE_ABGR;
+import static java.awt.image.BufferedImage.TYPE_4BYTE_ABGR_PRE;
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_BGR;
+import static java.awt.image.BufferedImage.TYPE_USHORT_GRAY;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("PixelAccess tests")
+public class PixelAccessTest {
+    private static final int WIDTH = 23;
+    private static final int HEIGHT = 17;
+
+    @ParameterizedTest
+    @ValueSource(ints = {TYPE_INT_ARGB, TYPE_INT_BGR, TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR, TYPE_USHORT_GRAY})
+    @DisplayName("the pixels are the same as with BufferedImage.getRGB")
+    void matchesBufferedImage(int type) {
+        BufferedImage img = createRandomImage(type);
+
+        int[] expected = img.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+        assertThat(PixelAccess.getRGB(img, 0, 0, WIDTH, HEIGHT, null)).containsExactly(expected);
+
+        // writing them back doesn't change the image
+        BufferedImage copy = new BufferedImage(WIDTH, HEIGHT, type);
+        PixelAccess.setRGB(copy, 0, 0, WIDTH, HEIGHT, expected);
+        assertThat(copy.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH)).containsExactly(expected);
+    }
+
+    @Test
+    @DisplayName("premultiplied bytes are converted")
+    void premultiplied() {
+        BufferedImage img = createRandomImage(TYPE_4BYTE_ABGR_PRE);
+        int[] expected = img.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+        int[] actual = PixelAccess.getRGB(img, 0, 0, WIDTH, HEIGHT, null);
+        for (int i = 0; i < expected.length; i++) {
+            assertThat(expected[i] >>> 24).isEqualTo(actual[i] >>> 24);
+            for (int shift = 0; shift < 24; shift += 8) {
+                int e = (expected[i] >>> shift) & 0xFF;
+                int a = (actual[i] >>> shift) & 0xFF;
+                assertThat(Math.abs(e - a)).isLessThanOrEqualTo(1);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("gray values are transferred like Java2D does")
+    void gray() {
+        BufferedImage gray = new BufferedImage(WIDTH, HEIGHT, TYPE_BYTE_GRAY);
+        byte[] data = ImageUtils.getGrayPixelsAsByteArray(gray);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        int[] pixels = PixelAccess.getRGB(gray, 0, 0, WIDTH, HEIGHT, null);
+        for (int i = 0; i < pixels.length; i++) {
+            int g = i & 0xFF;
+            assertThat(pixels[i]).isEqualTo(0xFF_00_00_00 | g << 16 | g << 8 | g);
+        }
+
+        // colors are written as their luminance, the same as when drawn
+        BufferedImage color = createRandomImage(TYPE_INT_ARGB);
+        BufferedImage opaque = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = opaque.createGraphics();
+        g.drawImage(color, 0, 0, null);
+        g.dispose();
+        BufferedImage drawn = new BufferedImage(WIDTH, HEIGHT, TYPE_BYTE_GRAY);
+        g = drawn.createGraphics();
+        g.drawImage(opaque, 0, 0, null);
+        g.dispose();
+
+        BufferedImage written = new BufferedImage(WIDTH, HEIGHT, TYPE_BYTE_GRAY);
+        PixelAccess.setRGB(written, 0, 0, WIDTH, HEIGHT,
+                opaque.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH));
+        assertThat(ImageUtils.getGrayPixelsAsByteArray(written)).containsExactly(ImageUtils.getGrayPixelsAsByteArray(drawn));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {TYPE_INT_ARGB, TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR, TYPE_BYTE_GRAY})
+    @DisplayName("subimages, offsets and scansizes are respected")
+    void subRegions(int type) {
+        BufferedImage img = createRandomImage(type);
+        BufferedImage sub = img.getSubimage(3, 5, 10, 7);
+
+        // read a 4x3 block from (2, 1) of the subimage into a wider array
+        int offset = 7;
+        int scansize = 9;
+        int[] pixels = PixelAccess.getRGB(sub, 2, 1, 4, 3, null, offset, scansize);
+        int[] expected = sub.getRGB(2, 1, 4, 3, null, offset, scansize);
+        if (type != TYPE_BYTE_GRAY) {
+            assertThat(pixels).containsExactly(expected);
+        }
+
+        // write it shifted by one pixel into a copy, and compare it
+        BufferedImage copy = new BufferedImage(WIDTH, HEIGHT, type);
+        BufferedImage copySub = copy.getSubimage(3, 5, 10, 7);
+        PixelAccess.setRGB(copySub, 3, 2, 4, 3, pixels, offset, scansize);
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 4; x++) {
+                int read = PixelAccess.getRGB(img, 5 + x, 6 + y, 1, 1, null)[0];
+                int copied = PixelAccess.getRGB(copy, 6 + x, 7 + y, 1, 1, null)[0];
+                assertThat(copied).isEqualTo(read);
+            }
+        }
+    }
+
+    private static BufferedImage createRandomImage(int type) {
+        Random random = new Random(type);
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, type);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                img.setRGB(x, y, random.nextInt());
+            }
+        }
+        return img;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import pixelitor.ThreadPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.jhlabs.image.QuantizationEngine.DITHER_FLOYD_STEINBERG;
+import static com.jhlabs.image.QuantizationEngine.DITHER_NONE;
+import static com.jhlabs.image.QuantizationEngine.DITHER_ORDERED;
+import static com.jhlabs.image.QuantizationEngine.K_MEANS;
+import static com.jhlabs.image.QuantizationEngine.MEDIAN_CUT;
+import static com.jhlabs.image.QuantizationEngine.OCTREE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("QuantizationEngine tests")
+public class QuantizationEngineTest {
+    private static final int WIDTH = 120;
+    private static final int HEIGHT = 90;
+
+    @ParameterizedTest
+    @ValueSource(ints = {OCTREE, MEDIAN_CUT, K_MEANS})
+    @DisplayName("the palette respects the maximal number of colors")
+    void paletteSize(int method) {
+        int[] pixels = createGradientPixels();
+
+        int[] palette = QuantizationEngine.createPalette(pixels, 16, method, false);
+
+        assertThat(palette.length).isBetween(1, 16);
+        for (int color : palette) {
+            assertThat(color >>> 24).isEqualTo(0xFF);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {OCTREE, MEDIAN_CUT, K_MEANS})
+    @DisplayName("images with few colors are reproduced exactly")
+    void fewColors(int method) {
+        int[] colors = {0xFF_FF_00_00, 0xFF_00_80_00, 0xFF_00_00_FF, 0xFF_FF_FF_FF, 0xFF_00_00_00};
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Random random = new Random(7);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = colors[random.nextInt(colors.length)];
+        }
+
+        int[] palette = QuantizationEngine.createPalette(pixels, 16, method, false);
+        byte[] indexes = QuantizationEngine.remap(pixels, WIDTH, HEIGHT,
+                new InverseColorMap(palette), DITHER_NONE, false, -1);
+
+        assertThat(palette).hasSize(colors.length);
+        for (int i = 0; i < pixels.length; i++) {
+            assertThat(palette[indexes[i] & 0xFF]).isEqualTo(pixels[i]);
+        }
+    }
+
+    @Test
+    @DisplayName("k-means refinement doesn't increase the error")
+    void kMeansRefinement() {
+        int[] pixels = createGradientPixels();
+
+        int[] medianCut = QuantizationEngine.createPalette(pixels, 12, MEDIAN_CUT, false);
+        int[] kMeans = QuantizationEngine.createPalette(pixels, 12, K_MEANS, false);
+
+        assertThat(squaredError(pixels, kMeans)).isLessThanOrEqualTo(squaredError(pixels, medianCut));
+    }
+
+    @Test
+    @DisplayName("the parallel Floyd-Steinberg dithering matches the sequential one")
+    void parallelFloydSteinberg() {
+        int[] pixels = createGradientPixels();
+        // make some pixels transparent
+        for (int i = 0; i < pixels.length; i += 7) {
+            pixels[i] &= 0x00_FF_FF_FF;
+        }
+        int[] palette = QuantizationEngine.createPalette(pixels, 8, MEDIAN_CUT, true);
+        InverseColorMap map = new InverseColorMap(palette);
+        int transparentIndex = palette.length;
+
+        byte[] actual = QuantizationEngine.remap(pixels, WIDTH, HEIGHT,
+                map, DITHER_FLOYD_STEINBERG, false, transparentIndex);
+        byte[] expected = sequentialFloydSteinberg(pixels.clone(), map, transparentIndex);
+
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 5, 37, 120, 500})
+    @DisplayName("the wavefront of blocks matches the sequential dithering")
+    void floydSteinbergBlocks(int blockWidth) {
+        int[] pixels = createGradientPixels();
+        int[] palette = QuantizationEngine.createPalette(pixels, 8, MEDIAN_CUT, false);
+        InverseColorMap map = new InverseColorMap(palette);
+
+        byte[] actual = new byte[pixels.length];
+        QuantizationEngine.ditherFloydSteinbergInParallel(pixels.clone(), actual,
+                WIDTH, HEIGHT, map, -1, blockWidth);
+        byte[] expected = sequentialFloydSteinberg(pixels.clone(), map, -1);
+
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    @DisplayName("concurrent parallel ditherings don't block each other")
+    void concurrentFloydSteinberg() throws Exception {
+        int[] pixels = createGradientPixels();
+        int[] palette = QuantizationEngine.createPalette(pixels, 8, MEDIAN_CUT, false);
+        InverseColorMap map = new InverseColorMap(palette);
+        byte[] expected = sequentialFloydSteinberg(pixels.clone(), map, -1);
+
+        Callable<byte[]> dither = () -> {
+            byte[] indexes = new byte[pixels.length];
+            QuantizationEngine.ditherFloydSteinbergInParallel(pixels.clone(), indexes,
+                    WIDTH, HEIGHT, map, -1, 4);
+            return indexes;
+        };
+        // also from a pool thread, through the public API
+        Callable<byte[]> remapFromPool = () -> ThreadPool.submit2(() ->
+                QuantizationEngine.remap(pixels, WIDTH, HEIGHT, map,
+                        DITHER_FLOYD_STEINBERG, false, -1)).get();
+
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> results = callers.invokeAll(
+                    List.of(dither, dither, dither, remapFromPool), 30, TimeUnit.SECONDS);
+            for (Future<byte[]> result : results) {
+                assertThat(result.isCancelled()).isFalse();
+                assertThat(result.get()).isEqualTo(expected);
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("the quantization can run on pool threads")
+    void quantizeOnPoolThreads() throws Exception {
+        int[] pixels = createGradientPixels();
+        Callable<byte[]> quantize = () -> {
+            int[] palette = QuantizationEngine.createPalette(pixels, 12, K_MEANS, false);
+            return QuantizationEngine.remap(pixels, WIDTH, HEIGHT,
+                    new InverseColorMap(palette), DITHER_ORDERED, false, -1);
+        };
+        byte[] expected = quantize.call();
+
+        // more tasks than pool threads, so that all of them are busy
+        List<Future<byte[]>> results = new ArrayList<>();
+        for (int i = 0; i <= ThreadPool.getNumCores(); i++) {
+            results.add(ThreadPool.submit2(quantize));
+        }
+        for (Future<byte[]> result : results) {
+            assertThat(result.get(30, TimeUnit.SECONDS)).isEqualTo(expected);
+        }
+    }
+
+    private static byte[] sequentialFloydSteinberg(int[] pixels, InverseColorMap map, int transparentIndex) {
+        int[] palette = map.getPalette();
+        int[][] weights = {{1, 0, 7}, {-1, 1, 3}, {0, 1, 5}, {1, 1, 1}};
+        byte[] indexes = new byte[pixels.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int i = y * WIDTH + x;
+                int rgb = pixels[i];
+                if ((rgb >>> 24) < 128) {
+                    indexes[i] = (byte) transparentIndex;
+                    continue;
+                }
+                int index = map.getIndex(rgb);
+                indexes[i] = (byte) index;
+                int newRgb = palette[index];
+                for (int[] w : weights) {
+                    int nx = x + w[0];
+                    int ny = y + w[1];
+                    if (nx < 0 || nx >= WIDTH || ny >= HEIGHT) {
+                        continue;
+                    }
+                    int k = ny * WIDTH + nx;
+                    if ((pixels[k] >>> 24) < 128) {
+                        continue;
+                    }
+                    int result = pixels[k] & 0xFF_00_00_00;
+                    for (int shift = 0; shift <= 16; shift += 8) {
+                        int error = ((rgb >> shift) & 0xFF) - ((newRgb >> shift) & 0xFF);
+                        int value = ((pixels[k] >> shift) & 0xFF) + error * w[2] / 16;
+                        result |= PixelUtils.clamp(value) << shift;
+                    }
+                    pixels[k] = result;
+                }
+            }
+        }
+        return indexes;
+    }
+
+    private static long squaredError(int[] pixels, int[] palette) {
+        long error = 0;
+        for (int rgb : pixels) {
+            int r = (rgb >> 16) & 0xFF;
+            int g = (rgb >> 8) & 0xFF;
+            int b = rgb & 0xFF;
+            int nearest = palette[InverseColorMap.findNearest(palette, r, g, b)];
+            int dr = r - ((nearest >> 16) & 0xFF);
+            int dg = g - ((nearest >> 8) & 0xFF);
+            int db = b - (nearest & 0xFF);
+            error += dr * dr + dg * dg + db * db;
+        }
+        return error;
+    }
+
+    private static int[] createGradientPixels() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int r = x * 255 / (WIDTH - 1);
+                int g = y * 255 / (HEIGHT - 1);
+                int b = (x + y) * 255 / (WIDTH + HEIGHT - 2);
+                pixels[y * WIDTH + x] = 0xFF_00_00_00 | (r << 16) | (g << 8) | b;
+            }
+        }
+        return pixels;
+    }
+}
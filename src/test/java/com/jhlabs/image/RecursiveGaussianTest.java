@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+@DisplayName("RecursiveGaussian tests")
+public class RecursiveGaussianTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+
+    @ParameterizedTest
+    @ValueSource(floats = {6.0f, 9.5f, 20.0f, 40.0f, 100.0f})
+    @DisplayName("the recursive engine is close to the kernel")
+    void matchesKernel(float radius) {
+        BufferedImage src = createTestImage();
+
+        BufferedImage expected = blur(src, radius, GaussianFilter.KERNEL_ENGINE);
+        BufferedImage actual = blur(src, radius, GaussianFilter.RECURSIVE_ENGINE);
+
+        int maxDiff = 0;
+        long sumDiff = 0;
+        int numValues = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int[] argb1 = premultiplied(expected.getRGB(x, y));
+                int[] argb2 = premultiplied(actual.getRGB(x, y));
+                for (int i = 0; i < 4; i++) {
+                    int diff = Math.abs(argb1[i] - argb2[i]);
+                    maxDiff = Math.max(maxDiff, diff);
+                    sumDiff += diff;
+                    numValues++;
+                }
+            }
+        }
+
+        assertThat(maxDiff).isLessThanOrEqualTo(10);
+        assertThat((double) sumDiff / numValues).isLessThan(1.0);
+    }
+
+    // the color of (almost) transparent pixels doesn't matter
+    private static int[] premultiplied(int rgb) {
+        int a = (rgb >>> 24) & 0xff;
+        return new int[]{a,
+                ((rgb >> 16) & 0xff) * a / 255,
+                ((rgb >> 8) & 0xff) * a / 255,
+                (rgb & 0xff) * a / 255};
+    }
+
+    private static BufferedImage blur(BufferedImage src, float radius, int engine) {
+        var filter = new GaussianFilter(radius, "Gaussian Blur");
+        filter.setEngine(engine);
+        filter.setProgressTracker(NULL_TRACKER);
+        return filter.filter(src, null);
+    }
+
+    // hard edges, a smooth gradient and transparent areas
+    private static BufferedImage createTestImage() {
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setPaint(new GradientPaint(0, 0, Color.BLUE, WIDTH, HEIGHT, Color.YELLOW));
+        g.fillRect(0, 0, WIDTH, HEIGHT / 2);
+        g.setColor(Color.RED);
+        g.fillOval(20, 30, 70, 60);
+        g.setColor(new Color(0, 200, 0, 128));
+        g.fillRect(100, 10, 40, 100);
+        g.dispose();
+        return img;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static com.jhlabs.image.SummedAreaTable.ALPHA;
+import static com.jhlabs.image.SummedAreaTable.BLUE;
+import static com.jhlabs.image.SummedAreaTable.GREEN;
+import static com.jhlabs.image.SummedAreaTable.RED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@DisplayName("SummedAreaTable tests")
+public class SummedAreaTableTest {
+    private static final int WIDTH = 97;
+    private static final int HEIGHT = 71;
+    private static final int[] SHIFTS = {24, 16, 8, 0};
+
+    private int[] pixels;
+    private SummedAreaTable table;
+
+    @BeforeEach
+    void beforeEachTest() {
+        Random random = new Random(11);
+        pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        table = SummedAreaTable.build(pixels, WIDTH, HEIGHT, true);
+    }
+
+    @Test
+    @DisplayName("sums and variances match the direct calculation")
+    void rectangleQueries() {
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            int x1 = random.nextInt(WIDTH);
+            int y1 = random.nextInt(HEIGHT);
+            int x2 = x1 + 1 + random.nextInt(WIDTH - x1);
+            int y2 = y1 + 1 + random.nextInt(HEIGHT - y1);
+            for (int channel : new int[]{ALPHA, RED, GREEN, BLUE}) {
+                long sum = 0;
+                long sumSq = 0;
+                for (int y = y1; y < y2; y++) {
+                    for (int x = x1; x < x2; x++) {
+                        int v = (pixels[y * WIDTH + x] >>> SHIFTS[channel]) & 0xff;
+                        sum += v;
+                        sumSq += v * v;
+                    }
+                }
+                int area = (x2 - x1) * (y2 - y1);
+                double mean = sum / (double) area;
+                double variance = sumSq / (double) area - mean * mean;
+
+                assertThat(table.sum(channel, x1, y1, x2, y2)).isEqualTo(sum);
+                assertThat(table.sumOfSquares(channel, x1, y1, x2, y2)).isEqualTo(sumSq);
+                assertThat(table.mean(channel, x1, y1, x2, y2)).isCloseTo((float) mean, within(0.001f));
+                assertThat(table.variance(channel, x1, y1, x2, y2)).isCloseTo((float) variance, within(0.01f));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("the mean around a pixel is clipped to the image")
+    void meanAround() {
+        int x = 2;
+        int y = HEIGHT - 3;
+        int radius = 5;
+        int packed = table.meanAround(x, y, radius, radius);
+
+        int x1 = 0;
+        int y1 = y - radius;
+        int x2 = x + radius + 1;
+        int y2 = HEIGHT;
+        for (int channel : new int[]{ALPHA, RED, GREEN, BLUE}) {
+            int expected = Math.round(table.mean(channel, x1, y1, x2, y2));
+            assertThat((packed >>> SHIFTS[channel]) & 0xff).isEqualTo(expected);
+        }
+
+        // with zero radii the pixel itself is returned
+        assertThat(table.meanAround(x, y, 0, 0)).isEqualTo(pixels[y * WIDTH + x]);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import pixelitor.utils.MemoryGovernor;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+import static com.jhlabs.image.TransformFilter.BICUBIC;
+import static com.jhlabs.image.TransformFilter.BILINEAR;
+import static com.jhlabs.image.TransformFilter.NEAREST_NEIGHBOUR;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+@DisplayName("TransformFilter tests")
+public class TransformFilterTest {
+    private static final int WIDTH = 93;
+    private static final int HEIGHT = 61;
+    private static final long MAP_BYTES = 8L * WIDTH * HEIGHT;
+
+    private long origMaxBytes;
+
+    @BeforeEach
+    void beforeEachTest() {
+        origMaxBytes = DisplacementMap.getMaxBytes();
+        DisplacementMap.clearCache();
+    }
+
+    @AfterEach
+    void afterEachTest() {
+        DisplacementMap.setMaxBytes(origMaxBytes);
+        DisplacementMap.clearCache();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {NEAREST_NEIGHBOUR, BILINEAR, BICUBIC})
+    @DisplayName("the cached displacement map gives the same result")
+    void cachedMapMatchesDirect(int interpolation) {
+        BufferedImage src = createRandomImage();
+
+        PinchFilter cached = createPinch(interpolation, 1.5f);
+        PinchFilter direct = new PinchFilter() {
+            @Override
+            protected Object getGeometryKey() {
+                return null;
+            }
+        };
+        configurePinch(direct, interpolation, 1.5f);
+
+        int[] expected = render(direct, src);
+        // the first render calculates the map, the second one reuses it
+        assertThat(render(cached, src)).isEqualTo(expected);
+        assertThat(render(cached, src)).isEqualTo(expected);
+
+        // a new geometry must not reuse the old map
+        configurePinch(cached, interpolation, -0.5f);
+        configurePinch(direct, interpolation, -0.5f);
+        assertThat(render(cached, src)).isEqualTo(render(direct, src));
+    }
+
+    @Test
+    @DisplayName("the maps are shared by the instances of a filter class")
+    void mapsAreShared() {
+        BufferedImage src = createRandomImage();
+
+        int[] first = render(createPinch(BILINEAR, 1.5f), src);
+        assertThat(DisplacementMap.getUsedBytes()).isEqualTo(MAP_BYTES);
+
+        // another instance with the same geometry reuses the map
+        assertThat(render(createPinch(BILINEAR, 1.5f), src)).isEqualTo(first);
+        assertThat(DisplacementMap.getUsedBytes()).isEqualTo(MAP_BYTES);
+
+        render(createPinch(BILINEAR, -0.5f), src);
+        assertThat(DisplacementMap.getUsedBytes()).isEqualTo(2 * MAP_BYTES);
+        assertThat(MemoryGovernor.getUsageBySubsystem())
+                .containsEntry("Displacement Maps", 2 * MAP_BYTES);
+    }
+
+    @Test
+    @DisplayName("the least recently used maps are evicted")
+    void lruEviction() {
+        DisplacementMap.setMaxBytes(4 * MAP_BYTES);
+        BufferedImage src = createRandomImage();
+
+        for (int i = 0; i < 5; i++) {
+            render(createPinch(BILINEAR, i), src);
+        }
+        assertThat(DisplacementMap.getUsedBytes()).isEqualTo(4 * MAP_BYTES);
+
+        DisplacementMap.setMaxBytes(MAP_BYTES);
+        assertThat(DisplacementMap.getUsedBytes()).isEqualTo(MAP_BYTES);
+    }
+
+    @Test
+    @DisplayName("bicubic interpolation keeps the pixels at integer positions")
+    void bicubicIdentity() {
+        BufferedImage src = createRandomImage();
+
+        var filter = new WaterFilter("Water");
+        filter.setAmplitude(0);
+        filter.setInterpolation(BICUBIC);
+        filter.setProgressTracker(NULL_TRACKER);
+
+        assertThat(render(filter, src)).isEqualTo(getPixels(src));
+    }
+
+    private static PinchFilter createPinch(int interpolation, float amount) {
+        PinchFilter filter = new PinchFilter();
+        configurePinch(filter, interpolation, amount);
+        return filter;
+    }
+
+    private static void configurePinch(PinchFilter filter, int interpolation, float amount) {
+        filter.setSwirlAmount(amount);
+        filter.setPinchBulgeAmount(amount / 3);
+        filter.setRadius(40);
+        filter.setZoom(1.2f);
+        filter.setInterpolation(interpolation);
+        filter.setEdgeAction(TransformFilter.REFLECT);
+        filter.setProgressTracker(NULL_TRACKER);
+    }
+
+    private static int[] render(TransformFilter filter, BufferedImage src) {
+        BufferedImage dst = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        return getPixels(filter.filter(src, dst));
+    }
+
+    private static int[] getPixels(BufferedImage img) {
+        return ((DataBufferInt) img.getRaster().getDataBuffer()).getData().clone();
+    }
+
+    private static BufferedImage createRandomImage() {
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        Random random = new Random(3);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return img;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.math;
+
+import com.jhlabs.math.NoiseEngine.Fade;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import static com.jhlabs.math.NoiseEngine.Fade.QUINTIC;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@DisplayName("NoiseEngine tests")
+public class NoiseEngineTest {
+    private static final int WIDTH = 200;
+
+    @Test
+    @DisplayName("the same seed gives the same noise")
+    void seedIsReproducible() {
+        var a = new NoiseEngine(42, QUINTIC);
+        var b = new NoiseEngine(42, QUINTIC);
+        var c = new NoiseEngine(43, QUINTIC);
+
+        boolean different = false;
+        for (float x = -10.3f; x < 10; x += 0.37f) {
+            assertThat(a.gradient2(x, 2.1f)).isEqualTo(b.gradient2(x, 2.1f));
+            assertThat(a.gradient3(x, -1.7f, 0.5f)).isEqualTo(b.gradient3(x, -1.7f, 0.5f));
+            assertThat(a.value2(x, 3.3f)).isEqualTo(b.value2(x, 3.3f));
+            if (a.gradient2(x, 2.1f) != c.gradient2(x, 2.1f)) {
+                different = true;
+            }
+        }
+        assertThat(different).isTrue();
+    }
+
+    @Test
+    @DisplayName("the row evaluation matches the pointwise evaluation")
+    void rowMatchesPoints() {
+        var engine = new NoiseEngine(7, QUINTIC);
+        float dx = 0.031f;
+        float y = 5.6f;
+        float[] row = new float[WIDTH];
+
+        engine.fbm2Row(row, WIDTH, 0, dx, y, 5, 0.5f, 0, 0);
+        for (int x = 0; x < WIDTH; x++) {
+            assertThat(row[x]).isCloseTo(engine.fbm2(x * dx, y, 5, 0.5f), within(1.0e-4f));
+        }
+
+        engine.turbulence2Row(row, WIDTH, 0, dx, y, 3, 0.7f, 0, 0);
+        for (int x = 0; x < WIDTH; x++) {
+            assertThat(row[x]).isCloseTo(engine.turbulence2(x * dx, y, 3, 0.7f), within(1.0e-4f));
+        }
+    }
+
+    @Test
+    @DisplayName("the tileable noise repeats after the period")
+    void tileable() {
+        var engine = new NoiseEngine(11, QUINTIC);
+        int periodX = 4;
+        int periodY = 3;
+        for (float y = 0; y < periodY; y += 0.29f) {
+            for (float x = 0; x < periodX; x += 0.31f) {
+                assertThat(engine.gradient2(x + periodX, y + periodY, periodX, periodY))
+                        .isCloseTo(engine.gradient2(x, y, periodX, periodY), within(1.0e-5f));
+                assertThat(engine.value2(x + periodX, y, periodX, periodY))
+                        .isCloseTo(engine.value2(x, y, periodX, periodY), within(1.0e-5f));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Fade.class)
+    @DisplayName("the fixed-point value noise matches the float version")
+    void fixedPointMatchesFloat(Fade fade) {
+        var engine = new NoiseEngine(3, fade);
+        double frequency = 0.043;
+        int[] row = new int[WIDTH];
+        int octaves = 4;
+
+        engine.valueFbm2RowFixed(row, WIDTH, 0,
+                NoiseEngine.toFixedLong(frequency), NoiseEngine.toFixedLong(9 * frequency),
+                octaves, NoiseEngine.FIXED_ONE, NoiseEngine.toFixed(0.6), 0, 0);
+
+        for (int x = 0; x < WIDTH; x++) {
+            float expected = 0;
+            float amplitude = 1;
+            float f = (float) frequency;
+            for (int i = 0; i < octaves; i++) {
+                expected += amplitude * engine.value2(x * f, 9 * f);
+                f *= 2;
+                amplitude *= 0.6f;
+            }
+            float actual = row[x] / (float) NoiseEngine.FIXED_ONE;
+            assertThat(actual).isCloseTo(expected, within(0.01f));
+        }
+    }
+
+    @Test
+    @DisplayName("the legacy mode reproduces the original Perlin noise")
+    void legacyMatchesOriginal() {
+        // calculated by the original Noise code, seeded with new Random(42)
+        float[][] points = {
+                {0.3f, 0.7f, 0.1f},
+                {12.25f, -3.6f, 5.5f},
+                {-77.1f, 41.9f, -0.45f},
+                {200.5f, 3.3f, 9.9f},
+        };
+        float[][] expected = {
+                {-0.4385072f, -0.4890046f, -0.30614918f},
+                {0.09307251f, -0.12846842f, -0.0429558f},
+                {-0.020117784f, -0.08767989f, -0.29000947f},
+                {0.64687496f, -0.6940381f, 0.4293385f},
+        };
+
+        var engine = NoiseEngine.createLegacy(42);
+        for (int i = 0; i < points.length; i++) {
+            float x = points[i][0];
+            float y = points[i][1];
+            float z = points[i][2];
+            assertThat(engine.gradient1(x)).isEqualTo(expected[i][0]);
+            assertThat(engine.gradient2(x, y)).isEqualTo(expected[i][1]);
+            assertThat(engine.gradient3(x, y, z)).isEqualTo(expected[i][2]);
+        }
+    }
+}
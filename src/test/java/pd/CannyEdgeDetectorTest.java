@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pd;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+@DisplayName("CannyEdgeDetector tests")
+public class CannyEdgeDetectorTest {
+    private static final int WHITE = 0xFF_FF_FF_FF;
+
+    @Test
+    @DisplayName("finds the outline of a rectangle")
+    void rectangleOutline() {
+        int width = 200;
+        int height = 150;
+        BufferedImage src = new BufferedImage(width, height, TYPE_INT_ARGB);
+        Graphics2D g = src.createGraphics();
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, width, height);
+        g.setColor(Color.WHITE);
+        g.fillRect(50, 40, 100, 70);
+        g.dispose();
+
+        BufferedImage edges = detectEdges(src);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean nearOutline = (Math.abs(x - 50) <= 2 || Math.abs(x - 150) <= 2) && y >= 37 && y <= 112
+                        || (Math.abs(y - 40) <= 2 || Math.abs(y - 110) <= 2) && x >= 47 && x <= 152;
+                if (!nearOutline) {
+                    assertThat(edges.getRGB(x, y)).isNotEqualTo(WHITE);
+                }
+            }
+        }
+        // the middle of each side is continuously detected
+        for (int y = 60; y < 90; y++) {
+            assertThat(isEdgeInRow(edges, y, 48, 52)).isTrue();
+            assertThat(isEdgeInRow(edges, y, 148, 152)).isTrue();
+        }
+    }
+
+    @Test
+    @DisplayName("reusing the buffers of a bigger image gives the same result")
+    void bufferReuse() {
+        BufferedImage small = createRandomShapes(120, 90, 1);
+        int[] expected = getPixels(detectEdges(small));
+
+        detectEdges(createRandomShapes(300, 250, 2));
+
+        assertThat(getPixels(detectEdges(small))).isEqualTo(expected);
+    }
+
+    private static boolean isEdgeInRow(BufferedImage edges, int y, int minX, int maxX) {
+        for (int x = minX; x <= maxX; x++) {
+            if (edges.getRGB(x, y) == WHITE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static BufferedImage detectEdges(BufferedImage src) {
+        var detector = new CannyEdgeDetector();
+        detector.setProgressTracker(NULL_TRACKER);
+        detector.setSourceImage(src);
+        detector.process();
+        return detector.getEdgesImage();
+    }
+
+    private static int[] getPixels(BufferedImage img) {
+        return ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+    }
+
+    private static BufferedImage createRandomShapes(int width, int height, long seed) {
+        BufferedImage img = new BufferedImage(width, height, TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        Random random = new Random(seed);
+        for (int i = 0; i < 20; i++) {
+            g.setColor(new Color(random.nextInt()));
+            g.fillOval(random.nextInt(width), random.nextInt(height), 10 + random.nextInt(50), 10 + random.nextInt(50));
+        }
+        g.dispose();
+        return img;
+    }
+}
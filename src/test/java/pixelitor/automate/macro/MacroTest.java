@@ -0,0 +1,195 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.automate.macro;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pixelitor.filters.Posterize;
+import pixelitor.filters.jhlabsproxies.JHGaussianBlur;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("Macro tests")
+public class MacroTest {
+    private static final List<String> SCRIPT = List.of(
+            "# a comment",
+            "filter GaussianBlur",
+            "    Radius = 3.5",
+            "    Method = Fast (Recursive)",
+            "",
+            "filter pixelitor.filters.Posterize",
+            "    Levels = 2, 3, 4",
+            "resize 30 20 keep-proportions",
+            "crop 1 2 10 8",
+            "rotate 90",
+            "flip horizontal",
+            "enlarge-canvas 1 2 3 4"
+    );
+
+    @Test
+    @DisplayName("the parsed script can be written back")
+    void parseAndWrite() {
+        Macro macro = Macro.parse(SCRIPT);
+
+        assertThat(macro.getSteps()).hasSize(7);
+        assertThat(macro.toScript()).isEqualTo(
+                "filter " + JHGaussianBlur.class.getName() + "\n" +
+                        "    Radius = 3.5\n" +
+                        "    Method = Fast (Recursive)\n" +
+                        "filter " + Posterize.class.getName() + "\n" +
+                        "    Levels = 2, 3, 4\n" +
+                        "resize 30 20 keep-proportions\n" +
+                        "crop 1 2 10 8\n" +
+                        "rotate 90\n" +
+                        "flip horizontal\n" +
+                        "enlarge-canvas 1 2 3 4\n");
+
+        Macro reparsed = Macro.parse(List.of(macro.toScript().split("\n")));
+        assertThat(reparsed.toScript()).isEqualTo(macro.toScript());
+    }
+
+    @Test
+    @DisplayName("a filter's current settings can be captured")
+    void captureFilter() {
+        Posterize posterize = new Posterize();
+        ParamValues.apply(posterize.getParamSet(), Map.of("levels", "5, 6, 7"));
+
+        FilterMacroStep step = FilterMacroStep.capture(posterize);
+
+        assertThat(step.toScript()).isEqualTo(
+                "filter " + Posterize.class.getName() + "\n    Levels = 5, 6, 7");
+    }
+
+    @Test
+    @DisplayName("the errors report the line number")
+    void invalidScripts() {
+        assertThatThrownBy(() -> Macro.parse(List.of("filter GaussianBlur", "    Method = Slow")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("line 1")
+                .hasMessageContaining("Fast (Recursive)");
+        assertThatThrownBy(() -> Macro.parse(List.of("rotate 45")))
+                .hasMessageStartingWith("line 1");
+        assertThatThrownBy(() -> Macro.parse(List.of("resize 10 10", "explode")))
+                .hasMessage("line 2: unknown command: explode");
+        assertThatThrownBy(() -> Macro.parse(List.of("filter NoSuchFilter")))
+                .hasMessageContaining("NoSuchFilter");
+        assertThatThrownBy(() -> Macro.parse(List.of("rotate 90", "stroke brush 1 1 5 5")))
+                .hasMessageStartingWith("line 2: tool strokes are not supported");
+    }
+
+    @Test
+    @DisplayName("the canvas steps work like the composition actions")
+    void canvasSteps() {
+        BufferedImage src = createImage(4, 3);
+
+        BufferedImage rotated = new RotateMacroStep(
+                pixelitor.compactions.Rotate.SpecialAngle.ANGLE_90).execute(src);
+        assertThat(rotated.getWidth()).isEqualTo(3);
+        assertThat(rotated.getHeight()).isEqualTo(4);
+        // clockwise: the bottom-left corner goes to the top-left
+        assertThat(rotated.getRGB(0, 0)).isEqualTo(src.getRGB(0, 2));
+
+        BufferedImage flipped = Macro.parse(List.of("flip horizontal")).execute(src);
+        assertThat(flipped.getRGB(0, 1)).isEqualTo(src.getRGB(3, 1));
+
+        BufferedImage cropped = new CropMacroStep(1, 1, 10, 10).execute(src);
+        assertThat(cropped.getWidth()).isEqualTo(3);
+        assertThat(cropped.getHeight()).isEqualTo(2);
+        assertThat(cropped.getRGB(0, 0)).isEqualTo(src.getRGB(1, 1));
+
+        BufferedImage enlarged = new EnlargeCanvasMacroStep(1, 2, 3, 4).execute(src);
+        assertThat(enlarged.getWidth()).isEqualTo(4 + 2 + 4);
+        assertThat(enlarged.getHeight()).isEqualTo(3 + 1 + 3);
+        assertThat(enlarged.getRGB(4, 1)).isEqualTo(src.getRGB(0, 0));
+        assertThat(enlarged.getRGB(0, 0) >>> 24).isZero();
+
+        BufferedImage resized = new ResizeMacroStep(8, 100, true).execute(src);
+        assertThat(resized.getWidth()).isEqualTo(8);
+        assertThat(resized.getHeight()).isEqualTo(6);
+    }
+
+    @Test
+    @DisplayName("the runner processes the matching files in parallel")
+    void runOnGlob(@TempDir Path tempDir) throws IOException {
+        Path inputDir = Files.createDirectories(tempDir.resolve("in"));
+        for (int i = 0; i < 3; i++) {
+            ImageIO.write(createImage(20, 10), "png", inputDir.resolve("img" + i + ".png").toFile());
+        }
+        Files.writeString(inputDir.resolve("notes.txt"), "not an image");
+
+        List<Path> inputs = MacroRunner.expandGlob(inputDir + "/*.png");
+        assertThat(inputs).hasSize(3);
+
+        Path outputDir = tempDir.resolve("out");
+        var runner = new MacroRunner(Macro.parse(SCRIPT), outputDir, "jpg", 2);
+        int numFailed = runner.run(inputs);
+
+        assertThat(numFailed).isZero();
+        for (int i = 0; i < 3; i++) {
+            BufferedImage output = ImageIO.read(outputDir.resolve("img" + i + ".jpg").toFile());
+            // resized to 30x15, cropped to 10x8, rotated, enlarged
+            assertThat(output.getWidth()).isEqualTo(8 + 2 + 4);
+            assertThat(output.getHeight()).isEqualTo(10 + 1 + 3);
+        }
+    }
+
+    @Test
+    @DisplayName("the runner rejects inputs with the same output file")
+    void outputCollisions(@TempDir Path tempDir) throws IOException {
+        Path dir1 = Files.createDirectories(tempDir.resolve("a"));
+        Path dir2 = Files.createDirectories(tempDir.resolve("b"));
+        ImageIO.write(createImage(20, 10), "png", dir1.resolve("img.png").toFile());
+        ImageIO.write(createImage(20, 10), "png", dir2.resolve("img.png").toFile());
+
+        Path outputDir = tempDir.resolve("out");
+        var runner = new MacroRunner(Macro.parse(SCRIPT), outputDir, "png", 1);
+
+        List<Path> inputs = MacroRunner.expandGlob(tempDir + "/*/img.png");
+        assertThat(inputs).hasSize(2);
+        assertThatThrownBy(() -> runner.run(inputs))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("the same file");
+        assertThat(outputDir).doesNotExist();
+
+        // the same file matched twice is processed once
+        Path input = dir1.resolve("img.png");
+        assertThat(runner.run(List.of(input, input))).isZero();
+        assertThat(outputDir.resolve("img.png")).exists();
+    }
+
+    private static BufferedImage createImage(int width, int height) {
+        var img = new BufferedImage(width, height, TYPE_INT_ARGB_PRE);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, 0xFF000000 | (x * 12) << 16 | (y * 25) << 8 | 0x80);
+            }
+        }
+        return img;
+    }
+}
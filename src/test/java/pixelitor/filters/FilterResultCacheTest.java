@@ -0,0 +1,190 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.TestHelper;
+import pixelitor.filters.gui.RangeParam;
+import pixelitor.filters.gui.ShowOriginal;
+import pixelitor.filters.jhlabsproxies.JHCaustics;
+import pixelitor.filters.jhlabsproxies.JHFrostedGlass;
+import pixelitor.filters.jhlabsproxies.JHGlint;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("FilterResultCache tests")
+public class FilterResultCacheTest {
+    private long origMaxBytes;
+    private TestFilter filter;
+    private BufferedImage src;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @BeforeEach
+    void beforeEachTest() {
+        origMaxBytes = FilterResultCache.getMaxBytes();
+        FilterResultCache.clear();
+        filter = new TestFilter();
+        src = createRandomImage(40, 30, 1);
+    }
+
+    @AfterEach
+    void afterEachTest() {
+        FilterResultCache.setMaxBytes(origMaxBytes);
+        FilterResultCache.clear();
+    }
+
+    @Test
+    @DisplayName("the content hash depends only on the pixels")
+    void contentHash() {
+        long hash = FilterResultCache.calcContentHash(src);
+        assertThat(FilterResultCache.calcContentHash(createRandomImage(40, 30, 1))).isEqualTo(hash);
+
+        BufferedImage changed = createRandomImage(40, 30, 1);
+        changed.setRGB(17, 25, ~changed.getRGB(17, 25));
+        assertThat(FilterResultCache.calcContentHash(changed)).isNotEqualTo(hash);
+
+        // a subimage has the same hash as its copy
+        BufferedImage sub = src.getSubimage(5, 3, 20, 20);
+        BufferedImage subCopy = new BufferedImage(20, 20, TYPE_INT_ARGB);
+        subCopy.getRaster().setRect(sub.getData());
+        assertThat(FilterResultCache.calcContentHash(sub))
+                .isEqualTo(FilterResultCache.calcContentHash(subCopy));
+
+        BufferedImage gray = new BufferedImage(40, 30, TYPE_BYTE_GRAY);
+        long grayHash = FilterResultCache.calcContentHash(gray);
+        gray.getRaster().setSample(3, 4, 0, 200);
+        assertThat(FilterResultCache.calcContentHash(gray)).isNotEqualTo(grayHash);
+    }
+
+    @Test
+    @DisplayName("the key depends on the settings and the randomness")
+    void keys() {
+        Object key = FilterResultCache.createKey(filter, src, false);
+        assertThat(key).isNotNull();
+        assertThat(FilterResultCache.createKey(filter, src, false)).isEqualTo(key);
+
+        filter.amount.setValue(20, false);
+        Object changedKey = FilterResultCache.createKey(filter, src, false);
+        assertThat(changedKey).isNotEqualTo(key);
+
+        filter.amount.setValue(10, false);
+        assertThat(FilterResultCache.createKey(filter, src, false)).isEqualTo(key);
+
+        FilterResultCache.randomnessReseeded();
+        assertThat(FilterResultCache.createKey(filter, src, false)).isNotEqualTo(key);
+
+        // filters without comparable settings are not cached
+        assertThat(FilterResultCache.createKey(new OneColorFilter(Color.RED), src, false)).isNull();
+    }
+
+    @Test
+    @DisplayName("the filters with unseeded randomness are not cached")
+    void randomFilters() {
+        assertThat(FilterResultCache.createKey(new JHFrostedGlass(), src, false)).isNull();
+        assertThat(FilterResultCache.createKey(new JHGlint(), src, false)).isNull();
+        assertThat(FilterResultCache.createKey(new JHCaustics(), src, false)).isNull();
+    }
+
+    @Test
+    @DisplayName("the hits return copies of the stored result")
+    void hitsReturnCopies() {
+        Object key = FilterResultCache.createKey(filter, src, true);
+        assertThat(FilterResultCache.get(key)).isNull();
+
+        BufferedImage result = filter.transformImage(src);
+        FilterResultCache.put(key, result);
+        assertThat(FilterResultCache.getNumEntries()).isEqualTo(1);
+
+        // the result can be modified after it was stored
+        int origRGB = result.getRGB(0, 0);
+        result.setRGB(0, 0, ~origRGB);
+
+        BufferedImage cached = FilterResultCache.get(FilterResultCache.createKey(filter, src, true));
+        assertThat(cached).isNotNull().isNotSameAs(result);
+        assertThat(cached.getRGB(0, 0)).isEqualTo(origRGB);
+    }
+
+    @Test
+    @DisplayName("the least recently used results are evicted")
+    void eviction() {
+        long resultBytes = 40 * 30 * 4;
+        FilterResultCache.setMaxBytes(4 * resultBytes);
+
+        Object[] keys = new Object[5];
+        for (int i = 0; i < keys.length; i++) {
+            filter.amount.setValue(i, false);
+            keys[i] = FilterResultCache.createKey(filter, src, false);
+            FilterResultCache.put(keys[i], filter.transformImage(src));
+            if (i == 3) {
+                // touch the first one, so that the second is evicted
+                assertThat(FilterResultCache.get(keys[0])).isNotNull();
+            }
+        }
+
+        assertThat(FilterResultCache.getNumEntries()).isEqualTo(4);
+        assertThat(FilterResultCache.getUsedBytes()).isEqualTo(4 * resultBytes);
+        assertThat(FilterResultCache.get(keys[0])).isNotNull();
+        assertThat(FilterResultCache.get(keys[1])).isNull();
+        assertThat(FilterResultCache.get(keys[4])).isNotNull();
+    }
+
+    private static BufferedImage createRandomImage(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage img = new BufferedImage(width, height, TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, random.nextInt());
+            }
+        }
+        return img;
+    }
+
+    private static class TestFilter extends ParametrizedFilter {
+        private final RangeParam amount = new RangeParam("Amount", 0, 10, 100);
+
+        TestFilter() {
+            super(ShowOriginal.NO);
+            setParams(amount);
+        }
+
+        @Override
+        public BufferedImage doTransform(BufferedImage src, BufferedImage dest) {
+            int add = amount.getValue();
+            for (int y = 0; y < src.getHeight(); y++) {
+                for (int x = 0; x < src.getWidth(); x++) {
+                    dest.setRGB(x, y, src.getRGB(x, y) + add);
+                }
+            }
+            return dest;
+        }
+    }
+}
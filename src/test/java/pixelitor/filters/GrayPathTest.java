@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.TestHelper;
+import pixelitor.filters.levels.GrayScaleLookup;
+import pixelitor.filters.levels.Levels;
+import pixelitor.filters.levels.RGBLookup;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("layer mask filtering tests")
+public class GrayPathTest {
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 29;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @Test
+    @DisplayName("invert")
+    void invert() {
+        BufferedImage gray = createGrayImage();
+        BufferedImage inverted = new Invert().transformImage(gray);
+
+        byte[] src = ImageUtils.getGrayPixelsAsByteArray(gray);
+        byte[] dest = ImageUtils.getGrayPixelsAsByteArray(inverted);
+        for (int i = 0; i < src.length; i++) {
+            assertThat(dest[i] & 0xFF).isEqualTo(255 - (src[i] & 0xFF));
+        }
+        assertMatchesColorPath(new Invert());
+    }
+
+    @Test
+    @DisplayName("subimages")
+    void subimage() {
+        BufferedImage gray = createGrayImage();
+        BufferedImage sub = gray.getSubimage(3, 2, WIDTH - 5, HEIGHT - 4);
+        BufferedImage inverted = new Invert().transformImage(sub);
+
+        assertThat(inverted.getType()).isEqualTo(TYPE_BYTE_GRAY);
+        for (int y = 0; y < sub.getHeight(); y++) {
+            for (int x = 0; x < sub.getWidth(); x++) {
+                int expected = 255 - sub.getRaster().getSample(x, y, 0);
+                assertThat(inverted.getRaster().getSample(x, y, 0)).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("threshold")
+    void threshold() {
+        assertMatchesColorPath(new Threshold());
+    }
+
+    @Test
+    @DisplayName("levels")
+    void levels() {
+        Levels levels = new Levels();
+        var lookup = new GrayScaleLookup(30, 220, 10, 240);
+        var red = new GrayScaleLookup(0, 200, 0, 255);
+        var identity = new GrayScaleLookup(0, 255, 0, 255);
+        levels.setRGBLookup(new RGBLookup(lookup, red, identity, identity,
+                identity, identity, identity));
+        assertMatchesColorPath(levels);
+    }
+
+    private static void assertMatchesColorPath(Filter filter) {
+        BufferedImage gray = createGrayImage();
+
+        BufferedImage color = ImageUtils.createSysCompatibleImage(WIDTH, HEIGHT);
+        Graphics2D g = color.createGraphics();
+        g.drawImage(gray, 0, 0, null);
+        g.dispose();
+        BufferedImage colorResult = filter.transform(color, ImageUtils.createImageWithSameCM(color));
+        BufferedImage expected = ImageUtils.convertToGrayScaleImage(colorResult);
+
+        BufferedImage actual = filter.transformImage(gray);
+
+        assertThat(actual.getType()).isEqualTo(TYPE_BYTE_GRAY);
+        assertThat(ImageUtils.getGrayPixelsAsByteArray(actual))
+                .containsExactly(ImageUtils.getGrayPixelsAsByteArray(expected));
+    }
+
+    private static BufferedImage createGrayImage() {
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, TYPE_BYTE_GRAY);
+        byte[] values = ImageUtils.getGrayPixelsAsByteArray(img);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (byte) (i * 7);
+        }
+        return img;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.impl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("EscapeTimeRenderer tests")
+public class EscapeTimeRendererTest {
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150;
+    private static final int MAX_ITERATIONS = 200;
+
+    @Test
+    @DisplayName("uniform regions are filled without calculating them")
+    void uniformRegionsAreFilled() {
+        AtomicInteger numCalls = new AtomicInteger();
+        EscapeTimeRenderer.PixelFunction stripes = (x, y) -> {
+            numCalls.incrementAndGet();
+            return x / 50;
+        };
+        float[] values = new EscapeTimeRenderer(WIDTH, HEIGHT, stripes, false)
+                .render(ProgressTracker.NULL_TRACKER);
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertThat(values[x + y * WIDTH]).isEqualTo(x / 50);
+            }
+        }
+        assertThat(numCalls.get()).isLessThan(WIDTH * HEIGHT / 2);
+    }
+
+    @Test
+    @DisplayName("the Mandelbrot set is rendered (almost) exactly")
+    void mandelbrot() {
+        TestFractal fractal = new TestFractal();
+        float[] expected = new float[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                expected[x + y * WIDTH] = (float) fractal.calcValue(x, y);
+            }
+        }
+        float[] actual = new EscapeTimeRenderer(WIDTH, HEIGHT, fractal::calcValue, false)
+                .render(ProgressTracker.NULL_TRACKER);
+
+        int numDifferent = 0;
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] != actual[i]) {
+                numDifferent++;
+            }
+        }
+        assertThat(numDifferent).isLessThan(expected.length / 200);
+    }
+
+    @Test
+    @DisplayName("the progressive passes lead to the same result")
+    void progressive() {
+        TestFractal fractal = new TestFractal();
+        float[] direct = new EscapeTimeRenderer(WIDTH, HEIGHT, fractal::calcValue, true)
+                .render(ProgressTracker.NULL_TRACKER);
+
+        List<float[]> passes = new ArrayList<>();
+        float[] progressive = new EscapeTimeRenderer(WIDTH, HEIGHT, fractal::calcValue, true)
+                .renderProgressively(passes::add, ProgressTracker.NULL_TRACKER);
+
+        assertThat(passes).hasSize(3);
+        for (float[] pass : passes) {
+            for (float value : pass) {
+                assertThat(value).isNotNaN();
+            }
+        }
+        // a pixel of the coarsest grid is repeated in its block
+        assertThat(passes.get(0)[7 + 7 * WIDTH]).isEqualTo(passes.get(0)[0]);
+
+        int numDifferent = 0;
+        for (int i = 0; i < direct.length; i++) {
+            if (direct[i] != progressive[i]) {
+                numDifferent++;
+            }
+        }
+        assertThat(numDifferent).isLessThan(direct.length / 200);
+    }
+
+    @Test
+    @DisplayName("the fractal filter shows the coarse passes of big images")
+    void passListener() {
+        TestFractal fractal = new TestFractal();
+        fractal.setProgressTracker(ProgressTracker.NULL_TRACKER);
+        int[] colors = new int[MAX_ITERATIONS + 1];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = 0xFF_00_00_00 | i;
+        }
+        fractal.setColors(colors);
+
+        List<BufferedImage> passes = new ArrayList<>();
+        fractal.setPassListener(passes::add);
+
+        BufferedImage src = new BufferedImage(600, 500, TYPE_INT_ARGB);
+        BufferedImage result = fractal.filter(src, null);
+        assertThat(passes).hasSize(3);
+        for (BufferedImage pass : passes) {
+            assertThat(pass.getWidth()).isEqualTo(600);
+            assertThat(pass.getHeight()).isEqualTo(500);
+            assertThat(pass).isNotSameAs(result);
+        }
+
+        // small images are rendered in one go
+        passes.clear();
+        fractal.filter(new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB), null);
+        assertThat(passes).isEmpty();
+    }
+
+    @Test
+    @DisplayName("periodic orbits are detected as inside the set")
+    void periodicityChecking() {
+        TestFractal fractal = new TestFractal();
+        // c = -1 has an orbit with period 2
+        assertThat(fractal.iterate(0, 0, -1, 0)).isZero();
+        // c = 1 escapes after a few iterations
+        assertThat(fractal.iterate(0, 0, 1, 0)).isGreaterThan(MAX_ITERATIONS - 5);
+
+        fractal.setSmooth(true);
+        double value = fractal.iterate(0, 0, 1, 0);
+        assertThat(value).isGreaterThan(0).isLessThan(MAX_ITERATIONS);
+        // the smooth value changes continuously
+        assertThat(Math.abs(fractal.iterate(0, 0, 1.001, 0) - value)).isLessThan(0.1);
+    }
+
+    /**
+     * The Mandelbrot set without the cardioid and bulb checks
+     */
+    private static class TestFractal extends ComplexFractalImpl {
+        TestFractal() {
+            super("Test", -2.2, 0.7, -1.2, 1.2);
+            setMaxIterations(MAX_ITERATIONS);
+        }
+
+        @Override
+        protected double calcValue(int x, int y) {
+            double cx = -2.2 + x * 2.9 / WIDTH;
+            double cy = -1.2 + y * 2.4 / HEIGHT;
+            return iterate(0, 0, cx, cy);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.impl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.utils.ProgressTracker;
+
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("IFSRenderer tests")
+public class IFSRendererTest {
+    private static final int WIDTH = 20;
+    private static final int HEIGHT = 10;
+    private static final int WHITE = 0xFF_FF_FF_FF;
+    private static final int BLACK = 0xFF_00_00_00;
+
+    // an even number of iterations for each chain
+    private static final int NUM_ITERATIONS = 1000 * IFSRenderer.NUM_CHAINS;
+
+    @Test
+    @DisplayName("all iterations are accumulated, deterministically for a seed")
+    void accumulation() {
+        IFSRenderer first = render(12345, 4, false);
+        // the result doesn't depend on the number of buffers
+        IFSRenderer second = render(12345, 1, false);
+
+        long total = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertThat(second.getCount(x, y)).isEqualTo(first.getCount(x, y));
+                total += first.getCount(x, y);
+            }
+        }
+        assertThat(total).isEqualTo(NUM_ITERATIONS);
+
+        // the right half of the image is never visited
+        assertThat(first.getCount(WIDTH - 1, 0)).isZero();
+    }
+
+    @Test
+    @DisplayName("the colors of the visits are averaged")
+    void toneMapping() {
+        IFSRenderer renderer = render(7, 4, true);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        renderer.toneMap(pixels, WHITE, BLACK, false);
+
+        // each pixel is visited equally often with red and blue
+        assertThat(pixels[0]).isEqualTo(0xFF_7F_00_7F);
+        assertThat(pixels[WIDTH - 1]).isEqualTo(WHITE);
+
+        renderer.toneMap(pixels, WHITE, BLACK, true);
+        assertThat(pixels[WIDTH - 1]).isEqualTo(WHITE);
+        // the most visited pixel keeps its full color
+        int maxIndex = 0;
+        for (int i = 0; i < pixels.length; i++) {
+            int x = i % WIDTH;
+            int y = i / WIDTH;
+            if (renderer.getCount(x, y) > renderer.getCount(maxIndex % WIDTH, maxIndex / WIDTH)) {
+                maxIndex = i;
+            }
+        }
+        assertThat(pixels[maxIndex]).isEqualTo(0xFF_7F_00_7F);
+    }
+
+    private static IFSRenderer render(long seed, int numBuffers, boolean withColors) {
+        var renderer = new IFSRenderer(WIDTH, HEIGHT, withColors);
+        renderer.render(TestChain::new, NUM_ITERATIONS, 10, seed, numBuffers, ProgressTracker.NULL_TRACKER);
+        return renderer;
+    }
+
+    /**
+     * Jumps to a random point in the left half of the image with red,
+     * and then stays there for one more step with blue, so that each
+     * pixel has the same number of red and blue visits.
+     */
+    private static class TestChain implements IFSRenderer.Chain {
+        private double x;
+        private double y;
+        private boolean red;
+
+        @Override
+        public boolean step(SplittableRandom random) {
+            red = !red;
+            if (red) {
+                x = random.nextInt(WIDTH / 2);
+                y = random.nextInt(HEIGHT);
+            }
+            return true;
+        }
+
+        @Override
+        public double getX() {
+            return x;
+        }
+
+        @Override
+        public double getY() {
+            return y;
+        }
+
+        @Override
+        public int getColor() {
+            return red ? 0xFF_FF_00_00 : 0xFF_00_00_FF;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.painters;
+
+import org.jdesktop.swingx.painter.effects.ShadowPathEffect;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("TransformedTextPainter tests")
+public class TransformedTextPainterTest {
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 200;
+
+    @Test
+    @DisplayName("the cached raster is only moved by translations")
+    void cachedPaintingAfterMove() {
+        var cachedPainter = createPainter(0.3);
+        paintCached(cachedPainter); // fill the cache at zero translation
+
+        cachedPainter.setTranslation(17, -9);
+        BufferedImage cached = paintCached(cachedPainter);
+
+        var directPainter = createPainter(0.3);
+        directPainter.setTranslation(17, -9);
+        BufferedImage direct = paintDirectly(directPainter);
+
+        assertThat(cachedPainter.getBoundingBox())
+                .isEqualTo(directPainter.getBoundingBox());
+        assertThat(maxChannelDifference(cached, direct)).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("setters invalidate the cached raster")
+    void settersInvalidate() {
+        var painter = createPainter(0);
+        BufferedImage before = paintCached(painter);
+
+        painter.setText("Other");
+        BufferedImage after = paintCached(painter);
+
+        var directPainter = createPainter(0);
+        directPainter.setText("Other");
+        BufferedImage direct = paintDirectly(directPainter);
+
+        assertThat(maxChannelDifference(before, after)).isGreaterThan(2);
+        assertThat(maxChannelDifference(after, direct)).isLessThanOrEqualTo(2);
+    }
+
+    private static TransformedTextPainter createPainter(double rotation) {
+        var painter = new TransformedTextPainter();
+        painter.setAntialiasing(true);
+        painter.setText("Headline");
+        painter.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 40));
+        painter.setFillPaint(Color.RED);
+        painter.setAreaEffects(new ShadowPathEffect(1.0f));
+        painter.setRotation(rotation);
+        return painter;
+    }
+
+    private static BufferedImage paintCached(TransformedTextPainter painter) {
+        var img = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        painter.paintCached(g, WIDTH, HEIGHT);
+        g.dispose();
+        return img;
+    }
+
+    private static BufferedImage paintDirectly(TransformedTextPainter painter) {
+        var img = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        painter.paint(g, null, WIDTH, HEIGHT);
+        g.dispose();
+        return img;
+    }
+
+    private static int maxChannelDifference(BufferedImage a, BufferedImage b) {
+        int max = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int p1 = a.getRGB(x, y);
+                int p2 = b.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int diff = Math.abs(((p1 >>> shift) & 0xFF) - ((p2 >>> shift) & 0xFF));
+                    max = Math.max(max, diff);
+                }
+            }
+        }
+        return max;
+    }
+}
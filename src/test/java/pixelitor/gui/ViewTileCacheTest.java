@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.gui;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("ViewTileCache tests")
+public class ViewTileCacheTest {
+    // 3 x 2 tiles
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 300;
+    private static final Rectangle VISIBLE = new Rectangle(0, 0, WIDTH, HEIGHT);
+
+    private ViewTileCache cache;
+    private BufferedImage dest;
+    private int numRendered;
+
+    @BeforeEach
+    void beforeEachTest() {
+        cache = new ViewTileCache();
+        dest = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        numRendered = 0;
+    }
+
+    @Test
+    @DisplayName("the tiles are reused if only the overlays change")
+    void reuse() {
+        BufferedImage composite = createComposite(Color.RED);
+
+        paint(composite, 1.0);
+        assertThat(numRendered).isEqualTo(6);
+        assertThat(dest.getRGB(WIDTH - 1, HEIGHT - 1)).isEqualTo(Color.RED.getRGB());
+
+        paint(composite, 1.0);
+        assertThat(numRendered).isEqualTo(6);
+        assertThat(cache.getNumTiles()).isEqualTo(6);
+    }
+
+    @Test
+    @DisplayName("a region change renders only the affected tiles")
+    void regionInvalidation() {
+        paint(createComposite(Color.RED), 1.0);
+
+        cache.invalidate(new Rectangle(300, 100, 10, 10));
+        paint(createComposite(Color.BLUE), 1.0);
+
+        assertThat(numRendered).isEqualTo(6 + 1);
+        assertThat(dest.getRGB(300, 100)).isEqualTo(Color.BLUE.getRGB());
+        // the other tiles were not rendered again
+        assertThat(dest.getRGB(0, 0)).isEqualTo(Color.RED.getRGB());
+    }
+
+    @Test
+    @DisplayName("all tiles are rendered after unannounced changes")
+    void fullInvalidation() {
+        paint(createComposite(Color.RED), 1.0);
+
+        // new composite without a region
+        paint(createComposite(Color.BLUE), 1.0);
+        assertThat(numRendered).isEqualTo(12);
+
+        // zoom change
+        paint(createComposite(Color.BLUE), 2.0);
+        assertThat(numRendered).isEqualTo(18);
+
+        cache.invalidateAll();
+        assertThat(cache.getNumTiles()).isZero();
+    }
+
+    @Test
+    @DisplayName("only the tiles intersecting the clip are rendered")
+    void clipping() {
+        Graphics2D g = dest.createGraphics();
+        g.setClip(10, 10, 20, 20);
+        cache.paint(g, createComposite(Color.RED), 1.0,
+                WIDTH, HEIGHT, VISIBLE, tileG -> numRendered++);
+        g.dispose();
+
+        assertThat(numRendered).isEqualTo(1);
+    }
+
+    private void paint(BufferedImage composite, double scaling) {
+        Graphics2D g = dest.createGraphics();
+        cache.paint(g, composite, scaling, WIDTH, HEIGHT, VISIBLE,
+                tileG -> {
+                    tileG.drawImage(composite, 0, 0, null);
+                    numRendered++;
+                });
+        g.dispose();
+    }
+
+    private static BufferedImage createComposite(Color color) {
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        g.dispose();
+        return img;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import pixelitor.Composition;
+import pixelitor.TestHelper;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.AlphaComposite.DstIn;
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("FusedMaskBlender tests")
+public class FusedMaskBlenderTest {
+    private static final int WIDTH = 70;
+    private static final int HEIGHT = 50;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {TYPE_INT_ARGB, TYPE_INT_ARGB_PRE})
+    @DisplayName("the fused blending matches the masked image composite")
+    void matchesJava2D(int layerImageType) {
+        Random random = new Random(7);
+        BufferedImage layerImage = createRandomImage(random, 60, 45, layerImageType);
+        BufferedImage mask = createRandomImage(random, 40, 60, TYPE_BYTE_GRAY);
+        BufferedImage maskTransparency = new BufferedImage(LayerMask.TRANSPARENCY_COLOR_MODEL,
+                mask.getRaster(), false, null);
+
+        int[][] offsets = {{0, 0, 0, 0}, {15, -10, 20, 3}, {-20, 12, -5, -15}};
+        for (float opacity : new float[]{1.0f, 0.6f}) {
+            for (int[] offset : offsets) {
+                BufferedImage expected = createRandomImage(new Random(3), WIDTH, HEIGHT, TYPE_INT_ARGB_PRE);
+                BufferedImage actual = createRandomImage(new Random(3), WIDTH, HEIGHT, TYPE_INT_ARGB_PRE);
+
+                // the masked image followed by the layer composite
+                BufferedImage masked = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+                Graphics2D mg = masked.createGraphics();
+                mg.drawImage(layerImage, offset[0], offset[1], null);
+                mg.setComposite(DstIn);
+                mg.drawImage(maskTransparency, offset[2], offset[3], null);
+                mg.dispose();
+                Graphics2D g = expected.createGraphics();
+                g.setComposite(AlphaComposite.SrcOver.derive(opacity));
+                g.drawImage(masked, 0, 0, null);
+                g.dispose();
+
+                Graphics2D ag = actual.createGraphics();
+                assertThat(FusedMaskBlender.canBlendInto(actual, ag)).isTrue();
+                ag.dispose();
+                assertThat(FusedMaskBlender.canRead(layerImage, maskTransparency)).isTrue();
+                FusedMaskBlender.blend(actual, layerImage, offset[0], offset[1],
+                        maskTransparency, offset[2], offset[3], opacity);
+
+                assertThat(maxDifference(expected, actual)).isLessThanOrEqualTo(2);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("unsupported formats are not blended directly")
+    void unsupportedFormats() {
+        BufferedImage notPremultiplied = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        Graphics2D g = notPremultiplied.createGraphics();
+        assertThat(FusedMaskBlender.canBlendInto(notPremultiplied, g)).isFalse();
+        g.dispose();
+
+        BufferedImage dest = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB_PRE);
+        Graphics2D translated = dest.createGraphics();
+        translated.translate(5, 0);
+        assertThat(FusedMaskBlender.canBlendInto(dest, translated)).isFalse();
+        translated.dispose();
+
+        BufferedImage opaque = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_RGB);
+        BufferedImage mask = new BufferedImage(WIDTH, HEIGHT, TYPE_BYTE_GRAY);
+        assertThat(FusedMaskBlender.canRead(opaque, mask)).isFalse();
+    }
+
+    @Test
+    @DisplayName("the masked images are cached until the image changes")
+    void maskedImageCache() {
+        Composition comp = TestHelper.create2LayerComp(true);
+        Layer lower = comp.getLayer(0);
+        Layer upper = comp.getLayer(1);
+        upper.setBlendingMode(BlendingMode.MULTIPLY, false);
+
+        comp.getCompositeImage();
+        // the first layer is blended directly, without a masked image
+        assertThat(lower.getMaskedImageBytes()).isZero();
+        assertThat(upper.getMaskedImageBytes()).isPositive();
+        assertThat(comp.getCompositeCacheBytes())
+                .isGreaterThan(upper.getMaskedImageBytes());
+
+        comp.imageChanged();
+        assertThat(upper.getMaskedImageBytes()).isZero();
+
+        comp.getCompositeImage();
+        assertThat(comp.releaseCompositeCache()).isPositive();
+        assertThat(upper.getMaskedImageBytes()).isZero();
+    }
+
+    private static BufferedImage createRandomImage(Random random, int width, int height, int type) {
+        BufferedImage img = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (type == TYPE_BYTE_GRAY) {
+                    img.getRaster().setSample(x, y, 0, random.nextInt(256));
+                } else {
+                    img.setRGB(x, y, random.nextInt());
+                }
+            }
+        }
+        return img;
+    }
+
+    private static int maxDifference(BufferedImage a, BufferedImage b) {
+        int[] pa = a.getRaster().getPixels(0, 0, WIDTH, HEIGHT, (int[]) null);
+        int[] pb = b.getRaster().getPixels(0, 0, WIDTH, HEIGHT, (int[]) null);
+        int max = 0;
+        for (int i = 0; i < pa.length; i++) {
+            max = Math.max(max, Math.abs(pa[i] - pb[i]));
+        }
+        return max;
+    }
+}
@@ -36,11 +36,14 @@ import pixelitor.testutils.WithTranslation;
 import pixelitor.utils.ImageUtils;
 
 import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.util.Arrays;
 import java.util.Collection;
 
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.times;
@@ -109,6 +112,78 @@ public class ImageLayerTest {
         iconUpdates = new IconUpdateChecker(layer, mask, layerIconUpdatesAtStart, 1);
     }
 
+    @Test
+    public void pageOutAndIn() {
+        BufferedImage testImage = TestHelper.createImage();
+        testImage.setRGB(3, 4, 0xFF_12_34_56);
+        layer.setImage(testImage);
+        Rectangle boundsBefore = layer.getImageBounds();
+
+        assertThat(layer.pageOut().join()).isPositive();
+        assertThat(layer.isPagedOut()).isTrue();
+        assertThat(layer.getHeapBytes()).isZero();
+        assertThat(layer.getImageBounds()).isEqualTo(boundsBefore);
+
+        BufferedImage pagedIn = layer.getImage();
+        assertThat(layer.isPagedOut()).isFalse();
+        assertThat(layer.getOffHeapBytes()).isZero();
+        assertThat(pagedIn.getRGB(3, 4)).isEqualTo(0xFF_12_34_56);
+        assertThat(pagedIn.getRGB(0, 0)).isEqualTo(testImage.getRGB(0, 0));
+    }
+
+    @Test
+    public void pageOutReusesBackingStore() {
+        layer.setImage(TestHelper.createImage());
+        assertThat(layer.pageOut().join()).isPositive();
+        TiledPixelStore store = layer.getBackingStore();
+
+        // the image was handed out, so it's written out again
+        layer.getImage().setRGB(1, 2, 0xFF_65_43_21);
+        assertThat(layer.pageOut().join()).isPositive();
+        assertThat(layer.getBackingStore()).isSameAs(store);
+        assertThat(store.isDisposed()).isFalse();
+        assertThat(layer.getImage().getRGB(1, 2)).isEqualTo(0xFF_65_43_21);
+
+        layer.disposeBackingStore();
+        assertThat(store.isDisposed()).isTrue();
+    }
+
+    @Test
+    public void pageOutNow() {
+        BufferedImage testImage = TestHelper.createImage();
+        testImage.setRGB(5, 6, 0xFF_12_34_56);
+        layer.setImage(testImage);
+
+        // the heap bytes are released without waiting for the IO thread
+        assertThat(layer.pageOutNow()).isPositive();
+        assertThat(layer.isPagedOut()).isTrue();
+        assertThat(layer.getHeapBytes()).isZero();
+        assertThat(layer.pageOutNow()).isZero();
+
+        assertThat(layer.getImage().getRGB(5, 6)).isEqualTo(0xFF_12_34_56);
+    }
+
+    @Test
+    public void pagedOutThumbnail() {
+        BufferedImage testImage = TestHelper.createImage();
+        Graphics2D g = testImage.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, testImage.getWidth(), testImage.getHeight());
+        g.dispose();
+        layer.setImage(testImage);
+        assertThat(layer.pageOutNow()).isPositive();
+
+        BufferedImage thumb = layer.createPagedOutThumbnailCreator(24, null).get();
+        assertThat(layer.isPagedOut()).isTrue();
+        assertThat(thumb.getRGB(thumb.getWidth() / 2, thumb.getHeight() / 2))
+                .isEqualTo(Color.RED.getRGB());
+
+        // the icon of a deleted layer is not created
+        var creator = layer.createPagedOutThumbnailCreator(24, null);
+        layer.disposeBackingStore();
+        assertThat(creator.get()).isNull();
+    }
+
     @Test
     public void getSetImage() {
         // setImage is called already in the ImageLayer constructor
@@ -307,6 +382,39 @@ public class ImageLayerTest {
         iconUpdates.check(0, 0);
     }
 
+    @Test
+    public void replacedTmpDrawingLayerIsDisposed() {
+        TmpDrawingLayer first = layer.createTmpDrawingLayer(AlphaComposite.SrcOver, false);
+        TmpDrawingLayer second = layer.createTmpDrawingLayer(AlphaComposite.SrcOver, false);
+        assertThat(first.isDisposed()).isTrue();
+        assertThat(second.isDisposed()).isFalse();
+
+        layer.discardTmpDrawingLayer();
+        assertThat(second.isDisposed()).isTrue();
+        iconUpdates.check(0, 0);
+    }
+
+    @Test
+    public void clearTmpDrawingLayer() {
+        TmpDrawingLayer tmpDrawingLayer
+                = layer.createTmpDrawingLayer(AlphaComposite.SrcOver, false);
+        Graphics2D g = tmpDrawingLayer.getGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, tmpDrawingLayer.getWidth(), tmpDrawingLayer.getHeight());
+
+        tmpDrawingLayer.clear();
+
+        Canvas canvas = layer.getComp().getCanvas();
+        BufferedImage painted = new BufferedImage(canvas.getWidth(), canvas.getHeight(), TYPE_INT_ARGB);
+        Graphics2D paintedG = painted.createGraphics();
+        tmpDrawingLayer.paintOn(paintedG, 0, 0);
+        paintedG.dispose();
+        assertThat(painted.getRGB(0, 0)).isEqualTo(0);
+
+        layer.discardTmpDrawingLayer();
+        iconUpdates.check(0, 0);
+    }
+
     @Test
     public void createCanvasSizedTmpImage() {
         Canvas canvas = layer.getComp().getCanvas();
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("OccupancyMap tests")
+public class OccupancyMapTest {
+    private static final int THRESHOLD = 30;
+
+    @Test
+    @DisplayName("the cells with visible pixels are occupied")
+    void occupiedCells() {
+        BufferedImage img = new BufferedImage(100, 70, TYPE_INT_ARGB);
+        img.setRGB(40, 40, 0xFF_00_00_00);
+        // below the threshold
+        img.setRGB(5, 5, 0x14_FF_FF_FF);
+
+        OccupancyMap map = new OccupancyMap(img, THRESHOLD);
+
+        // same cell as the visible pixel
+        assertThat(map.isOccupied(33, 60)).isTrue();
+        assertThat(map.isOccupied(5, 5)).isFalse();
+        assertThat(map.isOccupied(99, 69)).isFalse();
+
+        // outside the image
+        assertThat(map.isOccupied(-1, 40)).isFalse();
+        assertThat(map.isOccupied(40, 70)).isFalse();
+    }
+
+    @Test
+    @DisplayName("the modified regions must be invalidated")
+    void invalidation() {
+        BufferedImage img = new BufferedImage(100, 70, TYPE_INT_ARGB);
+        OccupancyMap map = new OccupancyMap(img, THRESHOLD);
+        assertThat(map.isOccupied(70, 10)).isFalse();
+        assertThat(map.isOccupied(10, 10)).isFalse();
+
+        img.setRGB(70, 10, 0xFF_00_00_00);
+        img.setRGB(10, 10, 0xFF_00_00_00);
+
+        // the evaluated cells are not recalculated without invalidation
+        assertThat(map.isOccupied(70, 10)).isFalse();
+
+        map.invalidate(new Rectangle(68, 8, 4, 4));
+        assertThat(map.isOccupied(70, 10)).isTrue();
+        assertThat(map.isOccupied(10, 10)).isFalse();
+
+        map.invalidateAll();
+        assertThat(map.isOccupied(10, 10)).isTrue();
+    }
+
+    @Test
+    @DisplayName("images without alpha are fully occupied")
+    void opaqueImage() {
+        BufferedImage img = new BufferedImage(50, 50, TYPE_INT_RGB);
+        OccupancyMap map = new OccupancyMap(img, THRESHOLD);
+
+        assertThat(map.isOccupied(0, 0)).isTrue();
+        assertThat(map.isFor(img, THRESHOLD)).isTrue();
+        assertThat(map.isFor(img, THRESHOLD + 1)).isFalse();
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import pixelitor.layers.TiledPixelStore.Backend;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("TiledPixelStore tests")
+public class TiledPixelStoreTest {
+    // not multiples of the tile size
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 300;
+
+    @ParameterizedTest
+    @EnumSource(Backend.class)
+    @DisplayName("the image can be recreated from the tiles")
+    void roundTrip(Backend backend) throws IOException {
+        BufferedImage src = createRandomImage(TYPE_INT_ARGB_PRE);
+
+        TiledPixelStore store = TiledPixelStore.from(src, backend);
+        assertThat(store.isFileBacked()).isEqualTo(backend == Backend.FILE);
+        assertThat(store.getBytes()).isEqualTo(4L * WIDTH * HEIGHT);
+
+        BufferedImage restored = store.toImage();
+        assertThat(restored.getColorModel()).isEqualTo(src.getColorModel());
+        assertSamePixels(src, restored, 0, 0);
+
+        // the last tile is smaller than the tile size
+        int col = WIDTH / TiledPixelStore.TILE_SIZE;
+        int row = HEIGHT / TiledPixelStore.TILE_SIZE;
+        BufferedImage tile = store.getTile(col, row);
+        assertThat(tile.getWidth()).isEqualTo(WIDTH % TiledPixelStore.TILE_SIZE);
+        assertThat(tile.getHeight()).isEqualTo(HEIGHT % TiledPixelStore.TILE_SIZE);
+        assertSamePixels(src, tile, col * TiledPixelStore.TILE_SIZE, row * TiledPixelStore.TILE_SIZE);
+
+        store.dispose();
+        assertThat(store.isDisposed()).isTrue();
+    }
+
+    @ParameterizedTest
+    @EnumSource(Backend.class)
+    @DisplayName("the store can be rewritten with a new image")
+    void rewrite(Backend backend) throws IOException {
+        BufferedImage first = createRandomImage(TYPE_INT_ARGB, 1);
+        BufferedImage second = createRandomImage(TYPE_INT_ARGB, 2);
+        TiledPixelStore store = TiledPixelStore.from(first, backend);
+
+        assertThat(store.canRewrite(second)).isTrue();
+        assertThat(store.canRewrite(createRandomImage(TYPE_INT_ARGB_PRE, 2))).isFalse();
+        store.write(second);
+        assertSamePixels(second, store.toImage(), 0, 0);
+
+        store.dispose();
+        assertThat(store.canRewrite(second)).isFalse();
+    }
+
+    @ParameterizedTest
+    @EnumSource(Backend.class)
+    @DisplayName("painting the tiles matches painting the image")
+    void paint(Backend backend) throws IOException {
+        BufferedImage src = createRandomImage(TYPE_INT_ARGB);
+        TiledPixelStore store = TiledPixelStore.from(src, backend);
+
+        BufferedImage expected = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        BufferedImage actual = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        int tx = -37;
+        int ty = -11;
+        for (BufferedImage dest : new BufferedImage[]{expected, actual}) {
+            Graphics2D g = dest.createGraphics();
+            g.clipRect(100, 50, 300, 200);
+            if (dest == expected) {
+                g.drawImage(src, tx, ty, null);
+            } else {
+                store.paint(g, tx, ty);
+            }
+            g.dispose();
+        }
+
+        assertSamePixels(expected, actual, 0, 0);
+        store.dispose();
+    }
+
+    @ParameterizedTest
+    @EnumSource(Backend.class)
+    @DisplayName("the painted tiles are cached until the store is rewritten")
+    void tileCache(Backend backend) throws IOException {
+        BufferedImage first = createRandomImage(TYPE_INT_ARGB, 1);
+        BufferedImage second = createRandomImage(TYPE_INT_ARGB, 2);
+        TiledPixelStore store = TiledPixelStore.from(first, backend);
+        long cachedAtStart = TiledPixelStore.getCachedTileBytes();
+
+        // one-off paintings don't fill the cache
+        paint(store, false);
+        assertThat(TiledPixelStore.getCachedTileBytes()).isEqualTo(cachedAtStart);
+
+        assertSamePixels(first, paint(store, true), 0, 0);
+        assertThat(TiledPixelStore.getCachedTileBytes()).isEqualTo(cachedAtStart + store.getBytes());
+
+        // the cached tiles are reused
+        paint(store, true);
+        assertThat(TiledPixelStore.getCachedTileBytes()).isEqualTo(cachedAtStart + store.getBytes());
+
+        // the cached tiles of the old pixels are not painted
+        store.write(second);
+        assertThat(TiledPixelStore.getCachedTileBytes()).isEqualTo(cachedAtStart);
+        assertSamePixels(second, paint(store, true), 0, 0);
+
+        store.dispose();
+        assertThat(TiledPixelStore.getCachedTileBytes()).isEqualTo(cachedAtStart);
+    }
+
+    @ParameterizedTest
+    @EnumSource(Backend.class)
+    @DisplayName("the tile cache is bounded")
+    void tileCacheEviction(Backend backend) throws IOException {
+        long maxBytesBefore = TiledPixelStore.getMaxCachedTileBytes();
+        TiledPixelStore store = TiledPixelStore.from(createRandomImage(TYPE_INT_ARGB), backend);
+        try {
+            // room for two full tiles
+            long maxBytes = 2L * 4 * TiledPixelStore.TILE_SIZE * TiledPixelStore.TILE_SIZE;
+            TiledPixelStore.setMaxCachedTileBytes(maxBytes);
+            paint(store, true);
+            assertThat(TiledPixelStore.getCachedTileBytes()).isPositive().isLessThanOrEqualTo(maxBytes);
+        } finally {
+            TiledPixelStore.setMaxCachedTileBytes(maxBytesBefore);
+            store.dispose();
+        }
+    }
+
+    private static BufferedImage paint(TiledPixelStore store, boolean cacheTiles) {
+        BufferedImage dest = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        Graphics2D g = dest.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        store.paint(g, 0, 0, cacheTiles);
+        g.dispose();
+        return dest;
+    }
+
+    private static BufferedImage createRandomImage(int type) {
+        return createRandomImage(type, 7);
+    }
+
+    private static BufferedImage createRandomImage(int type, long seed) {
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, type);
+        Random random = new Random(seed);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                img.setRGB(x, y, random.nextInt());
+            }
+        }
+        return img;
+    }
+
+    // checks that the image starting at the given position in the
+    // expected image has the same pixels as the actual image
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual, int startX, int startY) {
+        int width = actual.getWidth();
+        int height = actual.getHeight();
+        int[] expectedPixels = expected.getRaster()
+                .getPixels(startX, startY, width, height, (int[]) null);
+        int[] actualPixels = actual.getRaster()
+                .getPixels(0, 0, width, height, (int[]) null);
+        assertThat(actualPixels).isEqualTo(expectedPixels);
+    }
+}
@@ -0,0 +1,556 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.manual;
+
+import pixelitor.Composition;
+import pixelitor.TestHelper;
+import pixelitor.compactions.CompAction;
+import pixelitor.compactions.Flip;
+import pixelitor.compactions.Rotate;
+import pixelitor.filters.Filter;
+import pixelitor.filters.Invert;
+import pixelitor.filters.Posterize;
+import pixelitor.filters.Sepia;
+import pixelitor.filters.jhlabsproxies.JHEmboss;
+import pixelitor.filters.jhlabsproxies.JHGaussianBlur;
+import pixelitor.filters.jhlabsproxies.JHMedian;
+import pixelitor.filters.jhlabsproxies.JHPixelate;
+import pixelitor.filters.jhlabsproxies.JHSwirlPinchBulge;
+import pixelitor.filters.jhlabsproxies.JHUnsharpMask;
+import pixelitor.history.History;
+import pixelitor.history.PartialImageEdit;
+import pixelitor.layers.BlendingMode;
+import pixelitor.layers.Drawable;
+import pixelitor.layers.Layer;
+import pixelitor.layers.LayerMask;
+import pixelitor.layers.LayerUI;
+import pixelitor.tools.Tools;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.debug.LatencyHistogram;
+import pixelitor.utils.debug.Telemetry;
+import pixelitor.utils.test.WeightedCaller;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static pixelitor.ChangeReason.FILTER_WITHOUT_DIALOG;
+import static pixelitor.compactions.Flip.Direction.HORIZONTAL;
+import static pixelitor.compactions.Flip.Direction.VERTICAL;
+import static pixelitor.compactions.Rotate.SpecialAngle.ANGLE_180;
+import static pixelitor.compactions.Rotate.SpecialAngle.ANGLE_90;
+import static pixelitor.layers.LayerMaskAddType.REVEAL_ALL;
+
+/**
+ * A headless, seed-reproducible soak test: it runs a random mix of
+ * the operations of {@link pixelitor.utils.test.RandomGUITest}
+ * (filters, brush strokes, undo/redo, layer and mask operations,
+ * rotations and flips) directly on a {@link Composition} with mock
+ * views, and measures each operation type.
+ *
+ * For each operation type the report contains the latency percentiles,
+ * the heap high-water mark during the operation and the time spent
+ * in garbage collection. The heap retained after a full GC is sampled
+ * at regular intervals, so that a steady growth indicates a leak.
+ *
+ * Usage: {@code HeadlessSoak [-seed N] [-ops N] [-width W] [-height H] [-out report.json]}
+ */
+public class HeadlessSoak {
+    private static final int NUM_CHECKPOINTS = 10;
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+    private final long seed;
+    private final int width;
+    private final int height;
+    private final Random random;
+    private final WeightedCaller weightedCaller;
+    private final Supplier<Filter>[] filters = createFilters();
+
+    private final Map<String, OpStats> stats = new LinkedHashMap<>();
+    private final List<long[]> retainedHeap = new ArrayList<>();
+
+    private final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+    private final List<GarbageCollectorMXBean> gcBeans =
+            ManagementFactory.getGarbageCollectorMXBeans();
+
+    private Composition comp;
+    private int numSkipped;
+    private long sequenceHash = 1;
+
+    public HeadlessSoak(long seed, int width, int height) {
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+        random = new Random(seed);
+        weightedCaller = new WeightedCaller(random);
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                heapPools.add(pool);
+            }
+        }
+
+        // the same weights as in RandomGUITest, where applicable
+        register(5, "Filter", this::randomFilter);
+        register(10, "Brush Stroke", this::randomBrushStroke);
+        register(2, "Undo/Redo", this::randomUndoRedo);
+        register(3, "Add/Delete Layer", this::layerAddDelete);
+        register(2, "Duplicate Layer", this::duplicateLayer);
+        register(5, "Merge Down", this::layerMerge);
+        register(1, "Layer Order", this::layerOrderChange);
+        register(1, "Opacity/Blending", this::randomOpacityOrBlending);
+        register(1, "Visibility", this::randomVisibility);
+        register(5, "Activate Layer", this::activateRandomLayer);
+        register(7, "Mask Edit Mode", this::randomMaskEditMode);
+        register(5, "Mask Action", this::randomMaskAction);
+        register(1, "Rotate/Flip", this::randomRotateFlip);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Supplier<Filter>[] createFilters() {
+        // only deterministic filters, so that the runs are reproducible
+        return new Supplier[]{
+                JHGaussianBlur::new,
+                JHUnsharpMask::new,
+                JHEmboss::new,
+                JHPixelate::new,
+                JHMedian::new,
+                JHSwirlPinchBulge::new,
+                Posterize::new,
+                Sepia::new,
+                Invert::new,
+        };
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        long seed = System.nanoTime();
+        int numOps = 10_000;
+        int width = 1000;
+        int height = 800;
+        Path out = Paths.get("soak-report.json");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "-ops":
+                    numOps = Integer.parseInt(value);
+                    break;
+                case "-width":
+                    width = Integer.parseInt(value);
+                    break;
+                case "-height":
+                    height = Integer.parseInt(value);
+                    break;
+                case "-out":
+                    out = Paths.get(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        int exitCode = 0;
+        try {
+            var soak = new HeadlessSoak(seed, width, height);
+            String report = soak.run(numOps);
+            Files.writeString(out, report, UTF_8);
+            System.out.println("Soak report written to " + out.toAbsolutePath());
+        } catch (RuntimeException e) {
+            System.err.println("Soak test failed with seed " + seed);
+            e.printStackTrace();
+            exitCode = 1;
+        }
+        // the thread pool and the timers would keep the JVM running
+        System.exit(exitCode);
+    }
+
+    /**
+     * Runs the given number of operations and returns the report in JSON format.
+     */
+    public String run(int numOps) {
+        TestHelper.setUnitTestingMode();
+        TestHelper.setupMockFgBgSelector();
+        Tools.setCurrentTool(Tools.BRUSH);
+        History.clear();
+        Telemetry.reset();
+        comp = createComp();
+
+        int checkpointInterval = Math.max(1, numOps / NUM_CHECKPOINTS);
+        recordRetainedHeap(0);
+
+        long startTime = System.nanoTime();
+        for (int i = 1; i <= numOps; i++) {
+            weightedCaller.callRandomAction();
+
+            // in the GUI the new layers get their UI when they are
+            // added to the layers panel, which is mocked here
+            comp.forEachLayer(HeadlessSoak::ensureUI);
+
+            // the GUI recalculates the composite image after each change
+            measure("Composite", () -> comp.getCompositeImage());
+
+            if (i % checkpointInterval == 0) {
+                recordRetainedHeap(i);
+            }
+        }
+        long totalNanos = System.nanoTime() - startTime;
+
+        return createReport(numOps, totalNanos);
+    }
+
+    private Composition createComp() {
+        Composition c = TestHelper.createEmptyComp(width, height);
+        for (int i = 0; i < 2; i++) {
+            BufferedImage img = ImageUtils.createSysCompatibleImage(width, height);
+            Graphics2D g = img.createGraphics();
+            for (int j = 0; j < 20; j++) {
+                g.setColor(randomColor());
+                g.fillOval(random.nextInt(width), random.nextInt(height),
+                        1 + random.nextInt(width / 2 + 1), 1 + random.nextInt(height / 2 + 1));
+            }
+            g.dispose();
+            c.addLayerInInitMode(TestHelper.createImageLayer(c, img, "layer " + (i + 1)));
+        }
+        c.setActiveLayer(c.getLayer(1));
+        return c;
+    }
+
+    private static void ensureUI(Layer layer) {
+        if (!layer.hasUI()) {
+            LayerUI ui = layer.createUI();
+            // the LayerButton constructor also adds the mask icon
+            if (layer.hasMask()) {
+                ui.addMaskIcon();
+            }
+        }
+    }
+
+    private void register(int weight, String type, Runnable op) {
+        weightedCaller.registerCallback(weight, () -> {
+            sequenceHash = 31 * sequenceHash + type.hashCode();
+            measure(type, op);
+        });
+    }
+
+    private void measure(String type, Runnable op) {
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+        long gcBefore = getTotalGCMillis();
+        long start = System.nanoTime();
+
+        op.run();
+
+        long nanos = System.nanoTime() - start;
+        long gcMillis = getTotalGCMillis() - gcBefore;
+        long peakBytes = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakBytes += pool.getPeakUsage().getUsed();
+        }
+
+        stats.computeIfAbsent(type, k -> new OpStats()).record(nanos, gcMillis, peakBytes);
+    }
+
+    private long getTotalGCMillis() {
+        long sum = 0;
+        for (GarbageCollectorMXBean bean : gcBeans) {
+            long time = bean.getCollectionTime();
+            if (time > 0) {
+                sum += time;
+            }
+        }
+        return sum;
+    }
+
+    private void recordRetainedHeap(int opIndex) {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        retainedHeap.add(new long[]{opIndex, used});
+    }
+
+    private void randomFilter() {
+        Drawable dr = comp.getActiveDrawable();
+        if (dr == null) {
+            numSkipped++;
+            return;
+        }
+        Filter filter = filters[random.nextInt(filters.length)].get();
+
+        // the same steps as Filter.run, but without the busy cursor
+        BufferedImage src = dr.getFilterSourceImage();
+        BufferedImage dest = filter.transformImage(src);
+        if (dest == src) {
+            // some filters don't change the image with their default settings
+            numSkipped++;
+            return;
+        }
+        dr.filterWithoutDialogFinished(dest, FILTER_WITHOUT_DIALOG, filter.getName());
+    }
+
+    private void randomBrushStroke() {
+        Drawable dr = comp.getActiveDrawable();
+        if (dr == null) {
+            numSkipped++;
+            return;
+        }
+        BufferedImage image = dr.getImage();
+        BufferedImage origImage = ImageUtils.copyImage(image);
+
+        int x1 = random.nextInt(image.getWidth());
+        int y1 = random.nextInt(image.getHeight());
+        int x2 = random.nextInt(image.getWidth());
+        int y2 = random.nextInt(image.getHeight());
+        int radius = 1 + random.nextInt(20);
+
+        Graphics2D g = image.createGraphics();
+        g.setColor(randomColor());
+        g.setStroke(new BasicStroke(2 * radius, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g.drawLine(x1, y1, x2, y2);
+        g.dispose();
+
+        Rectangle affected = new Rectangle(Math.min(x1, x2) - radius, Math.min(y1, y2) - radius,
+                Math.abs(x2 - x1) + 2 * radius + 1, Math.abs(y2 - y1) + 2 * radius + 1);
+        PartialImageEdit edit = History.createPartialImageEdit(affected, origImage, dr, true, "Brush");
+        if (edit != null) {
+            History.add(edit);
+        }
+        if (dr instanceof LayerMask) {
+            ((LayerMask) dr).updateFromBWImage();
+        }
+        dr.updateIconImage();
+        comp.imageChanged();
+    }
+
+    private void randomUndoRedo() {
+        if (random.nextBoolean()) {
+            if (History.canUndo()) {
+                History.undo();
+                return;
+            }
+        } else if (History.canRedo()) {
+            History.redo();
+            return;
+        }
+        numSkipped++;
+    }
+
+    private void layerAddDelete() {
+        if (random.nextBoolean() || comp.getNumLayers() < 2) {
+            comp.addNewEmptyLayer(comp.generateNewLayerName(), false);
+        } else {
+            comp.deleteActiveLayer(true);
+        }
+    }
+
+    private void duplicateLayer() {
+        if (comp.getNumLayers() > 10) {
+            // keep the memory use bounded
+            numSkipped++;
+            return;
+        }
+        comp.duplicateActiveLayer();
+    }
+
+    private void layerMerge() {
+        if (comp.canMergeDown(comp.getActiveLayer())) {
+            comp.mergeActiveLayerDown();
+        } else {
+            numSkipped++;
+        }
+    }
+
+    private void layerOrderChange() {
+        int numLayers = comp.getNumLayers();
+        if (numLayers < 2) {
+            numSkipped++;
+            return;
+        }
+        int oldIndex = comp.getActiveLayerIndex();
+        int newIndex = random.nextInt(numLayers);
+        if (newIndex == oldIndex) {
+            numSkipped++;
+            return;
+        }
+        comp.changeLayerOrder(oldIndex, newIndex);
+    }
+
+    private void randomOpacityOrBlending() {
+        Layer layer = comp.getActiveLayer();
+        if (random.nextBoolean()) {
+            layer.setOpacity(random.nextFloat(), true);
+        } else {
+            BlendingMode[] modes = BlendingMode.values();
+            layer.setBlendingMode(modes[random.nextInt(modes.length)], true);
+        }
+    }
+
+    private void randomVisibility() {
+        Layer layer = comp.getLayer(random.nextInt(comp.getNumLayers()));
+        layer.setVisible(!layer.isVisible(), true);
+    }
+
+    private void activateRandomLayer() {
+        comp.setActiveLayer(comp.getLayer(random.nextInt(comp.getNumLayers())));
+    }
+
+    private void randomMaskEditMode() {
+        Layer layer = comp.getActiveLayer();
+        if (layer.hasMask()) {
+            layer.setMaskEditing(random.nextBoolean());
+        } else {
+            numSkipped++;
+        }
+    }
+
+    private void randomMaskAction() {
+        Layer layer = comp.getActiveLayer();
+        if (!layer.hasMask()) {
+            layer.addMask(REVEAL_ALL);
+        } else if (random.nextBoolean()) {
+            layer.setMaskEnabled(!layer.isMaskEnabled(), true);
+        } else {
+            layer.deleteMask(true);
+        }
+    }
+
+    private void randomRotateFlip() {
+        CompAction action;
+        switch (random.nextInt(4)) {
+            case 0:
+                action = new Rotate(ANGLE_90);
+                break;
+            case 1:
+                action = new Rotate(ANGLE_180);
+                break;
+            case 2:
+                action = new Flip(HORIZONTAL);
+                break;
+            default:
+                action = new Flip(VERTICAL);
+                break;
+        }
+        comp = action.process(comp).join();
+    }
+
+    private Color randomColor() {
+        return new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+    }
+
+    private long calcCompositeHash() {
+        BufferedImage img = comp.getCompositeImage();
+        int w = img.getWidth();
+        int[] row = new int[w];
+        long hash = 1;
+        for (int y = 0; y < img.getHeight(); y++) {
+            img.getRGB(0, y, w, 1, row, 0, w);
+            for (int rgb : row) {
+                hash = 31 * hash + rgb;
+            }
+        }
+        return hash;
+    }
+
+    private String createReport(int numOps, long totalNanos) {
+        StringBuilder sb = new StringBuilder("{\n");
+        sb.append(format(Locale.ENGLISH, "  \"seed\": %d,%n", seed));
+        sb.append(format(Locale.ENGLISH, "  \"width\": %d,%n", width));
+        sb.append(format(Locale.ENGLISH, "  \"height\": %d,%n", height));
+        sb.append(format(Locale.ENGLISH, "  \"operations\": %d,%n", numOps));
+        sb.append(format(Locale.ENGLISH, "  \"skipped\": %d,%n", numSkipped));
+        sb.append(format(Locale.ENGLISH, "  \"totalSeconds\": %.3f,%n", totalNanos / 1.0e9));
+        sb.append(format(Locale.ENGLISH, "  \"operationsPerSecond\": %.2f,%n", numOps / (totalNanos / 1.0e9)));
+        sb.append(format(Locale.ENGLISH, "  \"sequenceHash\": %d,%n", sequenceHash));
+        sb.append(format(Locale.ENGLISH, "  \"compositeHash\": %d,%n", calcCompositeHash()));
+
+        sb.append("  \"operationTypes\": [");
+        int i = 0;
+        for (Map.Entry<String, OpStats> entry : stats.entrySet()) {
+            sb.append(i++ == 0 ? "\n" : ",\n");
+            sb.append("    ").append(entry.getValue().toJSON(entry.getKey()));
+        }
+        sb.append("\n  ],\n");
+
+        sb.append("  \"retainedHeap\": [");
+        for (int j = 0; j < retainedHeap.size(); j++) {
+            long[] sample = retainedHeap.get(j);
+            sb.append(j == 0 ? "\n" : ",\n");
+            sb.append(format(Locale.ENGLISH, "    {\"afterOperation\": %d, \"MB\": %.3f}",
+                    sample[0], sample[1] / BYTES_PER_MB));
+        }
+        sb.append("\n  ],\n");
+
+        sb.append("  \"telemetry\": ").append(Telemetry.toJSON().strip().replace("\n", "\n  "));
+        sb.append("\n}\n");
+        return sb.toString();
+    }
+
+    /**
+     * The measurements of an operation type
+     */
+    private static class OpStats {
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private long totalNanos;
+        private long gcMillis;
+        private long maxPeakBytes;
+
+        void record(long nanos, long gc, long peakBytes) {
+            latencies.record(nanos);
+            totalNanos += nanos;
+            gcMillis += gc;
+            maxPeakBytes = Math.max(maxPeakBytes, peakBytes);
+        }
+
+        String toJSON(String type) {
+            long count = latencies.getCount();
+            return format(Locale.ENGLISH, "{\"type\": \"%s\", \"count\": %d, " +
+                            "\"meanMs\": %.3f, \"p50Ms\": %.3f, \"p90Ms\": %.3f, " +
+                            "\"p99Ms\": %.3f, \"maxMs\": %.3f, \"gcMs\": %d, " +
+                            "\"heapHighWaterMB\": %.3f}",
+                    type, count, totalNanos / 1.0e6 / count,
+                    latencies.getPercentile(0.5) / 1.0e6,
+                    latencies.getPercentile(0.9) / 1.0e6,
+                    latencies.getPercentile(0.99) / 1.0e6,
+                    latencies.getMax() / 1.0e6,
+                    gcMillis, maxPeakBytes / BYTES_PER_MB);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.manual;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("HeadlessSoak tests")
+public class HeadlessSoakTest {
+    private static final int NUM_OPS = 80;
+
+    @Test
+    @DisplayName("the same seed gives the same run")
+    void reproducible() {
+        String report1 = new HeadlessSoak(42, 64, 48).run(NUM_OPS);
+        String report2 = new HeadlessSoak(42, 64, 48).run(NUM_OPS);
+
+        assertThat(report1).contains("\"operations\": " + NUM_OPS);
+        assertThat(report1).contains("\"type\": \"Composite\"");
+        assertThat(report1).contains("\"retainedHeap\": [");
+
+        assertThat(extract(report2, "sequenceHash")).isEqualTo(extract(report1, "sequenceHash"));
+        assertThat(extract(report2, "compositeHash")).isEqualTo(extract(report1, "compositeHash"));
+        assertThat(extract(report2, "skipped")).isEqualTo(extract(report1, "skipped"));
+    }
+
+    private static String extract(String report, String field) {
+        Matcher m = Pattern.compile("\"" + field + "\": (-?\\d+)").matcher(report);
+        assertThat(m.find()).isTrue();
+        return m.group(1);
+    }
+}
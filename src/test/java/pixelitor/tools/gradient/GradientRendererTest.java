@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.gradient;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import pixelitor.tools.util.ImDrag;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.MultipleGradientPaint.CycleMethod;
+import java.awt.image.BufferedImage;
+
+import static java.awt.RenderingHints.KEY_ANTIALIASING;
+import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("GradientRenderer tests")
+public class GradientRendererTest {
+    private static final int WIDTH = 150;
+    private static final int HEIGHT = 110;
+    private static final Color[] COLORS = {Color.RED, new Color(0, 0, 255, 100)};
+
+    @ParameterizedTest
+    @EnumSource(GradientType.class)
+    @DisplayName("the parallel rendering matches a single fill")
+    void matchesSingleFill(GradientType type) {
+        ImDrag drag = new ImDrag(40.5, 70.3, 95.2, 20.7);
+        for (CycleMethod cycle : CycleMethod.values()) {
+            BufferedImage expected = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+            Graphics2D g = expected.createGraphics();
+            g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+            g.setPaint(type.createPaint(drag, COLORS, cycle));
+            g.fillRect(0, 0, WIDTH, HEIGHT);
+            g.dispose();
+
+            BufferedImage actual = GradientRenderer.render(type, drag, COLORS, cycle, WIDTH, HEIGHT);
+
+            assertThat(maxDifference(expected, actual)).isLessThanOrEqualTo(1);
+        }
+    }
+
+    private static int maxDifference(BufferedImage a, BufferedImage b) {
+        int max = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int rgb1 = a.getRGB(x, y);
+                int rgb2 = b.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int diff = Math.abs(((rgb1 >>> shift) & 0xff) - ((rgb2 >>> shift) & 0xff));
+                    max = Math.max(max, diff);
+                }
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.RadialGradientPaint;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+import static java.awt.BasicStroke.CAP_ROUND;
+import static java.awt.BasicStroke.CAP_SQUARE;
+import static java.awt.BasicStroke.JOIN_MITER;
+import static java.awt.BasicStroke.JOIN_ROUND;
+import static java.awt.RenderingHints.KEY_ANTIALIASING;
+import static java.awt.RenderingHints.VALUE_ANTIALIAS_OFF;
+import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("DisplayList tests")
+class DisplayListTest {
+    // not multiples of the tile size used below
+    private static final int WIDTH = 700;
+    private static final int HEIGHT = 530;
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    @DisplayName("the tiled rendering matches a single Graphics2D")
+    void matchesSingleGraphics(boolean antiAliased) {
+        BufferedImage expected = createBackground();
+        Graphics2D g = expected.createGraphics();
+        g.setRenderingHint(KEY_ANTIALIASING, antiAliased ? VALUE_ANTIALIAS_ON : VALUE_ANTIALIAS_OFF);
+        var recorder = new Recorder(g, new DisplayList());
+        recorder.list.setRenderingHint(KEY_ANTIALIASING, antiAliased ? VALUE_ANTIALIAS_ON : VALUE_ANTIALIAS_OFF);
+        recordRandomScene(recorder);
+        g.dispose();
+
+        BufferedImage actual = createBackground();
+        // small tiles, so that many shapes cross the tile boundaries
+        recorder.list.rasterize(actual, 100, ProgressTracker.NULL_TRACKER);
+
+        assertThat(recorder.list.getNumOperations()).isEqualTo(300);
+        // both the tiled and the grouped rendering is used
+        assertThat(recorder.list.getNumOperationsWithLongSegments()).isStrictlyBetween(0, 300);
+        assertThat(getPixels(actual)).isEqualTo(getPixels(expected));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {64, 100, 256})
+    @DisplayName("a big outline with some long segments matches a single Graphics2D")
+    void bigOutline(int tileSize) {
+        // like the outlines of the shape filters: many short segments
+        // in a spiral, and some big circles in the middle
+        Path2D path = new Path2D.Double();
+        for (int i = 0; i < 2000; i++) {
+            double angle = i * 0.05;
+            double radius = 20 + i * 0.12;
+            double x = WIDTH / 2.0 + radius * Math.cos(angle);
+            double y = HEIGHT / 2.0 + radius * Math.sin(angle);
+            if (i == 0) {
+                path.moveTo(x, y);
+            } else {
+                path.lineTo(x, y);
+            }
+        }
+        for (int i = 0; i < 6; i++) {
+            double angle = i * Math.PI / 3;
+            path.append(new Ellipse2D.Double(WIDTH / 2.0 - 60 + 60 * Math.cos(angle),
+                    HEIGHT / 2.0 - 60 + 60 * Math.sin(angle), 120, 120), false);
+        }
+        Shape outline = new BasicStroke(5, CAP_ROUND, JOIN_ROUND).createStrokedShape(path);
+
+        BufferedImage expected = createBackground();
+        Graphics2D g = expected.createGraphics();
+        g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+        g.setColor(Color.WHITE);
+        g.fill(outline);
+        g.dispose();
+
+        DisplayList list = new DisplayList();
+        list.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+        list.setColor(Color.WHITE);
+        list.fill(outline);
+        assertThat(list.getNumOperationsWithLongSegments()).isEqualTo(1);
+
+        BufferedImage actual = createBackground();
+        list.rasterize(actual, tileSize, ProgressTracker.NULL_TRACKER);
+        assertThat(getPixels(actual)).isEqualTo(getPixels(expected));
+    }
+
+    @Test
+    @DisplayName("antialiased multiple-stop gradients are not tiled")
+    void multipleGradientPaint() {
+        DisplayList list = new DisplayList();
+        list.setPaint(new RadialGradientPaint(10, 10, 100,
+                new float[]{0.0f, 1.0f}, new Color[]{Color.RED, Color.BLUE}));
+        list.fill(new Ellipse2D.Double(0, 0, 10, 10));
+        assertThat(list.getNumTileableOperations()).isEqualTo(1);
+
+        list.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+        assertThat(list.getNumTileableOperations()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("the long segments are detected")
+    void longSegments() {
+        DisplayList list = new DisplayList();
+        list.draw(new Line2D.Double(0, 0, 30, 40));
+        list.fill(new Ellipse2D.Double(0, 0, 20, 20));
+        assertThat(list.getNumOperationsWithLongSegments()).isEqualTo(0);
+
+        // the closing segment of the path is long
+        Path2D path = new Path2D.Double();
+        path.moveTo(0, 0);
+        path.lineTo(50, 0);
+        path.lineTo(100, 0);
+        path.closePath();
+        list.draw(path);
+        list.draw(new Line2D.Double(0, 0, 300, 40));
+        list.fill(new Ellipse2D.Double(0, 0, 500, 500));
+        assertThat(list.getNumOperationsWithLongSegments()).isEqualTo(3);
+    }
+
+    private static BufferedImage createBackground() {
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.BLUE, WIDTH, HEIGHT, new Color(255, 255, 0, 100)));
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        g.dispose();
+        return img;
+    }
+
+    private static void recordRandomScene(Recorder r) {
+        Random rand = new Random(42);
+        for (int i = 0; i < 300; i++) {
+            double x1 = -50 + rand.nextDouble() * (WIDTH + 100);
+            double y1 = -50 + rand.nextDouble() * (HEIGHT + 100);
+            double x2 = x1 - 100 + rand.nextDouble() * 200;
+            double y2 = y1 - 100 + rand.nextDouble() * 200;
+            Color c1 = new Color(rand.nextInt(), true);
+            Color c2 = new Color(rand.nextInt(), true);
+            float width = rand.nextFloat() * 30;
+
+            switch (i % 4) {
+                case 0:
+                    r.setStroke(new BasicStroke(width, CAP_ROUND, JOIN_ROUND));
+                    r.setPaint(new GradientPaint((float) x1, (float) y1, c1, (float) x2, (float) y2, c2));
+                    r.draw(new Line2D.Double(x1, y1, x2, y2));
+                    break;
+                case 1:
+                    Path2D path = new Path2D.Double();
+                    path.moveTo(x1, y1);
+                    path.curveTo(x2, y1, x1, y2, x2, y2);
+                    path.lineTo(x1, y2);
+                    r.setStroke(new BasicStroke(width, CAP_SQUARE, JOIN_MITER, 10.0f));
+                    r.setPaint(c1);
+                    r.draw(path);
+                    break;
+                case 2:
+                    r.setPaint(new GradientPaint((float) x1, (float) y1, c1,
+                            (float) x2 + width, (float) y2, c2));
+                    r.fill(new Ellipse2D.Double(x1, y1, x2 - x1 + 200, y2 - y1 + 200));
+                    break;
+                case 3:
+                    // hairlines
+                    r.setStroke(new BasicStroke(0));
+                    r.setPaint(c2);
+                    r.draw(new Line2D.Double(x1, y1, x2, y2));
+                    break;
+            }
+        }
+    }
+
+    private static int[] getPixels(BufferedImage img) {
+        return ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Sends the same operations to a Graphics2D and a DisplayList
+     */
+    private static class Recorder {
+        private final Graphics2D g;
+        private final DisplayList list;
+
+        private Recorder(Graphics2D g, DisplayList list) {
+            this.g = g;
+            this.list = list;
+        }
+
+        void setPaint(Paint paint) {
+            g.setPaint(paint);
+            list.setPaint(paint);
+        }
+
+        void setStroke(BasicStroke stroke) {
+            g.setStroke(stroke);
+            list.setStroke(stroke);
+        }
+
+        void draw(Shape shape) {
+            g.draw(shape);
+            list.draw(shape);
+        }
+
+        void fill(Shape shape) {
+            g.fill(shape);
+            list.fill(shape);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.utils.MemoryGovernor.MemoryConsumer;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("MemoryGovernor tests")
+public class MemoryGovernorTest {
+    private final List<MemoryConsumer> registered = new ArrayList<>();
+
+    @AfterEach
+    void afterEachTest() {
+        registered.forEach(MemoryGovernor::unregister);
+    }
+
+    @Test
+    @DisplayName("small requests are admitted without reclaiming")
+    void admitsSmallRequests() {
+        var consumer = new TestConsumer("Test", 1000);
+        register(consumer);
+
+        assertThat(MemoryGovernor.admit(0)).isTrue();
+        assertThat(MemoryGovernor.admit(1024)).isTrue();
+        assertThat(consumer.reclaimRequests).isEmpty();
+    }
+
+    @Test
+    @DisplayName("impossible requests are rejected after reclaiming")
+    void rejectsImpossibleRequests() {
+        var first = new TestConsumer("First", 1000);
+        var second = new TestConsumer("Second", 2000);
+        register(first);
+        register(second);
+
+        long needed = Runtime.getRuntime().maxMemory() * 2;
+        assertThat(MemoryGovernor.admit(needed)).isFalse();
+
+        // both were asked in the registration order
+        assertThat(first.reclaimRequests).hasSize(1);
+        assertThat(second.reclaimRequests).hasSize(1);
+        // only the missing part is requested
+        assertThat(first.reclaimRequests.get(0)).isPositive().isLessThan(needed * 2);
+        assertThat(first.used).isZero();
+        assertThat(second.used).isZero();
+    }
+
+    @Test
+    @DisplayName("the usage is reported per subsystem")
+    void usageBySubsystem() {
+        register(new TestConsumer("Test", 12345));
+
+        Map<String, Long> usage = MemoryGovernor.getUsageBySubsystem();
+
+        assertThat(usage).containsEntry("Test", 12345L);
+        assertThat(usage).containsKey("Other");
+    }
+
+    @Test
+    @DisplayName("the image sizes are calculated from the data buffers")
+    void imageBytes() {
+        assertThat(MemoryGovernor.bytesOf(new BufferedImage(10, 20, TYPE_INT_ARGB)))
+                .isEqualTo(800);
+        assertThat(MemoryGovernor.bytesOf(new BufferedImage(10, 20, TYPE_BYTE_GRAY)))
+                .isEqualTo(200);
+        assertThat(MemoryGovernor.bytesOf((BufferedImage) null)).isZero();
+        assertThat(MemoryGovernor.bytesOfImage(100_000, 100_000)).isEqualTo(40_000_000_000L);
+    }
+
+    private void register(MemoryConsumer consumer) {
+        MemoryGovernor.register(consumer);
+        registered.add(consumer);
+    }
+
+    private static class TestConsumer implements MemoryConsumer {
+        private final String name;
+        private long used;
+        private final List<Long> reclaimRequests = new ArrayList<>();
+
+        TestConsumer(String name, long used) {
+            this.name = name;
+            this.used = used;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getUsedBytes() {
+            return used;
+        }
+
+        @Override
+        public long reclaim(long bytes) {
+            reclaimRequests.add(bytes);
+            long released = used;
+            used = 0;
+            return released;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("ScratchPool tests")
+class ScratchPoolTest {
+    private long origMaxBytes;
+
+    @BeforeEach
+    void beforeEachTest() {
+        origMaxBytes = ScratchPool.getMaxBytes();
+        ScratchPool.setMaxBytes(10_000_000);
+        ScratchPool.clear();
+    }
+
+    @AfterEach
+    void afterEachTest() {
+        ScratchPool.clear();
+        ScratchPool.setMaxBytes(origMaxBytes);
+    }
+
+    @Test
+    @DisplayName("released images are reused cleared")
+    void imageReuse() {
+        BufferedImage img = ScratchPool.acquireImage(20, 10, TYPE_INT_ARGB);
+        img.setRGB(3, 4, 0xFF_12_34_56);
+        ScratchPool.release(img);
+        assertThat(ScratchPool.getNumPooled()).isEqualTo(1);
+        assertThat(ScratchPool.getPooledBytes()).isEqualTo(20 * 10 * 4);
+
+        BufferedImage reused = ScratchPool.acquireImage(20, 10, TYPE_INT_ARGB);
+        assertThat(reused).isSameAs(img);
+        assertThat(reused.getRGB(3, 4)).isZero();
+        assertThat(ScratchPool.getNumPooled()).isZero();
+    }
+
+    @Test
+    @DisplayName("images are bucketed by size and type")
+    void imageBuckets() {
+        BufferedImage img = ScratchPool.acquireImage(20, 10, TYPE_INT_ARGB);
+        ScratchPool.release(img);
+
+        assertThat(ScratchPool.acquireImage(10, 20, TYPE_INT_ARGB)).isNotSameAs(img);
+        assertThat(ScratchPool.acquireImage(20, 10, TYPE_INT_RGB)).isNotSameAs(img);
+        assertThat(ScratchPool.acquireImage(20, 10, TYPE_BYTE_GRAY)).isNotSameAs(img);
+        assertThat(ScratchPool.getNumPooled()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("subimages and unsupported types are not pooled")
+    void notPoolable() {
+        BufferedImage img = new BufferedImage(20, 10, TYPE_INT_ARGB);
+        ScratchPool.release(img.getSubimage(2, 2, 5, 5));
+        ScratchPool.release(new BufferedImage(20, 10, BufferedImage.TYPE_3BYTE_BGR));
+        assertThat(ScratchPool.getNumPooled()).isZero();
+
+        assertThatThrownBy(() -> ScratchPool.acquireImage(5, 5, BufferedImage.TYPE_USHORT_GRAY))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("releasing twice is an error")
+    void doubleRelease() {
+        BufferedImage img = ScratchPool.acquireImage(20, 10, TYPE_INT_ARGB);
+        ScratchPool.release(img);
+        assertThatThrownBy(() -> ScratchPool.release(img))
+                .isInstanceOf(IllegalStateException.class);
+
+        int[] array = ScratchPool.acquireIntArray(100);
+        ScratchPool.release(array);
+        assertThatThrownBy(() -> ScratchPool.release(array))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    @DisplayName("the total size is bounded, the oldest buffers are dropped")
+    void bounded() {
+        ScratchPool.setMaxBytes(3 * 400);
+        int[] first = ScratchPool.acquireIntArray(100);
+        int[] second = ScratchPool.acquireIntArray(100);
+        int[] third = ScratchPool.acquireIntArray(100);
+        int[] fourth = ScratchPool.acquireIntArray(100);
+        ScratchPool.release(first);
+        ScratchPool.release(second);
+        ScratchPool.release(third);
+        ScratchPool.release(fourth);
+        assertThat(ScratchPool.getNumPooled()).isEqualTo(3);
+        assertThat(ScratchPool.getPooledBytes()).isEqualTo(3 * 400);
+
+        // too big to be pooled at all
+        ScratchPool.release(new int[1000]);
+        assertThat(ScratchPool.getNumPooled()).isEqualTo(3);
+
+        // the most recently released ones are reused, the first one was dropped
+        assertThat(ScratchPool.acquireIntArray(100)).isSameAs(fourth);
+        assertThat(ScratchPool.acquireIntArray(100)).isSameAs(third);
+        assertThat(ScratchPool.acquireIntArray(100)).isSameAs(second);
+        assertThat(ScratchPool.acquireIntArray(100)).isNotSameAs(first);
+
+        // shrinking the limit evicts
+        ScratchPool.release(second);
+        ScratchPool.release(third);
+        ScratchPool.setMaxBytes(400);
+        assertThat(ScratchPool.getNumPooled()).isEqualTo(1);
+        assertThat(ScratchPool.acquireIntArray(100)).isSameAs(third);
+    }
+
+    @Test
+    @DisplayName("the memory governor can empty the pool")
+    void clearedByGovernor() {
+        BufferedImage img = ScratchPool.acquireImage(20, 10, TYPE_INT_ARGB);
+        ScratchPool.release(img);
+        assertThat(ScratchPool.clear()).isEqualTo(800);
+        assertThat(ScratchPool.getPooledBytes()).isZero();
+        assertThat(ScratchPool.acquireImage(20, 10, TYPE_INT_ARGB)).isNotSameAs(img);
+    }
+
+    @Test
+    @DisplayName("the buffers that are not released are reported as leaks")
+    void leakDetection() throws InterruptedException {
+        ScratchPool.setLeakDetection(true);
+        try {
+            int leaksBefore = ScratchPool.checkLeaks();
+
+            ScratchPool.release(ScratchPool.acquireIntArray(50));
+            acquireAndForget();
+
+            int leaks = leaksBefore;
+            for (int i = 0; i < 50 && leaks == leaksBefore; i++) {
+                System.gc();
+                Thread.sleep(20);
+                leaks = ScratchPool.checkLeaks();
+            }
+            assertThat(leaks).isEqualTo(leaksBefore + 1);
+        } finally {
+            ScratchPool.setLeakDetection(false);
+        }
+    }
+
+    private static void acquireAndForget() {
+        BufferedImage img = ScratchPool.acquireImage(8, 8, TYPE_INT_ARGB);
+        assertThat(img.getRaster().getDataBuffer()).isInstanceOf(DataBufferInt.class);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("ThumbnailService tests")
+public class ThumbnailServiceTest {
+    @Test
+    @DisplayName("repeated requests for the same key are coalesced")
+    void coalescing() throws InterruptedException {
+        Object key = new Object();
+        int numRequests = 20;
+        BufferedImage[] sources = new BufferedImage[numRequests];
+        for (int i = 0; i < numRequests; i++) {
+            sources[i] = new BufferedImage(1, 1, TYPE_INT_ARGB);
+        }
+        BufferedImage last = sources[numRequests - 1];
+
+        List<BufferedImage> created = new CopyOnWriteArrayList<>();
+        CountDownLatch lastDone = new CountDownLatch(1);
+        for (BufferedImage src : sources) {
+            ThumbnailService.submit(key, src, Function.identity(), thumb -> {
+                created.add(thumb);
+                if (thumb == last) {
+                    lastDone.countDown();
+                }
+            });
+        }
+
+        assertThat(lastDone.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // the first request could start before the others
+        // were submitted, but the rest must be coalesced
+        assertThat(created.size()).isLessThanOrEqualTo(2);
+        assertThat(created).endsWith(last);
+    }
+}
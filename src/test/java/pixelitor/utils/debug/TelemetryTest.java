@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils.debug;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.utils.debug.Telemetry.OperationStats;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pixelitor.utils.debug.Telemetry.Category.FILTER;
+import static pixelitor.utils.debug.Telemetry.Category.IO_READ;
+
+@DisplayName("Telemetry tests")
+public class TelemetryTest {
+    @BeforeEach
+    void beforeEachTest() {
+        Telemetry.reset();
+    }
+
+    @Test
+    @DisplayName("the histogram buckets contain their values")
+    void bucketBounds() {
+        Random random = new Random(3);
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int index = LatencyHistogram.bucketIndex(value);
+            assertThat(LatencyHistogram.lowerBound(index)).isLessThanOrEqualTo(value);
+            assertThat(LatencyHistogram.upperBound(index)).isGreaterThanOrEqualTo(value);
+        }
+    }
+
+    @Test
+    @DisplayName("the percentiles are within the bucket precision")
+    void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertThat(histogram.getCount()).isEqualTo(1000);
+        assertThat(histogram.getMax()).isEqualTo(1_000_000);
+        assertRelativeError(histogram.getPercentile(0.5), 500_000);
+        assertRelativeError(histogram.getPercentile(0.9), 900_000);
+        assertRelativeError(histogram.getPercentile(0.99), 990_000);
+        assertThat(histogram.getPercentile(1.0)).isEqualTo(1_000_000);
+    }
+
+    @Test
+    @DisplayName("the statistics are collected per operation")
+    void perOperation() {
+        Telemetry.record(FILTER, "Blur", 2_000_000, 1024);
+        Telemetry.record(FILTER, "Blur", 4_000_000, 3072);
+        Telemetry.record(IO_READ, "png", 1_000_000, -1);
+
+        List<OperationStats> stats = Telemetry.getStats();
+        assertThat(stats).hasSize(2);
+
+        OperationStats blur = stats.get(0);
+        assertThat(blur.getCategory()).isEqualTo(FILTER);
+        assertThat(blur.getOperation()).isEqualTo("Blur");
+        assertThat(blur.getCount()).isEqualTo(2);
+        assertThat(blur.getMeanNanos()).isEqualTo(3_000_000);
+        assertThat(blur.getMaxNanos()).isEqualTo(4_000_000);
+        assertThat(blur.getMeanAllocatedBytes()).isEqualTo(2048);
+
+        assertThat(stats.get(1).getMeanAllocatedBytes()).isEqualTo(-1);
+    }
+
+    @Test
+    @DisplayName("a span is recorded only once")
+    void span() {
+        Telemetry.Span span = Telemetry.start(FILTER, "Test");
+        long nanos = span.end();
+        span.close();
+
+        assertThat(nanos).isGreaterThanOrEqualTo(0);
+        List<OperationStats> stats = Telemetry.getStats();
+        assertThat(stats).hasSize(1);
+        assertThat(stats.get(0).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("CSV and JSON export")
+    void export() {
+        Telemetry.record(FILTER, "Blur, \"fast\"", 1_500_000, -1);
+
+        String csv = Telemetry.toCSV();
+        assertThat(csv).startsWith("category,operation,count,");
+        assertThat(csv).contains("FILTER,\"Blur, \"\"fast\"\"\",1,1.500,");
+
+        String json = Telemetry.toJSON();
+        assertThat(json).contains("\"operation\": \"Blur, \\\"fast\\\"\"");
+        assertThat(json).contains("\"count\": 1");
+        assertThat(json).contains("\"meanAllocatedMB\": null");
+    }
+
+    private static void assertRelativeError(long actual, long expected) {
+        assertThat(Math.abs(actual - expected) / (double) expected).isLessThan(0.07);
+    }
+}